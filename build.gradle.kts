@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("org.jetbrains.kotlin.jvm") version "1.9.25"
     id("org.jetbrains.intellij.platform") version "2.6.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "de.knudev"
@@ -17,6 +18,10 @@ repositories {
 // Configure Gradle IntelliJ Plugin
 // Read more: https://plugins.jetbrains.com/docs/intellij/tools-intellij-platform-gradle-plugin.html
 dependencies {
+    testImplementation("junit:junit:4.13.2")
+    // Needed at runtime by the IntelliJ Platform test framework
+    testImplementation("org.opentest4j:opentest4j:1.3.0")
+
     intellijPlatform {
         create("IC", "2024.2.5")
         testFramework(org.jetbrains.intellij.platform.gradle.TestFrameworkType.Platform)
@@ -38,6 +43,75 @@ intellijPlatform {
     }
 }
 
+// Benchmarks for the export and import hot paths, run with ./gradlew jmh
+// Read more: https://github.com/melix/jmh-gradle-plugin
+jmh {
+    jmhVersion = "1.37"
+    // The gc profiler reports gc.alloc.rate.norm, the bytes allocated per operation
+    profilers = listOf("gc")
+    fork = 1
+    warmupIterations = 2
+    iterations = 5
+    resultFormat = "JSON"
+}
+
+// Round trips on large generated projects with wall time and allocation budgets, run with ./gradlew performanceBudgets.
+// Not part of check: wall times depend on the machine and the run generates about 100 MB of projects.
+// Budgets live in src/jmh/resources/de/knudev/aiexport/bench/performance-budgets.properties,
+// scale the wall time budgets on slow machines with -PbudgetTimeFactor=2
+val budgetTimeFactor = providers.gradleProperty("budgetTimeFactor")
+tasks.register<JavaExec>("performanceBudgets") {
+    group = "verification"
+    description = "Fails if export or import of large projects exceeds its time or allocation budget"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass = "de.knudev.aiexport.bench.PerformanceBudgets"
+    maxHeapSize = "2g"
+    systemProperty("budgets.timeFactor", budgetTimeFactor.getOrElse("1"))
+}
+
+// Export or import the instructions of many repositories without an IDE, e.g.
+// ./gradlew aiSettings -PaiSettingsArgs="import --manifest-dir build/manifests /work/repos/*"
+// Arguments containing spaces are quoted with ' or ", e.g. -PaiSettingsArgs="export '/work/my repos/*'"
+val aiSettingsArgs = providers.gradleProperty("aiSettingsArgs")
+
+fun splitArguments(line: String): List<String> {
+    val arguments = mutableListOf<String>()
+    val current = StringBuilder()
+    var quote: Char? = null
+    var inArgument = false
+    for (c in line) {
+        when {
+            quote != null && c == quote -> quote = null
+            quote == null && (c == '\'' || c == '"') -> {
+                quote = c
+                inArgument = true
+            }
+            quote == null && c.isWhitespace() -> if (inArgument) {
+                arguments += current.toString()
+                current.clear()
+                inArgument = false
+            }
+            else -> {
+                current.append(c)
+                inArgument = true
+            }
+        }
+    }
+    require(quote == null) { "Unterminated quote in aiSettingsArgs: $line" }
+    if (inArgument) {
+        arguments += current.toString()
+    }
+    return arguments
+}
+
+tasks.register<JavaExec>("aiSettings") {
+    group = "ai settings"
+    description = "Runs the headless AI settings export or import over a list or glob of repository roots"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "de.knudev.aiexport.cli.AiSettingsCli"
+    args(aiSettingsArgs.map(::splitArguments).getOrElse(emptyList()))
+}
+
 tasks {
     // Set the JVM compatibility versions
     withType<JavaCompile> {
@@ -0,0 +1,163 @@
+package de.knudev.aiexport.bench;
+
+import de.knudev.aiexport.core.ExportOptions;
+import de.knudev.aiexport.core.ExportResult;
+import de.knudev.aiexport.core.InstructionModel;
+import de.knudev.aiexport.core.InstructionsExporter;
+import de.knudev.aiexport.core.ProjectLayout;
+import de.knudev.aiexport.instructions.InstructionFile;
+import de.knudev.aiexport.instructions.InstructionFileLoader;
+import de.knudev.aiexport.workspace.ComponentRange;
+import de.knudev.aiexport.workspace.WorkspaceComponentLocator;
+import de.knudev.aiexport.workspace.WorkspaceFileWriter;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the export and import hot paths on generated projects.
+ * Run with the gc profiler (configured in build.gradle.kts) to get bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class InstructionsBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int instructionCount;
+
+    @Param({"50KB", "5MB", "50MB"})
+    public String workspaceSize;
+
+    private SyntheticProject project;
+    private Path writeTarget;
+    private Map<String, String> changedInstructions;
+    private byte[] componentBytes;
+    private ExecutorService loaderExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        project = SyntheticProject.create(instructionCount, SyntheticProject.parseSize(workspaceSize), 400);
+        writeTarget = project.root.resolve(".idea").resolve("workspace-write.xml");
+
+        // Every other instruction changes, every tenth is new
+        changedInstructions = new LinkedHashMap<>();
+        int index = 0;
+        for (Map.Entry<String, String> entry : project.instructions.entrySet()) {
+            if (index++ % 2 == 0) {
+                changedInstructions.put(entry.getKey(), entry.getValue() + "\nChanged.");
+            }
+        }
+        for (int i = 0; i < instructionCount / 10; i++) {
+            changedInstructions.put("AIAssistant.Generated.New" + i, "New instruction " + i);
+        }
+
+        ComponentRange range = WorkspaceComponentLocator.locate(project.workspacePath, WorkspaceInstructionsReader.COMPONENT_NAME);
+        componentBytes = WorkspaceFileWriter.readRange(project.workspacePath, range);
+        loaderExecutor = Executors.newFixedThreadPool(Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Setup(Level.Iteration)
+    public void resetWriteTarget() throws Exception {
+        Files.copy(project.workspacePath, writeTarget, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        loaderExecutor.shutdownNow();
+        project.close();
+    }
+
+    /**
+     * The export the action and the command line tool run, in every layout of the .ai directory.
+     * After the first invocation every file is unchanged, so this measures the repeated export.
+     */
+    @Benchmark
+    public ExportResult exportWorkspaceRules(ExportTarget target) {
+        return InstructionsExporter.export(target.layout, target.model, target.options);
+    }
+
+    @Benchmark
+    public List<InstructionFile> readInstructionsFromFiles() throws Exception {
+        return new InstructionFileLoader(loaderExecutor).load(project.aiDirectory,
+                InstructionFileLoader.KnownFiles.NONE, InstructionFileLoader.Progress.NONE);
+    }
+
+    @Benchmark
+    public Document updateAiComponentWithInstructions(ComponentDocument component) {
+        WorkspaceInstructionsWriter.updateAiComponentWithInstructions(
+                component.document.getDocumentElement(), changedInstructions, component.document);
+        return component.document;
+    }
+
+    @Benchmark
+    public boolean writeBackInPlace() throws Exception {
+        return WorkspaceInstructionsWriter.writeInPlace(writeTarget, changedInstructions);
+    }
+
+    @Benchmark
+    public Path writeBackFullRewrite() throws Exception {
+        WorkspaceInstructionsWriter.writeWithDom(writeTarget, changedInstructions);
+        return writeTarget;
+    }
+
+    /**
+     * A project of its own for every export format, so exports never change the .ai directory the other
+     * benchmarks read
+     */
+    @State(Scope.Benchmark)
+    public static class ExportTarget {
+        @Param({"MARKDOWN", "BUNDLE", "CONTENT_ADDRESSED"})
+        public ExportOptions.Format format;
+
+        ProjectLayout layout;
+        ExportOptions options;
+        // Kept across invocations like the project's model in the IDE
+        InstructionModel model;
+
+        @Setup(Level.Trial)
+        public void setUp(InstructionsBenchmark benchmark) throws Exception {
+            layout = new ProjectLayout(benchmark.project.root.resolve("export-" + format));
+            Files.createDirectories(layout.ideaDirectory());
+            Files.copy(benchmark.project.workspacePath, layout.workspaceFile(), StandardCopyOption.REPLACE_EXISTING);
+            options = new ExportOptions(false, format);
+            model = new InstructionModel();
+        }
+    }
+
+    /**
+     * A freshly parsed instructions component for every invocation, since updating it mutates the DOM
+     */
+    @State(Scope.Thread)
+    public static class ComponentDocument {
+        Document document;
+
+        @Setup(Level.Invocation)
+        public void parse(InstructionsBenchmark benchmark) throws Exception {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new ByteArrayInputStream(benchmark.componentBytes));
+        }
+    }
+}
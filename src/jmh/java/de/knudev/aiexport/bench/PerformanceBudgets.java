@@ -0,0 +1,196 @@
+package de.knudev.aiexport.bench;
+
+import de.knudev.aiexport.core.ExportOptions;
+import de.knudev.aiexport.core.ExportResult;
+import de.knudev.aiexport.core.ImportOptions;
+import de.knudev.aiexport.core.ImportResult;
+import de.knudev.aiexport.core.InstructionModel;
+import de.knudev.aiexport.core.InstructionsExporter;
+import de.knudev.aiexport.core.InstructionsImporter;
+import de.knudev.aiexport.core.ProjectLayout;
+import de.knudev.aiexport.core.TaskProgress;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Round trips export, import and export again on large generated projects, checks that the content survives
+ * unchanged, and fails if an operation exceeds its wall time or allocation budget from
+ * {@code performance-budgets.properties}. Runs through {@code ./gradlew performanceBudgets}, separately from
+ * {@code check}, so a change that slows down or bloats a hot path can be verified on a quiet machine.
+ * <p>
+ * Wall time budgets can be scaled for slow machines with {@code -Dbudgets.timeFactor=2}.
+ * Allocations are counted on the calling thread, so the import reads its files on that thread as well.
+ */
+public final class PerformanceBudgets {
+    private static final String BUDGETS_FILE = "performance-budgets.properties";
+
+    private final Properties budgets;
+    private final double timeFactor;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final List<String> failures = new ArrayList<>();
+
+    /**
+     * @param name           Prefix of the scenario's budgets
+     * @param maxNesting     Maximum nesting depth of the unrelated components of workspace.xml
+     */
+    private record Scenario(String name, int instructionCount, long workspaceBytes, int bodyBytes, int maxNesting) {
+    }
+
+    private static final List<Scenario> SCENARIOS = List.of(
+            new Scenario("manyInstructions", 10_000, 50L * 1024 * 1024, 400, 6),
+            new Scenario("largeBodies", 8, 24L * 1024 * 1024, 2 * 1024 * 1024, 6),
+            new Scenario("deepNesting", 200, 20L * 1024 * 1024, 400, 200));
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    private PerformanceBudgets(Properties budgets, double timeFactor) {
+        this.budgets = budgets;
+        this.timeFactor = timeFactor;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties budgets = new Properties();
+        try (InputStream in = PerformanceBudgets.class.getResourceAsStream(BUDGETS_FILE)) {
+            if (in == null) {
+                throw new IOException(BUDGETS_FILE + " not found");
+            }
+            budgets.load(in);
+        }
+        PerformanceBudgets runner = new PerformanceBudgets(budgets, Double.parseDouble(System.getProperty("budgets.timeFactor", "1")));
+
+        // A small project first, so the measured runs do not pay for class loading and the first JIT passes
+        runner.roundTrip(new Scenario("warmUp", 500, 2L * 1024 * 1024, 400, 6), false);
+        for (Scenario scenario : SCENARIOS) {
+            if (args.length == 0 || Arrays.asList(args).contains(scenario.name())) {
+                runner.roundTrip(scenario, true);
+            }
+        }
+
+        if (!runner.failures.isEmpty()) {
+            System.err.println(runner.failures.size() + " performance budget checks failed:");
+            runner.failures.forEach(failure -> System.err.println("  " + failure));
+            System.exit(1);
+        }
+        System.out.println("All performance budgets met.");
+    }
+
+    private void roundTrip(Scenario scenario, boolean check) throws Exception {
+        try (SyntheticProject project = SyntheticProject.create(scenario.instructionCount(), scenario.workspaceBytes(),
+                scenario.bodyBytes(), scenario.maxNesting())) {
+            ProjectLayout layout = new ProjectLayout(project.root);
+            ExportOptions options = ExportOptions.DEFAULT;
+
+            // The generated .ai directory is what every export has to produce
+            Path expected = Files.move(project.aiDirectory, project.root.resolve("expected"));
+
+            ExportResult export = measure(scenario, "export", check,
+                    () -> InstructionsExporter.export(layout, new InstructionModel(), options));
+            verify(scenario, "export", export.status() == ExportResult.Status.EXPORTED, export.message());
+            verify(scenario, "export", sameFiles(expected, project.aiDirectory), ".ai differs from the generated files");
+
+            // Import into the same workspace without instructions
+            project.writeWorkspace(project.workspacePath, Map.of());
+            InstructionsImporter importer = new InstructionsImporter(Runnable::run, new InstructionModel(), ImportOptions.DEFAULT);
+            ImportResult imported = measure(scenario, "import", check,
+                    () -> importer.importAll(layout, null, false, TaskProgress.NONE));
+            verify(scenario, "import", imported.status() == ImportResult.Status.IMPORTED, imported.message());
+            verify(scenario, "import", project.instructions.equals(WorkspaceInstructionsReader.readInstructions(project.workspacePath)),
+                    "workspace.xml does not have the exported instructions");
+
+            // Export of the imported workspace into an empty .ai directory has to produce the same files again
+            deleteTree(project.aiDirectory);
+            ExportResult reexport = measure(scenario, "reexport", check,
+                    () -> InstructionsExporter.export(layout, new InstructionModel(), options));
+            verify(scenario, "reexport", reexport.status() == ExportResult.Status.EXPORTED, reexport.message());
+            verify(scenario, "reexport", sameFiles(expected, project.aiDirectory), ".ai differs after the round trip");
+
+            ExportResult unchanged = measure(scenario, "unchangedExport", check,
+                    () -> InstructionsExporter.export(layout, new InstructionModel(), options));
+            verify(scenario, "unchangedExport", unchanged.status() == ExportResult.Status.UP_TO_DATE, unchanged.message());
+        }
+    }
+
+    private <T> T measure(Scenario scenario, String operation, boolean check, Operation<T> body) throws Exception {
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        T result = body.run();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long allocatedMegabytes = (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / (1024 * 1024);
+
+        System.out.printf("%-18s %-16s %7d ms %7d MB allocated%n", scenario.name(), operation, millis, allocatedMegabytes);
+        if (check) {
+            String key = scenario.name() + "." + operation;
+            long maxMillis = Math.round(budget(key + ".millis") * timeFactor);
+            long maxMegabytes = budget(key + ".allocatedMB");
+            if (millis > maxMillis) {
+                failures.add(key + " took " + millis + " ms, budget is " + maxMillis + " ms");
+            }
+            if (allocatedMegabytes > maxMegabytes) {
+                failures.add(key + " allocated " + allocatedMegabytes + " MB, budget is " + maxMegabytes + " MB");
+            }
+        }
+        return result;
+    }
+
+    private long budget(String key) {
+        String value = budgets.getProperty(key);
+        if (value == null) {
+            throw new IllegalStateException("No budget " + key + " in " + BUDGETS_FILE);
+        }
+        return Long.parseLong(value.trim());
+    }
+
+    private void verify(Scenario scenario, String operation, boolean condition, String message) {
+        if (!condition) {
+            failures.add(scenario.name() + "." + operation + ": " + message);
+        }
+    }
+
+    private static boolean sameFiles(Path expected, Path actual) throws IOException {
+        Map<Path, Path> expectedFiles = listFiles(expected);
+        Map<Path, Path> actualFiles = listFiles(actual);
+        if (!expectedFiles.keySet().equals(actualFiles.keySet())) {
+            return false;
+        }
+        for (Map.Entry<Path, Path> file : expectedFiles.entrySet()) {
+            if (Files.mismatch(file.getValue(), actualFiles.get(file.getKey())) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<Path, Path> listFiles(Path directory) throws IOException {
+        Map<Path, Path> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.filter(Files::isRegularFile).forEach(file -> files.put(directory.relativize(file), file));
+        }
+        return files;
+    }
+
+    private static void deleteTree(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
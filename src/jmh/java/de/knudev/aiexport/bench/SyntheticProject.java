@@ -0,0 +1,169 @@
+package de.knudev.aiexport.bench;
+
+import de.knudev.aiexport.instructions.InstructionFileWriter;
+import de.knudev.aiexport.workspace.ComponentXmlWriter;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generated project with a workspace.xml of a given size and a matching .ai directory.
+ * The workspace is padded with unrelated, nested components around the instructions component,
+ * like the workspace.xml of a large real project.
+ */
+final class SyntheticProject implements AutoCloseable {
+    private static final String WORDS = "Keep commit messages short. Use bullet points for multiple changes. "
+            + "Prefix the message by [BUGFIX] if it looks like a bugfix or else by [TASK]. "
+            + "Prefer <code> blocks & \"quoted\" names.\n";
+    private static final long PADDING_SEED = 4242;
+
+    final Path root;
+    final Path workspacePath;
+    final Path aiDirectory;
+    final Map<String, String> instructions;
+    private final long paddingBytes;
+    private final int maxNesting;
+
+    private SyntheticProject(Path root, Map<String, String> instructions, long paddingBytes, int maxNesting) {
+        this.root = root;
+        this.workspacePath = root.resolve(".idea").resolve("workspace.xml");
+        this.aiDirectory = root.resolve(".ai");
+        this.instructions = instructions;
+        this.paddingBytes = paddingBytes;
+        this.maxNesting = maxNesting;
+    }
+
+    /**
+     * @param instructionCount Number of instructions in workspace.xml and .ai
+     * @param workspaceBytes   Approximate size of workspace.xml, at least the size of the instructions
+     * @param bodyBytes        Approximate size of every instruction body
+     */
+    static SyntheticProject create(int instructionCount, long workspaceBytes, int bodyBytes) throws IOException {
+        return create(instructionCount, workspaceBytes, bodyBytes, 6);
+    }
+
+    /**
+     * @param instructionCount Number of instructions in workspace.xml and .ai
+     * @param workspaceBytes   Approximate size of workspace.xml, at least the size of the instructions
+     * @param bodyBytes        Approximate size of every instruction body
+     * @param maxNesting       Maximum nesting depth of the unrelated components
+     */
+    static SyntheticProject create(int instructionCount, long workspaceBytes, int bodyBytes, int maxNesting) throws IOException {
+        Random random = new Random(42);
+        Map<String, String> instructions = new LinkedHashMap<>();
+        for (int i = 0; i < instructionCount; i++) {
+            instructions.put("AIAssistant.Generated.Action" + i, body(random, bodyBytes));
+        }
+
+        long paddingBytes = Math.max(0, workspaceBytes - componentXml(instructions).length());
+        SyntheticProject project = new SyntheticProject(Files.createTempDirectory("ai-export-bench"), instructions,
+                paddingBytes, maxNesting);
+        Files.createDirectories(project.workspacePath.getParent());
+        Files.createDirectories(project.aiDirectory);
+        project.writeWorkspace(project.workspacePath, instructions);
+        InstructionFileWriter.sync(project.aiDirectory, instructions, false);
+        return project;
+    }
+
+    /**
+     * Parses sizes like "50KB", "5MB" or "1024"
+     */
+    static long parseSize(String size) {
+        String value = size.trim().toUpperCase();
+        if (value.endsWith("KB")) {
+            return Long.parseLong(value.substring(0, value.length() - 2)) * 1024;
+        }
+        if (value.endsWith("MB")) {
+            return Long.parseLong(value.substring(0, value.length() - 2)) * 1024 * 1024;
+        }
+        return Long.parseLong(value);
+    }
+
+    private static String body(Random random, int bodyBytes) {
+        StringBuilder builder = new StringBuilder(bodyBytes + WORDS.length());
+        while (builder.length() < bodyBytes) {
+            builder.append(WORDS, random.nextInt(20), WORDS.length());
+        }
+        return builder.toString().trim();
+    }
+
+    /**
+     * Writes a workspace.xml with the project's unrelated components around the given instructions.
+     * The unrelated components are the same for every call, so workspaces only differ in their instructions.
+     *
+     * @param target       The file to write
+     * @param instructions Instructions of the instructions component, which is empty if there are none
+     */
+    void writeWorkspace(Path target, Map<String, String> instructions) throws IOException {
+        Random random = new Random(PADDING_SEED);
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<project version=\"4\">\n");
+            // Half of the unrelated components before and half after the instructions
+            long written = writePadding(writer, paddingBytes / 2, 0, random);
+            writer.write(componentXml(instructions).toString());
+            writePadding(writer, paddingBytes - written, 1_000_000, random);
+            writer.write("</project>\n");
+        }
+    }
+
+    private static StringBuilder componentXml(Map<String, String> instructions) {
+        StringBuilder component = new StringBuilder();
+        component.append("  <component name=\"").append(WorkspaceInstructionsReader.COMPONENT_NAME).append("\">\n");
+        component.append("    <option name=\"instructions\">\n      <map>\n");
+        for (Map.Entry<String, String> entry : instructions.entrySet()) {
+            component.append("        <entry key=\"").append(entry.getKey()).append("\">\n");
+            component.append("          <value>\n            <AIAssistantStoredInstruction>\n");
+            component.append("              <option name=\"actionId\" value=\"").append(entry.getKey()).append("\" />\n");
+            component.append("              <option name=\"content\" value=\"");
+            ComponentXmlWriter.escapeAttribute(entry.getValue(), component);
+            component.append("\" />\n            </AIAssistantStoredInstruction>\n          </value>\n        </entry>\n");
+        }
+        component.append("      </map>\n    </option>\n  </component>\n");
+        return component;
+    }
+
+    private long writePadding(BufferedWriter writer, long bytes, int firstId, Random random) throws IOException {
+        long written = 0;
+        int id = firstId;
+        while (written < bytes) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("  <component name=\"Unrelated").append(id++).append("\">\n");
+            String indent = "    ";
+            int depth = 1 + random.nextInt(maxNesting);
+            for (int level = 0; level < depth; level++) {
+                builder.append(indent).append("<option name=\"level").append(level).append("\">\n");
+                indent += "  ";
+            }
+            for (int i = 0; i < 8; i++) {
+                builder.append(indent).append("<entry key=\"key").append(i).append("\" value=\"")
+                        .append(Long.toHexString(random.nextLong())).append("\" />\n");
+            }
+            for (int level = depth - 1; level >= 0; level--) {
+                indent = indent.substring(2);
+                builder.append(indent).append("</option>\n");
+            }
+            builder.append("  </component>\n");
+            writer.write(builder.toString());
+            written += builder.length();
+        }
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -3,35 +3,22 @@ package de.knudev.aiexport.action;
 import com.intellij.openapi.actionSystem.ActionUpdateThread;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
-import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.ui.Messages;
-import com.intellij.openapi.vfs.LocalFileSystem;
-import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.pom.Navigatable;
+import de.knudev.aiexport.core.OperationReport;
+import de.knudev.aiexport.service.InstructionsImportService;
+import de.knudev.aiexport.toolwindow.ResultsView;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 import javax.swing.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CancellationException;
 
 /**
- * Action class to demonstrate how to interact with the IntelliJ Platform.
- * The action exports rules from the workspace.xml file into a usable string.
+ * Action class to export AI Assistant custom instructions from workspace.xml into the project's .ai directory.
+ * The export runs as a background job of {@link InstructionsImportService}, and its result is shown in the
+ * "AI Settings Export" tool window.
+ * This is the complementary action to ImportSettings.
  */
 public class ExportSettings extends AnAction {
     @Override
@@ -68,131 +55,17 @@ public class ExportSettings extends AnAction {
             return;
         }
 
-        String workspaceRules = exportWorkspaceRules(currentProject);
-
-        if (workspaceRules != null && !workspaceRules.isEmpty()) {
-            // Show the exported rules in a message dialog
-            Messages.showMessageDialog(
-                    currentProject,
-                    "Exported Rules:\n\n" + workspaceRules,
-                    "Workspace Rules Export",
-                    Messages.getInformationIcon());
-
-            // Here you could also save the rules to a file, copy to clipboard, etc.
-        } else {
-            Messages.showMessageDialog(
-                    currentProject,
-                    "No workspace.xml file found or no rules could be extracted.",
-                    "Workspace Rules Export",
-                    Messages.getWarningIcon());
-        }
-    }
-
-    /**
-     * Exports rules from workspace.xml file to a string
-     *
-     * @param project The current project
-     * @return String containing the exported rules, or null if an error occurred
-     */
-    @Nullable
-    private String exportWorkspaceRules(Project project) {
-        try {
-            // Get the path to the workspace.xml file
-            String projectPath = project.getBasePath();
-            if (projectPath == null) {
-                return null;
-            }
-
-            Path workspacePath = Paths.get(projectPath, ".idea", "workspace.xml");
-            Path aiDirectory = Paths.get(projectPath, ".ai");
-
-            if (!Files.exists(workspacePath)) {
-                return null;
-            }
-
-            // Create .ai directory if it doesn't exist
-            if (!Files.exists(aiDirectory)) {
-                Files.createDirectory(aiDirectory);
-            }
-
-            // Parse the XML file
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(workspacePath.toFile());
-            document.getDocumentElement().normalize();
-
-            // Extract rules
-            StringBuilder summaryBuilder = new StringBuilder();
-            List<String> exportedFiles = new ArrayList<>();
-
-            // Look specifically for AIAssistantCustomInstructionsStorage component
-            NodeList componentList = document.getElementsByTagName("component");
-            for (int i = 0; i < componentList.getLength(); i++) {
-                Node componentNode = componentList.item(i);
-                if (componentNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element componentElement = (Element) componentNode;
-                    String componentName = componentElement.getAttribute("name");
-
-                    // Target the AIAssistantCustomInstructionsStorage component
-                    if (componentName.equals("AIAssistantCustomInstructionsStorage")) {
-                        // Find the instructions option
-                        NodeList optionNodes = componentElement.getElementsByTagName("option");
-                        for (int j = 0; j < optionNodes.getLength(); j++) {
-                            Element optionElement = (Element) optionNodes.item(j);
-                            if (optionElement.getAttribute("name").equals("instructions")) {
-                                // Process the map entries
-                                NodeList mapNodes = optionElement.getElementsByTagName("map");
-                                if (mapNodes.getLength() > 0) {
-                                    Element mapElement = (Element) mapNodes.item(0);
-                                    NodeList entryNodes = mapElement.getElementsByTagName("entry");
-
-                                    for (int k = 0; k < entryNodes.getLength(); k++) {
-                                        Element entryElement = (Element) entryNodes.item(k);
-                                        String actionId = entryElement.getAttribute("key");
-
-                                        // Extract the content
-                                        NodeList valueNodes = entryElement.getElementsByTagName("value");
-                                        if (valueNodes.getLength() > 0) {
-                                            Element valueElement = (Element) valueNodes.item(0);
-                                            NodeList instructionNodes = valueElement.getElementsByTagName("AIAssistantStoredInstruction");
-                                            if (instructionNodes.getLength() > 0) {
-                                                Element instructionElement = (Element) instructionNodes.item(0);
-
-                                                // Get the content option
-                                                NodeList contentOptionNodes = instructionElement.getElementsByTagName("option");
-                                                for (int m = 0; m < contentOptionNodes.getLength(); m++) {
-                                                    Element contentOption = (Element) contentOptionNodes.item(m);
-                                                    if (contentOption.getAttribute("name").equals("content")) {
-                                                        String content = contentOption.getAttribute("value");
-
-                                                        // Create markdown file name from actionId
-                                                        String fileName = actionId.replaceAll("[^a-zA-Z0-9-]", "_") + ".md";
-                                                        Path filePath = aiDirectory.resolve(fileName);
-
-                                                        // Write content to file
-                                                        Files.writeString(filePath, "# " + actionId + "\n\n" + content);
-                                                        exportedFiles.add(fileName);
-
-                                                        summaryBuilder.append("Exported: ").append(fileName).append("\n");
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
+        // Runs after imports or exports that are still running, so they never write workspace.xml or .ai concurrently
+        InstructionsImportService.getInstance(currentProject).exportInBackground()
+                .whenComplete((result, error) -> {
+                    if (error instanceof CancellationException) {
+                        return;
                     }
-                }
-            }
-
-            return exportedFiles.isEmpty() ? "No instructions found to export." :
-                    "Successfully exported " + exportedFiles.size() + " files to .ai directory:\n" + summaryBuilder;
-
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            // Log the error or handle it as appropriate
-            return "Error exporting instructions: " + e.getMessage();
-        }
+                    OperationReport report = result != null ? result
+                            : OperationReport.failed("Export", "Failed to export instructions. Check IDE logs for details.");
+                    ApplicationManager.getApplication().invokeLater(
+                            () -> ResultsView.getInstance(currentProject).show(report), currentProject.getDisposed());
+                });
     }
 
     @Override
@@ -0,0 +1,419 @@
+package de.knudev.aiexport.cli;
+
+import de.knudev.aiexport.components.ComponentHandler;
+import de.knudev.aiexport.components.VerbatimComponentHandler;
+import de.knudev.aiexport.core.ComponentState;
+import de.knudev.aiexport.core.ExportOptions;
+import de.knudev.aiexport.core.ExportResult;
+import de.knudev.aiexport.core.ImportOptions;
+import de.knudev.aiexport.core.ImportResult;
+import de.knudev.aiexport.core.InstructionModel;
+import de.knudev.aiexport.core.InstructionsExporter;
+import de.knudev.aiexport.core.InstructionsImporter;
+import de.knudev.aiexport.core.ProjectLayout;
+import de.knudev.aiexport.core.TaskProgress;
+import de.knudev.aiexport.diagnostics.JsonWriter;
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import de.knudev.aiexport.history.SnapshotLog;
+import de.knudev.aiexport.instructions.ContentHash;
+import de.knudev.aiexport.instructions.InstructionFileWriter;
+import de.knudev.aiexport.instructions.NestedAiDirectories;
+import de.knudev.aiexport.upstream.InstructionCache;
+import de.knudev.aiexport.upstream.UpstreamSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless entry point exporting or importing the AI Assistant instructions of many repositories without an IDE.
+ * Repositories are processed in parallel on a work-stealing pool, and a JSON summary is printed to stdout.
+ * <p>
+ * Usage: {@code ai-settings <export|import|restore> [options] <root|glob>...}
+ * <ul>
+ *     <li>{@code --roots-file <file>} reads additional roots or globs from a file, one per line</li>
+ *     <li>{@code --parallelism <n>} number of repositories processed at the same time, defaults to the number of cores</li>
+ *     <li>{@code --manifest-dir <dir>} keeps import manifests in this directory, so unchanged files are not read again</li>
+ *     <li>{@code --skip-unchanged} skips repositories whose manifest shows no change, requires {@code --manifest-dir}</li>
+ *     <li>{@code --prune} deletes .ai files of instructions that no longer exist when exporting</li>
+ *     <li>{@code --bundle} exports all instructions into a single .ai/instructions.bundle</li>
+ *     <li>{@code --dedup} exports every distinct body once into .ai/bodies, indexed by .ai/instructions.index</li>
+ *     <li>{@code --nested} merges the .ai directories of modules below each root over the root's .ai directory</li>
+ *     <li>{@code --component <[file:]name>} also shares the named settings component verbatim, may be repeated</li>
+ *     <li>{@code --upstream <dir>} layers the instructions of a shared directory under each repository's .ai</li>
+ *     <li>{@code --cache-dir <dir>} caches fetched upstream files in this directory, defaults to ~/.cache/ai-settings-export</li>
+ *     <li>{@code --history-dir <dir>} records the instructions of every export and import in a local history</li>
+ *     <li>{@code --at <time>} the point in time {@code restore} goes back to, as ISO instant or local date and time</li>
+ *     <li>{@code --output <file>} writes the summary to a file instead of stdout</li>
+ * </ul>
+ * {@code restore} writes the newest snapshot of each repository's history taken at or before {@code --at} back into
+ * its workspace.xml, and requires {@code --history-dir}.
+ * The exit code is 0 if every repository succeeded, 1 if any failed and 2 for invalid arguments.
+ */
+public final class AiSettingsCli {
+    private static final int EXIT_FAILED = 1;
+    private static final int EXIT_USAGE = 2;
+    // Repositories are already processed in parallel, so files of one repository are read on the worker itself
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+    private static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+
+    private final Command command;
+    private final int parallelism;
+    private final @Nullable Path manifestDirectory;
+    private final boolean skipIfUnchanged;
+    private final boolean nested;
+    private final ExportOptions exportOptions;
+    private final List<ComponentHandler> componentHandlers;
+    private final @Nullable UpstreamSource upstream;
+    private final @Nullable Path historyDirectory;
+    private final @Nullable Instant restoreAt;
+
+    private AiSettingsCli(Command command, int parallelism, @Nullable Path manifestDirectory, boolean skipIfUnchanged,
+                          boolean nested, ExportOptions exportOptions, List<ComponentHandler> componentHandlers,
+                          @Nullable UpstreamSource upstream, @Nullable Path historyDirectory, @Nullable Instant restoreAt) {
+        this.command = command;
+        this.parallelism = parallelism;
+        this.manifestDirectory = manifestDirectory;
+        this.skipIfUnchanged = skipIfUnchanged;
+        this.nested = nested;
+        this.exportOptions = exportOptions;
+        this.componentHandlers = componentHandlers;
+        this.upstream = upstream;
+        this.historyDirectory = historyDirectory;
+        this.restoreAt = restoreAt;
+    }
+
+    private enum Command {
+        EXPORT,
+        IMPORT,
+        RESTORE
+    }
+
+    /**
+     * Result of one repository, in the shape it is written to the summary
+     */
+    private record RepositoryResult(Path root, String status, String message, long durationNanos,
+                                    @Nullable ExportResult export, @Nullable ImportResult imported,
+                                    OperationMetrics.Snapshot metrics) {
+        boolean isFailed() {
+            return "FAILED".equals(status);
+        }
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the tool without exiting the JVM
+     *
+     * @return The exit code
+     */
+    public static int run(@NotNull String[] args, @NotNull PrintStream out, @NotNull PrintStream err) {
+        if (args.length == 0) {
+            printUsage(err);
+            return EXIT_USAGE;
+        }
+
+        Command command;
+        switch (args[0]) {
+            case "export" -> command = Command.EXPORT;
+            case "import" -> command = Command.IMPORT;
+            case "restore" -> command = Command.RESTORE;
+            default -> {
+                err.println("Unknown command: " + args[0]);
+                printUsage(err);
+                return EXIT_USAGE;
+            }
+        }
+
+        List<String> rootArguments = new ArrayList<>();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        Path manifestDirectory = null;
+        boolean skipIfUnchanged = false;
+        boolean nested = false;
+        boolean prune = false;
+        ExportOptions.Format format = ExportOptions.Format.MARKDOWN;
+        List<String> components = new ArrayList<>();
+        Path upstreamDirectory = null;
+        Path cacheDirectory = Paths.get(System.getProperty("user.home"), ".cache", "ai-settings-export");
+        Path output = null;
+        Path historyDirectory = null;
+        Instant restoreAt = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--roots-file" -> rootArguments.addAll(readRootsFile(Paths.get(requireValue(args, ++i))));
+                    case "--parallelism" -> parallelism = Integer.parseInt(requireValue(args, ++i));
+                    case "--manifest-dir" -> manifestDirectory = Paths.get(requireValue(args, ++i));
+                    case "--skip-unchanged" -> skipIfUnchanged = true;
+                    case "--prune" -> prune = true;
+                    case "--bundle" -> format = ExportOptions.Format.BUNDLE;
+                    case "--dedup" -> format = ExportOptions.Format.CONTENT_ADDRESSED;
+                    case "--nested" -> nested = true;
+                    case "--component" -> components.add(requireValue(args, ++i));
+                    case "--upstream" -> upstreamDirectory = Paths.get(requireValue(args, ++i));
+                    case "--cache-dir" -> cacheDirectory = Paths.get(requireValue(args, ++i));
+                    case "--output" -> output = Paths.get(requireValue(args, ++i));
+                    case "--history-dir" -> historyDirectory = Paths.get(requireValue(args, ++i));
+                    case "--at" -> restoreAt = parseTime(requireValue(args, ++i));
+                    default -> {
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        }
+                        rootArguments.add(args[i]);
+                    }
+                }
+            }
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("--parallelism must be at least 1");
+            }
+            if (skipIfUnchanged && manifestDirectory == null) {
+                throw new IllegalArgumentException("--skip-unchanged requires --manifest-dir");
+            }
+            if (command == Command.RESTORE && (historyDirectory == null || restoreAt == null)) {
+                throw new IllegalArgumentException("restore requires --history-dir and --at");
+            }
+            if (rootArguments.isEmpty()) {
+                throw new IllegalArgumentException("No repository roots given");
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            err.println(e.getMessage());
+            printUsage(err);
+            return EXIT_USAGE;
+        }
+
+        try {
+            Set<Path> roots = RepositoryRoots.resolve(rootArguments);
+            List<ComponentHandler> handlers = VerbatimComponentHandler.fromSpecs(components);
+            // One source for all repositories, so upstream is resolved once and not per repository
+            UpstreamSource upstream = upstreamDirectory != null
+                    ? new UpstreamSource(upstreamDirectory, new InstructionCache(cacheDirectory, MAX_CACHE_BYTES))
+                    : null;
+            AiSettingsCli cli = new AiSettingsCli(command, parallelism, manifestDirectory, skipIfUnchanged, nested,
+                    new ExportOptions(prune, format, handlers), handlers, upstream, historyDirectory, restoreAt);
+
+            long start = System.nanoTime();
+            List<RepositoryResult> results = cli.processAll(roots);
+            String summary = cli.summarize(results, System.nanoTime() - start);
+
+            if (output != null) {
+                Files.writeString(output, summary + "\n", StandardCharsets.UTF_8);
+            } else {
+                out.println(summary);
+            }
+            return results.stream().anyMatch(RepositoryResult::isFailed) ? EXIT_FAILED : 0;
+        } catch (IOException e) {
+            err.println("Error: " + e.getMessage());
+            return EXIT_FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Interrupted");
+            return EXIT_FAILED;
+        }
+    }
+
+    private List<RepositoryResult> processAll(Set<Path> roots) throws InterruptedException, IOException {
+        if (manifestDirectory != null) {
+            Files.createDirectories(manifestDirectory);
+        }
+        if (historyDirectory != null) {
+            Files.createDirectories(historyDirectory);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // A parallel stream started inside the pool splits its work across the pool's workers, idle ones steal
+            return pool.submit(() -> roots.parallelStream().map(this::process).toList()).get();
+        } catch (ExecutionException e) {
+            throw new IOException("Processing repositories failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private RepositoryResult process(Path root) {
+        long start = System.nanoTime();
+        try {
+            if (!Files.isDirectory(root)) {
+                return failed(root, "Not a directory", start);
+            }
+            // Without an index of the file system, the modules are found by walking the repository
+            ProjectLayout layout;
+            try {
+                layout = nested ? new ProjectLayout(root, NestedAiDirectories.scan(root)) : new ProjectLayout(root);
+            } catch (IOException e) {
+                return failed(root, "Could not find the nested .ai directories: " + e.getMessage(), start);
+            }
+            SnapshotLog history;
+            try {
+                history = historyDirectory != null
+                        ? SnapshotLog.open(historyDirectory.resolve(repositoryKey(root) + ".history"))
+                        : null;
+            } catch (IOException e) {
+                return failed(root, "Could not open the history: " + e.getMessage(), start);
+            }
+            OperationMetrics metrics = new OperationMetrics();
+            if (command == Command.EXPORT) {
+                ExportResult result = InstructionsExporter.export(layout, new InstructionModel(), exportOptions, metrics, history);
+                long duration = System.nanoTime() - start;
+                return new RepositoryResult(root, result.status().name(), result.message(), duration, result, null,
+                        metrics.snapshot(duration));
+            }
+            InstructionsImporter importer = new InstructionsImporter(DIRECT_EXECUTOR, new InstructionModel(),
+                    new ImportOptions(ComponentState.NONE, componentHandlers, upstream, history));
+            ImportResult result;
+            if (command == Command.RESTORE) {
+                SnapshotLog.Snapshot snapshot = history.at(restoreAt.toEpochMilli());
+                if (snapshot == null) {
+                    return new RepositoryResult(root, "SKIPPED", "No snapshot taken at or before " + restoreAt,
+                            System.nanoTime() - start, null, null, OperationMetrics.Snapshot.EMPTY);
+                }
+                result = importer.restore(layout, snapshot.id(), getManifestPath(root), TaskProgress.NONE, metrics);
+            } else {
+                result = importer.importAll(layout, getManifestPath(root), skipIfUnchanged, TaskProgress.NONE, metrics);
+            }
+            long duration = System.nanoTime() - start;
+            return new RepositoryResult(root, result.status().name(), result.message(), duration, null, result,
+                    metrics.snapshot(duration));
+        } catch (RuntimeException e) {
+            // One broken repository must not stop the others
+            return failed(root, String.valueOf(e), start);
+        }
+    }
+
+    private static RepositoryResult failed(Path root, String message, long start) {
+        return new RepositoryResult(root, "FAILED", message, System.nanoTime() - start, null, null,
+                OperationMetrics.Snapshot.EMPTY);
+    }
+
+    @Nullable
+    private Path getManifestPath(Path root) {
+        if (manifestDirectory == null) {
+            return null;
+        }
+        return manifestDirectory.resolve(repositoryKey(root) + ".manifest");
+    }
+
+    /**
+     * @return Name of the repository's files in the manifest and history directories
+     */
+    private static String repositoryKey(Path root) {
+        byte[] rootBytes = root.toString().getBytes(StandardCharsets.UTF_8);
+        return ContentHash.sha256(rootBytes, 0, rootBytes.length).substring(0, 16);
+    }
+
+    /**
+     * @param value An ISO instant like 2024-05-01T12:00:00Z, or a local date and time like 2024-05-01T12:00
+     */
+    private static Instant parseTime(String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant();
+            } catch (DateTimeParseException again) {
+                throw new IllegalArgumentException("Invalid time for --at: " + value);
+            }
+        }
+    }
+
+    private String summarize(List<RepositoryResult> results, long durationNanos) {
+        Map<String, Integer> statusCounts = new TreeMap<>();
+        for (RepositoryResult result : results) {
+            statusCounts.merge(result.status(), 1, Integer::sum);
+        }
+
+        JsonWriter json = new JsonWriter().beginObject()
+                .name("command").value(command.name().toLowerCase(Locale.ROOT))
+                .name("repositories").value(results.size())
+                .name("parallelism").value(parallelism)
+                .name("durationMillis").value(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+        json.name("statusCounts").beginObject();
+        statusCounts.forEach((status, count) -> json.name(status).value(count));
+        json.endObject();
+
+        json.name("results").beginArray();
+        for (RepositoryResult result : results) {
+            json.beginObject()
+                    .name("root").value(result.root().toString())
+                    .name("status").value(result.status())
+                    .name("message").value(result.message().strip())
+                    .name("durationMillis").value(TimeUnit.NANOSECONDS.toMillis(result.durationNanos()));
+            if (result.export() != null) {
+                InstructionFileWriter.SyncResult files = result.export().files();
+                writeFileNames(json, "added", files.added());
+                writeFileNames(json, "changed", files.changed());
+                writeFileNames(json, "unchanged", files.unchanged());
+                writeFileNames(json, "removed", files.removed());
+            }
+            if (result.imported() != null) {
+                ImportResult imported = result.imported();
+                json.name("instructions").value(imported.instructionCount())
+                        .name("written").value(imported.writtenCount())
+                        .name("writeMode").value(imported.writeMode() != null ? imported.writeMode().name() : null);
+                writeFileNames(json, "components", imported.components());
+            }
+            json.name("metrics");
+            result.metrics().writeJson(json);
+            json.endObject();
+        }
+        return json.endArray().endObject().toString();
+    }
+
+    private static void writeFileNames(JsonWriter json, String name, List<String> fileNames) {
+        json.name(name).beginArray();
+        fileNames.forEach(json::value);
+        json.endArray();
+    }
+
+    private static String requireValue(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static List<String> readRootsFile(Path file) throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+    }
+
+    private static void printUsage(PrintStream err) {
+        err.println("Usage: ai-settings <export|import|restore> [options] <root|glob>...");
+        err.println("  --roots-file <file>   Read roots or globs from a file, one per line");
+        err.println("  --parallelism <n>     Repositories processed at the same time");
+        err.println("  --manifest-dir <dir>  Keep import manifests in this directory");
+        err.println("  --skip-unchanged      Skip repositories without changes since the last import");
+        err.println("  --prune               Delete .ai files of instructions that no longer exist on export");
+        err.println("  --bundle              Export into a single .ai/instructions.bundle file");
+        err.println("  --dedup               Export every distinct body once into .ai/bodies");
+        err.println("  --nested              Merge the .ai directories of modules over the root's .ai");
+        err.println("  --component <[file:]name>  Also share this .idea settings component, may be repeated");
+        err.println("  --upstream <dir>      Import the instructions of this shared directory under .ai");
+        err.println("  --cache-dir <dir>     Cache fetched upstream files in this directory");
+        err.println("  --history-dir <dir>   Record exported and imported instructions in a local history");
+        err.println("  --at <time>           Restore the history as of this time, e.g. 2024-05-01T12:00");
+        err.println("  --output <file>       Write the JSON summary to a file instead of stdout");
+    }
+}
@@ -0,0 +1,87 @@
+package de.knudev.aiexport.cli;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Resolves the repository roots given on the command line.
+ * An argument is either a directory or a glob such as {@code repos/*} or {@code /work/**}; globs only match directories.
+ */
+final class RepositoryRoots {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private RepositoryRoots() {
+    }
+
+    /**
+     * @param arguments Directories and globs, in the order given
+     * @return Distinct absolute roots in argument order, plain directories are kept even if they do not exist
+     */
+    @NotNull
+    static Set<Path> resolve(@NotNull Collection<String> arguments) throws IOException {
+        Set<Path> roots = new LinkedHashSet<>();
+        for (String argument : arguments) {
+            if (isGlob(argument)) {
+                roots.addAll(expandGlob(argument));
+            } else {
+                roots.add(Paths.get(argument).toAbsolutePath().normalize());
+            }
+        }
+        return roots;
+    }
+
+    private static boolean isGlob(String argument) {
+        for (int i = 0; i < argument.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(argument.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Path> expandGlob(String glob) throws IOException {
+        // Walk from the longest leading part without glob characters, only as deep as the pattern reaches
+        String normalized = glob.replace('\\', '/');
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        String[] segments = normalized.split("/", -1);
+        int baseSegments = 0;
+        while (baseSegments < segments.length && !isGlob(segments[baseSegments])) {
+            baseSegments++;
+        }
+        String basePart = String.join("/", Arrays.copyOfRange(segments, 0, baseSegments));
+        if (basePart.isEmpty() && normalized.startsWith("/")) {
+            basePart = "/";
+        }
+        Path base = Paths.get(basePart).toAbsolutePath().normalize();
+        int maxDepth = normalized.contains("**") ? Integer.MAX_VALUE : segments.length - baseSegments;
+
+        String remainder = String.join("/", Arrays.copyOfRange(segments, baseSegments, segments.length));
+        String basePattern = base.toString().replace('\\', '/');
+        PathMatcher matcher = base.getFileSystem().getPathMatcher(
+                "glob:" + (basePattern.endsWith("/") ? basePattern : basePattern + "/") + remainder);
+
+        Set<Path> roots = new LinkedHashSet<>();
+        if (!Files.isDirectory(base)) {
+            return roots;
+        }
+        try (Stream<Path> paths = Files.walk(base, maxDepth)) {
+            paths.filter(Files::isDirectory)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .forEach(roots::add);
+        }
+        return roots;
+    }
+}
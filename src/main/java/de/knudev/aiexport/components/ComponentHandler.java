@@ -0,0 +1,57 @@
+package de.knudev.aiexport.components;
+
+import de.knudev.aiexport.instructions.InstructionFileWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Exports and imports settings components of the .idea directory next to the instructions.
+ * Handlers only register the components they care about; {@link ComponentSync} locates all registered
+ * components of a settings file in a single scan and hands each handler its components' bytes.
+ * In the IDE, handlers are registered through the {@code de.knudev.ai-export.componentHandler} extension point.
+ */
+public interface ComponentHandler {
+    String WORKSPACE_FILE = "workspace.xml";
+
+    /**
+     * @return Name of the settings file in the .idea directory that holds the components
+     */
+    @NotNull
+    default String getSettingsFile() {
+        return WORKSPACE_FILE;
+    }
+
+    /**
+     * @return Values of the name attribute of the components this handler exports and imports
+     */
+    @NotNull
+    Set<String> getComponentNames();
+
+    /**
+     * Writes a component into the .ai directory, leaving files with unchanged content alone
+     *
+     * @param componentName One of {@link #getComponentNames()}
+     * @param componentXml  The component as stored in the settings file, UTF-8 encoded
+     * @param aiDirectory   Path to the .ai directory
+     * @return The files that were added, changed or left alone, relative to the .ai directory
+     */
+    @NotNull
+    InstructionFileWriter.SyncResult exportComponent(@NotNull String componentName, byte @NotNull [] componentXml,
+                                                     @NotNull Path aiDirectory) throws IOException;
+
+    /**
+     * Builds the component to store from the .ai directory
+     *
+     * @param componentName One of {@link #getComponentNames()}
+     * @param currentXml    The component as stored in the settings file, or null if it does not exist
+     * @param aiDirectory   Path to the .ai directory
+     * @return The serialized component, or null to leave the settings file alone
+     */
+    @Nullable
+    String importComponent(@NotNull String componentName, byte @Nullable [] currentXml, @NotNull Path aiDirectory)
+            throws IOException;
+}
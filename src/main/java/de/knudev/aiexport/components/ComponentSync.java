@@ -0,0 +1,174 @@
+package de.knudev.aiexport.components;
+
+import de.knudev.aiexport.instructions.InstructionFileWriter;
+import de.knudev.aiexport.workspace.ComponentRange;
+import de.knudev.aiexport.workspace.WorkspaceComponentLocator;
+import de.knudev.aiexport.workspace.WorkspaceFileWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dispatches the components of the .idea settings files to their {@link ComponentHandler}s.
+ * Every settings file is scanned once for the components of all handlers, and written at most once on import.
+ */
+public final class ComponentSync {
+
+    private ComponentSync() {
+    }
+
+    /**
+     * @param handlers The handlers
+     * @return The handlers grouped by settings file, in the order they were given
+     */
+    @NotNull
+    public static Map<String, List<ComponentHandler>> bySettingsFile(@NotNull Collection<? extends ComponentHandler> handlers) {
+        Map<String, List<ComponentHandler>> handlersByFile = new LinkedHashMap<>();
+        for (ComponentHandler handler : handlers) {
+            handlersByFile.computeIfAbsent(handler.getSettingsFile(), file -> new ArrayList<>()).add(handler);
+        }
+        return handlersByFile;
+    }
+
+    /**
+     * @param handlers Handlers of one settings file
+     * @return All component names the handlers registered for
+     */
+    @NotNull
+    public static Set<String> componentNames(@NotNull Collection<? extends ComponentHandler> handlers) {
+        Set<String> names = new LinkedHashSet<>();
+        for (ComponentHandler handler : handlers) {
+            names.addAll(handler.getComponentNames());
+        }
+        return names;
+    }
+
+    /**
+     * Exports the components of all handlers, scanning every settings file once
+     *
+     * @param ideaDirectory Path to the .idea directory
+     * @param aiDirectory   Path to the .ai directory
+     * @param handlers      The handlers to export with
+     * @return The files that were added, changed or left alone
+     */
+    @NotNull
+    public static InstructionFileWriter.SyncResult exportAll(@NotNull Path ideaDirectory, @NotNull Path aiDirectory,
+                                                             @NotNull Collection<? extends ComponentHandler> handlers)
+            throws IOException {
+        InstructionFileWriter.SyncResult result = empty();
+        for (Map.Entry<String, List<ComponentHandler>> file : bySettingsFile(handlers).entrySet()) {
+            Path settingsFile = ideaDirectory.resolve(file.getKey());
+            if (Files.isRegularFile(settingsFile)) {
+                Map<String, ComponentRange> ranges = WorkspaceComponentLocator.locateAll(settingsFile, componentNames(file.getValue()));
+                result = merge(result, export(settingsFile, ranges, file.getValue(), aiDirectory));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Exports the components of a settings file that was already scanned, e.g. together with the instructions
+     *
+     * @param settingsFile Path to the settings file
+     * @param ranges       Ranges of the components, from a single {@link WorkspaceComponentLocator#locateAll} scan
+     * @param handlers     Handlers of this settings file
+     * @param aiDirectory  Path to the .ai directory
+     * @return The files that were added, changed or left alone
+     */
+    @NotNull
+    public static InstructionFileWriter.SyncResult export(@NotNull Path settingsFile, @NotNull Map<String, ComponentRange> ranges,
+                                                          @NotNull Collection<? extends ComponentHandler> handlers,
+                                                          @NotNull Path aiDirectory) throws IOException {
+        InstructionFileWriter.SyncResult result = empty();
+        for (ComponentHandler handler : handlers) {
+            for (String componentName : handler.getComponentNames()) {
+                ComponentRange range = ranges.get(componentName);
+                // Components the project does not have are not exported, existing exports are kept
+                if (range != null && range.exists()) {
+                    byte[] componentXml = WorkspaceFileWriter.readRange(settingsFile, range);
+                    result = merge(result, handler.exportComponent(componentName, componentXml, aiDirectory));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Imports the components of all handlers. Every settings file is scanned once, and rewritten once
+     * with all of its changed components.
+     *
+     * @param ideaDirectory Path to the .idea directory
+     * @param aiDirectory   Path to the .ai directory
+     * @param handlers      The handlers to import with
+     * @return Names of the components that were written
+     */
+    @NotNull
+    public static List<String> importAll(@NotNull Path ideaDirectory, @NotNull Path aiDirectory,
+                                         @NotNull Collection<? extends ComponentHandler> handlers) throws IOException {
+        List<String> imported = new ArrayList<>();
+        for (Map.Entry<String, List<ComponentHandler>> file : bySettingsFile(handlers).entrySet()) {
+            Path settingsFile = ideaDirectory.resolve(file.getKey());
+            if (!Files.isRegularFile(settingsFile)) {
+                continue;
+            }
+
+            Map<String, ComponentRange> ranges = WorkspaceComponentLocator.locateAll(settingsFile, componentNames(file.getValue()));
+            List<WorkspaceFileWriter.Replacement> replacements = new ArrayList<>();
+            for (ComponentHandler handler : file.getValue()) {
+                for (String componentName : handler.getComponentNames()) {
+                    ComponentRange range = ranges.get(componentName);
+                    if (range == null) {
+                        // No closing root tag, nothing can be spliced into this file
+                        continue;
+                    }
+                    byte[] currentXml = range.exists() ? WorkspaceFileWriter.readRange(settingsFile, range) : null;
+                    String component = handler.importComponent(componentName, currentXml, aiDirectory);
+                    if (component != null) {
+                        replacements.add(new WorkspaceFileWriter.Replacement(range, component));
+                        imported.add(componentName);
+                    }
+                }
+            }
+
+            if (!replacements.isEmpty()) {
+                WorkspaceFileWriter.replaceRanges(settingsFile, replacements);
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * @return Both results combined, in order
+     */
+    @NotNull
+    public static InstructionFileWriter.SyncResult merge(@NotNull InstructionFileWriter.SyncResult first,
+                                                         @NotNull InstructionFileWriter.SyncResult second) {
+        return new InstructionFileWriter.SyncResult(concat(first.added(), second.added()), concat(first.changed(), second.changed()),
+                concat(first.unchanged(), second.unchanged()), concat(first.removed(), second.removed()));
+    }
+
+    private static InstructionFileWriter.SyncResult empty() {
+        return new InstructionFileWriter.SyncResult(List.of(), List.of(), List.of(), List.of());
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        if (first.isEmpty()) {
+            return second;
+        }
+        if (second.isEmpty()) {
+            return first;
+        }
+        List<String> combined = new ArrayList<>(first);
+        combined.addAll(second);
+        return combined;
+    }
+}
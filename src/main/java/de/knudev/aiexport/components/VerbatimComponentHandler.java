@@ -0,0 +1,153 @@
+package de.knudev.aiexport.components;
+
+import de.knudev.aiexport.instructions.InstructionFileWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shares components as they are, one .ai/components/&lt;name&gt;.xml file per component.
+ * Used for components that need no conversion, e.g. the ones configured in the settings or on the command line.
+ */
+public final class VerbatimComponentHandler implements ComponentHandler {
+    public static final String DIRECTORY = "components";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final String settingsFile;
+    private final Set<String> componentNames;
+
+    /**
+     * @param settingsFile   Name of the settings file in the .idea directory
+     * @param componentNames Names of the components to share
+     */
+    public VerbatimComponentHandler(@NotNull String settingsFile, @NotNull Set<String> componentNames) {
+        this.settingsFile = settingsFile;
+        this.componentNames = Set.copyOf(componentNames);
+    }
+
+    /**
+     * Creates handlers for component specifications of the form {@code [settingsFile:]componentName},
+     * components without settings file are taken from workspace.xml
+     *
+     * @param specs The component specifications
+     * @return One handler per settings file
+     */
+    @NotNull
+    public static List<ComponentHandler> fromSpecs(@NotNull Collection<String> specs) {
+        Map<String, Set<String>> namesByFile = new LinkedHashMap<>();
+        for (String spec : specs) {
+            String trimmed = spec.strip();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.indexOf(':');
+            String file = separator > 0 ? trimmed.substring(0, separator).strip() : WORKSPACE_FILE;
+            String name = trimmed.substring(separator + 1).strip();
+            if (!name.isEmpty()) {
+                namesByFile.computeIfAbsent(file, key -> new LinkedHashSet<>()).add(name);
+            }
+        }
+
+        List<ComponentHandler> handlers = new ArrayList<>(namesByFile.size());
+        namesByFile.forEach((file, names) -> handlers.add(new VerbatimComponentHandler(file, names)));
+        return handlers;
+    }
+
+    @Override
+    public @NotNull String getSettingsFile() {
+        return settingsFile;
+    }
+
+    @Override
+    public @NotNull Set<String> getComponentNames() {
+        return componentNames;
+    }
+
+    @Override
+    public @NotNull InstructionFileWriter.SyncResult exportComponent(@NotNull String componentName, byte @NotNull [] componentXml,
+                                                                     @NotNull Path aiDirectory) throws IOException {
+        Path directory = aiDirectory.resolve(DIRECTORY);
+        Files.createDirectories(directory);
+
+        List<String> file = List.of(DIRECTORY + "/" + fileNameFor(componentName));
+        return switch (InstructionFileWriter.writeFile(directory.resolve(fileNameFor(componentName)), componentXml)) {
+            case ADDED -> new InstructionFileWriter.SyncResult(file, List.of(), List.of(), List.of());
+            case CHANGED -> new InstructionFileWriter.SyncResult(List.of(), file, List.of(), List.of());
+            case UNCHANGED -> new InstructionFileWriter.SyncResult(List.of(), List.of(), file, List.of());
+        };
+    }
+
+    @Override
+    public @Nullable String importComponent(@NotNull String componentName, byte @Nullable [] currentXml,
+                                            @NotNull Path aiDirectory) throws IOException {
+        Path file = aiDirectory.resolve(DIRECTORY).resolve(fileNameFor(componentName));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        byte[] exported = Files.readAllBytes(file);
+        if (Arrays.equals(exported, currentXml)) {
+            return null;
+        }
+        // A broken file must never be spliced into the settings file
+        if (!isComponent(exported, componentName)) {
+            throw new IOException(file + " is not a well-formed " + componentName + " component");
+        }
+        return new String(exported, StandardCharsets.UTF_8).strip();
+    }
+
+    /**
+     * @param componentName Name of the component
+     * @return Name of the file in .ai/components the component is exported to
+     */
+    @NotNull
+    public static String fileNameFor(@NotNull String componentName) {
+        return componentName.replaceAll("[^a-zA-Z0-9.-]", "_") + ".xml";
+    }
+
+    private static boolean isComponent(byte[] xml, String componentName) {
+        try {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(xml));
+            try {
+                boolean rootSeen = false;
+                boolean matches = false;
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && !rootSeen) {
+                        rootSeen = true;
+                        matches = "component".equals(reader.getLocalName())
+                                && componentName.equals(reader.getAttributeValue(null, "name"));
+                    }
+                }
+                return matches;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            return false;
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
@@ -0,0 +1,141 @@
+package de.knudev.aiexport.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Runs jobs touching the same files one after another, merging requests that arrive while they wait.
+ * <p>
+ * A submitted job is merged into the last waiting job if the {@link Merger} allows it, so a burst of requests
+ * ends in a single run and all callers get the same future. Only the last waiting job is considered, so jobs
+ * of different kinds always run in the order they were requested. A running job is never joined, because it
+ * may already have read the state the new request is about.
+ *
+ * @param <J> The job description
+ * @param <R> Result of a job
+ */
+public final class CoalescingJobQueue<J, R> {
+    private final Function<J, CompletableFuture<R>> launcher;
+    private final Merger<J> merger;
+
+    // Guarded by this
+    private final Deque<Waiting<J, R>> waiting = new ArrayDeque<>();
+    private boolean running;
+    private boolean closed;
+
+    /**
+     * Combines two requests into one job
+     */
+    @FunctionalInterface
+    public interface Merger<J> {
+        /**
+         * @param waiting  Job that has not started yet
+         * @param incoming Newly submitted job
+         * @return A job doing the work of both, or null if they have to run separately
+         */
+        @Nullable
+        J merge(@NotNull J waiting, @NotNull J incoming);
+    }
+
+    private static final class Waiting<J, R> {
+        private J job;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private Waiting(J job) {
+            this.job = job;
+        }
+    }
+
+    /**
+     * @param launcher Starts a job, the returned future completes when the job is finished
+     * @param merger   Decides which requests can share a run
+     */
+    public CoalescingJobQueue(@NotNull Function<J, CompletableFuture<R>> launcher, @NotNull Merger<J> merger) {
+        this.launcher = launcher;
+        this.merger = merger;
+    }
+
+    /**
+     * Queues a job, or merges it into the last waiting one
+     *
+     * @param job The job to run
+     * @return Future completed with the result of the run doing the job, cancelled if the queue was closed first
+     */
+    @NotNull
+    public CompletableFuture<R> submit(@NotNull J job) {
+        Waiting<J, R> next;
+        CompletableFuture<R> future;
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new CancellationException("Job queue is closed"));
+            }
+            Waiting<J, R> last = waiting.peekLast();
+            J merged = last != null ? merger.merge(last.job, job) : null;
+            if (merged != null) {
+                last.job = merged;
+                return last.future;
+            }
+
+            Waiting<J, R> queued = new Waiting<>(job);
+            waiting.addLast(queued);
+            future = queued.future;
+            next = running ? null : takeNext();
+        }
+        if (next != null) {
+            start(next);
+        }
+        return future;
+    }
+
+    /**
+     * Cancels all waiting jobs and rejects new ones. A running job is not interrupted.
+     */
+    public void close() {
+        List<Waiting<J, R>> cancelled;
+        synchronized (this) {
+            closed = true;
+            cancelled = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        cancelled.forEach(job -> job.future.cancel(false));
+    }
+
+    // Called with the lock held
+    @Nullable
+    private Waiting<J, R> takeNext() {
+        Waiting<J, R> next = closed ? null : waiting.pollFirst();
+        running = next != null;
+        return next;
+    }
+
+    private void start(Waiting<J, R> next) {
+        CompletableFuture<R> run;
+        try {
+            run = launcher.apply(next.job);
+        } catch (RuntimeException e) {
+            run = CompletableFuture.failedFuture(e);
+        }
+        run.whenComplete((result, error) -> {
+            if (error != null) {
+                next.future.completeExceptionally(error);
+            } else {
+                next.future.complete(result);
+            }
+            Waiting<J, R> following;
+            synchronized (this) {
+                following = takeNext();
+            }
+            if (following != null) {
+                start(following);
+            }
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package de.knudev.aiexport.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The live state of the instructions component, held by whoever owns workspace.xml.
+ * Inside the IDE this is the AI Assistant's settings component; writing it directly means the IDE
+ * cannot overwrite the import with its older in-memory state on the next save.
+ */
+public interface ComponentState {
+    /**
+     * No live state, workspace.xml on disk is the only source
+     */
+    ComponentState NONE = new ComponentState() {
+        @Override
+        public @Nullable String read() {
+            return null;
+        }
+
+        @Override
+        public boolean write(@NotNull String componentXml) {
+            return false;
+        }
+    };
+
+    /**
+     * @return The component serialized as in workspace.xml, or null if the state is not available
+     */
+    @Nullable
+    String read();
+
+    /**
+     * Replaces the state with the given serialized component
+     *
+     * @param componentXml The component as returned by {@link #read()}, with updated instructions
+     * @return false if the state could not be replaced and workspace.xml has to be written instead
+     */
+    boolean write(@NotNull String componentXml);
+}
@@ -0,0 +1,40 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.components.ComponentHandler;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * How {@link InstructionsExporter} writes the .ai directory
+ *
+ * @param prune      Delete instruction files of instructions that are no longer in workspace.xml.
+ *                   Nothing is pruned if workspace.xml has no instructions at all
+ * @param format     Layout of the exported instructions
+ * @param components Handlers of further settings components to export next to the instructions
+ */
+public record ExportOptions(boolean prune, @NotNull Format format, @NotNull List<ComponentHandler> components) {
+    public static final ExportOptions DEFAULT = new ExportOptions(false, Format.MARKDOWN);
+
+    /**
+     * Options that export only the instructions
+     */
+    public ExportOptions(boolean prune, @NotNull Format format) {
+        this(prune, format, List.of());
+    }
+
+    public enum Format {
+        /**
+         * One "# actionId" .md file per instruction
+         */
+        MARKDOWN,
+        /**
+         * All instructions in a single indexed {@link de.knudev.aiexport.instructions.InstructionBundle}
+         */
+        BUNDLE,
+        /**
+         * Every distinct body stored once in .ai/bodies, see {@link de.knudev.aiexport.instructions.ContentAddressedStore}
+         */
+        CONTENT_ADDRESSED
+    }
+}
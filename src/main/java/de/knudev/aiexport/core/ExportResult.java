@@ -0,0 +1,36 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.instructions.InstructionFileWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Outcome of exporting the instructions of one project
+ *
+ * @param status  What the export did
+ * @param message Human readable description of the outcome
+ * @param files   The .md files that were added, changed, left alone and removed
+ */
+public record ExportResult(@NotNull Status status, @NotNull String message, @NotNull InstructionFileWriter.SyncResult files) {
+    private static final InstructionFileWriter.SyncResult NO_FILES =
+            new InstructionFileWriter.SyncResult(List.of(), List.of(), List.of(), List.of());
+
+    public enum Status {
+        EXPORTED,
+        /**
+         * All .md files already had the exported content
+         */
+        UP_TO_DATE,
+        NOTHING_TO_EXPORT,
+        /**
+         * The project has no workspace.xml
+         */
+        SKIPPED,
+        FAILED
+    }
+
+    static ExportResult of(Status status, String message) {
+        return new ExportResult(status, message, NO_FILES);
+    }
+}
@@ -0,0 +1,26 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.components.ComponentHandler;
+import de.knudev.aiexport.history.SnapshotLog;
+import de.knudev.aiexport.upstream.UpstreamSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * What {@link InstructionsImporter} imports besides the project's .ai directory, and where it writes to
+ *
+ * @param componentState    Live state of the instructions component, written instead of workspace.xml when available
+ * @param componentHandlers Handlers of further settings components to import next to the instructions
+ * @param upstream          Shared instructions layered under the project's .ai directory, or null
+ * @param history           History recording the instructions before and after every import, or null
+ */
+public record ImportOptions(@NotNull ComponentState componentState, @NotNull List<ComponentHandler> componentHandlers,
+                            @Nullable UpstreamSource upstream, @Nullable SnapshotLog history) {
+    public static final ImportOptions DEFAULT = new ImportOptions(ComponentState.NONE, List.of(), null, null);
+
+    public ImportOptions {
+        componentHandlers = List.copyOf(componentHandlers);
+    }
+}
@@ -0,0 +1,48 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.components.ComponentHandler;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Outcome of importing the instructions of one project
+ *
+ * @param status           What the import did
+ * @param message          Human readable description of the outcome
+ * @param instructionCount Number of distinct instructions found, counting every action ID once
+ * @param writtenCount     Number of instructions written to workspace.xml
+ * @param writeMode        How the instructions were written, or null if nothing was written
+ * @param components       Names of further settings components that were written, see {@link ComponentHandler}
+ * @param entries          The instruction files whose instructions were written, and the written components
+ */
+public record ImportResult(@NotNull Status status, @NotNull String message, int instructionCount, int writtenCount,
+                           @Nullable WorkspaceInstructionsWriter.WriteMode writeMode, @NotNull List<String> components,
+                           @NotNull List<ResultEntry> entries) {
+
+    public enum Status {
+        IMPORTED,
+        UP_TO_DATE,
+        NOTHING_TO_IMPORT,
+        /**
+         * The project has no workspace.xml or no .ai directory
+         */
+        SKIPPED,
+        FAILED
+    }
+
+    /**
+     * @return true if workspace.xml was changed on disk and has to be reloaded by whoever holds it.
+     * Components of other settings files are reported by {@link #components()}
+     */
+    public boolean isWorkspaceWritten() {
+        return writeMode == WorkspaceInstructionsWriter.WriteMode.IN_PLACE
+                || writeMode == WorkspaceInstructionsWriter.WriteMode.FULL_REWRITE;
+    }
+
+    static ImportResult of(Status status, String message) {
+        return new ImportResult(status, message, 0, 0, null, List.of(), List.of());
+    }
+}
@@ -0,0 +1,304 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import de.knudev.aiexport.instructions.ContentHash;
+import de.knudev.aiexport.instructions.FragmentExpander;
+import de.knudev.aiexport.instructions.InstructionFile;
+import de.knudev.aiexport.instructions.InstructionFileLoader;
+import de.knudev.aiexport.workspace.ComponentRange;
+import de.knudev.aiexport.workspace.WorkspaceComponentLocator;
+import de.knudev.aiexport.workspace.WorkspaceFileWriter;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parsed instructions of one project, kept in memory between exports and imports.
+ * <p>
+ * Every lookup is validated against the file on disk, so the model never serves stale content even if
+ * an invalidation is missed: .ai files by size and modification time, workspace.xml by size and modification
+ * time and, when those changed, by the hash of the instructions component. The IDE saves workspace.xml for
+ * many unrelated reasons, so the component is only parsed again if its bytes actually changed.
+ * The files of every nested .ai directory are kept as one layer, served as a whole while none of its files changed.
+ */
+public final class InstructionModel implements InstructionFileLoader.Cache {
+    private final ConcurrentHashMap<Path, InstructionFile> files = new ConcurrentHashMap<>();
+    private final AtomicLong filesSize = new AtomicLong();
+    private final ConcurrentHashMap<Path, ModuleLayer> modules = new ConcurrentHashMap<>();
+    private final AtomicLong modulesSize = new AtomicLong();
+    private final FragmentExpander fragments = new FragmentExpander();
+    private volatile @Nullable WorkspaceState workspace;
+
+    /**
+     * Instructions of workspace.xml and the file state they were read from
+     */
+    private record WorkspaceState(Path path, long size, long lastModified, @Nullable String componentHash,
+                                  Map<String, String> instructions, long estimatedSize) {
+    }
+
+    /**
+     * Reads the instructions stored in workspace.xml, from memory if the instructions component did not change
+     *
+     * @param workspacePath Path to the workspace.xml file
+     * @return Unmodifiable map of action IDs to instruction content, in document order
+     */
+    @NotNull
+    public Map<String, String> readWorkspaceInstructions(@NotNull Path workspacePath) throws IOException, XMLStreamException {
+        return readWorkspaceInstructions(workspacePath, new OperationMetrics());
+    }
+
+    /**
+     * Reads the instructions stored in workspace.xml, counting the bytes read from it
+     *
+     * @param workspacePath Path to the workspace.xml file
+     * @param metrics       Receives the bytes read, none if the instructions are served from memory
+     * @return Unmodifiable map of action IDs to instruction content, in document order
+     */
+    @NotNull
+    public Map<String, String> readWorkspaceInstructions(@NotNull Path workspacePath, @NotNull OperationMetrics metrics)
+            throws IOException, XMLStreamException {
+        return readWorkspaceInstructions(workspacePath,
+                () -> WorkspaceComponentLocator.locate(workspacePath, WorkspaceInstructionsReader.COMPONENT_NAME), metrics);
+    }
+
+    /**
+     * Reads the instructions stored in workspace.xml, using component ranges the caller located in its own scan
+     *
+     * @param workspacePath Path to the workspace.xml file
+     * @param ranges        Component ranges from {@link WorkspaceComponentLocator#locateAll}, including the instructions component
+     * @return Unmodifiable map of action IDs to instruction content, in document order
+     */
+    @NotNull
+    public Map<String, String> readWorkspaceInstructions(@NotNull Path workspacePath, @NotNull Map<String, ComponentRange> ranges)
+            throws IOException, XMLStreamException {
+        return readWorkspaceInstructions(workspacePath, ranges, new OperationMetrics());
+    }
+
+    /**
+     * Reads the instructions stored in workspace.xml, using component ranges the caller located in its own scan
+     * and counting the bytes read from it
+     *
+     * @param workspacePath Path to the workspace.xml file
+     * @param ranges        Component ranges from {@link WorkspaceComponentLocator#locateAll}, including the instructions component
+     * @param metrics       Receives the bytes read, none if the instructions are served from memory
+     * @return Unmodifiable map of action IDs to instruction content, in document order
+     */
+    @NotNull
+    public Map<String, String> readWorkspaceInstructions(@NotNull Path workspacePath, @NotNull Map<String, ComponentRange> ranges,
+                                                         @NotNull OperationMetrics metrics) throws IOException, XMLStreamException {
+        return readWorkspaceInstructions(workspacePath, () -> ranges.get(WorkspaceInstructionsReader.COMPONENT_NAME), metrics);
+    }
+
+    /**
+     * The loaded files of a nested .ai directory
+     *
+     * @param stamp Name, size and modification time of every file of the directory when it was listed
+     * @param files The files in the order {@link InstructionFileLoader} returned them, with content
+     */
+    record ModuleLayer(List<String> stamp, List<InstructionFile> files) {
+    }
+
+    private interface RangeLookup {
+        @Nullable
+        ComponentRange locate() throws IOException;
+    }
+
+    private Map<String, String> readWorkspaceInstructions(Path workspacePath, RangeLookup rangeLookup, OperationMetrics metrics)
+            throws IOException, XMLStreamException {
+        BasicFileAttributes attributes = Files.readAttributes(workspacePath, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        WorkspaceState cached = workspace;
+        if (cached != null && cached.path().equals(workspacePath) && cached.size() == size && cached.lastModified() == lastModified) {
+            return cached.instructions();
+        }
+
+        ComponentRange range = rangeLookup.locate();
+        Map<String, String> instructions;
+        String componentHash = null;
+        if (range == null) {
+            // Not a settings file the locator understands, the streaming reader reports the actual problem.
+            // It stops after the instructions component, so only what it pulled from the file is counted
+            try (CountingInputStream in = new CountingInputStream(Files.newInputStream(workspacePath))) {
+                try {
+                    instructions = Collections.unmodifiableMap(WorkspaceInstructionsReader.readInstructions(new BufferedInputStream(in)));
+                } finally {
+                    metrics.addBytesRead(in.count);
+                }
+            }
+        } else if (!range.exists()) {
+            instructions = Map.of();
+            componentHash = "";
+        } else {
+            // Hashed and parsed in two passes over the file rather than from a copy of the whole component
+            try (InputStream in = WorkspaceFileWriter.openRange(workspacePath, range)) {
+                componentHash = ContentHash.sha256(in);
+            }
+            metrics.addBytesRead(range.length());
+            if (cached != null && cached.path().equals(workspacePath) && componentHash.equals(cached.componentHash())) {
+                instructions = cached.instructions();
+            } else {
+                try (InputStream in = WorkspaceFileWriter.openRange(workspacePath, range)) {
+                    instructions = Collections.unmodifiableMap(WorkspaceInstructionsReader.readInstructions(in));
+                }
+                metrics.addBytesRead(range.length());
+            }
+        }
+
+        workspace = new WorkspaceState(workspacePath, size, lastModified, componentHash, instructions, estimateSize(instructions));
+        return instructions;
+    }
+
+    /**
+     * Counts the bytes pulled from the underlying stream
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte @NotNull [] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * @return The memoized include fragments of the project
+     */
+    @NotNull
+    public FragmentExpander getFragments() {
+        return fragments;
+    }
+
+    @Override
+    public @Nullable InstructionFile get(@NotNull Path file, long size, long lastModified) {
+        InstructionFile cached = files.get(file);
+        return cached != null && cached.size() == size && cached.lastModified() == lastModified ? cached : null;
+    }
+
+    @Override
+    public void put(@NotNull InstructionFile file) {
+        InstructionFile previous = files.put(file.file(), file);
+        filesSize.addAndGet(estimateSize(file) - (previous != null ? estimateSize(previous) : 0));
+    }
+
+    /**
+     * @param aiDirectory Path to a nested .ai directory
+     * @param stamp       Name, size and modification time of every file of the directory as it is now
+     * @return The files of the directory if none of them changed since they were loaded, null otherwise
+     */
+    @Nullable
+    List<InstructionFile> getModuleLayer(@NotNull Path aiDirectory, @NotNull List<String> stamp) {
+        ModuleLayer cached = modules.get(aiDirectory);
+        return cached != null && cached.stamp().equals(stamp) ? cached.files() : null;
+    }
+
+    void putModuleLayer(@NotNull Path aiDirectory, @NotNull ModuleLayer layer) {
+        ModuleLayer previous = modules.put(aiDirectory, layer);
+        modulesSize.addAndGet(estimateSize(layer) - (previous != null ? estimateSize(previous) : 0));
+    }
+
+    /**
+     * Drops whatever the model holds for the given file, called when the file changed or was deleted
+     *
+     * @param path A .ai file, a fragment or workspace.xml
+     */
+    public void invalidate(@NotNull Path path) {
+        fragments.invalidate(path);
+        WorkspaceState cached = workspace;
+        if (cached != null && cached.path().equals(path)) {
+            workspace = null;
+        }
+        InstructionFile removed = files.remove(path);
+        if (removed != null) {
+            filesSize.addAndGet(-estimateSize(removed));
+        }
+        for (Path aiDirectory : modules.keySet()) {
+            if (path.startsWith(aiDirectory) || aiDirectory.startsWith(path)) {
+                ModuleLayer removedLayer = modules.remove(aiDirectory);
+                if (removedLayer != null) {
+                    modulesSize.addAndGet(-estimateSize(removedLayer));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops everything, e.g. when the model is evicted
+     */
+    public void clear() {
+        workspace = null;
+        files.clear();
+        filesSize.set(0);
+        modules.clear();
+        modulesSize.set(0);
+        fragments.clear();
+    }
+
+    /**
+     * @return Approximate heap size of the cached instructions in bytes
+     */
+    public long estimatedSize() {
+        WorkspaceState cached = workspace;
+        return filesSize.get() + modulesSize.get() + fragments.estimatedSize() + (cached != null ? cached.estimatedSize() : 0);
+    }
+
+    private static long estimateSize(InstructionFile file) {
+        // Strings hold at most two bytes per char, the rest is a rough constant per entry
+        return 64 + 2L * (file.content() != null ? file.content().length() : 0);
+    }
+
+    private static long estimateSize(ModuleLayer layer) {
+        long size = 0;
+        for (InstructionFile file : layer.files()) {
+            size += estimateSize(file);
+        }
+        return size;
+    }
+
+    private static long estimateSize(Map<String, String> instructions) {
+        long size = 0;
+        for (Map.Entry<String, String> entry : instructions.entrySet()) {
+            size += 64 + 2L * (entry.getKey().length() + entry.getValue().length());
+        }
+        return size;
+    }
+}
@@ -0,0 +1,357 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.components.ComponentHandler;
+import de.knudev.aiexport.components.ComponentSync;
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import de.knudev.aiexport.diagnostics.Phase;
+import de.knudev.aiexport.history.SnapshotLog;
+import de.knudev.aiexport.instructions.ContentAddressedStore;
+import de.knudev.aiexport.instructions.FragmentExpander;
+import de.knudev.aiexport.instructions.InstructionBundle;
+import de.knudev.aiexport.instructions.InstructionFile;
+import de.knudev.aiexport.instructions.InstructionFileLoader;
+import de.knudev.aiexport.instructions.InstructionFileWriter;
+import de.knudev.aiexport.instructions.NestedAiDirectories;
+import de.knudev.aiexport.instructions.Utf8Content;
+import de.knudev.aiexport.workspace.ComponentRange;
+import de.knudev.aiexport.workspace.WorkspaceComponentLocator;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Exports the instructions of a project's workspace.xml into its .ai directory,
+ * together with the settings components of the configured {@link ComponentHandler}s.
+ * Instructions that a nested .ai directory of a module provides are written back into that directory
+ * when they were edited, and are otherwise left out of the root's .ai directory.
+ * Works on plain paths without an IDE, so it is shared by the export action and the command line tool.
+ */
+public final class InstructionsExporter {
+    private static final System.Logger LOG = System.getLogger(InstructionsExporter.class.getName());
+
+    private InstructionsExporter() {
+    }
+
+    /**
+     * Writes the instructions of workspace.xml into the .ai directory.
+     * Only new and changed files are written.
+     *
+     * @param layout  The project to export
+     * @param model   Parsed instructions of the project kept from earlier imports and exports
+     * @param options Pruning, format and further components of the export
+     * @return The outcome of the export
+     */
+    @NotNull
+    public static ExportResult export(@NotNull ProjectLayout layout, @NotNull InstructionModel model,
+                                      @NotNull ExportOptions options) {
+        return export(layout, model, options, new OperationMetrics(), null);
+    }
+
+    /**
+     * Writes the instructions of workspace.xml into the .ai directory and records them in the project's history,
+     * recording the time of every phase
+     *
+     * @param layout  The project to export
+     * @param model   Parsed instructions of the project kept from earlier imports and exports
+     * @param options Pruning, format and further components of the export
+     * @param metrics Receives the phases, bytes and entries of the export
+     * @param history History to record the exported instructions in, or null
+     * @return The outcome of the export
+     */
+    @NotNull
+    public static ExportResult export(@NotNull ProjectLayout layout, @NotNull InstructionModel model,
+                                      @NotNull ExportOptions options, @NotNull OperationMetrics metrics,
+                                      @Nullable SnapshotLog history) {
+        try {
+            Path workspacePath = layout.workspaceFile();
+            Path aiDirectory = layout.aiDirectory();
+
+            if (!Files.exists(workspacePath)) {
+                return ExportResult.of(ExportResult.Status.SKIPPED, "workspace.xml not found in the project.");
+            }
+
+            // Create .ai directory if it doesn't exist
+            if (!Files.exists(aiDirectory)) {
+                Files.createDirectory(aiDirectory);
+            }
+
+            // Other components of workspace.xml are located in the same scan as the instructions component
+            Map<String, List<ComponentHandler>> handlersByFile = ComponentSync.bySettingsFile(options.components());
+            List<ComponentHandler> workspaceHandlers = handlersByFile.remove(ComponentHandler.WORKSPACE_FILE);
+            Map<String, ComponentRange> workspaceRanges = null;
+            if (workspaceHandlers != null) {
+                long start = System.nanoTime();
+                Set<String> componentNames = new HashSet<>(ComponentSync.componentNames(workspaceHandlers));
+                componentNames.add(WorkspaceInstructionsReader.COMPONENT_NAME);
+                workspaceRanges = WorkspaceComponentLocator.locateAll(workspacePath, componentNames);
+                metrics.record(Phase.COMPONENT_LOOKUP, start);
+            }
+
+            // Stream the instructions component out of workspace.xml, falling back to a full DOM parse
+            long parseStart = System.nanoTime();
+            Map<String, String> instructionsMap;
+            try {
+                instructionsMap = workspaceRanges != null
+                        ? model.readWorkspaceInstructions(workspacePath, workspaceRanges, metrics)
+                        : model.readWorkspaceInstructions(workspacePath, metrics);
+            } catch (XMLStreamException e) {
+                LOG.log(System.Logger.Level.WARNING, "Streaming read of workspace.xml failed, falling back to DOM parsing", e);
+                instructionsMap = WorkspaceInstructionsReader.readInstructionsWithDom(workspacePath);
+                metrics.addBytesRead(Files.size(workspacePath));
+            }
+            metrics.record(Phase.XML_PARSE, parseStart);
+
+            // An empty or missing component must not prune the whole .ai directory
+            InstructionFileWriter.SyncResult files = new InstructionFileWriter.SyncResult(List.of(), List.of(), List.of(), List.of());
+            if (!instructionsMap.isEmpty()) {
+                Map<String, String> allInstructions = instructionsMap;
+                InstructionFileWriter.SyncResult moduleFiles = null;
+                if (!layout.modules().isEmpty()) {
+                    instructionsMap = new LinkedHashMap<>();
+                    moduleFiles = exportModules(layout, model, allInstructions, instructionsMap, metrics);
+                }
+
+                // Files with includes are kept in every format, they take precedence over a bundle or index on import
+                long keptStart = System.nanoTime();
+                Set<String> keptFiles = filesWithIncludes(aiDirectory, model, instructionsMap);
+                metrics.record(Phase.MARKDOWN_PARSING, keptStart);
+
+                // Write one markdown file per new or changed instruction, a single bundle or the distinct bodies
+                if (options.format() == ExportOptions.Format.BUNDLE) {
+                    long start = System.nanoTime();
+                    files = writeBundle(aiDirectory, instructionsMap, options.prune(), keptFiles);
+                    metrics.record(Phase.FILE_WRITE, start);
+                    if (!files.unchanged().contains(InstructionBundle.FILE_NAME)) {
+                        metrics.addBytesWritten(Files.size(aiDirectory.resolve(InstructionBundle.FILE_NAME)));
+                    }
+                } else if (options.format() == ExportOptions.Format.CONTENT_ADDRESSED) {
+                    long start = System.nanoTime();
+                    files = writeContentAddressed(aiDirectory, instructionsMap, options.prune(), keptFiles);
+                    metrics.record(Phase.FILE_WRITE, start);
+                    for (String written : files.added()) {
+                        metrics.addBytesWritten(Files.size(aiDirectory.resolve(written)));
+                    }
+                    for (String written : files.changed()) {
+                        metrics.addBytesWritten(Files.size(aiDirectory.resolve(written)));
+                    }
+                } else {
+                    files = InstructionFileWriter.sync(aiDirectory, instructionsMap, options.prune(), keptFiles, metrics);
+                }
+                if (moduleFiles != null) {
+                    files = ComponentSync.merge(moduleFiles, files);
+                }
+                if (history != null) {
+                    long start = System.nanoTime();
+                    try {
+                        history.record(SnapshotLog.Trigger.EXPORT, allInstructions);
+                    } catch (IOException e) {
+                        // The export itself succeeded
+                        LOG.log(System.Logger.Level.WARNING, "Could not record the exported instructions in the history", e);
+                    }
+                    metrics.record(Phase.HISTORY, start);
+                }
+            }
+
+            if (workspaceRanges != null || !handlersByFile.isEmpty()) {
+                long start = System.nanoTime();
+                if (workspaceRanges != null) {
+                    files = ComponentSync.merge(files, ComponentSync.export(workspacePath, workspaceRanges, workspaceHandlers, aiDirectory));
+                }
+                if (!handlersByFile.isEmpty()) {
+                    List<ComponentHandler> otherHandlers = handlersByFile.values().stream().flatMap(List::stream).toList();
+                    files = ComponentSync.merge(files, ComponentSync.exportAll(layout.ideaDirectory(), aiDirectory, otherHandlers));
+                }
+                metrics.record(Phase.SETTINGS_COMPONENTS, start);
+            }
+            metrics.addEntriesTouched(files.added().size() + files.changed().size() + files.removed().size());
+
+            if (files.exportedCount() == 0) {
+                return ExportResult.of(ExportResult.Status.NOTHING_TO_EXPORT, "No instructions found to export.");
+            }
+            ExportResult.Status status = files.hasChanges() ? ExportResult.Status.EXPORTED : ExportResult.Status.UP_TO_DATE;
+            return new ExportResult(status, summarize(files), files);
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            return ExportResult.of(ExportResult.Status.FAILED, "Error exporting instructions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the instruction files that include fragments and expand to exactly the exported content.
+     * Writing the expanded content over them would lose the includes.
+     *
+     * @return Names of the files to keep as they are
+     */
+    private static Set<String> filesWithIncludes(Path aiDirectory, InstructionModel model, Map<String, String> instructionsMap)
+            throws IOException {
+        Path fragmentsDirectory = aiDirectory.resolve(FragmentExpander.DIRECTORY);
+        if (!Files.isDirectory(fragmentsDirectory)) {
+            return Set.of();
+        }
+
+        FragmentExpander fragments = model.getFragments();
+        fragments.refresh(fragmentsDirectory);
+        Set<String> kept = new HashSet<>();
+        for (Map.Entry<String, String> entry : instructionsMap.entrySet()) {
+            String fileName = InstructionFileWriter.fileNameFor(entry.getKey());
+            Path file = aiDirectory.resolve(fileName);
+            if (!Files.isRegularFile(file)) {
+                continue;
+            }
+            InstructionFile existing = InstructionFileLoader.loadFile(file, model);
+            if (existing.isLoaded() && entry.getKey().equals(existing.actionId()) && FragmentExpander.hasIncludes(existing.content())) {
+                try {
+                    if (fragments.expand(fragmentsDirectory, existing.content(), fileName).content().equals(entry.getValue())) {
+                        kept.add(fileName);
+                    }
+                } catch (IOException e) {
+                    // A broken include is overwritten with the exported content
+                    LOG.log(System.Logger.Level.WARNING, "Could not expand includes of " + file, e);
+                }
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Splits the instructions between the root's .ai directory and the nested ones. An instruction a module provides
+     * stays in the module: it is written back into its .md file if it was edited, or into a new .md file that takes
+     * precedence over the module's bundle or index, and not written anywhere if it still has the module's content.
+     *
+     * @param rootInstructions Receives the instructions that no module provides
+     * @return The files of nested directories, named relative to the root's .ai directory
+     */
+    private static InstructionFileWriter.SyncResult exportModules(ProjectLayout layout, InstructionModel model,
+                                                                  Map<String, String> instructionsMap,
+                                                                  Map<String, String> rootInstructions,
+                                                                  OperationMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        Map<String, InstructionFile> provided = new HashMap<>();
+        for (InstructionFile file : ModuleLayers.load(layout, model, Runnable::run)) {
+            if (file.actionId() != null && file.isLoaded()) {
+                provided.put(file.actionId(), file);
+            }
+        }
+        metrics.record(Phase.MARKDOWN_PARSING, start);
+
+        // Nested directories include the root's fragments
+        Path fragmentsDirectory = layout.aiDirectory().resolve(FragmentExpander.DIRECTORY);
+        FragmentExpander fragments = model.getFragments();
+        fragments.refresh(fragmentsDirectory);
+        Set<String> added = new LinkedHashSet<>();
+        Set<String> changed = new LinkedHashSet<>();
+        Set<String> unchanged = new LinkedHashSet<>();
+        for (Map.Entry<String, String> entry : instructionsMap.entrySet()) {
+            InstructionFile source = provided.get(entry.getKey());
+            if (source == null) {
+                rootInstructions.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            String module = NestedAiDirectories.moduleOf(source.name());
+            String moduleContent;
+            try {
+                moduleContent = fragments.expand(fragmentsDirectory, source.content(), source.name()).content();
+            } catch (IOException e) {
+                // A broken include is overwritten with the exported content
+                LOG.log(System.Logger.Level.WARNING, "Could not expand includes of " + source.file(), e);
+                moduleContent = null;
+            }
+            if (entry.getValue().equals(moduleContent)) {
+                unchanged.add(relativeName(module, source.file().getFileName().toString()));
+                continue;
+            }
+
+            // Bundle entries and indexed bodies are named differently from the file they are read from
+            boolean markdownFile = source.name().equals(NestedAiDirectories.recordPrefix(module) + source.file().getFileName());
+            Path target = markdownFile ? source.file()
+                    : layout.aiDirectory(module).resolve(InstructionFileWriter.fileNameFor(entry.getKey()));
+            Utf8Content content = InstructionFileWriter.fileContent(entry.getKey(), entry.getValue());
+            long writeStart = System.nanoTime();
+            String name = relativeName(module, target.getFileName().toString());
+            switch (InstructionFileWriter.writeInstructionFile(target, entry.getKey(), entry.getValue(), content)) {
+                case ADDED -> added.add(name);
+                case CHANGED -> changed.add(name);
+                case UNCHANGED -> unchanged.add(name);
+            }
+            metrics.record(Phase.FILE_WRITE, writeStart);
+            metrics.addBytesWritten(content.byteLength());
+        }
+        return new InstructionFileWriter.SyncResult(List.copyOf(added), List.copyOf(changed), List.copyOf(unchanged), List.of());
+    }
+
+    private static String relativeName(String module, String fileName) {
+        return "../" + module + "/" + NestedAiDirectories.DIRECTORY_NAME + "/" + fileName;
+    }
+
+    /**
+     * Writes all instructions into the bundle file. The .md files of the exported instructions are always deleted,
+     * since they would otherwise take precedence over the bundle on import. When pruning, every instruction
+     * .md file is deleted. Files with includes that expand to the exported content are kept either way.
+     */
+    private static InstructionFileWriter.SyncResult writeBundle(Path aiDirectory, Map<String, String> instructionsMap,
+                                                                boolean prune, Set<String> keptFiles) throws IOException {
+        InstructionFileWriter.FileChange change = InstructionBundle.write(aiDirectory.resolve(InstructionBundle.FILE_NAME), instructionsMap);
+
+        List<String> bundle = List.of(InstructionBundle.FILE_NAME);
+        List<String> removed = prune ? InstructionFileWriter.prune(aiDirectory, Map.of(), keptFiles)
+                : InstructionFileWriter.deleteFilesOf(aiDirectory, instructionsMap.keySet(), keptFiles);
+        List<String> unchanged = new ArrayList<>();
+        if (change == InstructionFileWriter.FileChange.UNCHANGED) {
+            unchanged.add(InstructionBundle.FILE_NAME);
+        }
+        keptFiles.stream().sorted().forEach(unchanged::add);
+        return new InstructionFileWriter.SyncResult(change == InstructionFileWriter.FileChange.ADDED ? bundle : List.of(),
+                change == InstructionFileWriter.FileChange.CHANGED ? bundle : List.of(), unchanged, removed);
+    }
+
+    /**
+     * Writes the distinct bodies and the index of the {@link ContentAddressedStore}. The .md files of the indexed
+     * instructions are always deleted, since they would otherwise take precedence over the index on import.
+     * When pruning, every instruction .md file is deleted. Files with includes that expand to the exported content
+     * are kept either way.
+     */
+    private static InstructionFileWriter.SyncResult writeContentAddressed(Path aiDirectory, Map<String, String> instructionsMap,
+                                                                          boolean prune, Set<String> keptFiles) throws IOException {
+        InstructionFileWriter.SyncResult stored = ContentAddressedStore.write(aiDirectory, instructionsMap);
+        List<String> removed = new ArrayList<>(stored.removed());
+        removed.addAll(prune ? InstructionFileWriter.prune(aiDirectory, Map.of(), keptFiles)
+                : InstructionFileWriter.deleteFilesOf(aiDirectory, instructionsMap.keySet(), keptFiles));
+        List<String> unchanged = new ArrayList<>(stored.unchanged());
+        keptFiles.stream().sorted().forEach(unchanged::add);
+        return new InstructionFileWriter.SyncResult(stored.added(), stored.changed(), unchanged, removed);
+    }
+
+    private static String summarize(InstructionFileWriter.SyncResult files) {
+        StringBuilder summaryBuilder = new StringBuilder()
+                .append("Exported ").append(files.exportedCount()).append(" files to .ai directory: ")
+                .append(files.added().size()).append(" added, ")
+                .append(files.changed().size()).append(" changed, ")
+                .append(files.unchanged().size()).append(" unchanged, ")
+                .append(files.removed().size()).append(" removed.\n");
+        appendFiles(summaryBuilder, "Added", files.added());
+        appendFiles(summaryBuilder, "Changed", files.changed());
+        appendFiles(summaryBuilder, "Unchanged", files.unchanged());
+        appendFiles(summaryBuilder, "Removed", files.removed());
+        return summaryBuilder.toString();
+    }
+
+    private static void appendFiles(StringBuilder summaryBuilder, String label, List<String> fileNames) {
+        for (String fileName : fileNames) {
+            summaryBuilder.append(label).append(": ").append(fileName).append("\n");
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.components.ComponentHandler;
+import de.knudev.aiexport.components.ComponentSync;
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import de.knudev.aiexport.diagnostics.Phase;
+import de.knudev.aiexport.history.SnapshotLog;
+import de.knudev.aiexport.instructions.FragmentExpander;
+import de.knudev.aiexport.instructions.ImportManifest;
+import de.knudev.aiexport.instructions.InstructionFile;
+import de.knudev.aiexport.instructions.InstructionFileLoader;
+import de.knudev.aiexport.instructions.NestedAiDirectories;
+import de.knudev.aiexport.upstream.UpstreamSet;
+import de.knudev.aiexport.upstream.UpstreamSource;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+
+/**
+ * Imports the .ai directory of a project into its workspace.xml, together with the nested .ai directories of
+ * its modules, see {@link NestedAiDirectories}.
+ * Works on plain paths without an IDE, so it is shared by the import action and the command line tool.
+ */
+public final class InstructionsImporter {
+    private static final System.Logger LOG = System.getLogger(InstructionsImporter.class.getName());
+
+    private final Executor loaderExecutor;
+    private final InstructionModel model;
+    private final ComponentState componentState;
+    private final List<ComponentHandler> componentHandlers;
+    private final @Nullable UpstreamSource upstream;
+    private final @Nullable SnapshotLog history;
+
+    /**
+     * @param loaderExecutor Executor to read instruction files on, see {@link InstructionFileLoader}
+     * @param model          Parsed instructions of the project kept from earlier imports and exports
+     * @param options        Live component state, further components, upstream source and history of the project
+     */
+    public InstructionsImporter(@NotNull Executor loaderExecutor, @NotNull InstructionModel model,
+                                @NotNull ImportOptions options) {
+        this.loaderExecutor = loaderExecutor;
+        this.model = model;
+        this.componentState = options.componentState();
+        this.componentHandlers = options.componentHandlers();
+        this.upstream = options.upstream();
+        this.history = options.history();
+    }
+
+    /**
+     * Imports all instruction files of the project, layered over the upstream instructions if there are any
+     * and under the nested .ai directories of the layout's modules
+     *
+     * @param layout          The project to import into
+     * @param manifestPath    Import manifest of the project, or null to always read and write everything
+     * @param skipIfUnchanged Skip the import if the manifest shows that nothing changed since the last one
+     * @param progress        Progress of the running import
+     * @return The outcome of the import
+     */
+    @NotNull
+    public ImportResult importAll(@NotNull ProjectLayout layout, @Nullable Path manifestPath, boolean skipIfUnchanged,
+                                  @NotNull TaskProgress progress) {
+        return importAll(layout, manifestPath, skipIfUnchanged, progress, new OperationMetrics());
+    }
+
+    /**
+     * Imports all instruction files of the project, recording the time of every phase
+     *
+     * @param layout          The project to import into
+     * @param manifestPath    Import manifest of the project, or null to always read and write everything
+     * @param skipIfUnchanged Skip the import if the manifest shows that nothing changed since the last one
+     * @param progress        Progress of the running import
+     * @param metrics         Receives the phases, bytes and entries of the import
+     * @return The outcome of the import
+     */
+    @NotNull
+    public ImportResult importAll(@NotNull ProjectLayout layout, @Nullable Path manifestPath, boolean skipIfUnchanged,
+                                  @NotNull TaskProgress progress, @NotNull OperationMetrics metrics) {
+        try {
+            Path workspacePath = layout.workspaceFile();
+            Path aiDirectory = layout.aiDirectory();
+
+            if (!Files.exists(workspacePath)) {
+                return ImportResult.of(ImportResult.Status.SKIPPED, "workspace.xml not found in the project.");
+            }
+
+            boolean hasAiDirectory = Files.exists(aiDirectory);
+            if (!hasAiDirectory && upstream == null && layout.modules().isEmpty()) {
+                return ImportResult.of(ImportResult.Status.SKIPPED, "No .ai directory found. Nothing to import.");
+            }
+
+            // Further components are compared with their exports directly, so they are imported even if the
+            // instructions are up to date; every settings file is scanned and written once for all of them
+            List<String> components = List.of();
+            if (!componentHandlers.isEmpty() && hasAiDirectory) {
+                progress.setText("Importing settings components");
+                long start = System.nanoTime();
+                components = ComponentSync.importAll(layout.ideaDirectory(), aiDirectory, componentHandlers);
+                metrics.record(Phase.SETTINGS_COMPONENTS, start);
+                metrics.addEntriesTouched(components.size());
+            }
+
+            // Layers of unchanged modules come from the model, only changed ones are read
+            List<InstructionFile> moduleFiles = List.of();
+            Map<String, String> moduleHashes = new HashMap<>();
+            if (!layout.modules().isEmpty()) {
+                progress.setText("Reading nested .ai directories");
+                long start = System.nanoTime();
+                moduleFiles = ModuleLayers.load(layout, model, loaderExecutor);
+                moduleFiles.forEach(file -> moduleHashes.put(file.name(), file.hash()));
+                metrics.record(Phase.MARKDOWN_PARSING, start);
+            }
+
+            progress.setText("Checking .ai directory for changes");
+            long checkStart = System.nanoTime();
+
+            // Only files that are not in the local cache yet are fetched, nothing at all if upstream did not change
+            UpstreamSet upstreamSet = upstream != null ? upstream.resolve() : UpstreamSet.EMPTY;
+            Map<String, String> upstreamHashes = new HashMap<>();
+            upstreamSet.entries().forEach(entry -> upstreamHashes.put(entry.name(), entry.hash()));
+
+            // Nothing to do if neither the .ai files nor the imported component changed since the last import
+            ImportManifest previousManifest = manifestPath != null ? ImportManifest.load(manifestPath) : ImportManifest.empty();
+            boolean upToDate = skipIfUnchanged && previousManifest.isUpToDate(aiDirectory, workspacePath, upstreamHashes, moduleHashes);
+            metrics.record(Phase.CHANGE_CHECK, checkStart);
+            if (upToDate) {
+                return componentsOnly(ImportResult.Status.UP_TO_DATE, "AI Assistant instructions are up to date.", components);
+            }
+
+            // Files imported before only have to be read again if the component was changed since,
+            // or if a fragment they include changed. A changed module may no longer override them either
+            Path fragmentsDirectory = aiDirectory.resolve(FragmentExpander.DIRECTORY);
+            InstructionFileLoader.KnownFiles knownFiles = previousManifest.isComponentUnchanged(workspacePath)
+                    && previousManifest.recordedHashes(NestedAiDirectories.RECORD_PREFIX).equals(moduleHashes)
+                    ? previousManifest.excluding(previousManifest.filesIncluding(previousManifest.changedFragments(fragmentsDirectory)))
+                    : InstructionFileLoader.KnownFiles.NONE;
+
+            // Read the upstream files first, so .md files of the .ai directory override them
+            progress.setText("Reading instruction files");
+            long parseStart = System.nanoTime();
+            List<InstructionFile> instructionFiles = new ArrayList<>(loadUpstream(upstreamSet, knownFiles));
+            metrics.record(Phase.MARKDOWN_PARSING, parseStart);
+            if (hasAiDirectory) {
+                long listStart = System.nanoTime();
+                List<Path> mdFiles = InstructionFileLoader.listFiles(aiDirectory);
+                metrics.record(Phase.FILE_LISTING, listStart);
+
+                parseStart = System.nanoTime();
+                instructionFiles.addAll(new InstructionFileLoader(loaderExecutor, model).load(aiDirectory, mdFiles, knownFiles,
+                        (loaded, total) -> {
+                            progress.checkCanceled();
+                            progress.setFraction((double) loaded / total);
+                        }));
+                metrics.record(Phase.MARKDOWN_PARSING, parseStart);
+            }
+            for (InstructionFile file : instructionFiles) {
+                if (file.isLoaded()) {
+                    metrics.addBytesRead(file.size());
+                }
+            }
+            // Modules come last, so their instructions override the root's
+            instructionFiles.addAll(moduleFiles);
+            // An action ID defined by several sources, e.g. a bundle entry and a .md file, is one instruction
+            int instructionCount = (int) instructionFiles.stream().map(InstructionFile::actionId).filter(Objects::nonNull)
+                    .distinct().count();
+            if (instructionCount == 0) {
+                return componentsOnly(ImportResult.Status.NOTHING_TO_IMPORT, "No instruction files found in .ai directory.",
+                        components);
+            }
+
+            progress.setText("Expanding includes");
+            parseStart = System.nanoTime();
+            Map<String, Set<String>> includes = new HashMap<>();
+            instructionFiles = expandIncludes(instructionFiles, fragmentsDirectory, previousManifest, includes);
+            metrics.record(Phase.MARKDOWN_PARSING, parseStart);
+
+            // Equal bodies from different files share one instance, down to the entries written into workspace.xml
+            Map<String, String> instructionsMap = new LinkedHashMap<>();
+            Map<String, String> distinctBodies = new HashMap<>();
+            Map<String, InstructionFile> sources = new HashMap<>();
+            for (InstructionFile file : instructionFiles) {
+                if (file.actionId() != null && file.isLoaded()) {
+                    instructionsMap.put(file.actionId(), distinctBodies.computeIfAbsent(file.content(), body -> body));
+                    sources.put(file.actionId(), file);
+                } else if (file.actionId() != null) {
+                    // A later file that is already imported overrides a bundle entry of the same action ID
+                    instructionsMap.remove(file.actionId());
+                }
+            }
+            List<String> conflicts = moduleFiles.isEmpty() ? List.of() : ModuleLayers.conflicts(instructionFiles);
+            for (String conflict : conflicts) {
+                LOG.log(System.Logger.Level.WARNING, "Instruction defined in unrelated .ai directories, " + conflict);
+            }
+
+            // Entries the component already has are not written again
+            Map<String, String> currentInstructions = dropUnchanged(workspacePath, instructionsMap, metrics);
+
+            WorkspaceInstructionsWriter.WriteMode writeMode = null;
+            if (!instructionsMap.isEmpty()) {
+                // Last point to cancel, workspace.xml is not touched before this
+                progress.checkCanceled();
+                progress.setText("Writing instructions to workspace.xml");
+
+                // Splice only the instructions component into workspace.xml, rewriting the whole file as a fallback
+                recordSnapshot(SnapshotLog.Trigger.IDE_CHANGES, currentInstructions, metrics);
+                writeMode = writeInstructions(workspacePath, instructionsMap, metrics);
+                recordSnapshot(SnapshotLog.Trigger.IMPORT, applied(currentInstructions, instructionsMap), metrics);
+            }
+            if (manifestPath != null) {
+                // workspace.xml does not have the imported state yet, so it cannot be recorded as imported
+                long start = System.nanoTime();
+                boolean workspaceCurrent = writeMode != WorkspaceInstructionsWriter.WriteMode.IN_MEMORY;
+                saveManifest(ImportManifest.of(instructionFiles, includes), workspaceCurrent ? workspacePath : null, manifestPath);
+                metrics.record(Phase.FILE_WRITE, start);
+            }
+
+            return new ImportResult(ImportResult.Status.IMPORTED,
+                    "Successfully imported " + instructionCount + " instructions into " + targetName(writeMode) + "."
+                            + describeConflicts(conflicts) + describeComponents(components),
+                    instructionCount, instructionsMap.size(), writeMode, components,
+                    entries(instructionsMap, sources, components));
+        } catch (ParserConfigurationException | SAXException | IOException | TransformerException | XMLStreamException e) {
+            return ImportResult.of(ImportResult.Status.FAILED, "Error importing instructions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Imports only the given instruction files, e.g. after they were changed on disk, recording the time of every phase.
+     * Entries whose content already matches workspace.xml are left alone, and workspace.xml is not written
+     * at all if none of the files changed an instruction. Instructions a nested .ai directory overrides are skipped.
+     *
+     * @param layout       The project to import into
+     * @param changedFiles Instruction files in the .ai directory that were created or modified
+     * @param progress     Progress of the running import
+     * @param metrics      Receives the phases, bytes and entries of the import
+     * @return The outcome of the import
+     */
+    @NotNull
+    public ImportResult importFiles(@NotNull ProjectLayout layout, @NotNull Collection<Path> changedFiles,
+                                    @NotNull TaskProgress progress, @NotNull OperationMetrics metrics) {
+        try {
+            Path workspacePath = layout.workspaceFile();
+            if (!Files.exists(workspacePath)) {
+                return ImportResult.of(ImportResult.Status.SKIPPED, "workspace.xml not found in the project.");
+            }
+
+            progress.setText("Reading changed instruction files");
+            long parseStart = System.nanoTime();
+            Path fragmentsDirectory = layout.aiDirectory().resolve(FragmentExpander.DIRECTORY);
+            FragmentExpander fragments = model.getFragments();
+            fragments.refresh(fragmentsDirectory);
+            Map<String, String> instructionsMap = new HashMap<>();
+            Map<String, InstructionFile> sources = new HashMap<>();
+            Set<String> actionIds = new HashSet<>();
+            for (Path file : changedFiles) {
+                progress.checkCanceled();
+                if (Files.isRegularFile(file)) {
+                    InstructionFile instructionFile = InstructionFileLoader.loadFile(file, model);
+                    if (instructionFile.actionId() != null) {
+                        instructionsMap.put(instructionFile.actionId(),
+                                fragments.expand(fragmentsDirectory, instructionFile.content(), instructionFile.name()).content());
+                        sources.put(instructionFile.actionId(), instructionFile);
+                        actionIds.add(instructionFile.actionId());
+                    }
+                    metrics.addBytesRead(instructionFile.size());
+                }
+            }
+            if (!layout.modules().isEmpty()) {
+                // A nested .ai directory overrides the root's files, so its instructions stay as they are
+                for (InstructionFile file : ModuleLayers.load(layout, model, loaderExecutor)) {
+                    if (file.actionId() != null) {
+                        instructionsMap.remove(file.actionId());
+                        sources.remove(file.actionId());
+                    }
+                }
+            }
+            metrics.record(Phase.MARKDOWN_PARSING, parseStart);
+
+            // Drop everything that workspace.xml already contains
+            Map<String, String> currentInstructions = dropUnchanged(workspacePath, instructionsMap, metrics);
+            if (instructionsMap.isEmpty()) {
+                return new ImportResult(ImportResult.Status.UP_TO_DATE, "AI Assistant instructions are up to date.",
+                        actionIds.size(), 0, null, List.of(), List.of());
+            }
+
+            progress.checkCanceled();
+            progress.setText("Writing instructions to workspace.xml");
+            recordSnapshot(SnapshotLog.Trigger.IDE_CHANGES, currentInstructions, metrics);
+            WorkspaceInstructionsWriter.WriteMode writeMode = writeInstructions(workspacePath, instructionsMap, metrics);
+            recordSnapshot(SnapshotLog.Trigger.SYNC, applied(currentInstructions, instructionsMap), metrics);
+
+            return new ImportResult(ImportResult.Status.IMPORTED,
+                    "Updated " + instructionsMap.size() + " instructions in " + targetName(writeMode) + ".",
+                    actionIds.size(), instructionsMap.size(), writeMode, List.of(), entries(instructionsMap, sources, List.of()));
+        } catch (ParserConfigurationException | SAXException | IOException | TransformerException | XMLStreamException e) {
+            return ImportResult.of(ImportResult.Status.FAILED, "Error importing instructions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the cached upstream files, validating the content of every file that is read against its manifest hash
+     */
+    private List<InstructionFile> loadUpstream(UpstreamSet upstreamSet, InstructionFileLoader.KnownFiles knownFiles)
+            throws IOException {
+        List<InstructionFile> files = new ArrayList<>(upstreamSet.entries().size());
+        for (UpstreamSet.Entry entry : upstreamSet.entries()) {
+            InstructionFile file = InstructionFileLoader.loadFile(entry.object(), ImportManifest.UPSTREAM_PREFIX + entry.name(),
+                    entry.hash(), knownFiles);
+            if (!entry.hash().equals(file.hash()) && upstream != null) {
+                upstream.discard(entry.hash());
+                throw new IOException("Cached upstream instruction " + entry.name() + " is corrupt, it is fetched again on the next import");
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Replaces the content of every loaded instruction with its expansion. Files that were not loaded keep the
+     * fragments recorded for them, none of which changed, otherwise they would have been loaded.
+     * Every included fragment is added as a file of its own, so the next import can tell whether it changed.
+     *
+     * @param includes Receives the fragments of every file with includes, by file name
+     * @return The files with expanded content, followed by the fragments
+     */
+    private List<InstructionFile> expandIncludes(List<InstructionFile> files, Path fragmentsDirectory,
+                                                 ImportManifest previousManifest, Map<String, Set<String>> includes)
+            throws IOException {
+        FragmentExpander fragments = model.getFragments();
+        fragments.refresh(fragmentsDirectory);
+
+        List<InstructionFile> expanded = new ArrayList<>(files.size());
+        Set<String> fragmentNames = new TreeSet<>();
+        for (InstructionFile file : files) {
+            Set<String> fileIncludes;
+            if (file.isLoaded() && file.actionId() != null) {
+                FragmentExpander.Expansion expansion = fragments.expand(fragmentsDirectory, file.content(), file.name());
+                fileIncludes = expansion.fragments();
+                if (!fileIncludes.isEmpty()) {
+                    file = file.withContent(expansion.content());
+                }
+            } else {
+                fileIncludes = previousManifest.includesOf(file.name());
+            }
+            if (!fileIncludes.isEmpty()) {
+                includes.put(file.name(), fileIncludes);
+                fragmentNames.addAll(fileIncludes);
+            }
+            expanded.add(file);
+        }
+
+        for (String name : fragmentNames) {
+            String recordName = ImportManifest.FRAGMENT_PREFIX + name;
+            InstructionFile fragment = fragments.describe(fragmentsDirectory, name, recordName);
+            if (fragment == null) {
+                // Only included by files that were not read, so it is unchanged since the last import
+                fragment = previousManifest.recordedFile(recordName, fragmentsDirectory.resolve(name));
+            }
+            if (fragment != null) {
+                expanded.add(fragment);
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * Removes the instructions whose content is already stored, so they are not written again
+     *
+     * @return The current instructions, or null if they could not be read
+     */
+    @Nullable
+    private Map<String, String> dropUnchanged(Path workspacePath, Map<String, String> instructionsMap, OperationMetrics metrics)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            Map<String, String> currentInstructions = readCurrentInstructions(workspacePath, metrics);
+            instructionsMap.entrySet().removeIf(entry -> entry.getValue().equals(currentInstructions.get(entry.getKey())));
+            return currentInstructions;
+        } catch (XMLStreamException e) {
+            LOG.log(System.Logger.Level.WARNING,
+                    "Could not read current instructions from workspace.xml, importing all files", e);
+            return null;
+        } finally {
+            metrics.record(Phase.XML_PARSE, start);
+        }
+    }
+
+    /**
+     * Restores an instruction set from the history. Only instructions that differ from the current ones are written,
+     * and instructions the snapshot does not have are removed. The import manifest then records the restored
+     * component, so importing the unchanged .ai directory does not undo the restore.
+     *
+     * @param layout       The project to restore
+     * @param snapshotId   Id of the snapshot to restore
+     * @param manifestPath Import manifest of the project, or null
+     * @param progress     Progress of the running restore
+     * @param metrics      Receives the phases, bytes and entries of the restore
+     * @return The outcome of the restore
+     */
+    @NotNull
+    public ImportResult restore(@NotNull ProjectLayout layout, long snapshotId, @Nullable Path manifestPath,
+                                @NotNull TaskProgress progress, @NotNull OperationMetrics metrics) {
+        if (history == null) {
+            return ImportResult.of(ImportResult.Status.FAILED, "No instruction history is kept for this project.");
+        }
+        try {
+            Path workspacePath = layout.workspaceFile();
+            if (!Files.exists(workspacePath)) {
+                return ImportResult.of(ImportResult.Status.SKIPPED, "workspace.xml not found in the project.");
+            }
+
+            progress.setText("Reading snapshot #" + snapshotId);
+            long start = System.nanoTime();
+            Map<String, String> snapshot = history.restore(snapshotId);
+            metrics.record(Phase.HISTORY, start);
+
+            start = System.nanoTime();
+            Map<String, String> currentInstructions = readCurrentInstructions(workspacePath, metrics);
+            metrics.record(Phase.XML_PARSE, start);
+            Map<String, String> changes = new LinkedHashMap<>();
+            snapshot.forEach((actionId, content) -> {
+                if (!content.equals(currentInstructions.get(actionId))) {
+                    changes.put(actionId, content);
+                }
+            });
+            for (String actionId : currentInstructions.keySet()) {
+                if (!snapshot.containsKey(actionId)) {
+                    changes.put(actionId, null);
+                }
+            }
+            if (changes.isEmpty()) {
+                return new ImportResult(ImportResult.Status.UP_TO_DATE, "The instructions already match snapshot #" + snapshotId + ".",
+                        snapshot.size(), 0, null, List.of(), List.of());
+            }
+
+            progress.checkCanceled();
+            progress.setText("Restoring instructions of snapshot #" + snapshotId);
+            recordSnapshot(SnapshotLog.Trigger.IDE_CHANGES, currentInstructions, metrics);
+            WorkspaceInstructionsWriter.WriteMode writeMode = writeInstructions(workspacePath, changes, metrics);
+            recordSnapshot(SnapshotLog.Trigger.RESTORE, snapshot, metrics);
+            if (manifestPath != null && writeMode != WorkspaceInstructionsWriter.WriteMode.IN_MEMORY && Files.exists(manifestPath)) {
+                saveManifest(ImportManifest.load(manifestPath), workspacePath, manifestPath);
+            }
+
+            List<ResultEntry> entries = new ArrayList<>(changes.size());
+            int removed = 0;
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                entries.add(new ResultEntry(change.getKey(), change.getValue() != null ? "restored" : "removed", -1));
+                removed += change.getValue() == null ? 1 : 0;
+            }
+            return new ImportResult(ImportResult.Status.IMPORTED,
+                    "Restored snapshot #" + snapshotId + " into " + targetName(writeMode) + ": "
+                            + (changes.size() - removed) + " instructions written, " + removed + " removed.",
+                    snapshot.size(), changes.size(), writeMode, List.of(), entries);
+        } catch (ParserConfigurationException | SAXException | IOException | TransformerException | XMLStreamException e) {
+            return ImportResult.of(ImportResult.Status.FAILED, "Error restoring instructions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records an instruction set in the history, a failure only costs the snapshot
+     *
+     * @param instructions The instructions, or null if they are not known
+     */
+    private void recordSnapshot(SnapshotLog.Trigger trigger, @Nullable Map<String, String> instructions, OperationMetrics metrics) {
+        if (history == null || instructions == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            history.record(trigger, instructions);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Could not record the instructions in the history", e);
+        }
+        metrics.record(Phase.HISTORY, start);
+    }
+
+    /**
+     * @return The current instructions with the written ones applied, or null if the current ones are not known
+     */
+    @Nullable
+    private static Map<String, String> applied(@Nullable Map<String, String> currentInstructions, Map<String, String> written) {
+        if (currentInstructions == null) {
+            return null;
+        }
+        Map<String, String> instructions = new LinkedHashMap<>(currentInstructions);
+        instructions.putAll(written);
+        return instructions;
+    }
+
+    /**
+     * @return The instructions as the owner of workspace.xml currently sees them
+     */
+    private Map<String, String> readCurrentInstructions(Path workspacePath, OperationMetrics metrics)
+            throws IOException, XMLStreamException {
+        String liveComponent = componentState.read();
+        if (liveComponent != null) {
+            return WorkspaceInstructionsReader.readInstructions(
+                    new ByteArrayInputStream(liveComponent.getBytes(StandardCharsets.UTF_8)));
+        }
+        return model.readWorkspaceInstructions(workspacePath, metrics);
+    }
+
+    private WorkspaceInstructionsWriter.WriteMode writeInstructions(Path workspacePath, Map<String, String> instructionsMap,
+                                                                    OperationMetrics metrics)
+            throws ParserConfigurationException, SAXException, IOException, TransformerException, XMLStreamException {
+        // Prefer the live component state, workspace.xml is only written when it is not available
+        String liveComponent = componentState.read();
+        if (liveComponent != null) {
+            String updated = WorkspaceInstructionsWriter.updateComponentXml(liveComponent, instructionsMap, metrics);
+            long start = System.nanoTime();
+            boolean written = componentState.write(updated);
+            metrics.record(Phase.FILE_WRITE, start);
+            if (written) {
+                // Nothing is written to disk, the IDE saves the component with its next save
+                return WorkspaceInstructionsWriter.WriteMode.IN_MEMORY;
+            }
+        }
+
+        WorkspaceInstructionsWriter.WriteMode mode = WorkspaceInstructionsWriter.writeInstructions(workspacePath, instructionsMap, metrics);
+        if (mode == WorkspaceInstructionsWriter.WriteMode.FULL_REWRITE) {
+            LOG.log(System.Logger.Level.WARNING,
+                    "Could not replace the instructions component in place, rewrote the whole " + workspacePath);
+        }
+        return mode;
+    }
+
+    /**
+     * @return The result of an import that wrote no instructions, but possibly further components
+     */
+    private static ImportResult componentsOnly(ImportResult.Status status, String message, List<String> components) {
+        if (components.isEmpty()) {
+            return ImportResult.of(status, message);
+        }
+        return new ImportResult(ImportResult.Status.IMPORTED, message + describeComponents(components), 0, 0, null, components,
+                entries(Map.of(), Map.of(), components));
+    }
+
+    /**
+     * @param written    The instructions that were written
+     * @param sources    The file every instruction is from, by action ID
+     * @param components The components that were written
+     * @return One entry per file whose instruction was written, followed by the components
+     */
+    private static List<ResultEntry> entries(Map<String, String> written, Map<String, InstructionFile> sources,
+                                             List<String> components) {
+        List<ResultEntry> entries = new ArrayList<>(written.size() + components.size());
+        for (String actionId : written.keySet()) {
+            InstructionFile source = sources.get(actionId);
+            entries.add(source != null
+                    ? new ResultEntry(source.name(), "written", source.size())
+                    : new ResultEntry(actionId, "written", -1));
+        }
+        entries.sort(Comparator.comparing(ResultEntry::name));
+        for (String component : components) {
+            entries.add(new ResultEntry(component, "component", -1));
+        }
+        return entries;
+    }
+
+    private static String describeConflicts(List<String> conflicts) {
+        return conflicts.isEmpty() ? "" : " " + conflicts.size() + " instructions are defined in unrelated .ai directories, "
+                + "the deeper or later one is used: " + String.join("; ", conflicts.subList(0, Math.min(3, conflicts.size())))
+                + (conflicts.size() > 3 ? "; ..." : "") + ".";
+    }
+
+    private static String describeComponents(List<String> components) {
+        return components.isEmpty() ? "" : " Updated components: " + String.join(", ", components) + ".";
+    }
+
+    private static String targetName(@Nullable WorkspaceInstructionsWriter.WriteMode writeMode) {
+        return writeMode == WorkspaceInstructionsWriter.WriteMode.IN_MEMORY ? "the AI Assistant settings" : "workspace.xml";
+    }
+
+    private static void saveManifest(ImportManifest manifest, @Nullable Path workspacePath, Path manifestPath) {
+        try {
+            (workspacePath != null ? manifest.withWorkspace(workspacePath) : manifest).save(manifestPath);
+        } catch (IOException e) {
+            // Without a manifest the next import simply reads everything again
+            LOG.log(System.Logger.Level.WARNING, "Could not save AI settings import manifest", e);
+        }
+    }
+}
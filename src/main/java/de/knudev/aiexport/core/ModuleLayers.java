@@ -0,0 +1,111 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.instructions.ContentAddressedStore;
+import de.knudev.aiexport.instructions.InstructionBundle;
+import de.knudev.aiexport.instructions.InstructionFile;
+import de.knudev.aiexport.instructions.InstructionFileLoader;
+import de.knudev.aiexport.instructions.NestedAiDirectories;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads the nested .ai directories of a {@link ProjectLayout} as layers over the root's .ai directory.
+ * A layer is listed on every load, but its files are only read again if one of them changed, otherwise the
+ * {@link InstructionModel} serves the whole layer. Import cost therefore depends on the instruction files alone,
+ * not on the size of the repository around them.
+ */
+final class ModuleLayers {
+
+    private ModuleLayers() {
+    }
+
+    /**
+     * @param layout The project with its modules
+     * @param model  Parsed instructions of the project, caching every layer
+     * @return The files of every nested .ai directory with content, in {@link NestedAiDirectories#PRECEDENCE} order
+     * and recorded under {@link NestedAiDirectories#recordPrefix}
+     */
+    static List<InstructionFile> load(ProjectLayout layout, InstructionModel model, Executor executor) throws IOException {
+        List<InstructionFile> files = new ArrayList<>();
+        for (String module : layout.modules()) {
+            files.addAll(loadLayer(layout.aiDirectory(module), module, model, executor));
+        }
+        return files;
+    }
+
+    /**
+     * @param files Files of all layers in precedence order, upstream and root files first
+     * @return One line per action ID that is defined in two .ai directories of which neither contains the other
+     */
+    static List<String> conflicts(List<InstructionFile> files) {
+        Map<String, String> owners = new HashMap<>();
+        List<String> conflicts = new ArrayList<>();
+        for (InstructionFile file : files) {
+            if (file.actionId() == null) {
+                continue;
+            }
+            String module = NestedAiDirectories.moduleOf(file.name());
+            String owner = owners.put(file.actionId(), module);
+            if (owner != null && !NestedAiDirectories.contains(owner, module)) {
+                conflicts.add(file.actionId() + ": " + module + "/.ai overrides " + owner + "/.ai");
+            }
+        }
+        return conflicts;
+    }
+
+    private static List<InstructionFile> loadLayer(Path aiDirectory, String module, InstructionModel model, Executor executor)
+            throws IOException {
+        if (!Files.isDirectory(aiDirectory)) {
+            // Deleted since the modules were looked up
+            return List.of();
+        }
+        // Listed before reading, so a file changing in between only makes the next load read the layer again
+        List<Path> mdFiles = InstructionFileLoader.listFiles(aiDirectory);
+        List<String> stamp = stamp(aiDirectory, mdFiles);
+        List<InstructionFile> cached = model.getModuleLayer(aiDirectory, stamp);
+        if (cached != null) {
+            return cached;
+        }
+
+        String prefix = NestedAiDirectories.recordPrefix(module);
+        List<InstructionFile> loaded = new InstructionFileLoader(executor, model)
+                .load(aiDirectory, mdFiles, InstructionFileLoader.KnownFiles.NONE, InstructionFileLoader.Progress.NONE);
+        List<InstructionFile> files = new ArrayList<>(loaded.size());
+        for (InstructionFile file : loaded) {
+            files.add(file.withName(prefix + file.name()));
+        }
+        model.putModuleLayer(aiDirectory, new InstructionModel.ModuleLayer(stamp, List.copyOf(files)));
+        return files;
+    }
+
+    /**
+     * Bodies of the index are named after their content, so the index file covers them
+     */
+    private static List<String> stamp(Path aiDirectory, List<Path> mdFiles) throws IOException {
+        List<String> stamp = new ArrayList<>(mdFiles.size() + 2);
+        for (Path file : mdFiles) {
+            addStamp(stamp, file);
+        }
+        addStamp(stamp, aiDirectory.resolve(InstructionBundle.FILE_NAME));
+        addStamp(stamp, aiDirectory.resolve(ContentAddressedStore.INDEX_FILE));
+        return stamp;
+    }
+
+    private static void addStamp(List<String> stamp, Path file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            stamp.add(file.getFileName() + " " + attributes.size() + " " + attributes.lastModifiedTime().toMillis());
+        } catch (NoSuchFileException e) {
+            // Missing bundle or index, or a file deleted after listing
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import de.knudev.aiexport.instructions.InstructionFileWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a finished export or import did, entry by entry, with the time it took
+ *
+ * @param title         Name of the operation, e.g. "Import"
+ * @param status        Name of the result status
+ * @param message       Human readable description of the outcome
+ * @param failed        true if the operation failed
+ * @param durationNanos Wall time of the operation
+ * @param entries       The files the operation touched
+ * @param metrics       Time per phase and I/O counters of the operation
+ */
+public record OperationReport(@NotNull String title, @NotNull String status, @NotNull String message, boolean failed,
+                              long durationNanos, @NotNull List<ResultEntry> entries,
+                              @NotNull OperationMetrics.Snapshot metrics) {
+
+    /**
+     * @param result        Result of the export
+     * @param aiDirectory   The .ai directory the export wrote, to look up the file sizes
+     * @param metrics       Phases of the export, with its wall time
+     */
+    @NotNull
+    public static OperationReport of(@NotNull ExportResult result, @NotNull Path aiDirectory,
+                                     @NotNull OperationMetrics.Snapshot metrics) {
+        InstructionFileWriter.SyncResult files = result.files();
+        List<ResultEntry> entries = new ArrayList<>(files.exportedCount() + files.removed().size());
+        addFiles(entries, aiDirectory, files.added(), "added");
+        addFiles(entries, aiDirectory, files.changed(), "changed");
+        addFiles(entries, aiDirectory, files.unchanged(), "unchanged");
+        for (String removed : files.removed()) {
+            entries.add(new ResultEntry(removed, "removed", -1));
+        }
+        return new OperationReport("Export", result.status().name(), result.message(),
+                result.status() == ExportResult.Status.FAILED, metrics.durationNanos(), entries, metrics);
+    }
+
+    /**
+     * @param title         Name of the import, e.g. "Import" or "Sync"
+     * @param result        Result of the import
+     * @param metrics Phases of the import, with its wall time
+     */
+    @NotNull
+    public static OperationReport of(@NotNull String title, @NotNull ImportResult result,
+                                     @NotNull OperationMetrics.Snapshot metrics) {
+        return new OperationReport(title, result.status().name(), result.message(),
+                result.status() == ImportResult.Status.FAILED, metrics.durationNanos(), result.entries(), metrics);
+    }
+
+    /**
+     * A report of an operation that could not run at all
+     */
+    @NotNull
+    public static OperationReport failed(@NotNull String title, @NotNull String message) {
+        return new OperationReport(title, "FAILED", message, true, 0, List.of(), OperationMetrics.Snapshot.EMPTY);
+    }
+
+    private static void addFiles(List<ResultEntry> entries, Path aiDirectory, List<String> names, String status) {
+        for (String name : names) {
+            long size;
+            try {
+                size = Files.size(aiDirectory.resolve(name));
+            } catch (IOException e) {
+                size = -1;
+            }
+            entries.add(new ResultEntry(name, status, size));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.instructions.NestedAiDirectories;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Locations of the files the plugin works on, relative to a project or repository root
+ *
+ * @param root    Root directory of the project
+ * @param modules Directories below the root that have a nested .ai directory, relative to the root with '/'
+ *                separators and in {@link NestedAiDirectories#PRECEDENCE} order, empty to use only the root's .ai directory
+ */
+public record ProjectLayout(@NotNull Path root, @NotNull List<String> modules) {
+
+    public ProjectLayout {
+        modules = List.copyOf(modules);
+    }
+
+    /**
+     * Creates the layout of a project whose only .ai directory is the one at its root
+     */
+    public ProjectLayout(@NotNull Path root) {
+        this(root, List.of());
+    }
+
+    /**
+     * @return Path to the .idea directory holding the settings files
+     */
+    @NotNull
+    public Path ideaDirectory() {
+        return root.resolve(".idea");
+    }
+
+    /**
+     * @return Path to the .idea/workspace.xml file
+     */
+    @NotNull
+    public Path workspaceFile() {
+        return ideaDirectory().resolve("workspace.xml");
+    }
+
+    /**
+     * @return Path to the .ai directory holding one .md file per instruction
+     */
+    @NotNull
+    public Path aiDirectory() {
+        return root.resolve(NestedAiDirectories.DIRECTORY_NAME);
+    }
+
+    /**
+     * @param module One of the {@link #modules()}, or the empty string for the root
+     * @return Path to the .ai directory of the module
+     */
+    @NotNull
+    public Path aiDirectory(@NotNull String module) {
+        return module.isEmpty() ? aiDirectory() : root.resolve(module).resolve(NestedAiDirectories.DIRECTORY_NAME);
+    }
+}
@@ -0,0 +1,14 @@
+package de.knudev.aiexport.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One file an export or import touched, e.g. a line of the results tool window
+ *
+ * @param name   File name relative to the .ai directory, or the name the file is recorded under, see
+ *               {@link de.knudev.aiexport.instructions.InstructionFile#name()}
+ * @param status What happened to the file, e.g. "added" or "written"
+ * @param size   Size of the file in bytes, -1 if it no longer exists or has no size of its own
+ */
+public record ResultEntry(@NotNull String name, @NotNull String status, long size) {
+}
@@ -0,0 +1,32 @@
+package de.knudev.aiexport.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Progress reporting of an export or import, implemented by the IDE on top of its progress indicator.
+ * Outside the IDE nothing is reported and nothing can be cancelled.
+ */
+public interface TaskProgress {
+    TaskProgress NONE = new TaskProgress() {
+        @Override
+        public void setText(@NotNull String text) {
+        }
+
+        @Override
+        public void setFraction(double fraction) {
+        }
+
+        @Override
+        public void checkCanceled() {
+        }
+    };
+
+    void setText(@NotNull String text);
+
+    void setFraction(double fraction);
+
+    /**
+     * Throws an unchecked exception if the task was cancelled
+     */
+    void checkCanceled();
+}
@@ -0,0 +1,133 @@
+package de.knudev.aiexport.diagnostics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time per {@link Phase} and I/O counters of a single export or import.
+ * Recording is a few additions, so it is always on. Phases may be recorded from several threads
+ * and more than once, e.g. once per settings file.
+ * <p>
+ * Phases are recorded with a start time taken before the work:
+ * <pre>{@code
+ * long start = System.nanoTime();
+ * ...
+ * metrics.record(Phase.XML_PARSE, start);
+ * }</pre>
+ */
+public final class OperationMetrics {
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LongAdder[] nanos = new LongAdder[PHASES.length];
+    private final LongAdder[] counts = new LongAdder[PHASES.length];
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder entriesTouched = new LongAdder();
+
+    /**
+     * Time spent in one phase
+     *
+     * @param nanos Total wall time of the phase
+     * @param count Number of times the phase ran
+     */
+    public record PhaseTime(@NotNull Phase phase, long nanos, long count) {
+    }
+
+    /**
+     * The recorded values at the end of an operation
+     *
+     * @param durationNanos  Wall time of the whole operation
+     * @param phases         Phases that ran, in {@link Phase} order
+     * @param bytesRead      Bytes read from instruction and settings files
+     * @param bytesWritten   Bytes written to instruction and settings files, not counting the in-memory component state
+     * @param entriesTouched Instructions and components that were written
+     */
+    public record Snapshot(long durationNanos, @NotNull List<PhaseTime> phases, long bytesRead, long bytesWritten,
+                           long entriesTouched) {
+        public static final Snapshot EMPTY = new Snapshot(0, List.of(), 0, 0, 0);
+
+        /**
+         * @return Time of the operation not covered by any phase, e.g. waiting for the progress indicator
+         */
+        public long otherNanos() {
+            long phaseNanos = 0;
+            for (PhaseTime phase : phases) {
+                phaseNanos += phase.nanos();
+            }
+            return Math.max(0, durationNanos - phaseNanos);
+        }
+
+        /**
+         * Writes the snapshot as a JSON object
+         */
+        public void writeJson(@NotNull JsonWriter json) {
+            json.beginObject()
+                    .name("durationMicros").value(TimeUnit.NANOSECONDS.toMicros(durationNanos))
+                    .name("bytesRead").value(bytesRead)
+                    .name("bytesWritten").value(bytesWritten)
+                    .name("entriesTouched").value(entriesTouched)
+                    .name("phases").beginObject();
+            for (PhaseTime phase : phases) {
+                json.name(phase.phase().name().toLowerCase(Locale.ROOT)).beginObject()
+                        .name("micros").value(TimeUnit.NANOSECONDS.toMicros(phase.nanos()))
+                        .name("count").value(phase.count())
+                        .endObject();
+            }
+            json.name("other").beginObject()
+                    .name("micros").value(TimeUnit.NANOSECONDS.toMicros(otherNanos()))
+                    .endObject();
+            json.endObject().endObject();
+        }
+    }
+
+    public OperationMetrics() {
+        for (int i = 0; i < PHASES.length; i++) {
+            nanos[i] = new LongAdder();
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds the time since the start to a phase
+     *
+     * @param phase      The phase that ended
+     * @param startNanos {@link System#nanoTime()} when the phase started
+     */
+    public void record(@NotNull Phase phase, long startNanos) {
+        nanos[phase.ordinal()].add(System.nanoTime() - startNanos);
+        counts[phase.ordinal()].increment();
+    }
+
+    public void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void addBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    public void addEntriesTouched(long entries) {
+        entriesTouched.add(entries);
+    }
+
+    /**
+     * @param durationNanos Wall time of the whole operation
+     * @return The values recorded so far
+     */
+    @NotNull
+    public Snapshot snapshot(long durationNanos) {
+        List<PhaseTime> phases = new ArrayList<>();
+        for (Phase phase : PHASES) {
+            long count = counts[phase.ordinal()].sum();
+            if (count > 0) {
+                phases.add(new PhaseTime(phase, nanos[phase.ordinal()].sum(), count));
+            }
+        }
+        return new Snapshot(durationNanos, List.copyOf(phases), bytesRead.sum(), bytesWritten.sum(), entriesTouched.sum());
+    }
+}
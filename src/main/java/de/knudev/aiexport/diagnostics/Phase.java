@@ -0,0 +1,42 @@
+package de.knudev.aiexport.diagnostics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Steps of an export or import whose time is recorded in {@link OperationMetrics}
+ */
+public enum Phase {
+    /** Upstream check and import manifest comparison */
+    CHANGE_CHECK("Change check"),
+    /** Listing the .md files of the .ai directory */
+    FILE_LISTING("File listing"),
+    /** Reading instruction files, their headers and includes */
+    MARKDOWN_PARSING("Markdown parsing"),
+    /** Reading the instructions component of workspace.xml */
+    XML_PARSE("XML parse"),
+    /** Scanning settings files for the byte ranges of components */
+    COMPONENT_LOOKUP("Component lookup"),
+    /** Applying instructions to the parsed component */
+    ENTRY_UPDATES("Entry updates"),
+    /** Turning instructions into component XML or .ai file content */
+    SERIALIZATION("Serialization"),
+    /** Writing workspace.xml, .ai files or the in-memory component state */
+    FILE_WRITE("File write"),
+    /** Exporting or importing further settings components, see {@link de.knudev.aiexport.components.ComponentHandler} */
+    SETTINGS_COMPONENTS("Settings components"),
+    /** Making the IDE see the written files */
+    VFS_REFRESH("VFS refresh"),
+    /** Recording and restoring snapshots of the instruction history */
+    HISTORY("History");
+
+    private final String displayName;
+
+    Phase(String displayName) {
+        this.displayName = displayName;
+    }
+
+    @NotNull
+    public String getDisplayName() {
+        return displayName;
+    }
+}
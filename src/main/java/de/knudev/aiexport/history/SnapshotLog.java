@@ -0,0 +1,681 @@
+package de.knudev.aiexport.history;
+
+import de.knudev.aiexport.workspace.WorkspaceFileWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Local history of the instruction sets of a project, one snapshot for every import, sync, export or restore
+ * that saw a different set than the snapshot before.
+ * <p>
+ * Snapshots are appended to {@value #LOG_FILE} as the entries that changed since the previous snapshot.
+ * Every {@value #CHECKPOINT_INTERVAL}th snapshot, or once the deltas since the last checkpoint outgrow it,
+ * the whole set is written instead, so restoring reads one checkpoint and a bounded number of deltas:
+ * <pre>
+ * length:int crc32:int id:long timestamp:long trigger:byte checkpoint:byte instructionCount:int changeCount:int entryCount:int
+ * entryCount * ( idLength:int id:UTF-8 contentLength:int content:UTF-8 ), contentLength -1 removes the entry
+ * </pre>
+ * {@value #INDEX_FILE} holds a fixed-size record per snapshot in id and time order, with the offsets of the
+ * snapshot and its checkpoint, so snapshots are listed and found by time without reading the log. It is rebuilt
+ * from the log if the two disagree, e.g. after a crash, and a torn record at the end of the log is dropped.
+ * <p>
+ * Compaction keeps the newest {@value #KEEP_ALL} snapshots, the last snapshot of every earlier day of the last
+ * {@value #DAILY_DAYS} days and the last one of every week before, rewriting the deltas between the kept ones.
+ * It runs by itself once a good part of the snapshots can be dropped, so its cost is spread over many snapshots.
+ */
+public final class SnapshotLog {
+    public static final String LOG_FILE = "snapshots.log";
+    public static final String INDEX_FILE = "snapshots.idx";
+
+    private static final int CHECKPOINT_INTERVAL = 64;
+    private static final int KEEP_ALL = 100;
+    private static final int DAILY_DAYS = 30;
+    private static final int COMPACT_THRESHOLD = 50;
+    private static final int INDEX_ENTRY_BYTES = 48;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = Integer.MAX_VALUE - 8;
+
+    private final Path logFile;
+    private final Path indexFile;
+    private final Clock clock;
+
+    // Guarded by this
+    private final List<IndexEntry> entries = new ArrayList<>();
+    private long logSize;
+    @Nullable
+    private Map<String, String> head;
+
+    /**
+     * What took a snapshot
+     */
+    public enum Trigger {
+        IMPORT("Import"),
+        SYNC("Sync"),
+        EXPORT("Export"),
+        /**
+         * Instructions changed in the IDE, recorded before an import or restore overwrites them
+         */
+        IDE_CHANGES("IDE changes"),
+        RESTORE("Restore");
+
+        private final String displayName;
+
+        Trigger(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @NotNull
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * A recorded instruction set
+     *
+     * @param id               Number of the snapshot, increasing with time and kept by compaction
+     * @param timestamp        When the snapshot was taken, in milliseconds since the epoch
+     * @param instructionCount Number of instructions in the set
+     * @param changeCount      Number of instructions added, changed or removed since the previous snapshot
+     */
+    public record Snapshot(long id, long timestamp, @NotNull Trigger trigger, int instructionCount, int changeCount) {
+    }
+
+    /**
+     * @param offset     Position of the record in the log
+     * @param checkpoint Position of the full snapshot the record's deltas start from
+     */
+    private record IndexEntry(Snapshot snapshot, long offset, long checkpoint) {
+    }
+
+    private SnapshotLog(Path directory, Clock clock) {
+        this.logFile = directory.resolve(LOG_FILE);
+        this.indexFile = directory.resolve(INDEX_FILE);
+        this.clock = clock;
+    }
+
+    /**
+     * Opens the history kept in a directory, creating it if needed
+     *
+     * @param directory Directory of the log and index files
+     * @return The opened history
+     */
+    @NotNull
+    public static SnapshotLog open(@NotNull Path directory) throws IOException {
+        return open(directory, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param directory Directory of the log and index files
+     * @param clock     Time source for new snapshots, its zone decides where a day ends for compaction
+     * @return The opened history
+     */
+    @NotNull
+    public static SnapshotLog open(@NotNull Path directory, @NotNull Clock clock) throws IOException {
+        Files.createDirectories(directory);
+        SnapshotLog log = new SnapshotLog(directory, clock);
+        synchronized (log) {
+            log.load();
+        }
+        return log;
+    }
+
+    /**
+     * @return All snapshots, oldest first
+     */
+    @NotNull
+    public synchronized List<Snapshot> snapshots() {
+        List<Snapshot> snapshots = new ArrayList<>(entries.size());
+        entries.forEach(entry -> snapshots.add(entry.snapshot()));
+        return snapshots;
+    }
+
+    /**
+     * @return The newest snapshot, or null if there is none
+     */
+    @Nullable
+    public synchronized Snapshot latest() {
+        return entries.isEmpty() ? null : entries.get(entries.size() - 1).snapshot();
+    }
+
+    /**
+     * @param id Id of a snapshot
+     * @return The snapshot, or null if there is none with this id, e.g. because compaction dropped it
+     */
+    @Nullable
+    public synchronized Snapshot get(long id) {
+        int index = indexOf(id);
+        return index >= 0 ? entries.get(index).snapshot() : null;
+    }
+
+    /**
+     * @param timestamp Point in time in milliseconds since the epoch
+     * @return The last snapshot taken at or before that time, or null if all are newer
+     */
+    @Nullable
+    public synchronized Snapshot at(long timestamp) {
+        int low = 0;
+        int high = entries.size() - 1;
+        Snapshot found = null;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Snapshot snapshot = entries.get(middle).snapshot();
+            if (snapshot.timestamp() <= timestamp) {
+                found = snapshot;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return Size of the log and index files in bytes
+     */
+    public synchronized long sizeOnDisk() {
+        return logSize + (long) entries.size() * INDEX_ENTRY_BYTES;
+    }
+
+    /**
+     * Rebuilds the instruction set of a snapshot from its checkpoint and the deltas after it
+     *
+     * @param id Id of the snapshot
+     * @return Map of action IDs to instruction content
+     * @throws IOException if there is no such snapshot or the log is damaged
+     */
+    @NotNull
+    public synchronized Map<String, String> restore(long id) throws IOException {
+        int index = indexOf(id);
+        if (index < 0) {
+            throw new IOException("No snapshot #" + id + " in the history");
+        }
+        IndexEntry target = entries.get(index);
+        Map<String, String> state = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            channel.position(target.checkpoint());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+            long offset = target.checkpoint();
+            while (offset <= target.offset()) {
+                Record record = readRecord(in);
+                if (record == null) {
+                    throw new IOException("History log ends before snapshot #" + id);
+                }
+                record.applyTo(state);
+                offset += HEADER_BYTES + record.length();
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Records an instruction set, unless it is the same as the newest snapshot
+     *
+     * @param trigger      What took the snapshot
+     * @param instructions Map of action IDs to instruction content
+     * @return The new snapshot, or null if nothing changed
+     */
+    @Nullable
+    public synchronized Snapshot record(@NotNull Trigger trigger, @NotNull Map<String, String> instructions) throws IOException {
+        Map<String, String> previous = head();
+        Map<String, String> changes = diff(previous, instructions);
+        if (changes.isEmpty()) {
+            return null;
+        }
+
+        IndexEntry last = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+        long id = last != null ? last.snapshot().id() + 1 : 1;
+        // Snapshots stay in time order for the index even if the clock goes back
+        long timestamp = Math.max(clock.millis(), last != null ? last.snapshot().timestamp() : 0);
+        Snapshot snapshot = new Snapshot(id, timestamp, trigger, instructions.size(), changes.size());
+
+        boolean checkpoint = needsCheckpoint(changes);
+        byte[] record = encode(snapshot, checkpoint, checkpoint ? instructions : changes);
+        long offset = logSize;
+        IndexEntry entry = new IndexEntry(snapshot, offset, checkpoint ? offset : last.checkpoint());
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.position(offset);
+            writeFully(channel, ByteBuffer.wrap(record));
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.position((long) entries.size() * INDEX_ENTRY_BYTES);
+            writeFully(channel, encodeIndexEntry(entry));
+        }
+        entries.add(entry);
+        logSize += record.length;
+        head = new HashMap<>(instructions);
+
+        if (thinnableCount() >= Math.max(COMPACT_THRESHOLD, entries.size() / 2)) {
+            compact();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops all but the newest {@value #KEEP_ALL} snapshots and the last snapshot of every earlier day or week,
+     * storing the kept ones as deltas against each other
+     */
+    public synchronized void compact() throws IOException {
+        boolean[] keep = selectKept();
+        // Named randomly, so processes sharing the history directory never write into each other's temporary file
+        Path tempLog = WorkspaceFileWriter.createTempFile(logFile, LOG_FILE);
+        List<IndexEntry> compacted = new ArrayList<>();
+        long offset = 0;
+        try (FileChannel source = FileChannel.open(logFile, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(tempLog, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(source), 64 * 1024));
+            Map<String, String> state = new LinkedHashMap<>();
+            Map<String, String> kept = Map.of();
+            long checkpointOffset = 0;
+            long checkpointBytes = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                Record record = readRecord(in);
+                if (record == null) {
+                    throw new IOException("History log ends before snapshot #" + entries.get(i).snapshot().id());
+                }
+                record.applyTo(state);
+                if (!keep[i]) {
+                    continue;
+                }
+
+                Map<String, String> changes = diff(kept, state);
+                boolean checkpoint = compacted.isEmpty() || compacted.size() % CHECKPOINT_INTERVAL == 0
+                        || offset - checkpointOffset > 2 * checkpointBytes;
+                Snapshot original = entries.get(i).snapshot();
+                Snapshot snapshot = new Snapshot(original.id(), original.timestamp(), original.trigger(),
+                        state.size(), compacted.isEmpty() ? state.size() : changes.size());
+                byte[] bytes = encode(snapshot, checkpoint, checkpoint ? state : changes);
+                writeFully(target, ByteBuffer.wrap(bytes));
+                if (checkpoint) {
+                    checkpointOffset = offset;
+                    checkpointBytes = bytes.length;
+                }
+                compacted.add(new IndexEntry(snapshot, offset, checkpointOffset));
+                offset += bytes.length;
+                kept = new HashMap<>(state);
+            }
+            target.force(true);
+            WorkspaceFileWriter.moveAtomically(tempLog, logFile);
+        } finally {
+            Files.deleteIfExists(tempLog);
+        }
+
+        entries.clear();
+        entries.addAll(compacted);
+        logSize = offset;
+        writeIndex();
+    }
+
+    private Map<String, String> head() throws IOException {
+        if (head == null) {
+            head = entries.isEmpty() ? Map.of() : restore(entries.get(entries.size() - 1).snapshot().id());
+        }
+        return head;
+    }
+
+    /**
+     * A checkpoint starts a new chain every {@value #CHECKPOINT_INTERVAL} snapshots, or when the chain
+     * would be more than twice as large as the checkpoint it starts from
+     */
+    private boolean needsCheckpoint(Map<String, String> changes) {
+        if (entries.isEmpty()) {
+            return true;
+        }
+        IndexEntry last = entries.get(entries.size() - 1);
+        int chain = 0;
+        int checkpointIndex = entries.size() - 1;
+        while (checkpointIndex > 0 && entries.get(checkpointIndex).offset() != last.checkpoint()) {
+            checkpointIndex--;
+            chain++;
+        }
+        if (chain + 1 >= CHECKPOINT_INTERVAL) {
+            return true;
+        }
+        long checkpointEnd = checkpointIndex + 1 < entries.size() ? entries.get(checkpointIndex + 1).offset() : logSize;
+        long checkpointBytes = checkpointEnd - last.checkpoint();
+        long chainBytes = logSize - checkpointEnd + estimateSize(changes);
+        return chainBytes > 2 * checkpointBytes;
+    }
+
+    /**
+     * @return Newest {@value #KEEP_ALL} snapshots and the last snapshot of every earlier day, or week for old ones
+     */
+    private boolean[] selectKept() {
+        boolean[] keep = new boolean[entries.size()];
+        LocalDate today = LocalDate.now(clock);
+        for (int i = 0; i < entries.size(); i++) {
+            keep[i] = i >= entries.size() - KEEP_ALL || i == entries.size() - 1
+                    || period(entries.get(i), today) != period(entries.get(i + 1), today);
+        }
+        return keep;
+    }
+
+    private int thinnableCount() {
+        int count = 0;
+        for (boolean kept : selectKept()) {
+            if (!kept) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The day of the snapshot in the last {@value #DAILY_DAYS} days, otherwise its week, as a day number
+     */
+    private long period(IndexEntry entry, LocalDate today) {
+        long day = LocalDate.ofInstant(Instant.ofEpochMilli(entry.snapshot().timestamp()), clock.getZone()).toEpochDay();
+        // Week numbers are negative, so they never equal a day
+        return day >= today.toEpochDay() - DAILY_DAYS ? day : -1 - Math.floorDiv(day, 7);
+    }
+
+    private int indexOf(long id) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = entries.get(middle).snapshot().id();
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Entries that were added or changed, and removed entries mapped to null
+     */
+    private static Map<String, String> diff(Map<String, String> previous, Map<String, String> current) {
+        Map<String, String> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String actionId : previous.keySet()) {
+            if (!current.containsKey(actionId)) {
+                changes.put(actionId, null);
+            }
+        }
+        return changes;
+    }
+
+    private static long estimateSize(Map<String, String> changes) {
+        long size = 0;
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            size += 8 + change.getKey().length() + (change.getValue() != null ? change.getValue().length() : 0);
+        }
+        return size;
+    }
+
+    // Loading and rebuilding the index
+
+    private void load() throws IOException {
+        entries.clear();
+        head = null;
+        logSize = Files.isRegularFile(logFile) ? Files.size(logFile) : 0;
+        if (logSize == 0) {
+            Files.deleteIfExists(indexFile);
+            return;
+        }
+        if (!loadIndex()) {
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * @return true if the index covers exactly the records of the log
+     */
+    private boolean loadIndex() throws IOException {
+        if (!Files.isRegularFile(indexFile) || Files.size(indexFile) % INDEX_ENTRY_BYTES != 0) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        Trigger[] triggers = Trigger.values();
+        while (buffer.remaining() >= INDEX_ENTRY_BYTES) {
+            long id = buffer.getLong();
+            long timestamp = buffer.getLong();
+            long offset = buffer.getLong();
+            long checkpoint = buffer.getLong();
+            int instructionCount = buffer.getInt();
+            int changeCount = buffer.getInt();
+            int trigger = buffer.get();
+            buffer.position(buffer.position() + 7);
+            if (trigger < 0 || trigger >= triggers.length || offset < 0 || offset >= logSize || checkpoint > offset) {
+                entries.clear();
+                return false;
+            }
+            entries.add(new IndexEntry(new Snapshot(id, timestamp, triggers[trigger], instructionCount, changeCount),
+                    offset, checkpoint));
+        }
+        if (entries.isEmpty()) {
+            return false;
+        }
+
+        // The last record has to end exactly where the log ends
+        long lastOffset = entries.get(entries.size() - 1).offset();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            if (channel.read(length, lastOffset) == 4 && lastOffset + HEADER_BYTES + length.getInt(0) == logSize) {
+                return true;
+            }
+        }
+        entries.clear();
+        return false;
+    }
+
+    /**
+     * Scans the log, drops a torn or damaged record at its end and writes a new index
+     */
+    private void rebuildIndex() throws IOException {
+        long offset = 0;
+        long checkpoint = 0;
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+            while (offset < logSize) {
+                Record record;
+                try {
+                    record = readRecord(in);
+                } catch (IOException e) {
+                    record = null;
+                }
+                if (record == null) {
+                    break;
+                }
+                if (record.checkpoint()) {
+                    checkpoint = offset;
+                } else if (entries.isEmpty()) {
+                    // A delta without a checkpoint before it cannot be restored
+                    break;
+                }
+                entries.add(new IndexEntry(record.snapshot(), offset, checkpoint));
+                offset += HEADER_BYTES + record.length();
+            }
+        }
+        if (offset < logSize) {
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+            logSize = offset;
+        }
+        writeIndex();
+    }
+
+    private void writeIndex() throws IOException {
+        Path tempIndex = WorkspaceFileWriter.createTempFile(indexFile, INDEX_FILE);
+        try {
+            try (FileChannel channel = FileChannel.open(tempIndex, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (IndexEntry entry : entries) {
+                    writeFully(channel, encodeIndexEntry(entry));
+                }
+            }
+            WorkspaceFileWriter.moveAtomically(tempIndex, indexFile);
+        } finally {
+            Files.deleteIfExists(tempIndex);
+        }
+    }
+
+    private static ByteBuffer encodeIndexEntry(IndexEntry entry) {
+        Snapshot snapshot = entry.snapshot();
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        buffer.putLong(snapshot.id()).putLong(snapshot.timestamp()).putLong(entry.offset()).putLong(entry.checkpoint())
+                .putInt(snapshot.instructionCount()).putInt(snapshot.changeCount()).put((byte) snapshot.trigger().ordinal());
+        return buffer.position(0);
+    }
+
+    // Log records
+
+    /**
+     * @param length  Length of the record after its header
+     * @param changes Entries of the record, null for removed ones
+     */
+    private record Record(Snapshot snapshot, boolean checkpoint, int length, Map<String, String> changes) {
+        void applyTo(Map<String, String> state) {
+            if (checkpoint) {
+                state.clear();
+            }
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                if (change.getValue() != null) {
+                    state.put(change.getKey(), change.getValue());
+                } else {
+                    state.remove(change.getKey());
+                }
+            }
+        }
+    }
+
+    private static byte[] encode(Snapshot snapshot, boolean checkpoint, Map<String, String> changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeLong(snapshot.id());
+        out.writeLong(snapshot.timestamp());
+        out.writeByte(snapshot.trigger().ordinal());
+        out.writeBoolean(checkpoint);
+        out.writeInt(snapshot.instructionCount());
+        out.writeInt(snapshot.changeCount());
+        out.writeInt(changes.size());
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            writeString(out, change.getKey());
+            if (change.getValue() != null) {
+                writeString(out, change.getValue());
+            } else {
+                out.writeInt(-1);
+            }
+        }
+        out.flush();
+        if (bytes.size() - HEADER_BYTES > MAX_RECORD_BYTES) {
+            throw new IOException("Snapshot #" + snapshot.id() + " is too large for the history");
+        }
+
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_BYTES, record.length - HEADER_BYTES);
+        ByteBuffer.wrap(record).putInt(record.length - HEADER_BYTES).putInt((int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * @return The next record, or null at the end of the log
+     * @throws IOException if the record is torn or damaged
+     */
+    @Nullable
+    private static Record readRecord(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        int expectedCrc = in.readInt();
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("Damaged history record");
+        }
+        byte[] body = in.readNBytes(length);
+        if (body.length != length) {
+            throw new IOException("Truncated history record");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Damaged history record");
+        }
+
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+        long id = record.readLong();
+        long timestamp = record.readLong();
+        int trigger = record.readByte();
+        boolean checkpoint = record.readBoolean();
+        int instructionCount = record.readInt();
+        int changeCount = record.readInt();
+        int entryCount = record.readInt();
+        Trigger[] triggers = Trigger.values();
+        if (trigger < 0 || trigger >= triggers.length || entryCount < 0) {
+            throw new IOException("Damaged history record");
+        }
+        Map<String, String> changes = new LinkedHashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            String actionId = readString(record);
+            if (actionId == null) {
+                throw new IOException("Damaged history record");
+            }
+            changes.put(actionId, readString(record));
+        }
+        return new Record(new Snapshot(id, timestamp, triggers[trigger], instructionCount, changeCount),
+                checkpoint, length, changes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new IOException("Damaged history record");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package de.knudev.aiexport.instructions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Instructions of the .ai directory stored once per distinct body, for libraries where many action IDs share
+ * the same text.
+ * <p>
+ * Every body is a file {@code bodies/<sha256>.md} named after the SHA-256 of its UTF-8 content, and
+ * {@value #INDEX_FILE} maps the action IDs to their bodies, one line each:
+ * <pre>
+ * actionId sha256
+ * </pre>
+ * Bodies are immutable: a body with the same name already has the same content, so export never reads or
+ * rewrites it, and import verifies the hash of every body it reads. Bodies no longer in the index are deleted.
+ */
+public final class ContentAddressedStore {
+    public static final String INDEX_FILE = "instructions.index";
+    public static final String BODIES_DIRECTORY = "bodies";
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * A line of the index
+     *
+     * @param actionId The action ID
+     * @param hash     SHA-256 of the body
+     */
+    public record Entry(@NotNull String actionId, @NotNull String hash) {
+    }
+
+    private ContentAddressedStore() {
+    }
+
+    /**
+     * @param aiDirectory Path to the .ai directory
+     * @param hash        SHA-256 of a body
+     * @return Path to the body file
+     */
+    @NotNull
+    public static Path bodyPath(@NotNull Path aiDirectory, @NotNull String hash) {
+        return aiDirectory.resolve(BODIES_DIRECTORY).resolve(hash + ".md");
+    }
+
+    /**
+     * @param actionId The action ID of an index entry
+     * @return Name the entry is recorded under in the import manifest
+     */
+    @NotNull
+    public static String entryName(@NotNull String actionId) {
+        return INDEX_FILE + "#" + actionId;
+    }
+
+    /**
+     * @param indexFile Path to the index file
+     * @return The entries in index order
+     */
+    @NotNull
+    public static List<Entry> readIndex(@NotNull Path indexFile) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.strip();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                int separator = trimmed.lastIndexOf(' ');
+                String hash = separator > 0 ? trimmed.substring(separator + 1) : "";
+                if (!HASH_PATTERN.matcher(hash).matches()) {
+                    throw new IOException("Invalid line in " + indexFile + ": " + line);
+                }
+                entries.add(new Entry(trimmed.substring(0, separator).strip(), hash));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads a body and checks it against its name
+     *
+     * @param aiDirectory Path to the .ai directory
+     * @param hash        SHA-256 of the body
+     * @return The body content
+     * @throws IOException if the body is missing or was edited by hand
+     */
+    @NotNull
+    public static String readBody(@NotNull Path aiDirectory, @NotNull String hash) throws IOException {
+        Path body = bodyPath(aiDirectory, hash);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(body);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Instruction body " + BODIES_DIRECTORY + "/" + hash + ".md is missing, export again to restore it");
+        }
+        if (!hash.equals(ContentHash.sha256(bytes, 0, bytes.length))) {
+            throw new IOException("Instruction body " + BODIES_DIRECTORY + "/" + hash
+                    + ".md does not match its hash, bodies must not be edited, edit the instruction and export again");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes every distinct body that is not stored yet and the index, then deletes bodies the index no longer uses
+     *
+     * @param aiDirectory     Path to the .ai directory
+     * @param instructionsMap Map of action IDs to instruction content, indexed in map order
+     * @return The index and body files that were added, changed, left alone and removed, relative to the .ai directory
+     */
+    @NotNull
+    public static InstructionFileWriter.SyncResult write(@NotNull Path aiDirectory, @NotNull Map<String, String> instructionsMap)
+            throws IOException {
+        // Equal bodies are usually already the same instance, so most lookups end at the identity check
+        Map<String, String> hashes = new HashMap<>();
+        Map<String, Utf8Content> bodies = new LinkedHashMap<>();
+        StringBuilder index = new StringBuilder();
+        for (Map.Entry<String, String> instruction : instructionsMap.entrySet()) {
+            String hash = hashes.get(instruction.getValue());
+            if (hash == null) {
+                Utf8Content content = Utf8Content.of(instruction.getValue());
+                hash = content.sha256();
+                hashes.put(instruction.getValue(), hash);
+                bodies.putIfAbsent(hash, content);
+            }
+            index.append(instruction.getKey()).append(' ').append(hash).append('\n');
+        }
+
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        List<String> unchanged = new ArrayList<>();
+        Files.createDirectories(aiDirectory.resolve(BODIES_DIRECTORY));
+        for (Map.Entry<String, Utf8Content> body : bodies.entrySet()) {
+            Path bodyFile = bodyPath(aiDirectory, body.getKey());
+            String name = BODIES_DIRECTORY + "/" + bodyFile.getFileName();
+            // The name is the hash of the content, so a body of the right size needs no comparison
+            if (Files.isRegularFile(bodyFile) && Files.size(bodyFile) == body.getValue().byteLength()) {
+                unchanged.add(name);
+                continue;
+            }
+            switch (InstructionFileWriter.writeFile(bodyFile, body.getValue())) {
+                case ADDED -> added.add(name);
+                case CHANGED -> changed.add(name);
+                case UNCHANGED -> unchanged.add(name);
+            }
+        }
+
+        switch (InstructionFileWriter.writeFile(aiDirectory.resolve(INDEX_FILE), index.toString().getBytes(StandardCharsets.UTF_8))) {
+            case ADDED -> added.add(INDEX_FILE);
+            case CHANGED -> changed.add(INDEX_FILE);
+            case UNCHANGED -> unchanged.add(INDEX_FILE);
+        }
+
+        List<String> removed = removeUnusedBodies(aiDirectory, bodies.keySet());
+        return new InstructionFileWriter.SyncResult(added, changed, unchanged, removed);
+    }
+
+    private static List<String> removeUnusedBodies(Path aiDirectory, Set<String> usedHashes) throws IOException {
+        List<Path> unused;
+        try (Stream<Path> files = Files.list(aiDirectory.resolve(BODIES_DIRECTORY))) {
+            unused = files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.endsWith(".md") && !usedHashes.contains(name.substring(0, name.length() - ".md".length()));
+            }).sorted().toList();
+        }
+
+        List<String> removed = new ArrayList<>(unused.size());
+        for (Path file : unused) {
+            Files.deleteIfExists(file);
+            removed.add(BODIES_DIRECTORY + "/" + file.getFileName());
+        }
+        return removed;
+    }
+}
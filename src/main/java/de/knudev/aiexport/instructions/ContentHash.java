@@ -0,0 +1,74 @@
+package de.knudev.aiexport.instructions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 content hashes as lowercase hex strings
+ */
+public final class ContentHash {
+
+    private ContentHash() {
+    }
+
+    @NotNull
+    public static String sha256(byte @NotNull [] bytes, int offset, int length) {
+        MessageDigest digest = newDigest();
+        digest.update(bytes, offset, length);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hashes a file without loading it into memory
+     *
+     * @param file Path to the file
+     * @return The hash of the file content
+     */
+    @NotNull
+    public static String sha256(@NotNull Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return sha256(in);
+        }
+    }
+
+    /**
+     * Hashes a stream through a fixed-size buffer
+     *
+     * @param in The content, not closed by this method
+     * @return The hash of the remaining content
+     */
+    @NotNull
+    public static String sha256(@NotNull InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    @NotNull
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @NotNull
+    public static String toHex(byte @NotNull [] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
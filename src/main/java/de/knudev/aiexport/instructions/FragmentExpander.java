@@ -0,0 +1,226 @@
+package de.knudev.aiexport.instructions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Expands {@code @include <fragment>.md} lines of instructions with shared fragments from .ai/fragments.
+ * <p>
+ * Fragments may include other fragments. Every expanded fragment is memoized together with the fragments it
+ * depends on, and {@link #refresh} drops only the changed fragments and those including them, so expanding
+ * a library of instructions reads every fragment once and unchanged fragments never again.
+ */
+public final class FragmentExpander {
+    /**
+     * Directory of the fragments inside the .ai directory
+     */
+    public static final String DIRECTORY = "fragments";
+
+    private static final Pattern INCLUDE_PATTERN =
+            Pattern.compile("^[ \\t]*@include[ \\t]+(\\S+)[ \\t]*$", Pattern.MULTILINE);
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9_.-]*(/[A-Za-z0-9_-][A-Za-z0-9_.-]*)*\\.md");
+    private static final int MAX_DEPTH = 32;
+
+    // Guarded by this
+    private final Map<Path, Fragment> fragments = new HashMap<>();
+    // Fragment file to the fragments including it, directly or not
+    private final Map<Path, Set<Path>> dependents = new HashMap<>();
+
+    /**
+     * Content with all includes replaced
+     *
+     * @param content   The expanded content
+     * @param fragments Names of all fragments the content depends on, directly or not
+     */
+    public record Expansion(@NotNull String content, @NotNull Set<String> fragments) {
+    }
+
+    /**
+     * @param includes Names of all fragments the expanded text depends on
+     */
+    private record Fragment(long size, long lastModified, String hash, String expanded, Set<String> includes) {
+    }
+
+    /**
+     * @param content Instruction content
+     * @return true if the content has at least one include line
+     */
+    public static boolean hasIncludes(@NotNull String content) {
+        return content.contains("@include") && INCLUDE_PATTERN.matcher(content).find();
+    }
+
+    /**
+     * Drops the memoized fragments that changed on disk since they were read, and everything including them.
+     * Must be called before expanding, memoized fragments are trusted until the next refresh.
+     *
+     * @param fragmentsDirectory The fragments directory
+     */
+    public synchronized void refresh(@NotNull Path fragmentsDirectory) throws IOException {
+        Set<Path> changed = new HashSet<>();
+        for (Map.Entry<Path, Fragment> entry : fragments.entrySet()) {
+            Path file = entry.getKey();
+            if (file.startsWith(fragmentsDirectory) && !isUnchanged(file, entry.getValue())) {
+                changed.add(file);
+            }
+        }
+        changed.forEach(this::invalidate);
+    }
+
+    /**
+     * Drops a fragment and all fragments including it
+     *
+     * @param file Path to the fragment file
+     */
+    public synchronized void invalidate(@NotNull Path file) {
+        fragments.remove(file);
+        Set<Path> including = dependents.remove(file);
+        if (including != null) {
+            including.forEach(fragments::remove);
+        }
+    }
+
+    /**
+     * Replaces every include line of the content with the expanded fragment
+     *
+     * @param fragmentsDirectory The fragments directory
+     * @param content            Instruction content
+     * @param source             Name of the file the content is from, for error messages
+     * @return The expanded content and the fragments it depends on
+     * @throws IOException if a fragment is missing, cannot be read or includes itself
+     */
+    @NotNull
+    public synchronized Expansion expand(@NotNull Path fragmentsDirectory, @NotNull String content, @NotNull String source)
+            throws IOException {
+        if (!hasIncludes(content)) {
+            return new Expansion(content, Set.of());
+        }
+        Set<String> included = new TreeSet<>();
+        String expanded = expandText(fragmentsDirectory, content, source, new ArrayDeque<>(), included);
+        return new Expansion(expanded, Collections.unmodifiableSet(included));
+    }
+
+    /**
+     * Describes a fragment that was read by an earlier {@link #expand}, for the import manifest
+     *
+     * @param fragmentsDirectory The fragments directory
+     * @param name               Name of the fragment
+     * @param recordName         Name to record the fragment under
+     * @return The fragment's size, modification time and hash, or null if it is not memoized
+     */
+    @Nullable
+    public synchronized InstructionFile describe(@NotNull Path fragmentsDirectory, @NotNull String name, @NotNull String recordName) {
+        Path file = fragmentsDirectory.resolve(name);
+        Fragment fragment = fragments.get(file);
+        return fragment != null
+                ? new InstructionFile(file, recordName, null, null, fragment.size(), fragment.lastModified(), fragment.hash())
+                : null;
+    }
+
+    /**
+     * Drops everything
+     */
+    public synchronized void clear() {
+        fragments.clear();
+        dependents.clear();
+    }
+
+    /**
+     * @return Approximate heap size of the memoized fragments in bytes
+     */
+    public synchronized long estimatedSize() {
+        long size = 0;
+        for (Fragment fragment : fragments.values()) {
+            size += 128 + 2L * fragment.expanded().length();
+        }
+        return size;
+    }
+
+    /**
+     * @param source Name of the instruction or fragment the text is from
+     * @param stack  Fragments being expanded, the innermost last
+     */
+    private String expandText(Path fragmentsDirectory, String text, String source, Deque<String> stack, Set<String> included)
+            throws IOException {
+        Matcher matcher = INCLUDE_PATTERN.matcher(text);
+        StringBuilder expanded = new StringBuilder(text.length());
+        int position = 0;
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            Fragment fragment = fragment(fragmentsDirectory, name, source, stack);
+            expanded.append(text, position, matcher.start()).append(fragment.expanded());
+            position = matcher.end();
+            included.add(name);
+            included.addAll(fragment.includes());
+        }
+        return expanded.append(text, position, text.length()).toString();
+    }
+
+    private Fragment fragment(Path fragmentsDirectory, String name, String includedBy, Deque<String> stack) throws IOException {
+        if (stack.contains(name)) {
+            throw new IOException("Include cycle: " + String.join(" -> ", stack) + " -> " + name);
+        }
+        if (stack.size() >= MAX_DEPTH) {
+            throw new IOException("Includes are nested deeper than " + MAX_DEPTH + " levels: " + String.join(" -> ", stack));
+        }
+        Path file = resolve(fragmentsDirectory, name, includedBy);
+        Fragment memoized = fragments.get(file);
+        if (memoized != null) {
+            return memoized;
+        }
+
+        BasicFileAttributes attributes;
+        byte[] bytes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            throw new IOException(includedBy + " includes missing fragment " + name);
+        }
+
+        Set<String> includes = new TreeSet<>();
+        stack.addLast(name);
+        String expanded = expandText(fragmentsDirectory, new String(bytes, StandardCharsets.UTF_8).strip(), name, stack, includes);
+        stack.removeLast();
+
+        Fragment fragment = new Fragment(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                ContentHash.sha256(bytes, 0, bytes.length), expanded, Collections.unmodifiableSet(includes));
+        fragments.put(file, fragment);
+        for (String include : includes) {
+            dependents.computeIfAbsent(fragmentsDirectory.resolve(include), key -> new HashSet<>()).add(file);
+        }
+        return fragment;
+    }
+
+    private static Path resolve(Path fragmentsDirectory, String name, String includedBy) throws IOException {
+        if (!NAME_PATTERN.matcher(name).matches() || name.contains("..")) {
+            throw new IOException(includedBy + " includes invalid fragment name " + name + ", expected a .md file in .ai/" + DIRECTORY);
+        }
+        return fragmentsDirectory.resolve(name);
+    }
+
+    private static boolean isUnchanged(Path file, Fragment fragment) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() == fragment.size() && attributes.lastModifiedTime().toMillis() == fragment.lastModified();
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+}
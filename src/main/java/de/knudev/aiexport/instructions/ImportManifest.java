@@ -0,0 +1,428 @@
+package de.knudev.aiexport.instructions;
+
+import de.knudev.aiexport.workspace.ComponentRange;
+import de.knudev.aiexport.workspace.WorkspaceComponentLocator;
+import de.knudev.aiexport.workspace.WorkspaceFileWriter;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Records what the last import saw, so an import of an unchanged project can be skipped.
+ * For every .ai/*.md file, the instruction bundle and the index the size, modification time and content hash are stored,
+ * as well as the length and hash of every bundle entry and the state of every indexed body, plus the size and
+ * modification time of workspace.xml and the hash of the instructions component that was written into it.
+ * Unchanged files are recognized by their attributes alone; content is only hashed when those differ.
+ * Instructions with includes also record the fragments they depend on, and every such fragment is recorded itself,
+ * so a changed fragment only affects the instructions that include it.
+ * Files of nested .ai directories are recorded like those of the root, under {@link NestedAiDirectories#recordPrefix}.
+ */
+public final class ImportManifest implements InstructionFileLoader.KnownFiles {
+    private static final int VERSION = 2;
+    private static final String VERSION_KEY = "version";
+    private static final String WORKSPACE_KEY = "workspace";
+    private static final String FILE_KEY_PREFIX = "file.";
+    /**
+     * Prefix of the names upstream files are recorded under, they are not files of the .ai directory
+     */
+    public static final String UPSTREAM_PREFIX = "upstream#";
+    /**
+     * Prefix of the names include fragments are recorded under
+     */
+    public static final String FRAGMENT_PREFIX = "fragment#";
+
+    private final Map<String, FileState> files;
+    @Nullable
+    private final FileState workspace;
+
+    private ImportManifest(Map<String, FileState> files, @Nullable FileState workspace) {
+        this.files = files;
+        this.workspace = workspace;
+    }
+
+    /**
+     * Loads a manifest, a missing or unreadable manifest is treated as empty
+     *
+     * @param manifestFile Path to the manifest file
+     * @return The loaded manifest
+     */
+    @NotNull
+    public static ImportManifest load(@NotNull Path manifestFile) {
+        Map<String, FileState> files = new HashMap<>();
+        FileState workspace = null;
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // File names may contain '=', the recorded state never does
+                int separator = line.lastIndexOf('=');
+                if (separator < 0) {
+                    continue;
+                }
+                String key = line.substring(0, separator);
+                String value = line.substring(separator + 1);
+                if (key.equals(VERSION_KEY)) {
+                    if (!value.equals(String.valueOf(VERSION))) {
+                        return empty();
+                    }
+                } else if (key.equals(WORKSPACE_KEY)) {
+                    workspace = FileState.parse(value);
+                } else if (key.startsWith(FILE_KEY_PREFIX)) {
+                    FileState state = FileState.parse(value);
+                    if (state != null) {
+                        files.put(key.substring(FILE_KEY_PREFIX.length()), state);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return empty();
+        }
+        return new ImportManifest(files, workspace);
+    }
+
+    @NotNull
+    public static ImportManifest empty() {
+        return new ImportManifest(Map.of(), null);
+    }
+
+    /**
+     * Records the state of the instruction files as they were read for an import
+     *
+     * @param files The files read by {@link InstructionFileLoader}
+     * @return A manifest without workspace state, see {@link #withWorkspace(Path)}
+     */
+    @NotNull
+    public static ImportManifest of(@NotNull List<InstructionFile> files) {
+        return of(files, Map.of());
+    }
+
+    /**
+     * Records the state of the instruction files as they were read for an import
+     *
+     * @param files    The files read by {@link InstructionFileLoader}, and the fragments they include
+     * @param includes Names of the fragments every file with includes depends on, by file name
+     * @return A manifest without workspace state, see {@link #withWorkspace(Path)}
+     */
+    @NotNull
+    public static ImportManifest of(@NotNull List<InstructionFile> files, @NotNull Map<String, Set<String>> includes) {
+        Map<String, FileState> fileStates = new HashMap<>();
+        for (InstructionFile file : files) {
+            Set<String> fragments = includes.getOrDefault(file.name(), Set.of());
+            fileStates.put(file.name(), new FileState(file.size(), file.lastModified(), file.hash(), List.copyOf(fragments)));
+        }
+        return new ImportManifest(fileStates, null);
+    }
+
+    /**
+     * Adds the state of workspace.xml and of the instructions component that was written into it.
+     * Must be called right after the import has written workspace.xml.
+     *
+     * @param workspacePath Path to the workspace.xml file
+     * @return The complete manifest
+     */
+    @NotNull
+    public ImportManifest withWorkspace(@NotNull Path workspacePath) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(workspacePath, BasicFileAttributes.class);
+        FileState workspaceState = new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                hashComponent(workspacePath), List.of());
+        return new ImportManifest(files, workspaceState);
+    }
+
+    /**
+     * Checks whether importing would change anything compared to the recorded state
+     *
+     * @param aiDirectory   Path to the .ai directory
+     * @param workspacePath Path to the workspace.xml file
+     * @return true if neither the instruction files nor the imported component changed since the manifest was recorded
+     */
+    public boolean isUpToDate(@NotNull Path aiDirectory, @NotNull Path workspacePath) throws IOException {
+        return isUpToDate(aiDirectory, workspacePath, Map.of());
+    }
+
+    /**
+     * Checks whether importing would change anything compared to the recorded state
+     *
+     * @param aiDirectory   Path to the .ai directory, which may not exist if only upstream files are imported
+     * @param workspacePath Path to the workspace.xml file
+     * @param upstreamFiles Hashes of the upstream files layered under the .ai directory, by file name
+     * @return true if neither the instruction files nor the imported component changed since the manifest was recorded
+     */
+    public boolean isUpToDate(@NotNull Path aiDirectory, @NotNull Path workspacePath, @NotNull Map<String, String> upstreamFiles)
+            throws IOException {
+        return isUpToDate(aiDirectory, workspacePath, upstreamFiles, Map.of());
+    }
+
+    /**
+     * Checks whether importing would change anything compared to the recorded state
+     *
+     * @param aiDirectory   Path to the .ai directory, which may not exist if only upstream or nested files are imported
+     * @param workspacePath Path to the workspace.xml file
+     * @param upstreamFiles Hashes of the upstream files layered under the .ai directory, by file name
+     * @param moduleFiles   Hashes of the files of nested .ai directories layered over it, by recorded name
+     * @return true if neither the instruction files nor the imported component changed since the manifest was recorded
+     */
+    public boolean isUpToDate(@NotNull Path aiDirectory, @NotNull Path workspacePath, @NotNull Map<String, String> upstreamFiles,
+                              @NotNull Map<String, String> moduleFiles) throws IOException {
+        if (workspace == null) {
+            return false;
+        }
+
+        // Upstream files are immutable once cached, so their hashes are all there is to compare
+        Map<String, String> recordedUpstream = new HashMap<>();
+        files.forEach((name, state) -> {
+            if (name.startsWith(UPSTREAM_PREFIX)) {
+                recordedUpstream.put(name.substring(UPSTREAM_PREFIX.length()), state.hash());
+            }
+        });
+        if (!recordedUpstream.equals(upstreamFiles)) {
+            return false;
+        }
+
+        // Layers are validated by their stamps when they are loaded, so their hashes are up to date as well
+        if (!recordedHashes(NestedAiDirectories.RECORD_PREFIX).equals(moduleFiles)) {
+            return false;
+        }
+
+        if (!changedFragments(aiDirectory.resolve(FragmentExpander.DIRECTORY)).isEmpty()) {
+            return false;
+        }
+
+        // Bundle entries are covered by the recorded state of the bundle file itself, indexed bodies are separate files
+        List<Path> instructionFiles = Files.isDirectory(aiDirectory) ? listInstructionFiles(aiDirectory) : List.of();
+        long recordedFiles = files.keySet().stream()
+                .filter(name -> !name.startsWith(InstructionBundle.entryName("")) && !name.startsWith(UPSTREAM_PREFIX)
+                        && !name.startsWith(FRAGMENT_PREFIX) && !name.startsWith(ContentAddressedStore.entryName(""))
+                        && !name.startsWith(NestedAiDirectories.RECORD_PREFIX))
+                .count();
+        if (instructionFiles.size() != recordedFiles) {
+            return false;
+        }
+        for (Path file : instructionFiles) {
+            FileState recorded = files.get(file.getFileName().toString());
+            if (recorded == null || !recorded.matches(file, true, ContentHash::sha256)) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, FileState> entry : files.entrySet()) {
+            if (entry.getKey().startsWith(ContentAddressedStore.entryName(""))) {
+                Path body = ContentAddressedStore.bodyPath(aiDirectory, entry.getValue().hash());
+                if (!entry.getValue().matches(body, true, ContentHash::sha256)) {
+                    return false;
+                }
+            }
+        }
+
+        return workspace.matches(workspacePath, false, ImportManifest::hashComponent);
+    }
+
+    /**
+     * Checks whether the instructions component is still exactly what the last import wrote.
+     * Only then do entries of unchanged files not have to be imported again.
+     *
+     * @param workspacePath Path to the workspace.xml file
+     * @return true if the component did not change since the manifest was recorded
+     */
+    public boolean isComponentUnchanged(@NotNull Path workspacePath) throws IOException {
+        return workspace != null && workspace.matches(workspacePath, false, ImportManifest::hashComponent);
+    }
+
+    /**
+     * @param prefix Prefix of the recorded names, e.g. {@link NestedAiDirectories#RECORD_PREFIX}
+     * @return Hashes of the recorded files whose names start with the prefix, by recorded name
+     */
+    @NotNull
+    public Map<String, String> recordedHashes(@NotNull String prefix) {
+        Map<String, String> hashes = new HashMap<>();
+        files.forEach((name, state) -> {
+            if (name.startsWith(prefix)) {
+                hashes.put(name, state.hash());
+            }
+        });
+        return hashes;
+    }
+
+    /**
+     * @param fragmentsDirectory The fragments directory of the .ai directory
+     * @return Names of the recorded fragments that changed or were deleted since the import
+     */
+    @NotNull
+    public Set<String> changedFragments(@NotNull Path fragmentsDirectory) throws IOException {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, FileState> entry : files.entrySet()) {
+            if (entry.getKey().startsWith(FRAGMENT_PREFIX)) {
+                String fragment = entry.getKey().substring(FRAGMENT_PREFIX.length());
+                if (!entry.getValue().matches(fragmentsDirectory.resolve(fragment), true, ContentHash::sha256)) {
+                    changed.add(fragment);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param fragments Names of fragments
+     * @return Names of the recorded files that include any of the fragments, directly or not
+     */
+    @NotNull
+    public Set<String> filesIncluding(@NotNull Set<String> fragments) {
+        Set<String> including = new HashSet<>();
+        if (!fragments.isEmpty()) {
+            files.forEach((name, state) -> {
+                if (state.includes().stream().anyMatch(fragments::contains)) {
+                    including.add(name);
+                }
+            });
+        }
+        return including;
+    }
+
+    /**
+     * @param fileName Name of a recorded file
+     * @return Names of the fragments the file included when it was imported
+     */
+    @NotNull
+    public Set<String> includesOf(@NotNull String fileName) {
+        FileState state = files.get(fileName);
+        return state != null ? Set.copyOf(state.includes()) : Set.of();
+    }
+
+    /**
+     * @param name Name the file is recorded under
+     * @param file Path to the file
+     * @return The file as it was recorded, without content, or null if it is not recorded
+     */
+    @Nullable
+    public InstructionFile recordedFile(@NotNull String name, @NotNull Path file) {
+        FileState state = files.get(name);
+        return state != null ? new InstructionFile(file, name, null, null, state.size(), state.lastModified(), state.hash()) : null;
+    }
+
+    /**
+     * @param fileNames Files to treat as unknown, e.g. because a fragment they include changed
+     * @return The known files of this manifest without the given ones
+     */
+    @NotNull
+    public InstructionFileLoader.KnownFiles excluding(@NotNull Set<String> fileNames) {
+        if (fileNames.isEmpty()) {
+            return this;
+        }
+        return (fileName, size, lastModified) -> fileNames.contains(fileName) ? null : knownHash(fileName, size, lastModified);
+    }
+
+    @Nullable
+    @Override
+    public String knownHash(@NotNull String fileName, long size, long lastModified) {
+        FileState state = files.get(fileName);
+        return state != null && state.size() == size && state.lastModified() == lastModified ? state.hash() : null;
+    }
+
+    /**
+     * Writes the manifest, replacing the previous one atomically
+     *
+     * @param manifestFile Path to the manifest file
+     */
+    public void save(@NotNull Path manifestFile) throws IOException {
+        Files.createDirectories(manifestFile.toAbsolutePath().getParent());
+        Path tempFile = Files.createTempFile(manifestFile.toAbsolutePath().getParent(), manifestFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.write(VERSION_KEY + "=" + VERSION + "\n");
+                if (workspace != null) {
+                    writer.write(WORKSPACE_KEY + "=" + workspace.format() + "\n");
+                }
+                for (Map.Entry<String, FileState> entry : files.entrySet()) {
+                    writer.write(FILE_KEY_PREFIX + entry.getKey() + "=" + entry.getValue().format() + "\n");
+                }
+            }
+            WorkspaceFileWriter.moveAtomically(tempFile, manifestFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static List<Path> listInstructionFiles(Path aiDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(aiDirectory)) {
+            return files.filter(file -> file.toString().endsWith(".md")
+                    || file.getFileName().toString().equals(InstructionBundle.FILE_NAME)
+                    || file.getFileName().toString().equals(ContentAddressedStore.INDEX_FILE)).toList();
+        }
+    }
+
+    private static String hashComponent(Path workspacePath) throws IOException {
+        ComponentRange range = WorkspaceComponentLocator.locate(workspacePath, WorkspaceInstructionsReader.COMPONENT_NAME);
+        if (range == null || !range.exists()) {
+            return "";
+        }
+        try (InputStream in = WorkspaceFileWriter.openRange(workspacePath, range)) {
+            return ContentHash.sha256(in);
+        }
+    }
+
+    private interface Hasher {
+        String hash(Path file) throws IOException;
+    }
+
+    /**
+     * Size, modification time and content hash of a file
+     *
+     * @param includes Fragments the file's instruction depends on
+     */
+    private record FileState(long size, long lastModified, String hash, List<String> includes) {
+
+        /**
+         * Compares the attributes first and only falls back to hashing when they differ, e.g. after a touch
+         *
+         * @param wholeFile true if the hash covers the whole file, so a different size is always a change
+         */
+        boolean matches(Path file, boolean wholeFile, Hasher hasher) throws IOException {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            if (attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified) {
+                return true;
+            }
+            if (wholeFile && attributes.size() != size) {
+                return false;
+            }
+            return hash.equals(hasher.hash(file));
+        }
+
+        String format() {
+            // Fragment names never contain ':' or ','
+            String state = size + ":" + lastModified + ":" + hash;
+            return includes.isEmpty() ? state : state + ":" + String.join(",", includes);
+        }
+
+        @Nullable
+        static FileState parse(String value) {
+            String[] parts = value.split(":", 4);
+            if (parts.length < 3) {
+                return null;
+            }
+            try {
+                List<String> includes = parts.length == 4 ? List.of(parts[3].split(",")) : List.of();
+                return new FileState(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], includes);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
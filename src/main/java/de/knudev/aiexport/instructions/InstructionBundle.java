@@ -0,0 +1,202 @@
+package de.knudev.aiexport.instructions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All instructions of the .ai directory packed into a single file, for libraries too large for one file per instruction.
+ * <p>
+ * The file starts with an index, so single entries can be read from the memory-mapped file without decoding the others:
+ * <pre>
+ * "AIBUNDLE" version:int count:int
+ * count * ( idLength:int id:UTF-8 offset:long length:int sha256:byte[32] )
+ * contents, UTF-8, at the recorded offsets
+ * </pre>
+ * Entries with the same content share one copy of it.
+ * The hash covers the content bytes of the entry, so an importer that knows the hash can skip the entry altogether.
+ */
+public final class InstructionBundle {
+    public static final String FILE_NAME = "instructions.bundle";
+
+    private static final byte[] MAGIC = "AIBUNDLE".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HASH_BYTES = 32;
+
+    private final ByteBuffer buffer;
+    private final List<Entry> entries;
+
+    /**
+     * An entry of the index
+     *
+     * @param actionId The action ID
+     * @param offset   Position of the content in the bundle file
+     * @param length   Length of the UTF-8 encoded content
+     * @param hash     SHA-256 of the encoded content
+     */
+    public record Entry(@NotNull String actionId, long offset, int length, @NotNull String hash) {
+    }
+
+    private InstructionBundle(ByteBuffer buffer, List<Entry> entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Maps the bundle file and reads its index. The mapping stays valid after the file is replaced.
+     *
+     * @param bundleFile Path to the bundle file
+     * @return The opened bundle
+     */
+    @NotNull
+    public static InstructionBundle open(@NotNull Path bundleFile) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(bundleFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Instruction bundle is too large: " + channel.size() + " bytes");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not an instruction bundle: " + bundleFile);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported instruction bundle version " + version + ": " + bundleFile);
+            }
+
+            int count = buffer.getInt();
+            List<Entry> entries = new ArrayList<>(Math.min(Math.max(count, 0), 1 << 16));
+            byte[] hash = new byte[HASH_BYTES];
+            for (int i = 0; i < count; i++) {
+                byte[] actionId = new byte[buffer.getInt()];
+                buffer.get(actionId);
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                buffer.get(hash);
+                if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+                    throw new IOException("Corrupt instruction bundle, entry " + i + " is out of bounds: " + bundleFile);
+                }
+                entries.add(new Entry(new String(actionId, StandardCharsets.UTF_8), offset, length, ContentHash.toHex(hash)));
+            }
+            return new InstructionBundle(buffer, entries);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt instruction bundle, index is truncated: " + bundleFile, e);
+        }
+    }
+
+    /**
+     * @return The index entries in the order they were written
+     */
+    @NotNull
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Decodes the content of a single entry straight from the mapped file
+     *
+     * @param entry An entry of this bundle
+     * @return The instruction content
+     */
+    @NotNull
+    public String read(@NotNull Entry entry) {
+        ByteBuffer content = buffer.duplicate();
+        content.limit((int) entry.offset() + entry.length()).position((int) entry.offset());
+        return StandardCharsets.UTF_8.decode(content).toString();
+    }
+
+    /**
+     * Writes the instructions as a bundle, leaving the file alone if it already holds exactly these instructions
+     *
+     * @param bundleFile      Path to the bundle file
+     * @param instructionsMap Map of action IDs to instruction content, written in map order
+     * @return Whether the bundle was added, changed or left alone
+     */
+    @NotNull
+    public static InstructionFileWriter.FileChange write(@NotNull Path bundleFile, @NotNull Map<String, String> instructionsMap)
+            throws IOException {
+        return InstructionFileWriter.writeFile(bundleFile, encode(instructionsMap));
+    }
+
+    /**
+     * @param actionId The action ID of an entry
+     * @return Name the entry is recorded under in the import manifest
+     */
+    @NotNull
+    public static String entryName(@NotNull String actionId) {
+        return FILE_NAME + "#" + actionId;
+    }
+
+    private static byte[] encode(Map<String, String> instructionsMap) throws IOException {
+        // Entries with equal content point at a single copy, older readers only ever follow the offsets
+        List<byte[]> actionIds = new ArrayList<>(instructionsMap.size());
+        List<Integer> bodyOfEntry = new ArrayList<>(instructionsMap.size());
+        List<byte[]> bodies = new ArrayList<>();
+        Map<String, Integer> bodyIndexes = new HashMap<>();
+        long indexSize = MAGIC.length + 4 + 4;
+        for (Map.Entry<String, String> instruction : instructionsMap.entrySet()) {
+            byte[] actionId = instruction.getKey().getBytes(StandardCharsets.UTF_8);
+            actionIds.add(actionId);
+            Integer body = bodyIndexes.get(instruction.getValue());
+            if (body == null) {
+                body = bodies.size();
+                bodies.add(instruction.getValue().getBytes(StandardCharsets.UTF_8));
+                bodyIndexes.put(instruction.getValue(), body);
+            }
+            bodyOfEntry.add(body);
+            indexSize += 4 + actionId.length + 8 + 4 + HASH_BYTES;
+        }
+
+        MessageDigest digest = ContentHash.newDigest();
+        long[] offsets = new long[bodies.size()];
+        byte[][] hashes = new byte[bodies.size()][];
+        long offset = indexSize;
+        for (int i = 0; i < bodies.size(); i++) {
+            offsets[i] = offset;
+            hashes[i] = digest.digest(bodies.get(i));
+            offset += bodies.get(i).length;
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Instructions are too large for a bundle: " + offset + " bytes");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(actionIds.size());
+        for (int i = 0; i < actionIds.size(); i++) {
+            int body = bodyOfEntry.get(i);
+            out.writeInt(actionIds.get(i).length);
+            out.write(actionIds.get(i));
+            out.writeLong(offsets[body]);
+            out.writeInt(bodies.get(body).length);
+            out.write(hashes[body]);
+        }
+        for (byte[] body : bodies) {
+            out.write(body);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
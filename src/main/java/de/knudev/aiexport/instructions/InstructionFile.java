@@ -0,0 +1,52 @@
+package de.knudev.aiexport.instructions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+
+/**
+ * A .md file of the .ai directory or an entry of its {@link InstructionBundle}, as seen by {@link InstructionFileLoader}
+ *
+ * @param file         Path to the file, for bundle entries the bundle file
+ * @param name         Name the file is recorded under in the import manifest, see {@link InstructionBundle#entryName}
+ * @param actionId     Action ID from the "# actionId" header, or null if the file has no header
+ * @param content      Instruction content without the header, or null if the body was not loaded
+ * @param size         File size when it was read, for bundle entries the content length
+ * @param lastModified Modification time in milliseconds when it was read, 0 for bundle entries
+ * @param hash         SHA-256 of the file content, for bundle entries of the instruction content
+ */
+public record InstructionFile(@NotNull Path file, @NotNull String name, @Nullable String actionId, @Nullable String content,
+                              long size, long lastModified, @NotNull String hash) {
+
+    /**
+     * Creates the record of a .md file, named after the file
+     */
+    public InstructionFile(@NotNull Path file, @Nullable String actionId, @Nullable String content,
+                           long size, long lastModified, @NotNull String hash) {
+        this(file, file.getFileName().toString(), actionId, content, size, lastModified, hash);
+    }
+
+    /**
+     * @return true if the body of the file was loaded
+     */
+    public boolean isLoaded() {
+        return content != null;
+    }
+
+    /**
+     * @return The same file with different content, e.g. after expanding its includes
+     */
+    @NotNull
+    public InstructionFile withContent(@NotNull String content) {
+        return new InstructionFile(file, name, actionId, content, size, lastModified, hash);
+    }
+
+    /**
+     * @return The same file recorded under a different name, e.g. one of a nested .ai directory
+     */
+    @NotNull
+    public InstructionFile withName(@NotNull String name) {
+        return new InstructionFile(file, name, actionId, content, size, lastModified, hash);
+    }
+}
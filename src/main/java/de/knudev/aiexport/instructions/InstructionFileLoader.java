@@ -0,0 +1,478 @@
+package de.knudev.aiexport.instructions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Loads the .md files and the {@link InstructionBundle} of the .ai directory, the files on a bounded executor.
+ * Every file is read header first to get its action ID; the body is only read when the caller does not
+ * already know the file, and is decoded straight from the file bytes without intermediate strings.
+ */
+public final class InstructionFileLoader {
+    // Extract action ID from the first line (assuming format: "# actionId")
+    private static final Pattern HEADER_PATTERN = Pattern.compile("^#\\s+([^\\s]+)");
+    private static final int HEADER_BYTES = 4096;
+    // Larger files are decoded through a fixed-size buffer instead of being read into memory first
+    private static final long STREAMED_FILE_BYTES = 1 << 20;
+    private static final int READ_BUFFER_BYTES = 8192;
+    private static final int PARALLEL_THRESHOLD = 16;
+
+    private final Executor executor;
+    private final Cache cache;
+
+    /**
+     * @param executor Executor to read files on, should be bounded since every task blocks on I/O
+     */
+    public InstructionFileLoader(@NotNull Executor executor) {
+        this(executor, Cache.NONE);
+    }
+
+    /**
+     * @param executor Executor to read files on, should be bounded since every task blocks on I/O
+     * @param cache    Files loaded before, a file with unchanged size and modification time is not read again
+     */
+    public InstructionFileLoader(@NotNull Executor executor, @NotNull Cache cache) {
+        this.executor = executor;
+        this.cache = cache;
+    }
+
+    /**
+     * Files the caller already imported, whose bodies therefore do not need to be read again
+     */
+    public interface KnownFiles {
+        KnownFiles NONE = (fileName, size, lastModified) -> null;
+
+        /**
+         * @return The recorded hash if the file still has the given size and modification time, null otherwise
+         */
+        @Nullable
+        String knownHash(@NotNull String fileName, long size, long lastModified);
+    }
+
+    /**
+     * Loaded files kept in memory between loads, must be thread safe
+     */
+    public interface Cache {
+        Cache NONE = new Cache() {
+            @Override
+            public @Nullable InstructionFile get(@NotNull Path file, long size, long lastModified) {
+                return null;
+            }
+
+            @Override
+            public void put(@NotNull InstructionFile file) {
+            }
+        };
+
+        /**
+         * @return The cached file if it was loaded with the given size and modification time, null otherwise
+         */
+        @Nullable
+        InstructionFile get(@NotNull Path file, long size, long lastModified);
+
+        /**
+         * Called with every file whose body was loaded, and with files without header
+         */
+        void put(@NotNull InstructionFile file);
+    }
+
+    /**
+     * Receives progress on the calling thread, may throw to cancel the load
+     */
+    public interface Progress {
+        Progress NONE = (loaded, total) -> {
+        };
+
+        void update(int loaded, int total);
+    }
+
+    /**
+     * Loads the instruction bundle, the {@link ContentAddressedStore} index and all .md files directly inside
+     * the .ai directory. Bundle and index entries come first, so a .md file of the same action ID takes precedence.
+     *
+     * @param aiDirectory Path to the .ai directory
+     * @param knownFiles  Files whose bodies can be skipped
+     * @param progress    Progress callback
+     * @return The bundle and index entries in their order, followed by the files in directory listing order
+     */
+    @NotNull
+    public List<InstructionFile> load(@NotNull Path aiDirectory, @NotNull KnownFiles knownFiles, @NotNull Progress progress) throws IOException {
+        return load(aiDirectory, listFiles(aiDirectory), knownFiles, progress);
+    }
+
+    /**
+     * @param aiDirectory Path to the .ai directory
+     * @return The .md files directly inside the directory, in directory listing order
+     */
+    @NotNull
+    public static List<Path> listFiles(@NotNull Path aiDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(aiDirectory)) {
+            return files.filter(file -> file.toString().endsWith(".md")).toList();
+        }
+    }
+
+    /**
+     * Loads the instruction bundle, the index and the given .md files, e.g. as listed by {@link #listFiles}
+     *
+     * @param aiDirectory Path to the .ai directory
+     * @param mdFiles     The .md files to load
+     * @param knownFiles  Files whose bodies can be skipped
+     * @param progress    Progress callback
+     * @return The bundle and index entries in their order, followed by the files in the given order
+     */
+    @NotNull
+    public List<InstructionFile> load(@NotNull Path aiDirectory, @NotNull List<Path> mdFiles, @NotNull KnownFiles knownFiles,
+                                      @NotNull Progress progress) throws IOException {
+        List<InstructionFile> result = new ArrayList<>(mdFiles.size());
+        Path bundleFile = aiDirectory.resolve(InstructionBundle.FILE_NAME);
+        if (Files.isRegularFile(bundleFile)) {
+            loadBundle(bundleFile, knownFiles, result);
+        }
+        Path indexFile = aiDirectory.resolve(ContentAddressedStore.INDEX_FILE);
+        if (Files.isRegularFile(indexFile)) {
+            loadIndex(aiDirectory, indexFile, knownFiles, result);
+        }
+        int bundled = result.size();
+
+        if (mdFiles.size() < PARALLEL_THRESHOLD) {
+            for (Path file : mdFiles) {
+                progress.update(result.size() - bundled, mdFiles.size());
+                result.add(loadFile(file, knownFiles, cache));
+            }
+            return result;
+        }
+
+        List<CompletableFuture<InstructionFile>> futures = new ArrayList<>(mdFiles.size());
+        for (Path file : mdFiles) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return loadFile(file, knownFiles, cache);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+
+        try {
+            for (CompletableFuture<InstructionFile> future : futures) {
+                progress.update(result.size() - bundled, mdFiles.size());
+                result.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading instruction files was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Could not load instruction files", e.getCause());
+        } finally {
+            // Stop outstanding reads when failing or cancelled
+            futures.forEach(future -> future.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * Loads a single instruction file, including its body
+     *
+     * @param file Path to the .md file
+     * @return The loaded file
+     */
+    @NotNull
+    public static InstructionFile loadFile(@NotNull Path file) throws IOException {
+        return loadFile(file, KnownFiles.NONE, Cache.NONE);
+    }
+
+    /**
+     * Loads a single instruction file, including its body, from the cache if it did not change
+     *
+     * @param file  Path to the .md file
+     * @param cache Files loaded before
+     * @return The loaded file
+     */
+    @NotNull
+    public static InstructionFile loadFile(@NotNull Path file, @NotNull Cache cache) throws IOException {
+        return loadFile(file, KnownFiles.NONE, cache);
+    }
+
+    /**
+     * Reads only the header of an instruction file
+     *
+     * @param file Path to the .md file
+     * @return Action ID from the "# actionId" header, or null if the file has no header
+     */
+    @Nullable
+    public static String readActionId(@NotNull Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Matcher matcher = HEADER_PATTERN.matcher(readHeader(channel, channel.size()));
+            return matcher.find() ? matcher.group(1) : null;
+        }
+    }
+
+    /**
+     * Adds the bundle file itself, so the manifest can tell whether it changed, and one record per entry.
+     * Only entries whose hash is not known are decoded.
+     */
+    private static void loadBundle(Path bundleFile, KnownFiles knownFiles, List<InstructionFile> result) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(bundleFile, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String bundleHash = knownFiles.knownHash(InstructionBundle.FILE_NAME, attributes.size(), lastModified);
+        if (bundleHash == null) {
+            bundleHash = ContentHash.sha256(bundleFile);
+        }
+        result.add(new InstructionFile(bundleFile, null, null, attributes.size(), lastModified, bundleHash));
+
+        // Entries with the same content share one decoded instance
+        InstructionBundle bundle = InstructionBundle.open(bundleFile);
+        Map<String, String> decoded = new HashMap<>();
+        for (InstructionBundle.Entry entry : bundle.entries()) {
+            String name = InstructionBundle.entryName(entry.actionId());
+            String content = entry.hash().equals(knownFiles.knownHash(name, entry.length(), 0)) ? null
+                    : decoded.computeIfAbsent(entry.hash(), hash -> bundle.read(entry));
+            result.add(new InstructionFile(bundleFile, name, entry.actionId(), content, entry.length(), 0, entry.hash()));
+        }
+    }
+
+    /**
+     * Adds the index file itself, so the manifest can tell whether it changed, and one record per index entry
+     * with the state of its body. Every body is read at most once, action IDs sharing it share the instance.
+     */
+    private static void loadIndex(Path aiDirectory, Path indexFile, KnownFiles knownFiles, List<InstructionFile> result)
+            throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(indexFile, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String indexHash = knownFiles.knownHash(ContentAddressedStore.INDEX_FILE, attributes.size(), lastModified);
+        if (indexHash == null) {
+            indexHash = ContentHash.sha256(indexFile);
+        }
+        result.add(new InstructionFile(indexFile, null, null, attributes.size(), lastModified, indexHash));
+
+        Map<String, String> bodies = new HashMap<>();
+        for (ContentAddressedStore.Entry entry : ContentAddressedStore.readIndex(indexFile)) {
+            Path body = ContentAddressedStore.bodyPath(aiDirectory, entry.hash());
+            BasicFileAttributes bodyAttributes;
+            try {
+                bodyAttributes = Files.readAttributes(body, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                throw new IOException("Instruction body of " + entry.actionId() + " is missing: " + body);
+            }
+            long bodyModified = bodyAttributes.lastModifiedTime().toMillis();
+            String name = ContentAddressedStore.entryName(entry.actionId());
+
+            String content = null;
+            if (!entry.hash().equals(knownFiles.knownHash(name, bodyAttributes.size(), bodyModified))) {
+                content = bodies.get(entry.hash());
+                if (content == null) {
+                    content = ContentAddressedStore.readBody(aiDirectory, entry.hash());
+                    bodies.put(entry.hash(), content);
+                }
+            }
+            result.add(new InstructionFile(body, name, entry.actionId(), content, bodyAttributes.size(), bodyModified, entry.hash()));
+        }
+    }
+
+    /**
+     * Loads an immutable file whose hash is known in advance, e.g. a cached copy of an upstream file.
+     * The body is only read if the caller does not know the name with that hash.
+     *
+     * @param file       Path to the file
+     * @param name       Name the file is recorded under in the import manifest
+     * @param hash       SHA-256 the content is supposed to have, the returned hash is that of the actual content
+     * @param knownFiles Files whose bodies can be skipped
+     * @return The file, recorded with modification time 0
+     */
+    @NotNull
+    public static InstructionFile loadFile(@NotNull Path file, @NotNull String name, @NotNull String hash,
+                                           @NotNull KnownFiles knownFiles) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (hash.equals(knownFiles.knownHash(name, attributes.size(), 0))) {
+            return new InstructionFile(file, name, readActionId(file), null, attributes.size(), 0, hash);
+        }
+        return readFile(file, name, attributes, 0, KnownFiles.NONE);
+    }
+
+    private static InstructionFile loadFile(Path file, KnownFiles knownFiles, Cache cache) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        InstructionFile cached = cache.get(file, attributes.size(), lastModified);
+        if (cached != null) {
+            // Known files are still reported without body, so callers do not write them again
+            String knownHash = knownFiles.knownHash(file.getFileName().toString(), attributes.size(), lastModified);
+            return cached.hash().equals(knownHash)
+                    ? new InstructionFile(file, cached.actionId(), null, cached.size(), cached.lastModified(), cached.hash())
+                    : cached;
+        }
+
+        InstructionFile loaded = readFile(file, file.getFileName().toString(), attributes, lastModified, knownFiles);
+        if (loaded.isLoaded() || loaded.actionId() == null) {
+            cache.put(loaded);
+        }
+        return loaded;
+    }
+
+    private static InstructionFile readFile(Path file, String name, BasicFileAttributes attributes, long lastModified,
+                                            KnownFiles knownFiles) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Read only the start of the file to get the action ID
+            String headerText = readHeader(channel, attributes.size());
+            Matcher matcher = HEADER_PATTERN.matcher(headerText);
+            String actionId = matcher.find() ? matcher.group(1) : null;
+
+            String knownHash = knownFiles.knownHash(name, attributes.size(), lastModified);
+            if (knownHash != null) {
+                return new InstructionFile(file, name, actionId, null, attributes.size(), lastModified, knownHash);
+            }
+
+            if (attributes.size() > STREAMED_FILE_BYTES) {
+                int start = actionId == null ? 0 : headerText.substring(0, matcher.end()).getBytes(StandardCharsets.UTF_8).length;
+                return readLargeFile(channel, file, name, actionId, start, lastModified);
+            }
+
+            byte[] bytes = readFully(channel);
+            String hash = ContentHash.sha256(bytes, 0, bytes.length);
+            if (actionId == null) {
+                return new InstructionFile(file, name, null, null, bytes.length, lastModified, hash);
+            }
+
+            // Remove the first line (header) from the content and trim it, both on the raw bytes
+            int start = headerText.substring(0, matcher.end()).getBytes(StandardCharsets.UTF_8).length;
+            int end = bytes.length;
+            while (start < end && (bytes[start] & 0xFF) <= ' ') {
+                start++;
+            }
+            while (end > start && (bytes[end - 1] & 0xFF) <= ' ') {
+                end--;
+            }
+            String content = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            return new InstructionFile(file, name, actionId, content, bytes.length, lastModified, hash);
+        }
+    }
+
+    /**
+     * Hashes a large file and decodes its content chunk by chunk, so only the content itself is built in memory.
+     * The content is trimmed like that of small files.
+     *
+     * @param start Number of header bytes in front of the content
+     */
+    private static InstructionFile readLargeFile(FileChannel channel, Path file, String name, String actionId, int start,
+                                                 long lastModified) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE - 8) {
+            throw new IOException("Instruction file is too large: " + channel.size() + " bytes");
+        }
+        MessageDigest digest = ContentHash.newDigest();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        StringBuilder content = actionId == null ? null : new StringBuilder((int) channel.size());
+        ByteBuffer bytes = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        CharBuffer chars = CharBuffer.allocate(READ_BUFFER_BYTES);
+        long position = 0;
+        boolean leading = true;
+        boolean end = false;
+        while (!end) {
+            int offset = bytes.position();
+            int read = channel.read(bytes, position);
+            end = read < 0;
+            if (!end) {
+                digest.update(bytes.array(), offset, read);
+                position += read;
+            }
+            if (content == null) {
+                bytes.clear();
+                continue;
+            }
+
+            bytes.flip();
+            // Skip the header, then the whitespace in front of the content
+            while (leading && bytes.hasRemaining()) {
+                if (position - bytes.remaining() >= start && (bytes.get(bytes.position()) & 0xFF) > ' ') {
+                    leading = false;
+                } else {
+                    bytes.get();
+                }
+            }
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, end);
+                if (end && result.isUnderflow()) {
+                    result = decoder.flush(chars);
+                }
+                content.append(chars.array(), 0, chars.position());
+                chars.clear();
+            } while (result.isOverflow());
+            bytes.compact();
+        }
+
+        String hash = ContentHash.toHex(digest.digest());
+        if (content == null) {
+            return new InstructionFile(file, name, null, null, position, lastModified, hash);
+        }
+        int length = content.length();
+        while (length > 0 && content.charAt(length - 1) <= ' ') {
+            length--;
+        }
+        content.setLength(length);
+        return new InstructionFile(file, name, actionId, content.toString(), position, lastModified, hash);
+    }
+
+    private static String readHeader(FileChannel channel, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER_BYTES, Math.max(size, 1)));
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+            // keep reading until the header buffer is full or the file ends
+        }
+        header.flip();
+        return StandardCharsets.UTF_8.decode(header).toString();
+    }
+
+    private static byte[] readFully(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Instruction file is too large: " + size + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        long position = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        if (buffer.hasRemaining()) {
+            // File was truncated while reading
+            byte[] bytes = new byte[buffer.position()];
+            System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+            return bytes;
+        }
+        return buffer.array();
+    }
+}
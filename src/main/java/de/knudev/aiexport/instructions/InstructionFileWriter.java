@@ -0,0 +1,332 @@
+package de.knudev.aiexport.instructions;
+
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import de.knudev.aiexport.diagnostics.Phase;
+import de.knudev.aiexport.workspace.WorkspaceFileWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Writes instructions as "# actionId" markdown files into the .ai directory.
+ * This is the complementary class to {@link InstructionFileLoader}.
+ * Files whose content did not change, or that import as the same instruction, are left alone, so their modification
+ * time stays the same and neither the IDE nor version control sees a change. Content is encoded, compared and written
+ * in fixed-size chunks, see {@link Utf8Content}, so large instructions are never held a second time as bytes.
+ * Written files keep the permissions of the file they replace.
+ */
+public final class InstructionFileWriter {
+
+    private InstructionFileWriter() {
+    }
+
+    /**
+     * What {@link #sync} did to the .ai directory, all lists hold file names in instruction order
+     *
+     * @param added     Files that did not exist before
+     * @param changed   Files that existed with different content
+     * @param unchanged Files that already had the exported content and were not written
+     * @param removed   Instruction files of instructions that no longer exist, deleted when pruning
+     */
+    public record SyncResult(@NotNull List<String> added, @NotNull List<String> changed,
+                             @NotNull List<String> unchanged, @NotNull List<String> removed) {
+
+        /**
+         * @return Number of files that are exported, whether they were written or not
+         */
+        public int exportedCount() {
+            return added.size() + changed.size() + unchanged.size();
+        }
+
+        /**
+         * @return true if the .ai directory was changed
+         */
+        public boolean hasChanges() {
+            return !added.isEmpty() || !changed.isEmpty() || !removed.isEmpty();
+        }
+    }
+
+    /**
+     * Writes one markdown file per instruction, skipping files that already have the same content.
+     * Every file is written to a temporary file first and then moved over the old one.
+     *
+     * @param aiDirectory     Path to the .ai directory
+     * @param instructionsMap Map of action IDs to instruction content
+     * @param prune           Delete instruction files of action IDs that are not in the map. Other files of the
+     *                        directory, e.g. a README.md without "# actionId" header, are never deleted
+     * @return The files that were added, changed, left alone and removed
+     */
+    @NotNull
+    public static SyncResult sync(@NotNull Path aiDirectory, @NotNull Map<String, String> instructionsMap, boolean prune)
+            throws IOException {
+        return sync(aiDirectory, instructionsMap, prune, Set.of());
+    }
+
+    /**
+     * Writes one markdown file per instruction, skipping files that already have the same content
+     * or are known to represent their instruction in another form
+     *
+     * @param aiDirectory     Path to the .ai directory
+     * @param instructionsMap Map of action IDs to instruction content
+     * @param prune           Delete instruction files of action IDs that are not in the map
+     * @param keptFiles       Names of files that already represent their instruction, e.g. through includes.
+     *                        They are reported as unchanged and never written
+     * @return The files that were added, changed, left alone and removed
+     */
+    @NotNull
+    public static SyncResult sync(@NotNull Path aiDirectory, @NotNull Map<String, String> instructionsMap, boolean prune,
+                                  @NotNull Set<String> keptFiles) throws IOException {
+        return sync(aiDirectory, instructionsMap, prune, keptFiles, new OperationMetrics());
+    }
+
+    /**
+     * Writes one markdown file per instruction like {@link #sync(Path, Map, boolean, Set)}, recording the time
+     * of every step
+     *
+     * @param metrics Receives the phases and bytes of the sync
+     */
+    @NotNull
+    public static SyncResult sync(@NotNull Path aiDirectory, @NotNull Map<String, String> instructionsMap, boolean prune,
+                                  @NotNull Set<String> keptFiles, @NotNull OperationMetrics metrics) throws IOException {
+        // Action IDs that map to the same file name overwrite each other, the last one wins as before
+        long start = System.nanoTime();
+        Map<String, Map.Entry<String, String>> filesByName = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : instructionsMap.entrySet()) {
+            filesByName.put(fileNameFor(entry.getKey()), entry);
+        }
+        metrics.record(Phase.SERIALIZATION, start);
+
+        start = System.nanoTime();
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        List<String> unchanged = new ArrayList<>();
+        for (Map.Entry<String, Map.Entry<String, String>> file : filesByName.entrySet()) {
+            if (keptFiles.contains(file.getKey())) {
+                unchanged.add(file.getKey());
+                continue;
+            }
+            Map.Entry<String, String> instruction = file.getValue();
+            Utf8Content content = fileContent(instruction.getKey(), instruction.getValue());
+            FileChange change = writeInstructionFile(aiDirectory.resolve(file.getKey()), instruction.getKey(),
+                    instruction.getValue(), content);
+            switch (change) {
+                case ADDED -> added.add(file.getKey());
+                case CHANGED -> changed.add(file.getKey());
+                case UNCHANGED -> unchanged.add(file.getKey());
+            }
+            if (change != FileChange.UNCHANGED) {
+                metrics.addBytesWritten(content.byteLength());
+            }
+        }
+
+        List<String> removed = prune ? prune(aiDirectory, instructionsMap, filesByName.keySet()) : List.of();
+        metrics.record(Phase.FILE_WRITE, start);
+        return new SyncResult(added, changed, unchanged, removed);
+    }
+
+    /**
+     * @param actionId The action ID
+     * @return Name of the markdown file the instruction is exported to
+     */
+    @NotNull
+    public static String fileNameFor(@NotNull String actionId) {
+        return actionId.replaceAll("[^a-zA-Z0-9-]", "_") + ".md";
+    }
+
+    /**
+     * @param actionId The action ID
+     * @param content  The instruction content
+     * @return Content of the markdown file the instruction is exported to, referencing the instruction content
+     */
+    @NotNull
+    public static Utf8Content fileContent(@NotNull String actionId, @NotNull String content) {
+        return Utf8Content.of("# " + actionId + "\n\n", content);
+    }
+
+    /**
+     * Writes an instruction file unless it already has the content, or would be imported as the same instruction.
+     * A hand-written file with another header spacing or a trailing newline is therefore left alone.
+     *
+     * @param filePath Path to the file
+     * @param actionId The action ID
+     * @param content  The instruction content
+     * @param file     The complete file content, see {@link #fileContent}
+     * @return Whether the file was added, changed or left alone
+     */
+    @NotNull
+    public static FileChange writeInstructionFile(@NotNull Path filePath, @NotNull String actionId, @NotNull String content,
+                                                  @NotNull Utf8Content file) throws IOException {
+        if (!Files.isRegularFile(filePath)) {
+            writeAtomically(filePath, file);
+            return FileChange.ADDED;
+        }
+        if (hasContent(filePath, file)) {
+            return FileChange.UNCHANGED;
+        }
+        InstructionFile existing = InstructionFileLoader.loadFile(filePath);
+        if (actionId.equals(existing.actionId()) && trim(content).equals(existing.content())) {
+            return FileChange.UNCHANGED;
+        }
+        writeAtomically(filePath, file);
+        return FileChange.CHANGED;
+    }
+
+    /**
+     * Trims the content like {@link InstructionFileLoader} does when it reads a file
+     */
+    private static String trim(String content) {
+        int start = 0;
+        int end = content.length();
+        while (start < end && content.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && content.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return content.substring(start, end);
+    }
+
+    /**
+     * What {@link #writeFile} did
+     */
+    public enum FileChange {
+        ADDED,
+        CHANGED,
+        UNCHANGED
+    }
+
+    /**
+     * Writes a file of the .ai directory through a temporary file, unless it already has the content
+     *
+     * @param filePath Path to the file
+     * @param content  The complete file content
+     * @return Whether the file was added, changed or left alone
+     */
+    @NotNull
+    public static FileChange writeFile(@NotNull Path filePath, byte @NotNull [] content) throws IOException {
+        return writeFile(filePath, Utf8Content.encoded(content));
+    }
+
+    /**
+     * Writes a file of the .ai directory through a temporary file, unless it already has the content.
+     * The existing file is compared and the new one written chunk by chunk.
+     *
+     * @param filePath Path to the file
+     * @param content  The complete file content
+     * @return Whether the file was added, changed or left alone
+     */
+    @NotNull
+    public static FileChange writeFile(@NotNull Path filePath, @NotNull Utf8Content content) throws IOException {
+        if (!Files.isRegularFile(filePath)) {
+            writeAtomically(filePath, content);
+            return FileChange.ADDED;
+        }
+        if (hasContent(filePath, content)) {
+            return FileChange.UNCHANGED;
+        }
+        writeAtomically(filePath, content);
+        return FileChange.CHANGED;
+    }
+
+    private static boolean hasContent(Path filePath, Utf8Content content) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            // Different sizes are decided without reading the file
+            if (channel.size() != content.byteLength()) {
+                return false;
+            }
+            ByteBuffer[] existing = {ByteBuffer.allocate(0)};
+            return content.forEachChunk(chunk -> {
+                if (existing[0].capacity() < chunk.remaining()) {
+                    existing[0] = ByteBuffer.allocate(chunk.remaining());
+                }
+                ByteBuffer buffer = existing[0].clear().limit(chunk.remaining());
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        return false;
+                    }
+                }
+                return buffer.flip().equals(chunk);
+            });
+        }
+    }
+
+    private static void writeAtomically(Path filePath, Utf8Content content) throws IOException {
+        // The temporary file does not end with .md, so it is never taken for an instruction
+        Path tempFile = WorkspaceFileWriter.createTempFile(filePath, "." + filePath.getFileName());
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                content.forEachChunk(chunk -> {
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                    return true;
+                });
+            }
+            WorkspaceFileWriter.moveAtomically(tempFile, filePath);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Deletes the instruction files of action IDs that are not in the map
+     *
+     * @param aiDirectory     Path to the .ai directory
+     * @param instructionsMap Map of action IDs to instruction content
+     * @param exportedFiles   Names of files that were just exported and are kept in any case
+     * @return Names of the deleted files
+     */
+    @NotNull
+    public static List<String> prune(@NotNull Path aiDirectory, @NotNull Map<String, String> instructionsMap,
+                                     @NotNull Set<String> exportedFiles) throws IOException {
+        return delete(aiDirectory, exportedFiles, actionId -> !instructionsMap.containsKey(actionId));
+    }
+
+    /**
+     * Deletes the instruction files of the given action IDs, e.g. because the instructions were exported into
+     * a bundle or index that these files would take precedence over on import
+     *
+     * @param aiDirectory Path to the .ai directory
+     * @param actionIds   Action IDs whose instruction files are deleted
+     * @param keptFiles   Names of files that are kept in any case, e.g. because they hold includes
+     * @return Names of the deleted files
+     */
+    @NotNull
+    public static List<String> deleteFilesOf(@NotNull Path aiDirectory, @NotNull Set<String> actionIds,
+                                             @NotNull Set<String> keptFiles) throws IOException {
+        return delete(aiDirectory, keptFiles, actionIds::contains);
+    }
+
+    private static List<String> delete(Path aiDirectory, Set<String> keptFiles, Predicate<String> deleted)
+            throws IOException {
+        List<Path> candidates;
+        try (Stream<Path> files = Files.list(aiDirectory)) {
+            candidates = files.filter(file -> file.toString().endsWith(".md"))
+                    .filter(file -> !keptFiles.contains(file.getFileName().toString()))
+                    .sorted()
+                    .toList();
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (Path file : candidates) {
+            String actionId = InstructionFileLoader.readActionId(file);
+            if (actionId != null && deleted.test(actionId)) {
+                Files.deleteIfExists(file);
+                removed.add(file.getFileName().toString());
+            }
+        }
+        return removed;
+    }
+}
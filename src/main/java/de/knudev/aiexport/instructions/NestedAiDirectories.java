@@ -0,0 +1,178 @@
+package de.knudev.aiexport.instructions;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The .ai directories of a monorepo's modules, below the .ai directory at the repository root.
+ * <p>
+ * Every directory is a layer of instructions merged over the root's in {@link #PRECEDENCE} order: a deeper
+ * directory overrides the directories above it, and of two directories at the same depth the one whose path
+ * sorts last wins. Modules are named by their path relative to the root with '/' separators, the root itself
+ * by the empty string. Their files are recorded in the import manifest under {@link #recordPrefix}.
+ */
+public final class NestedAiDirectories {
+    public static final String DIRECTORY_NAME = ".ai";
+    /**
+     * Prefix of the names files of nested .ai directories are recorded under
+     */
+    public static final String RECORD_PREFIX = "module#";
+    /**
+     * Order in which the layers are applied, the last one wins
+     */
+    public static final Comparator<String> PRECEDENCE = Comparator.comparingInt(NestedAiDirectories::depth)
+            .thenComparing(Comparator.naturalOrder());
+
+    // Build output, dependencies and version control metadata never hold instructions worth sharing
+    private static final Set<String> SKIPPED_DIRECTORIES = Set.of(".git", ".hg", ".svn", ".idea", ".gradle",
+            "node_modules", "build", "out", "target", "dist");
+
+    private NestedAiDirectories() {
+    }
+
+    /**
+     * Walks the repository for nested .ai directories, for callers without an index of the file system.
+     * Hidden directories, build output and dependencies are skipped, and so is everything inside a .ai directory.
+     *
+     * @param root Root directory of the repository
+     * @return The modules in {@link #PRECEDENCE} order
+     */
+    @NotNull
+    public static List<String> scan(@NotNull Path root) throws IOException {
+        List<String> modules = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                if (directory.equals(root)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String name = directory.getFileName().toString();
+                if (name.equals(DIRECTORY_NAME)) {
+                    if (!directory.getParent().equals(root)) {
+                        modules.add(moduleName(root.relativize(directory.getParent())));
+                    }
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return name.startsWith(".") || SKIPPED_DIRECTORIES.contains(name)
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // An unreadable directory has no instructions for us either
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return sorted(modules);
+    }
+
+    /**
+     * @param modules Module names in any order
+     * @return The modules in {@link #PRECEDENCE} order
+     */
+    @NotNull
+    public static List<String> sorted(@NotNull Collection<String> modules) {
+        return modules.stream().sorted(PRECEDENCE).toList();
+    }
+
+    /**
+     * @param rootPath        Path of the repository root with '/' separators
+     * @param aiDirectoryPath Path of a directory named .ai with '/' separators
+     * @return The module owning the directory, or null if it is the root's .ai directory, lies outside the root
+     * or inside another .ai directory
+     */
+    @Nullable
+    public static String moduleOf(@NotNull String rootPath, @NotNull String aiDirectoryPath) {
+        String suffix = "/" + DIRECTORY_NAME;
+        if (!aiDirectoryPath.startsWith(rootPath + "/") || !aiDirectoryPath.endsWith(suffix)) {
+            return null;
+        }
+        String module = aiDirectoryPath.substring(rootPath.length() + 1, aiDirectoryPath.length() - suffix.length());
+        return module.isEmpty() || ("/" + module + "/").contains(suffix + "/") ? null : module;
+    }
+
+    /**
+     * @param rootPath Path of the repository root with '/' separators
+     * @param path     Path of any file or directory with '/' separators
+     * @return true if the path is a nested .ai directory or lies inside one
+     */
+    public static boolean isNested(@NotNull String rootPath, @NotNull String path) {
+        if (!path.startsWith(rootPath + "/")) {
+            return false;
+        }
+        String relative = path.substring(rootPath.length());
+        String segment = "/" + DIRECTORY_NAME;
+        // The root's own .ai directory starts at index 0
+        for (int index = relative.indexOf(segment, 1); index >= 0; index = relative.indexOf(segment, index + 1)) {
+            int end = index + segment.length();
+            if (end == relative.length() || relative.charAt(end) == '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param recordName Name a file is recorded under in the import manifest
+     * @return The module the file belongs to, the empty string for files of the root .ai directory or upstream
+     */
+    @NotNull
+    public static String moduleOf(@NotNull String recordName) {
+        if (!recordName.startsWith(RECORD_PREFIX)) {
+            return "";
+        }
+        int end = recordName.indexOf("/" + DIRECTORY_NAME + "/", RECORD_PREFIX.length());
+        return end < 0 ? "" : recordName.substring(RECORD_PREFIX.length(), end);
+    }
+
+    /**
+     * @param module A module
+     * @return Prefix of the names the files of the module's .ai directory are recorded under
+     */
+    @NotNull
+    public static String recordPrefix(@NotNull String module) {
+        return RECORD_PREFIX + module + "/" + DIRECTORY_NAME + "/";
+    }
+
+    /**
+     * @param ancestor A module, or the empty string for the root
+     * @param module   Another module
+     * @return true if the module is the ancestor itself or lies below it, so its instructions are meant to override
+     */
+    public static boolean contains(@NotNull String ancestor, @NotNull String module) {
+        return ancestor.isEmpty() || module.equals(ancestor) || module.startsWith(ancestor + "/");
+    }
+
+    private static int depth(String module) {
+        int depth = module.isEmpty() ? 0 : 1;
+        for (int i = 0; i < module.length(); i++) {
+            if (module.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private static String moduleName(Path relative) {
+        StringBuilder name = new StringBuilder();
+        for (Path part : relative) {
+            if (!name.isEmpty()) {
+                name.append('/');
+            }
+            name.append(part);
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,150 @@
+package de.knudev.aiexport.instructions;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Content of a file that is encoded as UTF-8 one fixed-size chunk at a time while it is written, compared or hashed,
+ * so a multi-megabyte instruction never exists as a second, encoded copy in memory.
+ * <p>
+ * Text parts are encoded one after the other like their concatenation, as long as no surrogate pair is split
+ * between two parts. Unpaired surrogates become '?', as with {@link String#getBytes}.
+ */
+public final class Utf8Content {
+    private static final int CHUNK_CHARS = 8192;
+    // A char encodes to at most 3 bytes, a surrogate pair to 4 for two chars
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private final List<String> parts;
+    private final byte[] bytes;
+
+    private Utf8Content(List<String> parts, byte[] bytes) {
+        this.parts = parts;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @param parts Text of the file, in order
+     * @return The content, referencing the parts without copying them
+     */
+    @NotNull
+    public static Utf8Content of(@NotNull String... parts) {
+        return new Utf8Content(List.of(parts), null);
+    }
+
+    /**
+     * @param bytes Content that is already encoded, e.g. a small index or a serialized component
+     * @return The content, referencing the array without copying it
+     */
+    @NotNull
+    public static Utf8Content encoded(byte @NotNull [] bytes) {
+        return new Utf8Content(List.of(), bytes);
+    }
+
+    /**
+     * Receives the encoded content chunk by chunk
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        /**
+         * @param chunk The next bytes, only valid until this method returns
+         * @return false to stop before the remaining chunks are encoded
+         */
+        boolean accept(@NotNull ByteBuffer chunk) throws IOException;
+    }
+
+    /**
+     * @return Number of bytes of the encoded content, computed without encoding it
+     */
+    public long byteLength() {
+        if (bytes != null) {
+            return bytes.length;
+        }
+        long length = 0;
+        for (String part : parts) {
+            for (int i = 0, size = part.length(); i < size; i++) {
+                char c = part.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(part.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    length++;
+                } else {
+                    length += 3;
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encodes the content into a buffer of fixed size and passes every filled buffer on
+     *
+     * @param consumer Receives the chunks in order
+     * @return false if the consumer stopped early
+     */
+    public boolean forEachChunk(@NotNull ChunkConsumer consumer) throws IOException {
+        if (bytes != null) {
+            return consumer.accept(ByteBuffer.wrap(bytes));
+        }
+
+        int longest = 0;
+        for (String part : parts) {
+            longest = Math.max(longest, part.length());
+        }
+        // Small files get buffers of their own size, large ones never more than one chunk
+        char[] chars = new char[Math.min(Math.max(longest, 2), CHUNK_CHARS)];
+        ByteBuffer buffer = ByteBuffer.allocate(chars.length * MAX_BYTES_PER_CHAR);
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        for (String part : parts) {
+            int size = part.length();
+            int from = 0;
+            while (from < size) {
+                int to = Math.min(from + chars.length, size);
+                if (to < size && Character.isHighSurrogate(part.charAt(to - 1))) {
+                    // Keep the pair together for the next chunk
+                    to--;
+                }
+                part.getChars(from, to, chars, 0);
+                encoder.reset();
+                encoder.encode(CharBuffer.wrap(chars, 0, to - from), buffer, true);
+                encoder.flush(buffer);
+                buffer.flip();
+                if (buffer.hasRemaining() && !consumer.accept(buffer)) {
+                    return false;
+                }
+                buffer.clear();
+                from = to;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The SHA-256 of the encoded content
+     */
+    @NotNull
+    public String sha256() throws IOException {
+        MessageDigest digest = ContentHash.newDigest();
+        forEachChunk(chunk -> {
+            digest.update(chunk);
+            return true;
+        });
+        return ContentHash.toHex(digest.digest());
+    }
+}
@@ -0,0 +1,193 @@
+package de.knudev.aiexport.listener;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import de.knudev.aiexport.components.VerbatimComponentHandler;
+import de.knudev.aiexport.instructions.ContentAddressedStore;
+import de.knudev.aiexport.instructions.FragmentExpander;
+import de.knudev.aiexport.instructions.InstructionBundle;
+import de.knudev.aiexport.instructions.NestedAiDirectories;
+import de.knudev.aiexport.service.InstructionModelService;
+import de.knudev.aiexport.service.InstructionsImportService;
+import de.knudev.aiexport.service.NestedAiDirectoryIndex;
+import de.knudev.aiexport.settings.AiSettingsExportSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Listener that keeps workspace.xml in sync with the .ai directory while the project is open.
+ * It only collects the changed instruction files, the import itself is debounced by {@link InstructionsImportService}.
+ * Changed files are also dropped from the in-memory model of {@link InstructionModelService}.
+ * When nested .ai directories are merged, it keeps {@link NestedAiDirectoryIndex} current, and any change inside
+ * them triggers a full import, which only reads the modules whose files changed.
+ */
+public class AiDirectoryListener implements BulkFileListener {
+    private final Project project;
+
+    public AiDirectoryListener(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+        String projectPath = project.getBasePath();
+        if (projectPath == null || project.isDisposed()) {
+            return;
+        }
+        String aiDirectoryPrefix = projectPath + "/.ai/";
+        String workspacePath = projectPath + "/.idea/workspace.xml";
+
+        boolean nested = AiSettingsExportSettings.getInstance(project).isMergeNestedDirectories();
+
+        Set<Path> changedFiles = new LinkedHashSet<>();
+        boolean fullImportNeeded = false;
+        for (VFileEvent event : events) {
+            invalidateModel(event, projectPath, aiDirectoryPrefix, workspacePath);
+            if (nested && (updateNestedIndex(event, projectPath) || touchesNestedDirectory(event, projectPath))) {
+                fullImportNeeded = true;
+                continue;
+            }
+
+            String path = getChangedPath(event);
+            if (path != null && isInstructionFile(path, aiDirectoryPrefix)) {
+                changedFiles.add(Paths.get(path));
+            } else if (path != null && (path.equals(aiDirectoryPrefix + InstructionBundle.FILE_NAME)
+                    || path.equals(aiDirectoryPrefix + ContentAddressedStore.INDEX_FILE)
+                    || path.startsWith(aiDirectoryPrefix + ContentAddressedStore.BODIES_DIRECTORY + "/")
+                    || path.startsWith(aiDirectoryPrefix + VerbatimComponentHandler.DIRECTORY + "/")
+                    || path.startsWith(aiDirectoryPrefix + FragmentExpander.DIRECTORY + "/"))) {
+                fullImportNeeded = true;
+            }
+        }
+
+        if (fullImportNeeded) {
+            // The manifest tells which bundle entries changed and which instructions include a changed fragment,
+            // so a full import only reads those. Shared components are compared with the settings files directly
+            InstructionsImportService.getInstance(project).importInBackground(true);
+        } else if (!changedFiles.isEmpty()) {
+            InstructionsImportService.getInstance(project).scheduleSync(changedFiles);
+        }
+    }
+
+    /**
+     * Applies created and deleted .ai directories to the index and makes it look up the modules again after
+     * directories that may hold nested .ai directories were moved, copied or created, since those events do not
+     * list the directories inside. Events outside the project never change the index
+     *
+     * @return true if a nested .ai directory was created or deleted
+     */
+    private boolean updateNestedIndex(VFileEvent event, String projectPath) {
+        NestedAiDirectoryIndex index = NestedAiDirectoryIndex.getInstance(project);
+        String projectPrefix = projectPath + "/";
+        String path = event.getPath();
+        if (event instanceof VFileCreateEvent create && create.isDirectory()) {
+            if (!path.startsWith(projectPrefix)) {
+                return false;
+            }
+            String module = NestedAiDirectories.moduleOf(projectPath, path);
+            if (module != null) {
+                index.added(module);
+                return true;
+            }
+            if (hasSubdirectory(create.getFile())) {
+                index.reset();
+            }
+        } else if (event instanceof VFileDeleteEvent && path.startsWith(projectPrefix)) {
+            index.removed(path.substring(projectPrefix.length()));
+            return NestedAiDirectories.moduleOf(projectPath, path) != null;
+        } else if (event instanceof VFileMoveEvent || event instanceof VFileCopyEvent
+                || event instanceof VFilePropertyChangeEvent propertyChange && propertyChange.isRename()) {
+            VirtualFile file = event.getFile();
+            String newPath = event instanceof VFileCopyEvent copy
+                    ? copy.getNewParent().getPath() + "/" + copy.getNewChildName()
+                    : getChangedPath(event);
+            boolean inProject = path.startsWith(projectPrefix) || newPath != null && newPath.startsWith(projectPrefix);
+            // Renaming a directory to or from .ai changes the index even if it only holds instruction files
+            String aiSuffix = "/" + NestedAiDirectories.DIRECTORY_NAME;
+            boolean aiDirectory = path.endsWith(aiSuffix) || newPath != null && newPath.endsWith(aiSuffix);
+            if (inProject && file != null && file.isDirectory() && (aiDirectory || hasSubdirectory(file))) {
+                index.reset();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the directory has a subdirectory, so it may hold a nested .ai directory. A directory with
+     * only files, like a freshly created empty one, never does
+     */
+    private static boolean hasSubdirectory(@Nullable VirtualFile directory) {
+        if (directory == null || !directory.isValid() || !directory.isDirectory()) {
+            return false;
+        }
+        for (VirtualFile child : directory.getChildren()) {
+            if (child.isDirectory()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the event changes a file inside a nested .ai directory, including deletes
+     */
+    private static boolean touchesNestedDirectory(VFileEvent event, String projectPath) {
+        String newPath = getChangedPath(event);
+        return NestedAiDirectories.isNested(projectPath, event.getPath())
+                || newPath != null && NestedAiDirectories.isNested(projectPath, newPath);
+    }
+
+    /**
+     * Drops the parsed state of every file the event touches, including deleted and renamed ones
+     */
+    private void invalidateModel(VFileEvent event, String projectPath, String aiDirectoryPrefix, String workspacePath) {
+        String path = event.getPath();
+        String newPath = getChangedPath(event);
+        for (String touched : newPath != null && !newPath.equals(path) ? List.of(path, newPath) : List.of(path)) {
+            if (touched.equals(workspacePath) || touched.startsWith(aiDirectoryPrefix)
+                    || NestedAiDirectories.isNested(projectPath, touched)) {
+                InstructionModelService.getInstance(project).invalidate(Paths.get(touched));
+            }
+        }
+    }
+
+    /**
+     * @return Path of the file as it exists after the event, or null if the event leaves no file to import
+     */
+    @Nullable
+    private static String getChangedPath(VFileEvent event) {
+        if (event instanceof VFileDeleteEvent) {
+            // Import never removes entries, so there is nothing to sync
+            return null;
+        }
+        if (event instanceof VFilePropertyChangeEvent propertyChange) {
+            return propertyChange.isRename() ? propertyChange.getNewPath() : null;
+        }
+        if (event instanceof VFileMoveEvent move) {
+            return move.getNewPath();
+        }
+        return event.getPath();
+    }
+
+    /**
+     * Only .md files directly inside the .ai directory are instructions
+     */
+    private static boolean isInstructionFile(String path, String aiDirectoryPrefix) {
+        return path.startsWith(aiDirectoryPrefix)
+                && path.endsWith(".md")
+                && path.indexOf('/', aiDirectoryPrefix.length()) < 0;
+    }
+}
@@ -0,0 +1,29 @@
+package de.knudev.aiexport.listener;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.ProjectActivity;
+import de.knudev.aiexport.service.InstructionsImportService;
+import kotlin.Unit;
+import kotlin.coroutines.Continuation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Post-startup activity that automatically imports AI instructions when a project is opened.
+ * The import itself runs as a background task, so project opening only pays for scheduling it.
+ */
+public class ProjectOpenActivity implements ProjectActivity {
+
+    @Nullable
+    @Override
+    public Object execute(@NotNull Project project, @NotNull Continuation<? super Unit> continuation) {
+        long start = System.nanoTime();
+        InstructionsImportService importService = InstructionsImportService.getInstance(project);
+
+        // Call the import functionality, skipping it if nothing changed since the last import
+        importService.importInBackground(true);
+
+        importService.recordStartupLatency(System.nanoTime() - start);
+        return Unit.INSTANCE;
+    }
+}
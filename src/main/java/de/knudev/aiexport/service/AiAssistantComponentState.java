@@ -0,0 +1,214 @@
+package de.knudev.aiexport.service;
+
+import com.intellij.ide.SaveAndSyncHandler;
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import com.intellij.ide.plugins.PluginManagerCore;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.util.xmlb.XmlSerializationException;
+import com.intellij.util.xmlb.XmlSerializer;
+import de.knudev.aiexport.core.ComponentState;
+import de.knudev.aiexport.settings.AiSettingsExportSettings;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Reads and replaces the AI Assistant's in-memory instructions component, so an import takes effect
+ * immediately and is not overwritten by the IDE's older state on the next save.
+ * <p>
+ * The AI Assistant is not a dependency of this plugin, so its component is looked up at runtime: the class named
+ * in the settings, otherwise the project services declared by the AI Assistant plugin, whichever is a
+ * {@link PersistentStateComponent} stored as AIAssistantCustomInstructionsStorage. Without such a component
+ * {@link #read()} returns null and imports write workspace.xml on disk as before.
+ */
+@Service(Service.Level.PROJECT)
+public final class AiAssistantComponentState implements ComponentState {
+    private static final Logger LOG = Logger.getInstance(AiAssistantComponentState.class);
+    private static final PluginId AI_ASSISTANT_PLUGIN_ID = PluginId.getId("com.intellij.ml.llm");
+
+    private final Project project;
+    // Only the class name is kept, a class reference would keep the AI Assistant plugin from being unloaded
+    private volatile @Nullable LookupResult lookup;
+
+    /**
+     * @param configuredClassName Class name from the settings the lookup was done with
+     * @param componentClassName  The component class that was found, or null if there is none
+     */
+    private record LookupResult(String configuredClassName, @Nullable String componentClassName) {
+    }
+
+    public AiAssistantComponentState(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static AiAssistantComponentState getInstance(@NotNull Project project) {
+        return project.getService(AiAssistantComponentState.class);
+    }
+
+    @Override
+    public @Nullable String read() {
+        PersistentStateComponent<Object> component = findComponent();
+        if (component == null) {
+            return null;
+        }
+        try {
+            return onEdt(() -> {
+                Object state = component.getState();
+                if (state == null) {
+                    return null;
+                }
+                Element element = new Element("component").setAttribute("name", WorkspaceInstructionsReader.COMPONENT_NAME);
+                XmlSerializer.serializeInto(state, element);
+                return JDOMUtil.write(element);
+            });
+        } catch (XmlSerializationException e) {
+            LOG.warn("Could not read the AI Assistant instructions state, using workspace.xml instead", e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean write(@NotNull String componentXml) {
+        PersistentStateComponent<Object> component = findComponent();
+        if (component == null) {
+            return false;
+        }
+        try {
+            Element element = JDOMUtil.load(componentXml);
+            boolean written = onEdt(() -> {
+                Object state = component.getState();
+                if (state == null) {
+                    return false;
+                }
+                component.loadState(XmlSerializer.deserialize(element, state.getClass()));
+                return true;
+            });
+            if (written) {
+                // The state is saved with the rest of the project, this only makes it happen soon
+                SaveAndSyncHandler.getInstance().scheduleProjectSave(project);
+            }
+            return written;
+        } catch (IOException | JDOMException | XmlSerializationException e) {
+            LOG.warn("Could not apply instructions to the AI Assistant state, writing workspace.xml instead", e);
+            return false;
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private PersistentStateComponent<Object> findComponent() {
+        AiSettingsExportSettings settings = AiSettingsExportSettings.getInstance(project);
+        if (!settings.isWriteThroughComponentState() || PluginManagerCore.isDisabled(AI_ASSISTANT_PLUGIN_ID)) {
+            return null;
+        }
+        IdeaPluginDescriptor plugin = PluginManagerCore.getPlugin(AI_ASSISTANT_PLUGIN_ID);
+        if (plugin == null) {
+            return null;
+        }
+
+        String configuredClassName = settings.getInstructionsComponentClass().strip();
+        LookupResult result = lookup;
+        if (result == null || !result.configuredClassName().equals(configuredClassName)) {
+            result = new LookupResult(configuredClassName, findComponentClassName(plugin, configuredClassName));
+            lookup = result;
+        }
+        if (result.componentClassName() == null) {
+            return null;
+        }
+
+        Class<?> componentClass = loadClass(result.componentClassName(), plugin.getPluginClassLoader());
+        Object component = componentClass != null ? project.getService(componentClass) : null;
+        return component instanceof PersistentStateComponent<?> stateComponent
+                ? (PersistentStateComponent<Object>) stateComponent
+                : null;
+    }
+
+    @Nullable
+    private static String findComponentClassName(IdeaPluginDescriptor plugin, String configuredClassName) {
+        List<String> candidates = new ArrayList<>();
+        if (!configuredClassName.isEmpty()) {
+            candidates.add(configuredClassName);
+        }
+        candidates.addAll(getDeclaredProjectServices(plugin));
+
+        for (String className : candidates) {
+            Class<?> candidate = loadClass(className, plugin.getPluginClassLoader());
+            if (candidate != null && isInstructionsComponent(candidate)) {
+                LOG.info("Writing imported instructions through " + className);
+                return className;
+            }
+        }
+        LOG.info("AI Assistant instructions component not found, imports write workspace.xml");
+        return null;
+    }
+
+    private static boolean isInstructionsComponent(Class<?> candidate) {
+        State state = candidate.getAnnotation(State.class);
+        return state != null
+                && WorkspaceInstructionsReader.COMPONENT_NAME.equals(state.name())
+                && PersistentStateComponent.class.isAssignableFrom(candidate);
+    }
+
+    /**
+     * Lists the project services of the plugin descriptor. The descriptor internals are no public API, so they are
+     * read reflectively; if they change, only this discovery stops working and the configured class is still used.
+     */
+    private static List<String> getDeclaredProjectServices(IdeaPluginDescriptor plugin) {
+        try {
+            Object containerDescriptor = plugin.getClass().getMethod("getProjectContainerDescriptor").invoke(plugin);
+            Object services = containerDescriptor.getClass().getField("services").get(containerDescriptor);
+            List<String> classNames = new ArrayList<>();
+            if (services instanceof Iterable<?> serviceDescriptors) {
+                for (Object service : serviceDescriptors) {
+                    Object implementation = service.getClass().getField("serviceImplementation").get(service);
+                    if (implementation instanceof String className) {
+                        classNames.add(className);
+                    }
+                }
+            }
+            return classNames;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            LOG.debug("Could not list the project services of the AI Assistant plugin", e);
+            return List.of();
+        }
+    }
+
+    @Nullable
+    private static Class<?> loadClass(String className, ClassLoader classLoader) {
+        try {
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Settings components expect to be read and loaded on the event dispatch thread
+     */
+    private static <T> T onEdt(Supplier<T> supplier) {
+        Application application = ApplicationManager.getApplication();
+        if (application.isDispatchThread()) {
+            return supplier.get();
+        }
+        AtomicReference<T> result = new AtomicReference<>();
+        application.invokeAndWait(() -> result.set(supplier.get()), ModalityState.defaultModalityState());
+        return result.get();
+    }
+}
@@ -0,0 +1,34 @@
+package de.knudev.aiexport.service;
+
+import com.intellij.openapi.extensions.ExtensionPointName;
+import com.intellij.openapi.project.Project;
+import de.knudev.aiexport.components.ComponentHandler;
+import de.knudev.aiexport.components.VerbatimComponentHandler;
+import de.knudev.aiexport.settings.AiSettingsExportSettings;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the {@link ComponentHandler}s of a project: those registered by plugins through the extension point,
+ * plus verbatim handlers for the components listed in the project settings.
+ */
+public final class ComponentHandlers {
+    public static final ExtensionPointName<ComponentHandler> EP_NAME =
+            ExtensionPointName.create("de.knudev.ai-export.componentHandler");
+
+    private ComponentHandlers() {
+    }
+
+    /**
+     * @param project The current project
+     * @return All handlers to export and import with, besides the instructions
+     */
+    @NotNull
+    public static List<ComponentHandler> forProject(@NotNull Project project) {
+        List<ComponentHandler> handlers = new ArrayList<>(EP_NAME.getExtensionList());
+        handlers.addAll(VerbatimComponentHandler.fromSpecs(AiSettingsExportSettings.getInstance(project).getSharedComponents()));
+        return handlers;
+    }
+}
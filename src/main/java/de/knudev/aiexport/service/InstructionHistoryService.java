@@ -0,0 +1,52 @@
+package de.knudev.aiexport.service;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import de.knudev.aiexport.history.SnapshotLog;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Holds the {@link SnapshotLog} of the project, opened on first use.
+ * It lives in the IDE system directory next to the import manifest, so it is never shared through version control.
+ */
+@Service(Service.Level.PROJECT)
+public final class InstructionHistoryService {
+    private static final Logger LOG = Logger.getInstance(InstructionHistoryService.class);
+
+    private final Project project;
+    // Guarded by this
+    private @Nullable SnapshotLog log;
+    private boolean failed;
+
+    public InstructionHistoryService(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static InstructionHistoryService getInstance(@NotNull Project project) {
+        return project.getService(InstructionHistoryService.class);
+    }
+
+    /**
+     * @return The history of the project, or null if it cannot be opened
+     */
+    @Nullable
+    public synchronized SnapshotLog getLog() {
+        if (log == null && !failed) {
+            try {
+                log = SnapshotLog.open(Paths.get(PathManager.getSystemPath(), "ai-settings-export",
+                        project.getLocationHash() + ".history"));
+            } catch (IOException e) {
+                // Imports and exports work the same without a history
+                LOG.warn("Could not open the AI instruction history", e);
+                failed = true;
+            }
+        }
+        return log;
+    }
+}
@@ -0,0 +1,78 @@
+package de.knudev.aiexport.service;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import de.knudev.aiexport.core.InstructionModel;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the parsed instructions of a project, shared by export, import and the startup check.
+ * The models of all open projects together stay below a memory budget; when it is exceeded the
+ * least recently used models are emptied and simply read from disk again on their next use.
+ */
+@Service(Service.Level.PROJECT)
+public final class InstructionModelService implements Disposable {
+    private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+    // Access ordered, the least recently used model comes first
+    private static final Map<InstructionModelService, Boolean> RECENTLY_USED = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final InstructionModel model = new InstructionModel();
+
+    public static InstructionModelService getInstance(@NotNull Project project) {
+        return project.getService(InstructionModelService.class);
+    }
+
+    /**
+     * @return The model of the project, marked as most recently used
+     */
+    @NotNull
+    public InstructionModel getModel() {
+        synchronized (RECENTLY_USED) {
+            RECENTLY_USED.put(this, Boolean.TRUE);
+            evictOverBudget();
+        }
+        return model;
+    }
+
+    /**
+     * Drops the cached state of a changed or deleted file
+     *
+     * @param path A .ai file or workspace.xml
+     */
+    public void invalidate(@NotNull Path path) {
+        model.invalidate(path);
+    }
+
+    private void evictOverBudget() {
+        long total = 0;
+        for (InstructionModelService service : RECENTLY_USED.keySet()) {
+            total += service.model.estimatedSize();
+        }
+
+        Iterator<InstructionModelService> iterator = RECENTLY_USED.keySet().iterator();
+        while (total > MAX_CACHED_BYTES && iterator.hasNext()) {
+            InstructionModelService leastRecentlyUsed = iterator.next();
+            if (leastRecentlyUsed == this) {
+                // The model about to be used is never evicted, even if it exceeds the budget on its own
+                continue;
+            }
+            total -= leastRecentlyUsed.model.estimatedSize();
+            leastRecentlyUsed.model.clear();
+            iterator.remove();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (RECENTLY_USED) {
+            RECENTLY_USED.remove(this);
+        }
+        model.clear();
+    }
+}
@@ -0,0 +1,419 @@
+package de.knudev.aiexport.service;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import de.knudev.aiexport.core.CoalescingJobQueue;
+import de.knudev.aiexport.core.ExportOptions;
+import de.knudev.aiexport.core.ExportResult;
+import de.knudev.aiexport.core.ImportOptions;
+import de.knudev.aiexport.core.ImportResult;
+import de.knudev.aiexport.core.InstructionModel;
+import de.knudev.aiexport.core.InstructionsExporter;
+import de.knudev.aiexport.core.InstructionsImporter;
+import de.knudev.aiexport.core.OperationReport;
+import de.knudev.aiexport.core.ProjectLayout;
+import de.knudev.aiexport.core.TaskProgress;
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import de.knudev.aiexport.diagnostics.Phase;
+import de.knudev.aiexport.settings.AiSettingsExportSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Imports, exports and restores the instructions of the project as cancellable background tasks, one at a time.
+ * Requests arriving while another task is running wait in a queue, where requests of the same kind are merged,
+ * so a burst of triggers ends in a single run. Changes to single instruction files are collected and imported
+ * incrementally once they stop arriving.
+ */
+@Service(Service.Level.PROJECT)
+public final class InstructionsImportService implements Disposable {
+    private static final Logger LOG = Logger.getInstance(InstructionsImportService.class);
+    private static final int SYNC_DELAY_MILLIS = 500;
+    private static final ExecutorService LOADER_EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+            "AI Instructions Loader", Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private final Project project;
+    private final CoalescingJobQueue<WorkspaceJob, OperationReport> jobs =
+            new CoalescingJobQueue<>(this::launch, InstructionsImportService::merge);
+    private final Set<Path> pendingChanges = ConcurrentHashMap.newKeySet();
+    private final Alarm syncAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    private volatile long startupLatencyNanos = -1;
+
+    /**
+     * A queued task reading or writing workspace.xml
+     */
+    private sealed interface WorkspaceJob {
+    }
+
+    /**
+     * @param skipIfUnchanged Skip the import if nothing changed since the last one
+     */
+    private record FullImport(boolean skipIfUnchanged) implements WorkspaceJob {
+    }
+
+    private record IncrementalImport(Set<Path> changedFiles) implements WorkspaceJob {
+    }
+
+    private record Export() implements WorkspaceJob {
+    }
+
+    private record Restore(long snapshotId) implements WorkspaceJob {
+    }
+
+    public InstructionsImportService(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static InstructionsImportService getInstance(@NotNull Project project) {
+        return project.getService(InstructionsImportService.class);
+    }
+
+    /**
+     * Queues a full import of the .ai directory. It runs after the task that is currently running,
+     * and shares its run with all other imports requested until then.
+     *
+     * @param skipIfUnchanged Skip the import if nothing changed since the last one
+     * @return Future completed with the report of the import
+     */
+    @NotNull
+    public CompletableFuture<OperationReport> importInBackground(boolean skipIfUnchanged) {
+        return jobs.submit(new FullImport(skipIfUnchanged));
+    }
+
+    /**
+     * Queues an export of workspace.xml into the .ai directory, shared with other exports requested until it starts
+     *
+     * @return Future completed with the report of the export
+     */
+    @NotNull
+    public CompletableFuture<OperationReport> exportInBackground() {
+        return jobs.submit(new Export());
+    }
+
+    /**
+     * Queues a restore of an earlier instruction set from the project's history. It is never merged with other
+     * requests, so it runs exactly once, after the tasks requested before it.
+     *
+     * @param snapshotId Id of the snapshot to restore
+     * @return Future completed with the report of the restore
+     */
+    @NotNull
+    public CompletableFuture<OperationReport> restoreInBackground(long snapshotId) {
+        return jobs.submit(new Restore(snapshotId));
+    }
+
+    /**
+     * Schedules an incremental import of changed instruction files.
+     * Changes arriving in quick succession, e.g. from a checkout, end up in a single import.
+     *
+     * @param changedFiles Instruction files that were created or modified
+     */
+    public void scheduleSync(@NotNull Collection<Path> changedFiles) {
+        if (changedFiles.isEmpty()) {
+            return;
+        }
+        pendingChanges.addAll(changedFiles);
+        if (syncAlarm.isDisposed()) {
+            return;
+        }
+        syncAlarm.cancelAllRequests();
+        syncAlarm.addRequest(this::syncPendingChanges, SYNC_DELAY_MILLIS);
+    }
+
+    private void syncPendingChanges() {
+        Set<Path> changedFiles = Set.copyOf(pendingChanges);
+        pendingChanges.removeAll(changedFiles);
+        if (!changedFiles.isEmpty()) {
+            jobs.submit(new IncrementalImport(changedFiles));
+        }
+    }
+
+    /**
+     * Merges a new request into the waiting one. A full import covers incremental ones in either order,
+     * because it reads all files when it starts.
+     */
+    @Nullable
+    private static WorkspaceJob merge(@NotNull WorkspaceJob waiting, @NotNull WorkspaceJob incoming) {
+        if (waiting instanceof FullImport full && incoming instanceof FullImport other) {
+            return new FullImport(full.skipIfUnchanged() && other.skipIfUnchanged());
+        }
+        if (waiting instanceof FullImport && incoming instanceof IncrementalImport) {
+            return waiting;
+        }
+        if (waiting instanceof IncrementalImport && incoming instanceof FullImport) {
+            return incoming;
+        }
+        if (waiting instanceof IncrementalImport sync && incoming instanceof IncrementalImport other) {
+            Set<Path> changedFiles = new HashSet<>(sync.changedFiles());
+            changedFiles.addAll(other.changedFiles());
+            return new IncrementalImport(changedFiles);
+        }
+        if (waiting instanceof Export && incoming instanceof Export) {
+            return waiting;
+        }
+        return null;
+    }
+
+    private CompletableFuture<OperationReport> launch(WorkspaceJob job) {
+        CompletableFuture<OperationReport> future = new CompletableFuture<>();
+        switch (job) {
+            case FullImport full -> queueTask(future, "Importing AI Assistant instructions",
+                    indicator -> importInstructions(full.skipIfUnchanged(), indicator));
+            case IncrementalImport sync -> queueTask(future, "Syncing AI Assistant instructions",
+                    indicator -> importChangedFiles(sync.changedFiles(), indicator));
+            case Export export -> queueTask(future, "Exporting AI Assistant instructions",
+                    indicator -> exportInstructions(indicator));
+            case Restore restore -> queueTask(future, "Restoring AI Assistant instructions",
+                    indicator -> restoreSnapshot(restore.snapshotId(), indicator));
+        }
+        return future;
+    }
+
+    private void queueTask(CompletableFuture<OperationReport> future, String title,
+                           Function<ProgressIndicator, OperationReport> task) {
+        long queued = System.nanoTime();
+        new Task.Backgroundable(project, title, true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                OperationReport report = task.apply(indicator);
+                future.complete(report);
+                LOG.info(title + " finished in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queued) + " ms: "
+                        + report.message());
+            }
+
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                future.completeExceptionally(error);
+            }
+
+            @Override
+            public void onFinished() {
+                // Cancelled, or never started because the project was closed
+                future.cancel(false);
+            }
+        }.queue();
+    }
+
+    /**
+     * Imports instructions from the .ai directory into workspace.xml
+     *
+     * @param skipIfUnchanged Skip the import if the manifest shows that nothing changed since the last one
+     * @param indicator       Progress of the background task running the import
+     * @return Report of the import operation
+     */
+    @NotNull
+    private OperationReport importInstructions(boolean skipIfUnchanged, ProgressIndicator indicator) {
+        String projectPath = project.getBasePath();
+        if (projectPath == null) {
+            return OperationReport.failed("Import", "Project path not found.");
+        }
+
+        long start = System.nanoTime();
+        OperationMetrics metrics = new OperationMetrics();
+        ProjectLayout layout = NestedAiDirectoryIndex.getInstance(project).layoutOf(Paths.get(projectPath));
+        indicator.setIndeterminate(false);
+        ImportResult result = createImporter()
+                .importAll(layout, getManifestPath(), skipIfUnchanged, progressOf(indicator), metrics);
+        handleResult(result, layout, metrics);
+        return OperationReport.of("Import", result, metrics.snapshot(System.nanoTime() - start));
+    }
+
+    /**
+     * Imports only the given instruction files, e.g. after they were changed on disk.
+     * Entries whose content already matches workspace.xml are left alone, and workspace.xml is not written
+     * at all if none of the files changed an instruction.
+     *
+     * @param changedFiles Instruction files in the .ai directory that were created or modified
+     * @param indicator    Progress of the background task running the import
+     * @return Report of the import operation
+     */
+    @NotNull
+    private OperationReport importChangedFiles(Collection<Path> changedFiles, ProgressIndicator indicator) {
+        String projectPath = project.getBasePath();
+        if (projectPath == null) {
+            return OperationReport.failed("Sync", "Project path not found.");
+        }
+
+        long start = System.nanoTime();
+        OperationMetrics metrics = new OperationMetrics();
+        ProjectLayout layout = NestedAiDirectoryIndex.getInstance(project).layoutOf(Paths.get(projectPath));
+        ImportResult result = createImporter().importFiles(layout, changedFiles, progressOf(indicator), metrics);
+        handleResult(result, layout, metrics);
+        return OperationReport.of("Sync", result, metrics.snapshot(System.nanoTime() - start));
+    }
+
+    /**
+     * Restores the instructions of a snapshot from the project's history, writing only the ones that differ
+     *
+     * @param snapshotId Id of the snapshot to restore
+     * @param indicator  Progress of the background task running the restore
+     * @return Report of the restore, listing every instruction it wrote or removed
+     */
+    @NotNull
+    private OperationReport restoreSnapshot(long snapshotId, ProgressIndicator indicator) {
+        String projectPath = project.getBasePath();
+        if (projectPath == null) {
+            return OperationReport.failed("Restore", "Project path not found.");
+        }
+
+        long start = System.nanoTime();
+        OperationMetrics metrics = new OperationMetrics();
+        ProjectLayout layout = NestedAiDirectoryIndex.getInstance(project).layoutOf(Paths.get(projectPath));
+        ImportResult result = createImporter()
+                .restore(layout, snapshotId, getManifestPath(), progressOf(indicator), metrics);
+        handleResult(result, layout, metrics);
+        return OperationReport.of("Restore", result, metrics.snapshot(System.nanoTime() - start));
+    }
+
+    private static void handleResult(ImportResult result, ProjectLayout layout, OperationMetrics metrics) {
+        long start = System.nanoTime();
+        if (result.isWorkspaceWritten()) {
+            refreshWorkspaceFile(layout.workspaceFile());
+        }
+        if (!result.components().isEmpty()) {
+            // Components may live in any settings file of the .idea directory
+            refreshDirectory(layout.ideaDirectory());
+        }
+        metrics.record(Phase.VFS_REFRESH, start);
+        if (result.status() == ImportResult.Status.FAILED) {
+            LOG.warn(result.message());
+        }
+    }
+
+    /**
+     * Refresh the virtual file to make sure IntelliJ sees the changes
+     *
+     * @param workspacePath Path to the workspace.xml file
+     */
+    private static void refreshWorkspaceFile(Path workspacePath) {
+        VirtualFile workspaceVirtualFile = LocalFileSystem.getInstance().refreshAndFindFileByPath(workspacePath.toString());
+        if (workspaceVirtualFile != null) {
+            workspaceVirtualFile.refresh(false, false);
+        }
+    }
+
+    /**
+     * The manifest lives in the IDE system directory, so it is never shared through version control
+     *
+     * @return Path to the import manifest of the project
+     */
+    private Path getManifestPath() {
+        return Paths.get(PathManager.getSystemPath(), "ai-settings-export", project.getLocationHash() + ".manifest");
+    }
+
+    private InstructionsImporter createImporter() {
+        return new InstructionsImporter(LOADER_EXECUTOR, InstructionModelService.getInstance(project).getModel(),
+                new ImportOptions(AiAssistantComponentState.getInstance(project), ComponentHandlers.forProject(project),
+                        UpstreamSourceService.getInstance().getSource(AiSettingsExportSettings.getInstance(project).getUpstreamDirectory()),
+                        InstructionHistoryService.getInstance(project).getLog()));
+    }
+
+    private static TaskProgress progressOf(ProgressIndicator indicator) {
+        return new TaskProgress() {
+            @Override
+            public void setText(@NotNull String text) {
+                indicator.setText(text);
+            }
+
+            @Override
+            public void setFraction(double fraction) {
+                indicator.setFraction(fraction);
+            }
+
+            @Override
+            public void checkCanceled() {
+                indicator.checkCanceled();
+            }
+        };
+    }
+
+    /**
+     * Exports the instructions of workspace.xml into the .ai directory
+     *
+     * @param indicator Progress of the background task running the export
+     * @return Report of the export, listing every file of the .ai directory it wrote, kept or removed
+     */
+    @NotNull
+    private OperationReport exportInstructions(ProgressIndicator indicator) {
+        String projectPath = project.getBasePath();
+        if (projectPath == null) {
+            return OperationReport.failed("Export", "Project path not found.");
+        }
+
+        long start = System.nanoTime();
+        indicator.setIndeterminate(true);
+        indicator.setText("Exporting instructions to the .ai directory");
+        ExportOptions configured = AiSettingsExportSettings.getInstance(project).getExportOptions();
+        ExportOptions options = new ExportOptions(configured.prune(), configured.format(), ComponentHandlers.forProject(project));
+        InstructionModel model = InstructionModelService.getInstance(project).getModel();
+        ProjectLayout layout = NestedAiDirectoryIndex.getInstance(project).layoutOf(Paths.get(projectPath));
+        OperationMetrics metrics = new OperationMetrics();
+        ExportResult result = InstructionsExporter.export(layout, model, options, metrics,
+                InstructionHistoryService.getInstance(project).getLog());
+        if (result.status() == ExportResult.Status.FAILED) {
+            LOG.warn(result.message());
+        }
+        if (result.files().hasChanges()) {
+            // Make editors and version control see the written files right away
+            long refreshStart = System.nanoTime();
+            refreshDirectory(layout.aiDirectory());
+            // Edited instructions of modules are written back into their nested .ai directories
+            for (String module : layout.modules()) {
+                refreshDirectory(layout.aiDirectory(module));
+            }
+            metrics.record(Phase.VFS_REFRESH, refreshStart);
+        }
+        return OperationReport.of(result, layout.aiDirectory(), metrics.snapshot(System.nanoTime() - start));
+    }
+
+    private static void refreshDirectory(Path directory) {
+        VirtualFile virtualDirectory = LocalFileSystem.getInstance().refreshAndFindFileByPath(directory.toString());
+        if (virtualDirectory != null) {
+            virtualDirectory.refresh(false, true);
+        }
+    }
+
+    /**
+     * Records how long scheduling the startup import held up project opening
+     *
+     * @param nanos Time spent in the startup activity
+     */
+    public void recordStartupLatency(long nanos) {
+        startupLatencyNanos = nanos;
+        LOG.info("AI Assistant instructions startup import added "
+                + TimeUnit.NANOSECONDS.toMicros(nanos) + " µs to project opening");
+    }
+
+    /**
+     * @return Time the startup activity spent on the project-open path in nanoseconds, or -1 if it did not run yet
+     */
+    public long getStartupLatencyNanos() {
+        return startupLatencyNanos;
+    }
+
+    @Override
+    public void dispose() {
+        pendingChanges.clear();
+        jobs.close();
+    }
+}
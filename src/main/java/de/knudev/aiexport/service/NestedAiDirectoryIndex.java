@@ -0,0 +1,124 @@
+package de.knudev.aiexport.service;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.FilenameIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import de.knudev.aiexport.core.ProjectLayout;
+import de.knudev.aiexport.instructions.NestedAiDirectories;
+import de.knudev.aiexport.settings.AiSettingsExportSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Knows the modules of the project that have a nested .ai directory, see {@link NestedAiDirectories}.
+ * They are looked up once in the IDE's file name index, which only covers project content, and from then on
+ * kept current by {@link de.knudev.aiexport.listener.AiDirectoryListener}, so no import walks the project tree.
+ */
+@Service(Service.Level.PROJECT)
+public final class NestedAiDirectoryIndex {
+    private final Project project;
+    // Guarded by this, null until looked up and after changes the listener cannot apply directly
+    private @Nullable Set<String> modules;
+
+    public NestedAiDirectoryIndex(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static NestedAiDirectoryIndex getInstance(@NotNull Project project) {
+        return project.getService(NestedAiDirectoryIndex.class);
+    }
+
+    /**
+     * Must not be called on the event dispatch thread, the first lookup waits until indexing is finished
+     *
+     * @param root Root directory of the project
+     * @return The layout of the project, with its modules if merging nested .ai directories is enabled
+     */
+    @NotNull
+    public ProjectLayout layoutOf(@NotNull Path root) {
+        if (!AiSettingsExportSettings.getInstance(project).isMergeNestedDirectories()) {
+            return new ProjectLayout(root);
+        }
+        return new ProjectLayout(root, getModules(root));
+    }
+
+    /**
+     * @param root Root directory of the project
+     * @return The modules in {@link NestedAiDirectories#PRECEDENCE} order
+     */
+    @NotNull
+    public List<String> getModules(@NotNull Path root) {
+        synchronized (this) {
+            if (modules != null) {
+                return NestedAiDirectories.sorted(modules);
+            }
+        }
+        Set<String> found = lookUp(root);
+        synchronized (this) {
+            if (modules == null) {
+                modules = found;
+            }
+            return NestedAiDirectories.sorted(modules);
+        }
+    }
+
+    /**
+     * @return false only if the project is known to have no nested .ai directory
+     */
+    public synchronized boolean mayHaveModules() {
+        return modules == null || !modules.isEmpty();
+    }
+
+    /**
+     * Adds the module of a directory that was created
+     *
+     * @param module The module owning the new .ai directory
+     */
+    public synchronized void added(@NotNull String module) {
+        if (modules != null) {
+            modules.add(module);
+        }
+    }
+
+    /**
+     * Removes the modules of a deleted directory
+     *
+     * @param relativePath Path of the deleted file or directory relative to the project root
+     */
+    public synchronized void removed(@NotNull String relativePath) {
+        if (modules != null) {
+            modules.removeIf(module -> (module + "/" + NestedAiDirectories.DIRECTORY_NAME).equals(relativePath)
+                    || NestedAiDirectories.contains(relativePath, module));
+        }
+    }
+
+    /**
+     * Looks the modules up again on next use, e.g. after directories were moved or created with content
+     */
+    public synchronized void reset() {
+        modules = null;
+    }
+
+    private Set<String> lookUp(Path root) {
+        String rootPath = root.toString().replace('\\', '/');
+        return DumbService.getInstance(project).runReadActionInSmartMode(() -> {
+            Set<String> found = new HashSet<>();
+            for (VirtualFile directory : FilenameIndex.getVirtualFilesByName(NestedAiDirectories.DIRECTORY_NAME,
+                    GlobalSearchScope.projectScope(project))) {
+                String module = directory.isDirectory() ? NestedAiDirectories.moduleOf(rootPath, directory.getPath()) : null;
+                if (module != null) {
+                    found.add(module);
+                }
+            }
+            return found;
+        });
+    }
+}
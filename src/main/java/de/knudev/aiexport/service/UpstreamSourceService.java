@@ -0,0 +1,44 @@
+package de.knudev.aiexport.service;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import de.knudev.aiexport.upstream.InstructionCache;
+import de.knudev.aiexport.upstream.UpstreamSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one {@link UpstreamSource} per upstream directory, so projects sharing a directory share its resolved state.
+ * All sources store their files in one cache in the IDE system directory.
+ */
+@Service(Service.Level.APP)
+public final class UpstreamSourceService {
+    private static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+
+    private final InstructionCache cache =
+            new InstructionCache(Paths.get(PathManager.getSystemPath(), "ai-settings-export", "upstream-cache"), MAX_CACHE_BYTES);
+    private final ConcurrentMap<Path, UpstreamSource> sources = new ConcurrentHashMap<>();
+
+    public static UpstreamSourceService getInstance() {
+        return ApplicationManager.getApplication().getService(UpstreamSourceService.class);
+    }
+
+    /**
+     * @param directory The configured upstream directory, may be empty
+     * @return The source of the directory, or null if none is configured
+     */
+    @Nullable
+    public UpstreamSource getSource(@NotNull String directory) {
+        if (directory.isBlank()) {
+            return null;
+        }
+        Path path = Paths.get(directory.strip()).toAbsolutePath().normalize();
+        return sources.computeIfAbsent(path, key -> new UpstreamSource(key, cache));
+    }
+}
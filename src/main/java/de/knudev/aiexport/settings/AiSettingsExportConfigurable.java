@@ -0,0 +1,130 @@
+package de.knudev.aiexport.settings;
+
+import com.intellij.openapi.options.Configurable;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.ui.FormBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings page under Tools | AI Settings Export
+ */
+public class AiSettingsExportConfigurable implements Configurable {
+    private final Project project;
+    private JPanel panel;
+    private JCheckBox pruneOnExport;
+    private JCheckBox exportAsBundle;
+    private JCheckBox deduplicateBodies;
+    private JCheckBox mergeNestedDirectories;
+    private JCheckBox writeThroughComponentState;
+    private JTextField instructionsComponentClass;
+    private JTextField sharedComponents;
+    private JTextField upstreamDirectory;
+
+    public AiSettingsExportConfigurable(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "AI Settings Export";
+    }
+
+    @Override
+    public @Nullable JComponent createComponent() {
+        pruneOnExport = new JCheckBox("Delete .ai files of instructions that no longer exist when exporting");
+        exportAsBundle = new JCheckBox("Export all instructions into a single instructions.bundle file");
+        deduplicateBodies = new JCheckBox("Store identical instruction bodies only once (.ai/bodies and instructions.index)");
+        mergeNestedDirectories = new JCheckBox("Merge the .ai directories of modules over the project's .ai directory");
+        writeThroughComponentState = new JCheckBox("Import into the AI Assistant's in-memory settings instead of workspace.xml");
+        instructionsComponentClass = new JTextField();
+        sharedComponents = new JTextField();
+        upstreamDirectory = new JTextField();
+        panel = FormBuilder.createFormBuilder()
+                .addComponent(pruneOnExport)
+                .addComponent(exportAsBundle)
+                .addTooltip("Recommended for large instruction libraries, .md files in .ai still take precedence on import")
+                .addComponent(deduplicateBodies)
+                .addTooltip("For libraries where many actions share the same text, the bundle always stores identical bodies once")
+                .addComponent(mergeNestedDirectories)
+                .addTooltip("For monorepos, a deeper .ai directory overrides the ones above it, found through the IDE's index")
+                .addComponent(writeThroughComponentState)
+                .addLabeledComponent("Instructions component class:", instructionsComponentClass)
+                .addTooltip("Only needed if the AI Assistant's component is not found automatically")
+                .addLabeledComponent("Further components to share:", sharedComponents)
+                .addTooltip("Comma separated [settingsFile:]componentName, e.g. workspace.xml:MyComponent, kept in .ai/components")
+                .addLabeledComponent("Upstream instructions directory:", upstreamDirectory)
+                .addTooltip("Shared instructions, e.g. on a network share, imported under the .md files of .ai")
+                .addComponentFillVertically(new JPanel(), 0)
+                .getPanel();
+        reset();
+        return panel;
+    }
+
+    @Override
+    public boolean isModified() {
+        AiSettingsExportSettings settings = getSettings();
+        return pruneOnExport.isSelected() != settings.isPruneOnExport()
+                || exportAsBundle.isSelected() != settings.isExportAsBundle()
+                || deduplicateBodies.isSelected() != settings.isDeduplicateBodies()
+                || mergeNestedDirectories.isSelected() != settings.isMergeNestedDirectories()
+                || writeThroughComponentState.isSelected() != settings.isWriteThroughComponentState()
+                || !instructionsComponentClass.getText().strip().equals(settings.getInstructionsComponentClass())
+                || !parseComponents(sharedComponents.getText()).equals(settings.getSharedComponents())
+                || !upstreamDirectory.getText().strip().equals(settings.getUpstreamDirectory());
+    }
+
+    @Override
+    public void apply() {
+        AiSettingsExportSettings settings = getSettings();
+        settings.setPruneOnExport(pruneOnExport.isSelected());
+        settings.setExportAsBundle(exportAsBundle.isSelected());
+        settings.setDeduplicateBodies(deduplicateBodies.isSelected());
+        settings.setMergeNestedDirectories(mergeNestedDirectories.isSelected());
+        settings.setWriteThroughComponentState(writeThroughComponentState.isSelected());
+        settings.setInstructionsComponentClass(instructionsComponentClass.getText().strip());
+        settings.setSharedComponents(parseComponents(sharedComponents.getText()));
+        settings.setUpstreamDirectory(upstreamDirectory.getText().strip());
+    }
+
+    @Override
+    public void reset() {
+        AiSettingsExportSettings settings = getSettings();
+        pruneOnExport.setSelected(settings.isPruneOnExport());
+        exportAsBundle.setSelected(settings.isExportAsBundle());
+        deduplicateBodies.setSelected(settings.isDeduplicateBodies());
+        mergeNestedDirectories.setSelected(settings.isMergeNestedDirectories());
+        writeThroughComponentState.setSelected(settings.isWriteThroughComponentState());
+        instructionsComponentClass.setText(settings.getInstructionsComponentClass());
+        sharedComponents.setText(String.join(", ", settings.getSharedComponents()));
+        upstreamDirectory.setText(settings.getUpstreamDirectory());
+    }
+
+    @Override
+    public void disposeUIResources() {
+        panel = null;
+        pruneOnExport = null;
+        exportAsBundle = null;
+        deduplicateBodies = null;
+        mergeNestedDirectories = null;
+        writeThroughComponentState = null;
+        instructionsComponentClass = null;
+        sharedComponents = null;
+        upstreamDirectory = null;
+    }
+
+    private static List<String> parseComponents(String text) {
+        return Arrays.stream(text.split(","))
+                .map(String::strip)
+                .filter(component -> !component.isEmpty())
+                .toList();
+    }
+
+    private AiSettingsExportSettings getSettings() {
+        return AiSettingsExportSettings.getInstance(project);
+    }
+}
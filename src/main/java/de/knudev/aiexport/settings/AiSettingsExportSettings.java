@@ -0,0 +1,152 @@
+package de.knudev.aiexport.settings;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.project.Project;
+import de.knudev.aiexport.core.ExportOptions;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-project options of the plugin.
+ * Stored in .idea/aiSettingsExport.xml, so a team can share them through version control.
+ */
+@Service(Service.Level.PROJECT)
+@State(name = "AiSettingsExport", storages = @Storage("aiSettingsExport.xml"))
+public final class AiSettingsExportSettings implements PersistentStateComponent<AiSettingsExportSettings.State> {
+    private State state = new State();
+
+    public static AiSettingsExportSettings getInstance(@NotNull Project project) {
+        return project.getService(AiSettingsExportSettings.class);
+    }
+
+    /**
+     * Serialized state, public fields are written by the IntelliJ XML serializer
+     */
+    public static final class State {
+        /**
+         * Delete .md files of instructions that no longer exist in workspace.xml when exporting
+         */
+        public boolean pruneOnExport;
+        /**
+         * Export all instructions into a single .ai/instructions.bundle instead of one .md file each
+         */
+        public boolean exportAsBundle;
+        /**
+         * Store every distinct instruction body once in .ai/bodies, mapped to action IDs by .ai/instructions.index
+         */
+        public boolean deduplicateBodies;
+        /**
+         * Merge the .ai directories of modules below the project root over the root's .ai directory
+         */
+        public boolean mergeNestedDirectories;
+        /**
+         * Apply imports to the AI Assistant's in-memory component instead of editing workspace.xml on disk
+         */
+        public boolean writeThroughComponentState = true;
+        /**
+         * Class of the AI Assistant's instructions component, if it cannot be found automatically
+         */
+        public String instructionsComponentClass = "";
+        /**
+         * Further components shared through .ai/components, as {@code [settingsFile:]componentName}
+         */
+        public List<String> sharedComponents = new ArrayList<>();
+        /**
+         * Organisation-wide directory of instruction files layered under .ai, empty if there is none
+         */
+        public String upstreamDirectory = "";
+    }
+
+    @Override
+    public @NotNull State getState() {
+        return state;
+    }
+
+    @Override
+    public void loadState(@NotNull State state) {
+        this.state = state;
+    }
+
+    public boolean isPruneOnExport() {
+        return state.pruneOnExport;
+    }
+
+    public void setPruneOnExport(boolean pruneOnExport) {
+        state.pruneOnExport = pruneOnExport;
+    }
+
+    public boolean isExportAsBundle() {
+        return state.exportAsBundle;
+    }
+
+    public void setExportAsBundle(boolean exportAsBundle) {
+        state.exportAsBundle = exportAsBundle;
+    }
+
+    public boolean isDeduplicateBodies() {
+        return state.deduplicateBodies;
+    }
+
+    public void setDeduplicateBodies(boolean deduplicateBodies) {
+        state.deduplicateBodies = deduplicateBodies;
+    }
+
+    public boolean isMergeNestedDirectories() {
+        return state.mergeNestedDirectories;
+    }
+
+    public void setMergeNestedDirectories(boolean mergeNestedDirectories) {
+        state.mergeNestedDirectories = mergeNestedDirectories;
+    }
+
+    /**
+     * @return The export options configured for the project, the bundle wins if both layouts are enabled
+     */
+    @NotNull
+    public ExportOptions getExportOptions() {
+        ExportOptions.Format format = state.exportAsBundle ? ExportOptions.Format.BUNDLE
+                : state.deduplicateBodies ? ExportOptions.Format.CONTENT_ADDRESSED
+                : ExportOptions.Format.MARKDOWN;
+        return new ExportOptions(state.pruneOnExport, format);
+    }
+
+    public boolean isWriteThroughComponentState() {
+        return state.writeThroughComponentState;
+    }
+
+    public void setWriteThroughComponentState(boolean writeThroughComponentState) {
+        state.writeThroughComponentState = writeThroughComponentState;
+    }
+
+    @NotNull
+    public String getInstructionsComponentClass() {
+        return state.instructionsComponentClass != null ? state.instructionsComponentClass : "";
+    }
+
+    public void setInstructionsComponentClass(@NotNull String instructionsComponentClass) {
+        state.instructionsComponentClass = instructionsComponentClass;
+    }
+
+    @NotNull
+    public List<String> getSharedComponents() {
+        return state.sharedComponents != null ? state.sharedComponents : List.of();
+    }
+
+    public void setSharedComponents(@NotNull List<String> sharedComponents) {
+        state.sharedComponents = new ArrayList<>(sharedComponents);
+    }
+
+    @NotNull
+    public String getUpstreamDirectory() {
+        return state.upstreamDirectory != null ? state.upstreamDirectory : "";
+    }
+
+    public void setUpstreamDirectory(@NotNull String upstreamDirectory) {
+        state.upstreamDirectory = upstreamDirectory;
+    }
+}
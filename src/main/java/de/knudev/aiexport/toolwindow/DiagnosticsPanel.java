@@ -0,0 +1,140 @@
+package de.knudev.aiexport.toolwindow;
+
+import com.intellij.openapi.application.ApplicationInfo;
+import com.intellij.openapi.ide.CopyPasteManager;
+import de.knudev.aiexport.core.OperationReport;
+import de.knudev.aiexport.diagnostics.JsonWriter;
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per phase and I/O counters of the last export or import. The metrics of the recent operations can be
+ * copied as JSON, e.g. to compare machines or to attach them to a bug report.
+ */
+final class DiagnosticsPanel extends JPanel {
+    private final JLabel summary = new JLabel(" ");
+    private final PhaseTableModel model = new PhaseTableModel();
+    private List<OperationReport> history = List.of();
+
+    private static final class PhaseTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"Phase", "Time (ms)", "Share", "Runs"};
+
+        private List<Row> rows = List.of();
+        private long durationNanos;
+
+        /**
+         * @param runs How often the phase ran, empty for the time outside all phases
+         */
+        private record Row(String name, long nanos, String runs) {
+        }
+
+        void setMetrics(OperationMetrics.Snapshot metrics) {
+            List<Row> newRows = new ArrayList<>(metrics.phases().size() + 1);
+            for (OperationMetrics.PhaseTime phase : metrics.phases()) {
+                newRows.add(new Row(phase.phase().getDisplayName(), phase.nanos(), String.valueOf(phase.count())));
+            }
+            newRows.add(new Row("Other", metrics.otherNanos(), ""));
+            rows = newRows;
+            durationNanos = metrics.durationNanos();
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Row phase = rows.get(row);
+            return switch (column) {
+                case 0 -> phase.name();
+                case 1 -> String.format(Locale.ROOT, "%.1f", phase.nanos() / 1_000_000.0);
+                case 2 -> durationNanos > 0 ? String.format(Locale.ROOT, "%.0f %%", 100.0 * phase.nanos() / durationNanos) : "";
+                default -> phase.runs();
+            };
+        }
+    }
+
+    DiagnosticsPanel() {
+        super(new BorderLayout());
+        summary.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+
+        JButton copyJson = new JButton("Copy as JSON");
+        copyJson.addActionListener(event -> CopyPasteManager.getInstance().setContents(new StringSelection(toJson(history))));
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(copyJson);
+
+        add(summary, BorderLayout.NORTH);
+        add(new JScrollPane(new JTable(model)), BorderLayout.CENTER);
+        add(buttons, BorderLayout.SOUTH);
+    }
+
+    /**
+     * @param reports The recent operations, the latest last
+     */
+    void show(@NotNull List<OperationReport> reports) {
+        history = List.copyOf(reports);
+        if (reports.isEmpty()) {
+            return;
+        }
+        OperationReport last = reports.get(reports.size() - 1);
+        OperationMetrics.Snapshot metrics = last.metrics();
+        summary.setText(last.title() + " took " + TimeUnit.NANOSECONDS.toMillis(metrics.durationNanos()) + " ms, read "
+                + formatBytes(metrics.bytesRead()) + ", wrote " + formatBytes(metrics.bytesWritten()) + ", touched "
+                + metrics.entriesTouched() + " entries");
+        model.setMetrics(metrics);
+    }
+
+    /**
+     * @return The metrics of the operations with a description of the machine, as a JSON object
+     */
+    @NotNull
+    static String toJson(@NotNull List<OperationReport> reports) {
+        JsonWriter json = new JsonWriter().beginObject()
+                .name("environment").beginObject()
+                .name("ide").value(ApplicationInfo.getInstance().getFullVersion())
+                .name("os").value(System.getProperty("os.name") + " " + System.getProperty("os.version"))
+                .name("arch").value(System.getProperty("os.arch"))
+                .name("java").value(System.getProperty("java.version"))
+                .name("processors").value(Runtime.getRuntime().availableProcessors())
+                .name("maxHeapMB").value(Runtime.getRuntime().maxMemory() / (1024 * 1024))
+                .endObject();
+        json.name("operations").beginArray();
+        for (OperationReport report : reports) {
+            json.beginObject()
+                    .name("title").value(report.title())
+                    .name("status").value(report.status())
+                    .name("files").value(report.entries().size())
+                    .name("metrics");
+            report.metrics().writeJson(json);
+            json.endObject();
+        }
+        return json.endArray().endObject().toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        return bytes < 1024 * 1024
+                ? String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0)
+                : String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
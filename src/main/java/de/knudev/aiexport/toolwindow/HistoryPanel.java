@@ -0,0 +1,127 @@
+package de.knudev.aiexport.toolwindow;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import de.knudev.aiexport.core.OperationReport;
+import de.knudev.aiexport.history.SnapshotLog;
+import de.knudev.aiexport.service.InstructionHistoryService;
+import de.knudev.aiexport.service.InstructionsImportService;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Snapshots of the project's instruction history, newest first. The selected snapshot can be restored,
+ * which writes only the instructions that differ from the current ones.
+ */
+final class HistoryPanel extends JPanel {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    private final Project project;
+    private final JLabel summary = new JLabel(" ");
+    private final SnapshotTableModel model = new SnapshotTableModel();
+    private final JTable table = new JTable(model);
+    private final JButton restore = new JButton("Restore");
+
+    private static final class SnapshotTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"#", "Time", "Trigger", "Instructions", "Changes"};
+
+        private List<SnapshotLog.Snapshot> snapshots = List.of();
+
+        void setSnapshots(List<SnapshotLog.Snapshot> oldestFirst) {
+            snapshots = oldestFirst.reversed();
+            fireTableDataChanged();
+        }
+
+        SnapshotLog.Snapshot getSnapshot(int row) {
+            return snapshots.get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return snapshots.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            SnapshotLog.Snapshot snapshot = snapshots.get(row);
+            return switch (column) {
+                case 0 -> snapshot.id();
+                case 1 -> TIME_FORMAT.format(Instant.ofEpochMilli(snapshot.timestamp()));
+                case 2 -> snapshot.trigger().getDisplayName();
+                case 3 -> snapshot.instructionCount();
+                default -> snapshot.changeCount();
+            };
+        }
+    }
+
+    HistoryPanel(@NotNull Project project) {
+        super(new BorderLayout());
+        this.project = project;
+        summary.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getSelectionModel().addListSelectionListener(event -> restore.setEnabled(table.getSelectedRow() >= 0));
+        restore.setEnabled(false);
+        restore.addActionListener(event -> restoreSelected());
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(restore);
+
+        add(summary, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(buttons, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Shows the snapshots as they are now, e.g. after an operation recorded a new one
+     */
+    void refresh() {
+        SnapshotLog log = InstructionHistoryService.getInstance(project).getLog();
+        if (log == null) {
+            summary.setText("The instruction history could not be opened, see the IDE log");
+            return;
+        }
+        List<SnapshotLog.Snapshot> snapshots = log.snapshots();
+        summary.setText(snapshots.size() + " snapshots, " + String.format(Locale.ROOT, "%.1f KB", log.sizeOnDisk() / 1024.0)
+                + " on disk. Restoring writes only the instructions that differ.");
+        model.setSnapshots(snapshots);
+    }
+
+    private void restoreSelected() {
+        int row = table.getSelectedRow();
+        if (row < 0) {
+            return;
+        }
+        long snapshotId = model.getSnapshot(row).id();
+        // Runs after imports or exports that are still running, like every other task writing workspace.xml
+        InstructionsImportService.getInstance(project).restoreInBackground(snapshotId)
+                .whenComplete((result, error) -> {
+                    if (error instanceof CancellationException) {
+                        return;
+                    }
+                    OperationReport report = result != null ? result
+                            : OperationReport.failed("Restore", "Failed to restore instructions. Check IDE logs for details.");
+                    ApplicationManager.getApplication().invokeLater(
+                            () -> ResultsView.getInstance(project).show(report), project.getDisposed());
+                });
+    }
+}
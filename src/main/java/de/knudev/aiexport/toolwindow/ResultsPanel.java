@@ -0,0 +1,97 @@
+package de.knudev.aiexport.toolwindow;
+
+import de.knudev.aiexport.core.OperationReport;
+import de.knudev.aiexport.core.ResultEntry;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A summary line and the entries of a report. The list is virtual: rows have a fixed height and only the
+ * visible ones are rendered, so reports with many thousand files open as fast as small ones.
+ */
+final class ResultsPanel extends JPanel {
+    private static final ResultEntry PROTOTYPE = new ResultEntry("x".repeat(60), "unchanged", 1024 * 1024);
+
+    private final JLabel summary = new JLabel(" ");
+    private final EntryListModel model = new EntryListModel();
+
+    /**
+     * Exposes the report's entry list as it is, replacing it fires a single event
+     */
+    private static final class EntryListModel extends AbstractListModel<ResultEntry> {
+        private List<ResultEntry> entries = List.of();
+
+        void setEntries(List<ResultEntry> newEntries) {
+            int oldSize = entries.size();
+            entries = newEntries;
+            if (oldSize > 0) {
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+            if (!newEntries.isEmpty()) {
+                fireIntervalAdded(this, 0, newEntries.size() - 1);
+            }
+        }
+
+        @Override
+        public int getSize() {
+            return entries.size();
+        }
+
+        @Override
+        public ResultEntry getElementAt(int index) {
+            return entries.get(index);
+        }
+    }
+
+    private static final class EntryRenderer extends DefaultListCellRenderer {
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                                                      boolean cellHasFocus) {
+            ResultEntry entry = (ResultEntry) value;
+            String text = String.format(Locale.ROOT, "%-10s %10s   %s", entry.status(), formatSize(entry.size()), entry.name());
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+    }
+
+    ResultsPanel() {
+        super(new BorderLayout());
+        summary.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+
+        JList<ResultEntry> list = new JList<>(model);
+        list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, list.getFont().getSize()));
+        list.setCellRenderer(new EntryRenderer());
+        // Without a fixed height the list would measure every row when the model changes
+        list.setPrototypeCellValue(PROTOTYPE);
+        list.setFixedCellHeight(list.getFixedCellHeight());
+
+        add(summary, BorderLayout.NORTH);
+        add(new JScrollPane(list), BorderLayout.CENTER);
+    }
+
+    void show(@NotNull OperationReport report) {
+        summary.setText(report.title() + " " + report.status().toLowerCase(Locale.ROOT).replace('_', ' ')
+                + " in " + TimeUnit.NANOSECONDS.toMillis(report.durationNanos()) + " ms, "
+                + report.entries().size() + " files: " + report.message());
+        summary.setForeground(report.failed() ? Color.RED : UIManager.getColor("Label.foreground"));
+        model.setEntries(report.entries());
+    }
+
+    private static String formatSize(long size) {
+        if (size < 0) {
+            return "";
+        }
+        if (size < 1024) {
+            return size + " B";
+        }
+        if (size < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", size / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", size / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,26 @@
+package de.knudev.aiexport.toolwindow;
+
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.content.ContentFactory;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates the results, diagnostics and history tabs of the tool window when it is first shown
+ */
+public class ResultsToolWindowFactory implements ToolWindowFactory, DumbAware {
+
+    @Override
+    public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
+        ResultsPanel panel = new ResultsPanel();
+        DiagnosticsPanel diagnostics = new DiagnosticsPanel();
+        HistoryPanel history = new HistoryPanel(project);
+        ContentFactory contentFactory = ContentFactory.getInstance();
+        toolWindow.getContentManager().addContent(contentFactory.createContent(panel, "Results", false));
+        toolWindow.getContentManager().addContent(contentFactory.createContent(diagnostics, "Diagnostics", false));
+        toolWindow.getContentManager().addContent(contentFactory.createContent(history, "History", false));
+        ResultsView.getInstance(project).attach(panel, diagnostics, history);
+    }
+}
@@ -0,0 +1,78 @@
+package de.knudev.aiexport.toolwindow;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowManager;
+import de.knudev.aiexport.core.OperationReport;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Shows the report of the last export or import in the results tool window, the metrics of the recent
+ * ones in its diagnostics tab and the snapshots they recorded in its history tab.
+ * All methods must be called on the event dispatch thread.
+ */
+@Service(Service.Level.PROJECT)
+public final class ResultsView {
+    /**
+     * ID of the tool window in plugin.xml
+     */
+    public static final String TOOL_WINDOW_ID = "AI Settings Export";
+    private static final int HISTORY_SIZE = 20;
+
+    private final Project project;
+    private final Deque<OperationReport> history = new ArrayDeque<>();
+    private @Nullable ResultsPanel panel;
+    private @Nullable DiagnosticsPanel diagnosticsPanel;
+    private @Nullable HistoryPanel historyPanel;
+
+    public ResultsView(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static ResultsView getInstance(@NotNull Project project) {
+        return project.getService(ResultsView.class);
+    }
+
+    /**
+     * Replaces the shown report and brings up the tool window without taking the focus
+     *
+     * @param report Report of the finished operation
+     */
+    public void show(@NotNull OperationReport report) {
+        if (history.size() == HISTORY_SIZE) {
+            history.removeFirst();
+        }
+        history.addLast(report);
+        if (panel != null) {
+            panel.show(report);
+        }
+        if (diagnosticsPanel != null) {
+            diagnosticsPanel.show(List.copyOf(history));
+        }
+        if (historyPanel != null) {
+            historyPanel.refresh();
+        }
+        // The content is created on the first show, and then picks up the report in attach
+        ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow(TOOL_WINDOW_ID);
+        if (toolWindow != null) {
+            toolWindow.show();
+        }
+    }
+
+    void attach(@NotNull ResultsPanel resultsPanel, @NotNull DiagnosticsPanel diagnostics, @NotNull HistoryPanel snapshots) {
+        panel = resultsPanel;
+        diagnosticsPanel = diagnostics;
+        historyPanel = snapshots;
+        snapshots.refresh();
+        if (!history.isEmpty()) {
+            resultsPanel.show(history.getLast());
+            diagnostics.show(List.copyOf(history));
+        }
+    }
+}
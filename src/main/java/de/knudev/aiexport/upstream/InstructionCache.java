@@ -0,0 +1,160 @@
+package de.knudev.aiexport.upstream;
+
+import de.knudev.aiexport.instructions.ContentHash;
+import de.knudev.aiexport.workspace.WorkspaceFileWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Local content-addressed store of fetched instruction files, shared by all projects.
+ * Objects are named after the SHA-256 of their content, so a file is fetched once no matter how many
+ * sources or versions contain it. The store is kept below a size limit by evicting the least recently used objects.
+ */
+public final class InstructionCache {
+    private static final String OBJECTS_DIRECTORY = "objects";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory Directory of the cache, created when needed
+     * @param maxBytes  Size the objects are evicted down to
+     */
+    public InstructionCache(@NotNull Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    @NotNull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Looks up an object and marks it as recently used
+     *
+     * @param hash SHA-256 of the content
+     * @return Path to the object, or null if it is not cached
+     */
+    @Nullable
+    public Path get(@NotNull String hash) throws IOException {
+        Path object = objectPath(hash);
+        try {
+            Files.setLastModifiedTime(object, FileTime.fromMillis(System.currentTimeMillis()));
+            return object;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copies a file into the cache, hashing it while copying
+     *
+     * @param source       The file to store
+     * @param expectedHash Hash the content must have, e.g. from the source's manifest, or null to accept any content
+     * @return Hash of the stored content
+     * @throws IOException if the content does not have the expected hash, nothing is stored then
+     */
+    @NotNull
+    public String put(@NotNull Path source, @Nullable String expectedHash) throws IOException {
+        Path objects = directory.resolve(OBJECTS_DIRECTORY);
+        Files.createDirectories(objects);
+        Path tempFile = Files.createTempFile(objects, "fetch", ".tmp");
+        try {
+            MessageDigest digest = ContentHash.newDigest();
+            try (InputStream in = Files.newInputStream(source); OutputStream out = Files.newOutputStream(tempFile)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            String hash = ContentHash.toHex(digest.digest());
+            if (expectedHash != null && !expectedHash.equals(hash)) {
+                throw new IOException(source + " does not match its manifest hash " + expectedHash);
+            }
+
+            Path object = objectPath(hash);
+            Files.createDirectories(object.getParent());
+            WorkspaceFileWriter.moveAtomically(tempFile, object);
+            return hash;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Deletes an object, e.g. after its content turned out to be corrupt
+     *
+     * @param hash SHA-256 the content should have had
+     */
+    public void remove(@NotNull String hash) throws IOException {
+        Files.deleteIfExists(objectPath(hash));
+    }
+
+    /**
+     * Evicts the least recently used objects until the cache fits its size limit
+     *
+     * @param pinned Hashes of objects in use, never evicted
+     * @return Number of evicted objects
+     */
+    public int evict(@NotNull Set<String> pinned) throws IOException {
+        Path objects = directory.resolve(OBJECTS_DIRECTORY);
+        if (!Files.isDirectory(objects)) {
+            return 0;
+        }
+
+        record CachedObject(Path path, long size, long lastUsed) {
+        }
+        List<CachedObject> cached = new ArrayList<>();
+        long totalSize = 0;
+        try (Stream<Path> files = Files.walk(objects, 2)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isRegularFile() && !file.getFileName().toString().endsWith(".tmp")) {
+                    cached.add(new CachedObject(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    totalSize += attributes.size();
+                }
+            }
+        }
+        if (totalSize <= maxBytes) {
+            return 0;
+        }
+
+        cached.sort(Comparator.comparingLong(CachedObject::lastUsed));
+        int evicted = 0;
+        for (CachedObject object : cached) {
+            if (totalSize <= maxBytes) {
+                break;
+            }
+            if (!pinned.contains(object.path().getFileName().toString())) {
+                Files.deleteIfExists(object.path());
+                totalSize -= object.size();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private Path objectPath(String hash) {
+        // Two levels keep directories small for large instruction libraries
+        String prefix = hash.length() > 2 ? hash.substring(0, 2) : "_";
+        return directory.resolve(OBJECTS_DIRECTORY).resolve(prefix).resolve(hash);
+    }
+}
@@ -0,0 +1,30 @@
+package de.knudev.aiexport.upstream;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The instruction files an {@link UpstreamSource} currently provides, all of them in the local cache
+ *
+ * @param entries The files in manifest order
+ */
+public record UpstreamSet(@NotNull List<Entry> entries) {
+    public static final UpstreamSet EMPTY = new UpstreamSet(List.of());
+
+    /**
+     * A file of the upstream source
+     *
+     * @param name   File name in the upstream directory
+     * @param hash   SHA-256 of the content
+     * @param size   Size of the content
+     * @param object The cached copy of the content
+     */
+    public record Entry(@NotNull String name, @NotNull String hash, long size, @NotNull Path object) {
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+}
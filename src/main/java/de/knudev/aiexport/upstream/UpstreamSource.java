@@ -0,0 +1,312 @@
+package de.knudev.aiexport.upstream;
+
+import de.knudev.aiexport.instructions.ContentHash;
+import de.knudev.aiexport.workspace.WorkspaceFileWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * An organisation-wide directory of instruction files, e.g. a network share or a checkout of a shared repository,
+ * whose instructions are layered under the project's own .ai directory.
+ * <p>
+ * The directory should contain a {@value #MANIFEST_FILE} in {@code sha256sum} format listing its .md files.
+ * Then checking for changes only looks at the manifest's size and modification time, and every fetched file
+ * is validated against its manifest hash. Without a manifest the .md files are listed and only files with
+ * changed size or modification time are hashed again. Fetched files are kept in an {@link InstructionCache};
+ * when the directory is unreachable, the last fetched set is used.
+ */
+public final class UpstreamSource {
+    public static final String MANIFEST_FILE = "manifest.sha256";
+
+    private static final System.Logger LOG = System.getLogger(UpstreamSource.class.getName());
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final int STATE_VERSION = 1;
+
+    private final Path directory;
+    private final InstructionCache cache;
+    private final Path stateFile;
+
+    // Guarded by this
+    private @Nullable SourceState state;
+    private @Nullable UpstreamSet resolved;
+
+    /**
+     * A file of the source as it was last seen
+     *
+     * @param lastModified Modification time, -1 if the file was only seen in the manifest
+     * @param hash         SHA-256 of the content, null if not known yet
+     */
+    private record FileStamp(String name, long size, long lastModified, @Nullable String hash) {
+    }
+
+    /**
+     * @param manifestSize         Size of the manifest, -1 if the source has none
+     * @param manifestLastModified Modification time of the manifest
+     */
+    private record SourceState(long manifestSize, long manifestLastModified, List<FileStamp> files) {
+
+        boolean hasManifest(long size, long lastModified) {
+            return manifestSize >= 0 && manifestSize == size && manifestLastModified == lastModified;
+        }
+    }
+
+    /**
+     * @param directory The upstream directory
+     * @param cache     Cache the fetched files are stored in
+     */
+    public UpstreamSource(@NotNull Path directory, @NotNull InstructionCache cache) {
+        this.directory = directory;
+        this.cache = cache;
+        // Every source keeps its state under a name derived from its location
+        byte[] location = directory.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8);
+        String key = ContentHash.sha256(location, 0, location.length).substring(0, 16);
+        this.stateFile = cache.getDirectory().resolve("sources").resolve(key + ".state");
+    }
+
+    @NotNull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the current instruction set of the source, fetching only files that are not cached yet.
+     * If nothing changed upstream since the last call, nothing but the manifest's attributes is read.
+     *
+     * @return The instruction set, all files available in the cache
+     */
+    @NotNull
+    public synchronized UpstreamSet resolve() throws IOException {
+        if (state == null) {
+            state = loadState();
+        }
+
+        if (!Files.isDirectory(directory)) {
+            // An unreachable share must not break imports, the last fetched set is still valid
+            LOG.log(System.Logger.Level.WARNING,
+                    "Upstream instruction directory " + directory + " is not available, using cached instructions");
+            return resolved != null ? resolved : fromCache(state);
+        }
+
+        Path manifest = directory.resolve(MANIFEST_FILE);
+        SourceState current;
+        if (Files.isRegularFile(manifest)) {
+            BasicFileAttributes attributes = Files.readAttributes(manifest, BasicFileAttributes.class);
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (state != null && state.hasManifest(size, lastModified)) {
+                if (resolved != null) {
+                    return resolved;
+                }
+                current = state;
+            } else {
+                current = new SourceState(size, lastModified, readManifest(manifest));
+            }
+        } else {
+            current = listDirectory(state);
+        }
+
+        boolean fetched = false;
+        List<UpstreamSet.Entry> entries = new ArrayList<>(current.files().size());
+        List<FileStamp> files = new ArrayList<>(current.files().size());
+        for (FileStamp file : current.files()) {
+            String hash = file.hash();
+            Path object = hash != null ? cache.get(hash) : null;
+            if (object == null) {
+                hash = cache.put(directory.resolve(file.name()), hash);
+                object = cache.get(hash);
+                fetched = true;
+                if (object == null) {
+                    throw new IOException("Fetched upstream instruction " + file.name() + " disappeared from the cache");
+                }
+            }
+            entries.add(new UpstreamSet.Entry(file.name(), hash, Files.size(object), object));
+            files.add(new FileStamp(file.name(), file.size(), file.lastModified(), hash));
+        }
+
+        SourceState newState = new SourceState(current.manifestSize(), current.manifestLastModified(), files);
+        if (!newState.equals(state)) {
+            saveState(newState);
+        }
+        state = newState;
+        resolved = new UpstreamSet(List.copyOf(entries));
+
+        if (fetched) {
+            Set<String> pinned = new HashSet<>();
+            entries.forEach(entry -> pinned.add(entry.hash()));
+            cache.evict(pinned);
+        }
+        return resolved;
+    }
+
+    /**
+     * Drops a cached file whose content turned out to be corrupt, so the next {@link #resolve()} fetches it again
+     *
+     * @param hash SHA-256 the content should have had
+     */
+    public synchronized void discard(@NotNull String hash) throws IOException {
+        cache.remove(hash);
+        resolved = null;
+        state = null;
+        try {
+            Files.deleteIfExists(stateFile);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Could not delete upstream state " + stateFile, e);
+        }
+    }
+
+    /**
+     * Parses a manifest in sha256sum format: {@code <hash>  <name>} or {@code <hash> *<name>} per line
+     */
+    private static List<FileStamp> readManifest(Path manifest) throws IOException {
+        List<FileStamp> files = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            int separator = trimmed.indexOf(' ');
+            String hash = separator > 0 ? trimmed.substring(0, separator).toLowerCase(Locale.ROOT) : "";
+            String name = separator > 0 ? trimmed.substring(separator + 1).strip() : "";
+            if (name.startsWith("*")) {
+                name = name.substring(1);
+            }
+            if (!HASH_PATTERN.matcher(hash).matches() || !isInstructionFileName(name)) {
+                throw new IOException("Invalid line in " + manifest + ": " + line);
+            }
+            if (names.add(name)) {
+                files.add(new FileStamp(name, -1, -1, hash));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Lists the .md files of a source without manifest, keeping the hashes of files whose attributes did not change
+     */
+    private SourceState listDirectory(@Nullable SourceState previous) throws IOException {
+        Map<String, FileStamp> previousFiles = new HashMap<>();
+        if (previous != null && previous.manifestSize() < 0) {
+            previous.files().forEach(file -> previousFiles.put(file.name(), file));
+        }
+
+        List<Path> mdFiles;
+        try (Stream<Path> files = Files.list(directory)) {
+            mdFiles = files.filter(file -> isInstructionFileName(file.getFileName().toString())).sorted().toList();
+        }
+
+        List<FileStamp> files = new ArrayList<>(mdFiles.size());
+        for (Path file : mdFiles) {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            String name = file.getFileName().toString();
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            FileStamp known = previousFiles.get(name);
+            String hash = known != null && known.size() == size && known.lastModified() == lastModified ? known.hash() : null;
+            files.add(new FileStamp(name, size, lastModified, hash));
+        }
+        return new SourceState(-1, -1, files);
+    }
+
+    private UpstreamSet fromCache(@Nullable SourceState cachedState) throws IOException {
+        if (cachedState == null) {
+            return UpstreamSet.EMPTY;
+        }
+        List<UpstreamSet.Entry> entries = new ArrayList<>();
+        for (FileStamp file : cachedState.files()) {
+            Path object = file.hash() != null ? cache.get(file.hash()) : null;
+            if (object != null) {
+                entries.add(new UpstreamSet.Entry(file.name(), file.hash(), Files.size(object), object));
+            }
+        }
+        return new UpstreamSet(List.copyOf(entries));
+    }
+
+    private static boolean isInstructionFileName(String name) {
+        return name.endsWith(".md") && name.indexOf('/') < 0 && name.indexOf('\\') < 0 && !name.startsWith(".");
+    }
+
+    @Nullable
+    private SourceState loadState() {
+        long manifestSize = -1;
+        long manifestLastModified = -1;
+        List<FileStamp> files = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('=');
+                if (separator < 0) {
+                    continue;
+                }
+                String key = line.substring(0, separator);
+                String[] parts = line.substring(separator + 1).split(":", 4);
+                switch (key) {
+                    case "version" -> {
+                        if (!parts[0].equals(String.valueOf(STATE_VERSION))) {
+                            return null;
+                        }
+                    }
+                    case "manifest" -> {
+                        manifestSize = Long.parseLong(parts[0]);
+                        manifestLastModified = Long.parseLong(parts[1]);
+                    }
+                    case "file" -> files.add(new FileStamp(parts[3], Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                            parts[2].isEmpty() ? null : parts[2]));
+                    default -> {
+                        // Unknown keys of newer versions are ignored
+                    }
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // A broken state only means everything is checked again
+            LOG.log(System.Logger.Level.WARNING, "Could not read upstream state " + stateFile, e);
+            return null;
+        }
+        return new SourceState(manifestSize, manifestLastModified, files);
+    }
+
+    private void saveState(SourceState newState) {
+        try {
+            Files.createDirectories(stateFile.getParent());
+            Path tempFile = Files.createTempFile(stateFile.getParent(), stateFile.getFileName().toString(), ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    writer.write("version=" + STATE_VERSION + "\n");
+                    if (newState.manifestSize() >= 0) {
+                        writer.write("manifest=" + newState.manifestSize() + ":" + newState.manifestLastModified() + "\n");
+                    }
+                    for (FileStamp file : newState.files()) {
+                        writer.write("file=" + file.size() + ":" + file.lastModified() + ":"
+                                + (file.hash() != null ? file.hash() : "") + ":" + file.name() + "\n");
+                    }
+                }
+                WorkspaceFileWriter.moveAtomically(tempFile, stateFile);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            // Without a state the next resolve simply checks the cache again
+            LOG.log(System.Logger.Level.WARNING, "Could not save upstream state " + stateFile, e);
+        }
+    }
+}
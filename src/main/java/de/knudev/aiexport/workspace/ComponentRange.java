@@ -0,0 +1,27 @@
+package de.knudev.aiexport.workspace;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Byte range of a top-level component inside a settings file such as workspace.xml.
+ * When the component does not exist yet, the range is empty and points at the closing
+ * root tag, which is where a new component has to be inserted.
+ *
+ * @param start         Offset of the opening '&lt;' of the component, or the insertion point
+ * @param end           Offset directly after the closing '&gt;' of the component
+ * @param indent        Whitespace in front of the component on its line
+ * @param lineSeparator Line separator used by the file
+ */
+public record ComponentRange(long start, long end, @NotNull String indent, @NotNull String lineSeparator) {
+
+    /**
+     * @return true if the component exists in the file, false if this is only an insertion point
+     */
+    public boolean exists() {
+        return end > start;
+    }
+
+    public long length() {
+        return end - start;
+    }
+}
@@ -0,0 +1,168 @@
+package de.knudev.aiexport.workspace;
+
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Serializes a single component element the way the IDE writes its settings files:
+ * two spaces per level, self-closing empty elements and line breaks in attribute values escaped.
+ * Only the component is written, so it can be spliced into an existing file.
+ * Attribute values are escaped run by run straight into the output, so instruction content is never copied
+ * into an intermediate string.
+ */
+public final class ComponentXmlWriter {
+    private static final String INDENT = "  ";
+
+    private ComponentXmlWriter() {
+    }
+
+    /**
+     * Writes the element and its children
+     *
+     * @param element       The component element
+     * @param baseIndent    Indentation of the component itself, the first line is written without it
+     * @param lineSeparator Line separator to use between elements
+     * @return The serialized element, starting with its opening '&lt;'
+     */
+    @NotNull
+    public static String write(@NotNull Element element, @NotNull String baseIndent, @NotNull String lineSeparator) {
+        StringWriter out = new StringWriter();
+        try {
+            write(element, baseIndent, lineSeparator, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the element and its children into a writer, e.g. one encoding into the settings file
+     *
+     * @param element       The component element
+     * @param baseIndent    Indentation of the component itself, the first line is written without it
+     * @param lineSeparator Line separator to use between elements
+     * @param out           Receives the serialized element, starting with its opening '&lt;'. Should be buffered
+     */
+    public static void write(@NotNull Element element, @NotNull String baseIndent, @NotNull String lineSeparator,
+                             @NotNull Writer out) throws IOException {
+        writeElement(element, baseIndent, lineSeparator, out);
+    }
+
+    private static void writeElement(Element element, String indent, String lineSeparator, Writer out) throws IOException {
+        out.write('<');
+        out.write(element.getTagName());
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            out.write(' ');
+            out.write(attribute.getName());
+            out.write("=\"");
+            escapeAttribute(attribute.getValue(), out);
+            out.write('"');
+        }
+
+        NodeList children = element.getChildNodes();
+        boolean hasElements = false;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                hasElements = true;
+            } else if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                text.append(child.getNodeValue());
+            }
+        }
+
+        if (!hasElements) {
+            if (text.isEmpty()) {
+                out.write(" />");
+            } else {
+                out.write('>');
+                escapeText(text, out);
+                out.write("</" + element.getTagName() + ">");
+            }
+            return;
+        }
+
+        // Whitespace between child elements is formatting and gets replaced by our own indentation
+        out.write('>');
+        String childIndent = indent + INDENT;
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                out.write(lineSeparator);
+                out.write(childIndent);
+                writeElement((Element) child, childIndent, lineSeparator, out);
+            }
+        }
+        out.write(lineSeparator);
+        out.write(indent);
+        out.write("</" + element.getTagName() + ">");
+    }
+
+    /**
+     * Escapes an attribute value, including line breaks and tabs so they survive attribute normalization.
+     */
+    public static void escapeAttribute(@NotNull CharSequence value, @NotNull StringBuilder builder) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> builder.append("&amp;");
+                case '<' -> builder.append("&lt;");
+                case '>' -> builder.append("&gt;");
+                case '"' -> builder.append("&quot;");
+                case '\n' -> builder.append("&#10;");
+                case '\r' -> builder.append("&#13;");
+                case '\t' -> builder.append("&#9;");
+                default -> builder.append(c);
+            }
+        }
+    }
+
+    /**
+     * Escapes an attribute value like {@link #escapeAttribute(CharSequence, StringBuilder)}, writing the runs
+     * between escaped characters directly from the value
+     */
+    public static void escapeAttribute(@NotNull String value, @NotNull Writer out) throws IOException {
+        int run = 0;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            String escaped = switch (value.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\n' -> "&#10;";
+                case '\r' -> "&#13;";
+                case '\t' -> "&#9;";
+                default -> null;
+            };
+            if (escaped != null) {
+                out.write(value, run, i - run);
+                out.write(escaped);
+                run = i + 1;
+            }
+        }
+        out.write(value, run, value.length() - run);
+    }
+
+    static void escapeText(CharSequence value, Writer out) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.write("&amp;");
+                case '<' -> out.write("&lt;");
+                case '>' -> out.write("&gt;");
+                default -> out.write(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package de.knudev.aiexport.workspace;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copies the AIAssistantCustomInstructionsStorage component from a StAX reader into a writer, substituting the
+ * changed entries on the way. No tree of the component is built: besides the instructions map only the element
+ * being copied is held, e.g. the content option whose old body is replaced.
+ * The output is formatted like {@link ComponentXmlWriter} and matches what
+ * {@link WorkspaceInstructionsWriter#updateAiComponentWithInstructions} followed by it would write,
+ * except that attributes keep their order instead of being sorted by name.
+ */
+final class InstructionsComponentUpdater {
+    private static final String INDENT = "  ";
+
+    /**
+     * What an element is to the update, decided when its start tag is read
+     */
+    private enum Role {
+        /** The component itself */
+        COMPONENT,
+        /** An element inside the component before the instructions option */
+        IN_COMPONENT,
+        /** The option[name=instructions] element */
+        INSTRUCTIONS,
+        /** An element inside the instructions option before its map */
+        IN_INSTRUCTIONS,
+        /** The map holding the entries */
+        MAP,
+        /** An entry whose instruction is replaced, or an element inside it before its value */
+        ENTRY,
+        /** The value of a replaced entry, or an element inside it before its stored instruction */
+        VALUE,
+        /** The stored instruction of a replaced entry */
+        STORED_INSTRUCTION,
+        /** An element inside the stored instruction of a replaced entry */
+        IN_STORED_INSTRUCTION,
+        /** The actionId option of a replaced entry */
+        ACTION_ID,
+        /** The content option of a replaced entry */
+        CONTENT,
+        /** Any other element, copied as it is */
+        PLAIN
+    }
+
+    private final XMLStreamReader reader;
+    private final Map<String, String> instructionsMap;
+    private final String lineSeparator;
+    private final Writer out;
+
+    private boolean instructionsFound;
+    private boolean mapFound;
+    /** Keys of all entries of the map, the first entry wins for duplicate keys */
+    private final Set<String> seenKeys = new HashSet<>();
+    private boolean removed;
+
+    // State of the entry being replaced
+    private String actionId;
+    private String content;
+    private boolean valueFound;
+    private boolean storedInstructionFound;
+    private boolean hasActionId;
+    private boolean hasContent;
+
+    private InstructionsComponentUpdater(XMLStreamReader reader, Map<String, String> instructionsMap,
+                                         String lineSeparator, Writer out) {
+        this.reader = reader;
+        this.instructionsMap = instructionsMap;
+        this.lineSeparator = lineSeparator;
+        this.out = out;
+    }
+
+    /**
+     * Copies the component, applying the instructions
+     *
+     * @param reader          Reader positioned before the component's start tag, read up to its end tag
+     * @param instructionsMap Map of action IDs to instruction content, null to remove the entry
+     * @param baseIndent      Indentation of the component itself, the first line is written without it
+     * @param lineSeparator   Line separator to use between elements
+     * @param out             Receives the updated component, starting with its opening '&lt;'. Should be buffered
+     */
+    static void copy(XMLStreamReader reader, Map<String, String> instructionsMap, String baseIndent,
+                     String lineSeparator, Writer out) throws XMLStreamException, IOException {
+        while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            // Skips the prolog, a stream without any element fails with an XMLStreamException
+        }
+        new InstructionsComponentUpdater(reader, instructionsMap, lineSeparator, out).copyElement(baseIndent, Role.COMPONENT);
+    }
+
+    /**
+     * Copies the element the reader is positioned on, up to and including its end tag
+     */
+    private void copyElement(String indent, Role role) throws XMLStreamException, IOException {
+        String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+        out.write('<');
+        out.write(name);
+        boolean valueWritten = false;
+        for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+            String attribute = qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+            String value = reader.getAttributeValue(i);
+            if ((role == Role.ACTION_ID || role == Role.CONTENT) && attribute.equals("value")) {
+                value = role == Role.ACTION_ID ? actionId : content;
+                valueWritten = true;
+            }
+            writeAttribute(attribute, value);
+        }
+        if ((role == Role.ACTION_ID || role == Role.CONTENT) && !valueWritten) {
+            writeAttribute("value", role == Role.ACTION_ID ? actionId : content);
+        }
+
+        // Whitespace between child elements is formatting and gets replaced by our own indentation
+        String childIndent = indent + INDENT;
+        boolean hasElements = false;
+        StringBuilder text = new StringBuilder();
+        for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                Role childRole = roleOf(role);
+                if (childRole == null) {
+                    skipElement();
+                    continue;
+                }
+                hasElements = openChild(hasElements, childIndent);
+                copyElement(childIndent, childRole);
+            } else if (!hasElements && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE)) {
+                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+
+        hasElements = appendChildren(role, hasElements, childIndent);
+        if (!hasElements && role == Role.MAP && removed) {
+            // Leftover indentation would be written as the text of an empty map
+            text.setLength(0);
+        }
+        closeElement(name, indent, hasElements, text);
+    }
+
+    /**
+     * Decides the role of the child element the reader is positioned on
+     *
+     * @return The role, or null if the child is a removed entry
+     */
+    private Role roleOf(Role parent) {
+        String name = reader.getLocalName();
+        return switch (parent) {
+            case COMPONENT, IN_COMPONENT -> {
+                if (!instructionsFound && name.equals("option") && "instructions".equals(attribute("name"))) {
+                    instructionsFound = true;
+                    yield Role.INSTRUCTIONS;
+                }
+                yield instructionsFound ? Role.PLAIN : Role.IN_COMPONENT;
+            }
+            case INSTRUCTIONS, IN_INSTRUCTIONS -> {
+                if (!mapFound && name.equals("map")) {
+                    mapFound = true;
+                    yield Role.MAP;
+                }
+                yield mapFound ? Role.PLAIN : Role.IN_INSTRUCTIONS;
+            }
+            case MAP -> {
+                if (!name.equals("entry")) {
+                    yield Role.PLAIN;
+                }
+                String key = nullToEmpty(attribute("key"));
+                if (!seenKeys.add(key) || !instructionsMap.containsKey(key)) {
+                    yield Role.PLAIN;
+                }
+                if (instructionsMap.get(key) == null) {
+                    removed = true;
+                    yield null;
+                }
+                actionId = key;
+                content = instructionsMap.get(key);
+                valueFound = false;
+                storedInstructionFound = false;
+                hasActionId = false;
+                hasContent = false;
+                yield Role.ENTRY;
+            }
+            case ENTRY -> {
+                if (!valueFound && name.equals("value")) {
+                    valueFound = true;
+                    yield Role.VALUE;
+                }
+                yield valueFound ? Role.PLAIN : Role.ENTRY;
+            }
+            case VALUE -> {
+                if (!storedInstructionFound && name.equals("AIAssistantStoredInstruction")) {
+                    storedInstructionFound = true;
+                    yield Role.STORED_INSTRUCTION;
+                }
+                yield storedInstructionFound ? Role.PLAIN : Role.VALUE;
+            }
+            case STORED_INSTRUCTION, IN_STORED_INSTRUCTION -> {
+                String optionName = name.equals("option") ? attribute("name") : null;
+                if ("actionId".equals(optionName)) {
+                    hasActionId = true;
+                    yield Role.ACTION_ID;
+                } else if ("content".equals(optionName)) {
+                    hasContent = true;
+                    yield Role.CONTENT;
+                }
+                yield Role.IN_STORED_INSTRUCTION;
+            }
+            case ACTION_ID, CONTENT, PLAIN -> Role.PLAIN;
+        };
+    }
+
+    /**
+     * Writes the elements the update adds at the end of the element
+     *
+     * @return true if the element has child elements now
+     */
+    private boolean appendChildren(Role role, boolean hasElements, String childIndent) throws IOException {
+        switch (role) {
+            case COMPONENT -> {
+                if (!instructionsFound) {
+                    instructionsFound = true;
+                    hasElements = openChild(hasElements, childIndent);
+                    writeInstructionsOption(childIndent);
+                }
+            }
+            case INSTRUCTIONS -> {
+                if (!mapFound) {
+                    mapFound = true;
+                    hasElements = openChild(hasElements, childIndent);
+                    writeMap(childIndent);
+                }
+            }
+            case MAP -> {
+                for (Map.Entry<String, String> entry : instructionsMap.entrySet()) {
+                    if (entry.getValue() != null && !seenKeys.contains(entry.getKey())) {
+                        hasElements = openChild(hasElements, childIndent);
+                        writeEntry(childIndent, entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            case STORED_INSTRUCTION -> {
+                if (!hasActionId) {
+                    hasActionId = true;
+                    hasElements = openChild(hasElements, childIndent);
+                    writeOption("actionId", actionId);
+                }
+                if (!hasContent) {
+                    hasContent = true;
+                    hasElements = openChild(hasElements, childIndent);
+                    writeOption("content", content);
+                }
+            }
+            default -> {
+            }
+        }
+        return hasElements;
+    }
+
+    /**
+     * Writes what goes in front of a child element: the end of the parent's start tag before the first child,
+     * then the line break and indentation
+     *
+     * @return true, the parent has child elements now
+     */
+    private boolean openChild(boolean hasElements, String childIndent) throws IOException {
+        if (!hasElements) {
+            out.write('>');
+        }
+        out.write(lineSeparator);
+        out.write(childIndent);
+        return true;
+    }
+
+    private void closeElement(String name, String indent, boolean hasElements, CharSequence text) throws IOException {
+        if (hasElements) {
+            out.write(lineSeparator);
+            out.write(indent);
+            out.write("</" + name + ">");
+        } else if (text.isEmpty()) {
+            out.write(" />");
+        } else {
+            out.write('>');
+            ComponentXmlWriter.escapeText(text, out);
+            out.write("</" + name + ">");
+        }
+    }
+
+    private void writeInstructionsOption(String indent) throws IOException {
+        out.write("<option name=\"instructions\">");
+        out.write(lineSeparator);
+        out.write(indent + INDENT);
+        writeMap(indent + INDENT);
+        out.write(lineSeparator);
+        out.write(indent);
+        out.write("</option>");
+    }
+
+    private void writeMap(String indent) throws IOException {
+        out.write("<map");
+        boolean hasElements = appendChildren(Role.MAP, false, indent + INDENT);
+        closeElement("map", indent, hasElements, "");
+    }
+
+    private void writeEntry(String indent, String key, String value) throws IOException {
+        String valueIndent = indent + INDENT;
+        String instructionIndent = valueIndent + INDENT;
+        String optionIndent = instructionIndent + INDENT;
+        out.write("<entry");
+        writeAttribute("key", key);
+        out.write('>');
+        out.write(lineSeparator);
+        out.write(valueIndent);
+        out.write("<value>");
+        out.write(lineSeparator);
+        out.write(instructionIndent);
+        out.write("<AIAssistantStoredInstruction>");
+        out.write(lineSeparator);
+        out.write(optionIndent);
+        writeOption("actionId", key);
+        out.write(lineSeparator);
+        out.write(optionIndent);
+        writeOption("content", value);
+        out.write(lineSeparator);
+        out.write(instructionIndent);
+        out.write("</AIAssistantStoredInstruction>");
+        out.write(lineSeparator);
+        out.write(valueIndent);
+        out.write("</value>");
+        out.write(lineSeparator);
+        out.write(indent);
+        out.write("</entry>");
+    }
+
+    private void writeOption(String name, String value) throws IOException {
+        out.write("<option");
+        writeAttribute("name", name);
+        writeAttribute("value", value);
+        out.write(" />");
+    }
+
+    private void writeAttribute(String name, String value) throws IOException {
+        out.write(' ');
+        out.write(name);
+        out.write("=\"");
+        ComponentXmlWriter.escapeAttribute(value, out);
+        out.write('"');
+    }
+
+    /**
+     * Skips the element the reader is positioned on, including all of its children
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private String attribute(String name) {
+        return reader.getAttributeValue(null, name);
+    }
+
+    /**
+     * The reader is not namespace aware, like the DOM parser, but still splits attribute names at the colon
+     */
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,363 @@
+package de.knudev.aiexport.workspace;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the byte ranges of top-level components in a settings file without parsing the document.
+ * The file is scanned once with a fixed-size buffer; only the markup needed to track element depth
+ * is looked at, so the scan allocates nothing that grows with the file.
+ */
+public final class WorkspaceComponentLocator {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private WorkspaceComponentLocator() {
+    }
+
+    /**
+     * Locates the component with the given name directly below the root element
+     *
+     * @param settingsFile  Path to the settings file, e.g. workspace.xml
+     * @param componentName Value of the component's name attribute
+     * @return The component range, an empty range at the closing root tag if the component does not exist,
+     * or null if the file has no closing root tag to insert in front of
+     */
+    @Nullable
+    public static ComponentRange locate(@NotNull Path settingsFile, @NotNull String componentName) throws IOException {
+        return locateAll(settingsFile, Set.of(componentName)).get(componentName);
+    }
+
+    /**
+     * Locates several components directly below the root element in a single scan.
+     * The scan stops as soon as all of them are found.
+     *
+     * @param settingsFile   Path to the settings file, e.g. workspace.xml
+     * @param componentNames Values of the components' name attributes
+     * @return The range of every component, an empty range at the closing root tag for components that do not exist.
+     * Components that were not found are missing from the map if the file has no closing root tag to insert in front of
+     * @throws EOFException if the file ends inside a tag, comment, CDATA section or processing instruction
+     */
+    @NotNull
+    public static Map<String, ComponentRange> locateAll(@NotNull Path settingsFile, @NotNull Set<String> componentNames)
+            throws IOException {
+        try (InputStream in = Files.newInputStream(settingsFile)) {
+            return new Scanner(in, componentNames).scan();
+        }
+    }
+
+    /**
+     * End of a section whose content is skipped, with the prefix function used to match it
+     *
+     * @param text     The terminating characters
+     * @param fallback Length of the longest proper prefix of text that is also a suffix of its first i + 1 characters
+     */
+    private record Terminator(String text, int[] fallback) {
+        static final Terminator COMMENT = of("-->");
+        static final Terminator CDATA = of("]]>");
+        static final Terminator PROCESSING_INSTRUCTION = of("?>");
+
+        static Terminator of(String text) {
+            int[] fallback = new int[text.length()];
+            int length = 0;
+            for (int i = 1; i < text.length(); i++) {
+                while (length > 0 && text.charAt(i) != text.charAt(length)) {
+                    length = fallback[length - 1];
+                }
+                if (text.charAt(i) == text.charAt(length)) {
+                    length++;
+                }
+                fallback[i] = length;
+            }
+            return new Terminator(text, fallback);
+        }
+    }
+
+    private static final class Scanner {
+        private final InputStream in;
+        private final Set<String> targetNames;
+        private final int maxNameLength;
+        private final Map<String, ComponentRange> ranges = new HashMap<>();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int bufferPos;
+        private int bufferLimit;
+        private long offset;
+
+        private final StringBuilder lineIndent = new StringBuilder();
+        private boolean onlyWhitespaceOnLine = true;
+        private boolean firstOnLine;
+        private String lineSeparator;
+        private int previous = -1;
+
+        private final StringBuilder attributeName = new StringBuilder();
+        private final ByteArrayOutputStream nameValue = new ByteArrayOutputStream();
+        private boolean tagSelfClosing;
+        private @Nullable String tagName;
+
+        Scanner(InputStream in, Set<String> targetNames) {
+            this.in = in;
+            this.targetNames = targetNames;
+            this.maxNameLength = targetNames.stream()
+                    .mapToInt(name -> name.getBytes(StandardCharsets.UTF_8).length)
+                    .max()
+                    .orElse(0);
+        }
+
+        Map<String, ComponentRange> scan() throws IOException {
+            if (targetNames.isEmpty()) {
+                return ranges;
+            }
+            int depth = 0;
+            long componentStart = -1;
+            String componentName = null;
+            String componentIndent = "";
+            String childIndent = "  ";
+
+            int b;
+            while ((b = read()) != -1) {
+                if (b != '<') {
+                    continue;
+                }
+                long tagStart = offset - 1;
+                boolean tagFirstOnLine = firstOnLine;
+
+                int c = readRequired();
+                if (c == '!') {
+                    int d = readRequired();
+                    if (d == '-') {
+                        skipUntil(Terminator.COMMENT);
+                    } else if (d == '[') {
+                        skipUntil(Terminator.CDATA);
+                    } else {
+                        skipTag();
+                    }
+                } else if (c == '?') {
+                    skipUntil(Terminator.PROCESSING_INSTRUCTION);
+                } else if (c == '/') {
+                    skipTag();
+                    depth--;
+                    if (componentStart >= 0 && depth == 1) {
+                        if (found(componentName, new ComponentRange(componentStart, offset, componentIndent, lineSeparator()))) {
+                            return ranges;
+                        }
+                        componentStart = -1;
+                    }
+                    if (depth == 0) {
+                        // Closing root tag, the remaining components do not exist
+                        ComponentRange insertionPoint = new ComponentRange(tagStart, tagStart, childIndent, lineSeparator());
+                        for (String name : targetNames) {
+                            ranges.putIfAbsent(name, insertionPoint);
+                        }
+                        return ranges;
+                    }
+                } else {
+                    String indent = tagFirstOnLine ? lineIndent.toString() : "";
+                    if (depth == 1 && componentStart < 0) {
+                        childIndent = indent;
+                    }
+                    boolean candidate = depth == 1 && componentStart < 0 && matchesElementName(c, "component");
+                    readStartTag(candidate);
+                    if (candidate && tagName != null) {
+                        if (tagSelfClosing) {
+                            if (found(tagName, new ComponentRange(tagStart, offset, indent, lineSeparator()))) {
+                                return ranges;
+                            }
+                        } else {
+                            componentStart = tagStart;
+                            componentName = tagName;
+                            componentIndent = indent;
+                        }
+                    }
+                    if (!tagSelfClosing) {
+                        depth++;
+                    }
+                }
+            }
+            return ranges;
+        }
+
+        /**
+         * Records a component range, the first component of a name wins
+         *
+         * @return true if all components have been found
+         */
+        private boolean found(String name, ComponentRange range) {
+            ranges.putIfAbsent(name, range);
+            return ranges.size() == targetNames.size();
+        }
+
+        /**
+         * Checks whether the element name starting with the given byte equals the expected name.
+         * Consumes the element name.
+         */
+        private boolean matchesElementName(int first, String expected) throws IOException {
+            boolean matches = first == expected.charAt(0);
+            int index = 1;
+            int b;
+            while (!isNameEnd(b = peek())) {
+                read();
+                matches &= index < expected.length() && b == expected.charAt(index);
+                index++;
+            }
+            return matches && index == expected.length();
+        }
+
+        /**
+         * Reads the rest of a start tag. The name attribute is only compared when the tag is a candidate,
+         * {@link #tagName} is set if it names one of the components looked for.
+         */
+        private void readStartTag(boolean candidate) throws IOException {
+            tagSelfClosing = false;
+            tagName = null;
+            attributeName.setLength(0);
+            while (true) {
+                int b = readRequired();
+                if (b == '>') {
+                    return;
+                }
+                if (b == '/') {
+                    tagSelfClosing = true;
+                } else if (b == '"' || b == '\'') {
+                    boolean isName = candidate && "name".contentEquals(attributeName);
+                    String value = readAttributeValue(b, isName);
+                    if (value != null) {
+                        tagName = value;
+                    }
+                    attributeName.setLength(0);
+                } else if (candidate && b != '=' && !isWhitespace(b)) {
+                    attributeName.append((char) b);
+                }
+            }
+        }
+
+        /**
+         * @return The attribute value if it was to be compared and is one of the component names, null otherwise
+         */
+        @Nullable
+        private String readAttributeValue(int quote, boolean compare) throws IOException {
+            // Values longer than every component name are not collected, so the buffer stays bounded
+            boolean collecting = compare;
+            nameValue.reset();
+            int b;
+            while ((b = readRequired()) != quote) {
+                if (collecting) {
+                    nameValue.write(b);
+                    collecting = nameValue.size() <= maxNameLength;
+                }
+            }
+            if (!collecting) {
+                return null;
+            }
+            String value = nameValue.toString(StandardCharsets.UTF_8);
+            return targetNames.contains(value) ? value : null;
+        }
+
+        private void skipTag() throws IOException {
+            int quote = 0;
+            int b;
+            while (true) {
+                b = readRequired();
+                if (quote != 0) {
+                    if (b == quote) {
+                        quote = 0;
+                    }
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '>') {
+                    return;
+                }
+            }
+        }
+
+        private void skipUntil(Terminator terminator) throws IOException {
+            String text = terminator.text();
+            int matched = 0;
+            while (matched < text.length()) {
+                int b = readRequired();
+                // On a mismatch the longest matched prefix that is also a suffix stays matched, e.g. "]]" of "]]]>"
+                while (matched > 0 && b != text.charAt(matched)) {
+                    matched = terminator.fallback()[matched - 1];
+                }
+                if (b == text.charAt(matched)) {
+                    matched++;
+                }
+            }
+        }
+
+        private String lineSeparator() {
+            return lineSeparator != null ? lineSeparator : "\n";
+        }
+
+        private int readRequired() throws IOException {
+            int b = read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of settings file");
+            }
+            return b;
+        }
+
+        private int peek() throws IOException {
+            if (bufferPos == bufferLimit && !fill()) {
+                return -1;
+            }
+            return buffer[bufferPos] & 0xFF;
+        }
+
+        private int read() throws IOException {
+            if (bufferPos == bufferLimit && !fill()) {
+                return -1;
+            }
+            int b = buffer[bufferPos++] & 0xFF;
+            offset++;
+            trackLine(b);
+            previous = b;
+            return b;
+        }
+
+        private void trackLine(int b) {
+            firstOnLine = false;
+            if (b == '\n') {
+                if (lineSeparator == null) {
+                    lineSeparator = previous == '\r' ? "\r\n" : "\n";
+                }
+                lineIndent.setLength(0);
+                onlyWhitespaceOnLine = true;
+            } else if (onlyWhitespaceOnLine) {
+                if (b == ' ' || b == '\t') {
+                    lineIndent.append((char) b);
+                } else if (b != '\r') {
+                    onlyWhitespaceOnLine = false;
+                    firstOnLine = true;
+                }
+            }
+        }
+
+        private boolean fill() throws IOException {
+            int read = in.read(buffer);
+            if (read <= 0) {
+                return false;
+            }
+            bufferPos = 0;
+            bufferLimit = read;
+            return true;
+        }
+
+        private static boolean isNameEnd(int b) {
+            return b == -1 || b == '>' || b == '/' || isWhitespace(b);
+        }
+
+        private static boolean isWhitespace(int b) {
+            return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package de.knudev.aiexport.workspace;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replaces components of a settings file in place.
+ * Bytes outside the component are copied unchanged channel to channel, and the result is written
+ * to a temporary file next to the original which is then atomically moved over it, keeping the original's permissions.
+ * Components are encoded straight into the temporary file through a fixed-size buffer.
+ */
+public final class WorkspaceFileWriter {
+    private static final int BUFFER_SIZE = 8192;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private WorkspaceFileWriter() {
+    }
+
+    /**
+     * Reads the raw bytes of an existing component
+     *
+     * @param settingsFile Path to the settings file
+     * @param range        Range of the component, as returned by {@link WorkspaceComponentLocator}
+     * @return The component bytes
+     */
+    public static byte[] readRange(@NotNull Path settingsFile, @NotNull ComponentRange range) throws IOException {
+        if (range.length() > Integer.MAX_VALUE) {
+            throw new IOException("Component is too large: " + range.length() + " bytes");
+        }
+        byte[] bytes = new byte[(int) range.length()];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try (FileChannel channel = FileChannel.open(settingsFile, StandardOpenOption.READ)) {
+            long position = range.start();
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Settings file changed while reading component");
+                }
+                position += read;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Opens an existing component for reading through a fixed-size buffer, so large components are never read
+     * into memory as a whole
+     *
+     * @param settingsFile Path to the settings file
+     * @param range        Range of the component, as returned by {@link WorkspaceComponentLocator}
+     * @return The component bytes, to be closed by the caller
+     */
+    @NotNull
+    public static InputStream openRange(@NotNull Path settingsFile, @NotNull ComponentRange range) throws IOException {
+        FileChannel channel = FileChannel.open(settingsFile, StandardOpenOption.READ);
+        return new InputStream() {
+            private final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(range.length(), 1))).flip();
+            private long position = range.start();
+
+            @Override
+            public int read() throws IOException {
+                return fill() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                if (!fill()) {
+                    return -1;
+                }
+                int count = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, count);
+                return count;
+            }
+
+            private boolean fill() throws IOException {
+                if (buffer.hasRemaining()) {
+                    return true;
+                }
+                long remaining = range.end() - position;
+                if (remaining <= 0) {
+                    return false;
+                }
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Settings file changed while reading component");
+                }
+                position += read;
+                buffer.flip();
+                return true;
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Writes a serialized component, see {@link ComponentXmlWriter}
+     */
+    @FunctionalInterface
+    public interface ComponentContent {
+        /**
+         * @param out Receives the component, starting with its opening '&lt;'. Not to be closed
+         */
+        void writeTo(@NotNull Writer out) throws IOException;
+    }
+
+    /**
+     * A serialized component and the range it replaces
+     *
+     * @param range   Range of the component, as returned by {@link WorkspaceComponentLocator}
+     * @param content Writes the component into the settings file
+     */
+    public record Replacement(@NotNull ComponentRange range, @NotNull ComponentContent content) {
+
+        /**
+         * @param range     Range of the component, as returned by {@link WorkspaceComponentLocator}
+         * @param component Serialized component, see {@link ComponentXmlWriter}
+         */
+        public Replacement(@NotNull ComponentRange range, @NotNull String component) {
+            this(range, out -> out.write(component));
+        }
+    }
+
+    /**
+     * Replaces the component range with the given serialized component, or inserts it when the range is empty
+     *
+     * @param settingsFile Path to the settings file
+     * @param range        Range of the component, as returned by {@link WorkspaceComponentLocator}
+     * @param component    Serialized component, see {@link ComponentXmlWriter}
+     */
+    public static void replaceRange(@NotNull Path settingsFile, @NotNull ComponentRange range, @NotNull String component) throws IOException {
+        replaceRanges(settingsFile, List.of(new Replacement(range, component)));
+    }
+
+    /**
+     * Replaces the component range with a component that is serialized straight into the settings file
+     *
+     * @param settingsFile Path to the settings file
+     * @param range        Range of the component, as returned by {@link WorkspaceComponentLocator}
+     * @param content      Writes the component
+     */
+    public static void replaceRange(@NotNull Path settingsFile, @NotNull ComponentRange range, @NotNull ComponentContent content)
+            throws IOException {
+        replaceRanges(settingsFile, List.of(new Replacement(range, content)));
+    }
+
+    /**
+     * Replaces several components with a single rewrite of the settings file.
+     * The ranges must come from the same scan of the file and must not overlap; empty ranges at the same
+     * insertion point are inserted in the given order.
+     *
+     * @param settingsFile Path to the settings file
+     * @param replacements The components to replace or insert
+     */
+    public static void replaceRanges(@NotNull Path settingsFile, @NotNull List<Replacement> replacements) throws IOException {
+        List<Replacement> sorted = new ArrayList<>(replacements);
+        sorted.sort(Comparator.comparingLong(replacement -> replacement.range().start()));
+
+        Path tempFile = createTempFile(settingsFile, settingsFile.getFileName().toString());
+        try {
+            try (FileChannel source = FileChannel.open(settingsFile, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0;
+                for (Replacement replacement : sorted) {
+                    ComponentRange range = replacement.range();
+                    if (range.start() < position) {
+                        throw new IOException("Overlapping component ranges in " + settingsFile);
+                    }
+                    transferFully(source, position, range.start() - position, target);
+
+                    // Flushed but not closed, closing would close the target channel as well
+                    Writer out = new BufferedWriter(Channels.newWriter(target, StandardCharsets.UTF_8.newEncoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE), BUFFER_SIZE), BUFFER_SIZE);
+                    if (!range.exists()) {
+                        out.write(range.indent());
+                    }
+                    replacement.content().writeTo(out);
+                    if (!range.exists()) {
+                        out.write(range.lineSeparator());
+                    }
+                    out.flush();
+                    position = range.end();
+                }
+                transferFully(source, position, source.size() - position, target);
+                target.force(false);
+            }
+            moveAtomically(tempFile, settingsFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void transferFully(FileChannel source, long position, long count, FileChannel target) throws IOException {
+        while (count > 0) {
+            long transferred = source.transferTo(position, count, target);
+            if (transferred <= 0) {
+                throw new IOException("Settings file changed while copying");
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    /**
+     * Creates an empty temporary file next to a file that is to be replaced through {@link #moveAtomically}.
+     * Unlike {@link Files#createTempFile}, which makes it readable by its owner only, the temporary file gets the
+     * permissions of the file it replaces, or the default permissions of new files if that does not exist yet.
+     *
+     * @param target The file to replace
+     * @param prefix Start of the temporary file's name
+     * @return The temporary file
+     */
+    @NotNull
+    public static Path createTempFile(@NotNull Path target, @NotNull String prefix) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        while (true) {
+            Path tempFile = directory.resolve(prefix + Long.toUnsignedString(RANDOM.nextLong()) + ".tmp");
+            try {
+                // Created without attributes, so the umask decides its permissions
+                Files.createFile(tempFile);
+            } catch (FileAlreadyExistsException e) {
+                continue;
+            }
+            try {
+                copyPermissions(target, tempFile);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+            return tempFile;
+        }
+    }
+
+    /**
+     * Copies the permissions, and where allowed the owner and group, of an existing file onto another one
+     */
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        if (!Files.exists(source)) {
+            return;
+        }
+        Set<String> views = source.getFileSystem().supportedFileAttributeViews();
+        if (views.contains("posix")) {
+            PosixFileAttributes attributes = Files.readAttributes(source, PosixFileAttributes.class);
+            PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+            PosixFileAttributes targetAttributes = targetView.readAttributes();
+            try {
+                if (!attributes.group().equals(targetAttributes.group())) {
+                    targetView.setGroup(attributes.group());
+                }
+                if (!attributes.owner().equals(targetAttributes.owner())) {
+                    targetView.setOwner(attributes.owner());
+                }
+            } catch (FileSystemException e) {
+                // Only privileged users may hand a file to others, the file then belongs to the writing user
+            }
+            // Set last, changing the owner may clear setuid and setgid bits
+            targetView.setPermissions(attributes.permissions());
+        } else if (views.contains("acl")) {
+            AclFileAttributeView sourceView = Files.getFileAttributeView(source, AclFileAttributeView.class);
+            AclFileAttributeView targetView = Files.getFileAttributeView(target, AclFileAttributeView.class);
+            targetView.setAcl(sourceView.getAcl());
+            try {
+                if (!sourceView.getOwner().equals(targetView.getOwner())) {
+                    targetView.setOwner(sourceView.getOwner());
+                }
+            } catch (FileSystemException e) {
+                // Only privileged users may hand a file to others, the file then belongs to the writing user
+            }
+        }
+    }
+
+    /**
+     * Moves a file over another one, atomically where the file system supports it
+     *
+     * @param source The file to move
+     * @param target The file to replace
+     */
+    public static void moveAtomically(@NotNull Path source, @NotNull Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
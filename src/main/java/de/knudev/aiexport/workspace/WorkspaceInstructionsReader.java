@@ -0,0 +1,239 @@
+package de.knudev.aiexport.workspace;
+
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streaming reader for the AIAssistantCustomInstructionsStorage component of workspace.xml.
+ * Every other component is skipped without building a tree, and reading stops as soon as the
+ * instructions component is closed, so memory only grows with the instructions themselves.
+ * A DOM based reader is kept as a fallback for files the streaming reader cannot handle.
+ */
+public final class WorkspaceInstructionsReader {
+    public static final String COMPONENT_NAME = "AIAssistantCustomInstructionsStorage";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private WorkspaceInstructionsReader() {
+    }
+
+    /**
+     * Reads all instructions stored in the given workspace.xml
+     *
+     * @param workspacePath Path to the workspace.xml file
+     * @return Map of action IDs to instruction content, in document order
+     */
+    @NotNull
+    public static Map<String, String> readInstructions(@NotNull Path workspacePath) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(workspacePath))) {
+            return readInstructions(in);
+        }
+    }
+
+    /**
+     * Reads all instructions from a stream holding either a whole workspace.xml or only the instructions component
+     *
+     * @param in The XML, not closed by this method
+     * @return Map of action IDs to instruction content, in document order
+     */
+    @NotNull
+    public static Map<String, String> readInstructions(@NotNull InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            return readInstructions(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the instructions with a full DOM parse of workspace.xml.
+     * Only used when the streaming reader cannot handle the file.
+     *
+     * @param workspacePath Path to the workspace.xml file
+     * @return Map of action IDs to instruction content
+     */
+    @NotNull
+    public static Map<String, String> readInstructionsWithDom(@NotNull Path workspacePath)
+            throws ParserConfigurationException, SAXException, IOException {
+        // Parse the XML file
+        DocumentBuilder builder = XmlFactories.newDocumentBuilder();
+        Document document = builder.parse(workspacePath.toFile());
+        document.getDocumentElement().normalize();
+
+        Map<String, String> instructionsMap = new LinkedHashMap<>();
+
+        // Look specifically for AIAssistantCustomInstructionsStorage component
+        NodeList componentList = document.getElementsByTagName("component");
+        for (int i = 0; i < componentList.getLength(); i++) {
+            Node componentNode = componentList.item(i);
+            if (componentNode.getNodeType() == Node.ELEMENT_NODE) {
+                Element componentElement = (Element) componentNode;
+                String componentName = componentElement.getAttribute("name");
+
+                // Target the AIAssistantCustomInstructionsStorage component
+                if (componentName.equals(COMPONENT_NAME)) {
+                    // Find the instructions option
+                    NodeList optionNodes = componentElement.getElementsByTagName("option");
+                    for (int j = 0; j < optionNodes.getLength(); j++) {
+                        Element optionElement = (Element) optionNodes.item(j);
+                        if (optionElement.getAttribute("name").equals("instructions")) {
+                            // Process the map entries
+                            NodeList mapNodes = optionElement.getElementsByTagName("map");
+                            if (mapNodes.getLength() > 0) {
+                                Element mapElement = (Element) mapNodes.item(0);
+                                NodeList entryNodes = mapElement.getElementsByTagName("entry");
+
+                                for (int k = 0; k < entryNodes.getLength(); k++) {
+                                    Element entryElement = (Element) entryNodes.item(k);
+                                    String actionId = entryElement.getAttribute("key");
+
+                                    // Extract the content
+                                    NodeList valueNodes = entryElement.getElementsByTagName("value");
+                                    if (valueNodes.getLength() > 0) {
+                                        Element valueElement = (Element) valueNodes.item(0);
+                                        NodeList instructionNodes = valueElement.getElementsByTagName("AIAssistantStoredInstruction");
+                                        if (instructionNodes.getLength() > 0) {
+                                            Element instructionElement = (Element) instructionNodes.item(0);
+
+                                            // Get the content option
+                                            NodeList contentOptionNodes = instructionElement.getElementsByTagName("option");
+                                            for (int m = 0; m < contentOptionNodes.getLength(); m++) {
+                                                Element contentOption = (Element) contentOptionNodes.item(m);
+                                                if (contentOption.getAttribute("name").equals("content")) {
+                                                    instructionsMap.put(actionId, contentOption.getAttribute("value"));
+                                                }
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return instructionsMap;
+    }
+
+    private static Map<String, String> readInstructions(XMLStreamReader reader) throws XMLStreamException {
+        Map<String, String> instructionsMap = new LinkedHashMap<>();
+
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT || !"component".equals(reader.getLocalName())) {
+                continue;
+            }
+
+            if (COMPONENT_NAME.equals(reader.getAttributeValue(null, "name"))) {
+                readComponent(reader, instructionsMap);
+                // Nothing else in the file is of interest once the component is closed
+                break;
+            }
+            skipElement(reader);
+        }
+
+        return instructionsMap;
+    }
+
+    /**
+     * Reads the entries of the component the reader is positioned on, up to and including its end tag.
+     * Mirrors the DOM lookup: option[name=instructions] / map / entry[key] / value /
+     * AIAssistantStoredInstruction / option[name=content].
+     */
+    private static void readComponent(XMLStreamReader reader, Map<String, String> instructionsMap) throws XMLStreamException {
+        int depth = 1;
+        boolean inInstructions = false;
+        int instructionsDepth = -1;
+        String currentActionId = null;
+        int entryDepth = -1;
+        boolean inStoredInstruction = false;
+        int storedInstructionDepth = -1;
+        boolean contentFound = false;
+
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String localName = reader.getLocalName();
+
+                if (!inInstructions) {
+                    if ("option".equals(localName) && "instructions".equals(reader.getAttributeValue(null, "name"))) {
+                        inInstructions = true;
+                        instructionsDepth = depth;
+                    }
+                } else if (currentActionId == null) {
+                    if ("entry".equals(localName)) {
+                        currentActionId = nullToEmpty(reader.getAttributeValue(null, "key"));
+                        entryDepth = depth;
+                        contentFound = false;
+                    }
+                } else if (!inStoredInstruction) {
+                    if ("AIAssistantStoredInstruction".equals(localName) && !contentFound) {
+                        inStoredInstruction = true;
+                        storedInstructionDepth = depth;
+                    }
+                } else if ("option".equals(localName) && "content".equals(reader.getAttributeValue(null, "name"))) {
+                    instructionsMap.put(currentActionId, nullToEmpty(reader.getAttributeValue(null, "value")));
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (inStoredInstruction && depth == storedInstructionDepth) {
+                    // Only the first stored instruction of an entry is exported
+                    inStoredInstruction = false;
+                    contentFound = true;
+                } else if (currentActionId != null && depth == entryDepth) {
+                    currentActionId = null;
+                } else if (inInstructions && depth == instructionsDepth) {
+                    inInstructions = false;
+                }
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Skips the element the reader is positioned on, including all of its children.
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        // Use the JDK implementation explicitly, the IDE classpath may provide other StAX implementations
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+}
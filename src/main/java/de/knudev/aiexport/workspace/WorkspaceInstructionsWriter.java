@@ -0,0 +1,458 @@
+package de.knudev.aiexport.workspace;
+
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import de.knudev.aiexport.diagnostics.Phase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes AI Assistant custom instructions into the AIAssistantCustomInstructionsStorage component of workspace.xml.
+ * This is the complementary class to {@link WorkspaceInstructionsReader}.
+ * Instructions mapped to null content are removed, e.g. when restoring an earlier instruction set.
+ */
+public final class WorkspaceInstructionsWriter {
+
+    /**
+     * How workspace.xml was written
+     */
+    public enum WriteMode {
+        /** Only the instructions component was replaced */
+        IN_PLACE,
+        /** The whole document was parsed and written back */
+        FULL_REWRITE,
+        /** The IDE's in-memory component state was replaced, the IDE writes workspace.xml on its next save */
+        IN_MEMORY
+    }
+
+    /** Streamed in place of a missing component, the instructions option and map are added to it */
+    private static final String EMPTY_COMPONENT = "<component name=\"" + WorkspaceInstructionsReader.COMPONENT_NAME + "\" />";
+
+    private WorkspaceInstructionsWriter() {
+    }
+
+    /**
+     * Adds or updates the given instructions in workspace.xml.
+     * Only the instructions component is spliced in where possible, otherwise the whole file is rewritten.
+     *
+     * @param workspacePath   Path to the workspace.xml file
+     * @param instructionsMap Map of action IDs to instruction content
+     * @return How the file was written
+     */
+    @NotNull
+    public static WriteMode writeInstructions(@NotNull Path workspacePath, @NotNull Map<String, String> instructionsMap)
+            throws ParserConfigurationException, SAXException, IOException, TransformerException {
+        return writeInstructions(workspacePath, instructionsMap, new OperationMetrics());
+    }
+
+    /**
+     * Adds or updates the given instructions in workspace.xml, recording the time of every step
+     *
+     * @param workspacePath   Path to the workspace.xml file
+     * @param instructionsMap Map of action IDs to instruction content
+     * @param metrics         Receives the phases and bytes of the write
+     * @return How the file was written
+     */
+    @NotNull
+    public static WriteMode writeInstructions(@NotNull Path workspacePath, @NotNull Map<String, String> instructionsMap,
+                                              @NotNull OperationMetrics metrics)
+            throws ParserConfigurationException, SAXException, IOException, TransformerException {
+        try {
+            if (writeInPlace(workspacePath, instructionsMap, metrics)) {
+                return WriteMode.IN_PLACE;
+            }
+        } catch (XMLStreamException | EOFException e) {
+            // The component could not be located or parsed on its own, the full parse reports real errors
+        }
+        writeWithDom(workspacePath, instructionsMap, metrics);
+        return WriteMode.FULL_REWRITE;
+    }
+
+    /**
+     * Replaces only the AIAssistantCustomInstructionsStorage component in workspace.xml.
+     * The component is located by byte offsets and streamed from the old file into the new one, with the changed
+     * entries substituted on the way, so unrelated components keep their exact formatting.
+     * No tree of the component is built: only the instructions map and the element being copied are held in memory.
+     *
+     * @param workspacePath   Path to the workspace.xml file
+     * @param instructionsMap Map of action IDs to instruction content
+     * @return true if the component was written, false if workspace.xml has to be rewritten as a whole
+     * @throws XMLStreamException if the component is not well-formed, the file is left unchanged then
+     */
+    public static boolean writeInPlace(@NotNull Path workspacePath, @NotNull Map<String, String> instructionsMap)
+            throws XMLStreamException, IOException {
+        return writeInPlace(workspacePath, instructionsMap, new OperationMetrics());
+    }
+
+    private static boolean writeInPlace(Path workspacePath, Map<String, String> instructionsMap, OperationMetrics metrics)
+            throws XMLStreamException, IOException {
+        long start = System.nanoTime();
+        ComponentRange range = WorkspaceComponentLocator.locate(workspacePath, WorkspaceInstructionsReader.COMPONENT_NAME);
+        metrics.record(Phase.COMPONENT_LOOKUP, start);
+        if (range == null) {
+            return false;
+        }
+
+        // Parsed, updated and serialized straight into the file in one pass
+        start = System.nanoTime();
+        try {
+            WorkspaceFileWriter.replaceRange(workspacePath, range, out -> {
+                try (InputStream in = range.exists()
+                        ? WorkspaceFileWriter.openRange(workspacePath, range)
+                        : new ByteArrayInputStream(EMPTY_COMPONENT.getBytes(StandardCharsets.UTF_8))) {
+                    copyWithInstructions(XmlFactories.newStreamReader(in), instructionsMap, range.indent(),
+                            range.lineSeparator(), out);
+                } catch (XMLStreamException e) {
+                    throw new MalformedComponentException(e);
+                }
+            });
+        } catch (MalformedComponentException e) {
+            throw e.getCause();
+        }
+        metrics.record(Phase.FILE_WRITE, start);
+        metrics.addEntriesTouched(instructionsMap.size());
+        metrics.addBytesRead(range.length());
+        // Bytes outside the component are copied as well
+        metrics.addBytesWritten(Files.size(workspacePath));
+        return true;
+    }
+
+    /**
+     * Applies instructions to a serialized instructions component, e.g. the IDE's in-memory state of it
+     *
+     * @param componentXml    The component as it is stored in workspace.xml
+     * @param instructionsMap Map of action IDs to instruction content
+     * @return The updated component, without indentation of its first line
+     */
+    @NotNull
+    public static String updateComponentXml(@NotNull String componentXml, @NotNull Map<String, String> instructionsMap)
+            throws XMLStreamException {
+        return updateComponentXml(componentXml, instructionsMap, new OperationMetrics());
+    }
+
+    /**
+     * Applies instructions to a serialized instructions component, recording the time of every step
+     *
+     * @param componentXml    The component as it is stored in workspace.xml
+     * @param instructionsMap Map of action IDs to instruction content
+     * @param metrics         Receives the phases of the update
+     * @return The updated component, without indentation of its first line
+     */
+    @NotNull
+    public static String updateComponentXml(@NotNull String componentXml, @NotNull Map<String, String> instructionsMap,
+                                            @NotNull OperationMetrics metrics) throws XMLStreamException {
+        // Parsed, updated and serialized in one pass
+        long start = System.nanoTime();
+        StringWriter out = new StringWriter();
+        try {
+            copyWithInstructions(XmlFactories.newStreamReader(new StringReader(componentXml)), instructionsMap, "", "\n", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        metrics.record(Phase.SERIALIZATION, start);
+        metrics.addEntriesTouched(instructionsMap.size());
+        return out.toString();
+    }
+
+    private static void copyWithInstructions(XMLStreamReader reader, Map<String, String> instructionsMap,
+                                             String baseIndent, String lineSeparator, Writer out)
+            throws XMLStreamException, IOException {
+        try {
+            InstructionsComponentUpdater.copy(reader, instructionsMap, baseIndent, lineSeparator, out);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Carries a parse error of the component out of {@link WorkspaceFileWriter.ComponentContent}, which only
+     * throws IOException
+     */
+    private static final class MalformedComponentException extends IOException {
+        MalformedComponentException(XMLStreamException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized XMLStreamException getCause() {
+            return (XMLStreamException) super.getCause();
+        }
+    }
+
+    /**
+     * Parses the whole workspace.xml, updates the instructions component and writes the document back
+     *
+     * @param workspacePath   Path to the workspace.xml file
+     * @param instructionsMap Map of action IDs to instruction content
+     */
+    public static void writeWithDom(@NotNull Path workspacePath, @NotNull Map<String, String> instructionsMap)
+            throws ParserConfigurationException, SAXException, IOException, TransformerException {
+        writeWithDom(workspacePath, instructionsMap, new OperationMetrics());
+    }
+
+    private static void writeWithDom(Path workspacePath, Map<String, String> instructionsMap, OperationMetrics metrics)
+            throws ParserConfigurationException, SAXException, IOException, TransformerException {
+        // Parse the workspace.xml file
+        long start = System.nanoTime();
+        DocumentBuilder builder = XmlFactories.newDocumentBuilder();
+        Document document = builder.parse(workspacePath.toFile());
+        document.getDocumentElement().normalize();
+        metrics.record(Phase.XML_PARSE, start);
+        metrics.addBytesRead(Files.size(workspacePath));
+
+        // Find or create the AIAssistantCustomInstructionsStorage component
+        start = System.nanoTime();
+        Element aiComponent = findOrCreateAiComponent(document);
+        metrics.record(Phase.COMPONENT_LOOKUP, start);
+
+        // Update the component with the imported instructions
+        start = System.nanoTime();
+        updateAiComponentWithInstructions(aiComponent, instructionsMap, document);
+        metrics.record(Phase.ENTRY_UPDATES, start);
+        metrics.addEntriesTouched(instructionsMap.size());
+
+        // Save the changes back to workspace.xml, the transformer serializes straight into the file
+        start = System.nanoTime();
+        Transformer transformer = XmlFactories.newTransformer();
+        DOMSource source = new DOMSource(document);
+        StreamResult result = new StreamResult(workspacePath.toFile());
+        transformer.transform(source, result);
+        metrics.record(Phase.FILE_WRITE, start);
+        metrics.addBytesWritten(Files.size(workspacePath));
+    }
+
+    private static Element findOrCreateAiComponent(Document document) {
+        // Look for existing component
+        NodeList componentList = document.getElementsByTagName("component");
+        for (int i = 0; i < componentList.getLength(); i++) {
+            Node componentNode = componentList.item(i);
+            if (componentNode.getNodeType() == Node.ELEMENT_NODE) {
+                Element componentElement = (Element) componentNode;
+                String componentName = componentElement.getAttribute("name");
+                
+                if (componentName.equals(WorkspaceInstructionsReader.COMPONENT_NAME)) {
+                    return componentElement;
+                }
+            }
+        }
+        
+        // If not found, create a new component with the correct structure
+        Element rootElement = document.getDocumentElement();
+        Element aiComponent = document.createElement("component");
+        aiComponent.setAttribute("name", WorkspaceInstructionsReader.COMPONENT_NAME);
+        rootElement.appendChild(aiComponent);
+        
+        // Create the instructions option
+        Element instructionsOption = document.createElement("option");
+        instructionsOption.setAttribute("name", "instructions");
+        aiComponent.appendChild(instructionsOption);
+        
+        // Create the map element
+        Element mapElement = document.createElement("map");
+        instructionsOption.appendChild(mapElement);
+        
+        return aiComponent;
+    }
+
+    /**
+     * Updates the AIAssistantCustomInstructionsStorage component with instructions
+     *
+     * @param aiComponent    The component element to update
+     * @param instructionsMap Map of action IDs to instruction content, null to remove the entry
+     * @param document       The XML document
+     */
+    public static void updateAiComponentWithInstructions(@NotNull Element aiComponent, @NotNull Map<String, String> instructionsMap,
+                                                         @NotNull Document document) {
+        // Find or create instructions option
+        Element instructionsOption = null;
+        NodeList optionNodes = aiComponent.getElementsByTagName("option");
+        for (int i = 0; i < optionNodes.getLength(); i++) {
+            Element optionElement = (Element) optionNodes.item(i);
+            if (optionElement.getAttribute("name").equals("instructions")) {
+                instructionsOption = optionElement;
+                break;
+            }
+        }
+        
+        if (instructionsOption == null) {
+            instructionsOption = document.createElement("option");
+            instructionsOption.setAttribute("name", "instructions");
+            aiComponent.appendChild(instructionsOption);
+        }
+        
+        // Find or create map element
+        Element mapElement = null;
+        NodeList mapNodes = instructionsOption.getElementsByTagName("map");
+        if (mapNodes.getLength() > 0) {
+            mapElement = (Element) mapNodes.item(0);
+        } else {
+            mapElement = document.createElement("map");
+            instructionsOption.appendChild(mapElement);
+        }
+        
+        // Index the existing entries once, the first entry wins for duplicate keys
+        Map<String, Element> entriesByKey = new HashMap<>();
+        NodeList entryNodes = mapElement.getElementsByTagName("entry");
+        for (int i = 0, length = entryNodes.getLength(); i < length; i++) {
+            Element entryElement = (Element) entryNodes.item(i);
+            entriesByKey.putIfAbsent(entryElement.getAttribute("key"), entryElement);
+        }
+
+        // Update existing entries and collect new ones, which are appended in one go
+        DocumentFragment newEntries = document.createDocumentFragment();
+        boolean removed = false;
+        for (Map.Entry<String, String> entry : instructionsMap.entrySet()) {
+            Element entryElement = entriesByKey.get(entry.getKey());
+            if (entry.getValue() == null) {
+                if (entryElement != null) {
+                    removeEntry(entryElement);
+                    removed = true;
+                }
+            } else if (entryElement != null) {
+                updateEntryContent(entryElement, entry.getValue(), document);
+            } else {
+                createNewEntry(newEntries, entry.getKey(), entry.getValue(), document);
+            }
+        }
+        mapElement.appendChild(newEntries);
+        if (removed && findFirstElement(mapElement, "entry") == null) {
+            // Leftover indentation would be written as the text of an empty map
+            while (mapElement.getFirstChild() != null) {
+                mapElement.removeChild(mapElement.getFirstChild());
+            }
+        }
+    }
+
+    /**
+     * Removes an entry together with the indentation in front of it
+     */
+    private static void removeEntry(Element entryElement) {
+        Node previous = entryElement.getPreviousSibling();
+        if (previous != null && previous.getNodeType() == Node.TEXT_NODE && previous.getNodeValue().isBlank()) {
+            previous.getParentNode().removeChild(previous);
+        }
+        entryElement.getParentNode().removeChild(entryElement);
+    }
+
+    /**
+     * Updates the content of an existing entry
+     *
+     * @param entryElement The entry element to update
+     * @param content      The new content
+     * @param document     The XML document
+     */
+    private static void updateEntryContent(Element entryElement, String content, Document document) {
+        Element valueElement = findFirstElement(entryElement, "value");
+        if (valueElement == null) {
+            return;
+        }
+        Element instructionElement = findFirstElement(valueElement, "AIAssistantStoredInstruction");
+        if (instructionElement == null) {
+            return;
+        }
+
+        // Make sure actionId is set
+        String actionId = entryElement.getAttribute("key");
+        boolean hasActionId = false;
+        boolean hasContent = false;
+
+        // Update actionId and content options in a single pass
+        NodeList optionNodes = instructionElement.getElementsByTagName("option");
+        for (int i = 0, length = optionNodes.getLength(); i < length; i++) {
+            Element optionElement = (Element) optionNodes.item(i);
+            String optionName = optionElement.getAttribute("name");
+            if (optionName.equals("actionId")) {
+                hasActionId = true;
+                // Ensure it has the correct value
+                optionElement.setAttribute("value", actionId);
+            } else if (optionName.equals("content")) {
+                hasContent = true;
+                optionElement.setAttribute("value", content);
+            }
+        }
+
+        // If actionId option doesn't exist, create it
+        if (!hasActionId) {
+            Element actionIdOption = document.createElement("option");
+            actionIdOption.setAttribute("name", "actionId");
+            actionIdOption.setAttribute("value", actionId);
+            instructionElement.appendChild(actionIdOption);
+        }
+
+        // If content option doesn't exist, create it
+        if (!hasContent) {
+            Element contentOption = document.createElement("option");
+            contentOption.setAttribute("name", "content");
+            contentOption.setAttribute("value", content);
+            instructionElement.appendChild(contentOption);
+        }
+    }
+
+    @Nullable
+    private static Element findFirstElement(Element parent, String tagName) {
+        NodeList nodes = parent.getElementsByTagName(tagName);
+        return nodes.getLength() > 0 ? (Element) nodes.item(0) : null;
+    }
+
+    /**
+     * Creates a new entry in the map
+     *
+     * @param mapElement The map element, or a fragment that is appended to it later
+     * @param actionId   The action ID
+     * @param content    The instruction content
+     * @param document   The XML document
+     */
+    private static void createNewEntry(Node mapElement, String actionId, String content, Document document) {
+        // Create entry
+        Element entryElement = document.createElement("entry");
+        entryElement.setAttribute("key", actionId);
+        mapElement.appendChild(entryElement);
+        
+        // Create value
+        Element valueElement = document.createElement("value");
+        entryElement.appendChild(valueElement);
+        
+        // Create instruction
+        Element instructionElement = document.createElement("AIAssistantStoredInstruction");
+        valueElement.appendChild(instructionElement);
+
+        // Add actionId option
+        Element actionIdOption = document.createElement("option");
+        actionIdOption.setAttribute("name", "actionId");
+        actionIdOption.setAttribute("value", actionId);
+        instructionElement.appendChild(actionIdOption);
+
+        // Add content option
+        Element contentOption = document.createElement("option");
+        contentOption.setAttribute("name", "content");
+        contentOption.setAttribute("value", content);
+        instructionElement.appendChild(contentOption);
+    }
+}
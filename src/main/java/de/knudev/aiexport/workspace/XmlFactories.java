@@ -0,0 +1,68 @@
+package de.knudev.aiexport.workspace;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Shared DOM and StAX factories. Looking up a factory scans the classpath for providers, so it is done once;
+ * builders, transformers and stream readers are not thread safe and are created per use.
+ */
+final class XmlFactories {
+    // Use the JDK implementations explicitly, the IDE classpath may provide other ones
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newDefaultInstance();
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newDefaultInstance();
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private XmlFactories() {
+    }
+
+    static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        // Factories are not guaranteed to be thread safe, even when only creating builders
+        synchronized (DOCUMENT_BUILDER_FACTORY) {
+            return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        }
+    }
+
+    static Transformer newTransformer() throws TransformerConfigurationException {
+        synchronized (TRANSFORMER_FACTORY) {
+            return TRANSFORMER_FACTORY.newTransformer();
+        }
+    }
+
+    /**
+     * @param in XML encoded as UTF-8 unless it declares otherwise, not closed by the reader
+     * @return A reader that reports qualified names like the DOM parser, without resolving DTDs
+     */
+    static XMLStreamReader newStreamReader(InputStream in) throws XMLStreamException {
+        synchronized (INPUT_FACTORY) {
+            return INPUT_FACTORY.createXMLStreamReader(in);
+        }
+    }
+
+    /**
+     * @param in XML as text, not closed by the reader
+     * @return A reader that reports qualified names like the DOM parser, without resolving DTDs
+     */
+    static XMLStreamReader newStreamReader(Reader in) throws XMLStreamException {
+        synchronized (INPUT_FACTORY) {
+            return INPUT_FACTORY.createXMLStreamReader(in);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
@@ -0,0 +1,64 @@
+package de.knudev.aiexport.cli;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RepositoryRootsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path base;
+
+    @Before
+    public void setUp() throws IOException {
+        base = folder.getRoot().toPath().toRealPath();
+        Files.createDirectories(base.resolve("repos/beta/.ai"));
+        Files.createDirectories(base.resolve("repos/alpha/modules/core"));
+        Files.createDirectories(base.resolve("repos/gamma"));
+        Files.writeString(base.resolve("repos/notes.txt"), "not a repository");
+    }
+
+    @Test
+    public void globMatchesDirectoriesOnly() throws IOException {
+        assertEquals(List.of(base.resolve("repos/alpha"), base.resolve("repos/beta"), base.resolve("repos/gamma")),
+                resolve(base + "/repos/*"));
+    }
+
+    @Test
+    public void globWalksOnlyAsDeepAsThePattern() throws IOException {
+        assertEquals(List.of(base.resolve("repos/alpha/modules")), resolve(base + "/repos/*/modules"));
+        assertEquals(List.of(base.resolve("repos/alpha"), base.resolve("repos/beta")), resolve(base + "/repos/[ab]*/"));
+    }
+
+    @Test
+    public void doubleStarMatchesAtAnyDepth() throws IOException {
+        assertEquals(List.of(base.resolve("repos/beta/.ai")), resolve(base + "/repos/**/.ai"));
+        assertEquals(List.of(base.resolve("repos/alpha/modules"), base.resolve("repos/alpha/modules/core")),
+                resolve(base + "/repos/alpha/**"));
+    }
+
+    @Test
+    public void plainDirectoriesAreKeptInArgumentOrder() throws IOException {
+        assertEquals(List.of(base.resolve("repos/gamma"), base.resolve("missing"), base.resolve("repos/alpha"),
+                        base.resolve("repos/beta")),
+                resolve(base + "/repos/gamma", base + "/repos/../missing", base + "/repos/*", base + "/repos/gamma/"));
+    }
+
+    @Test
+    public void globBelowMissingDirectoryMatchesNothing() throws IOException {
+        assertEquals(List.of(), resolve(base + "/missing/*"));
+    }
+
+    private static List<Path> resolve(String... arguments) throws IOException {
+        return List.copyOf(RepositoryRoots.resolve(List.of(arguments)));
+    }
+}
@@ -0,0 +1,136 @@
+package de.knudev.aiexport.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoalescingJobQueueTest {
+    private final List<String> launched = new ArrayList<>();
+    private final List<CompletableFuture<String>> runs = new ArrayList<>();
+
+    // Syncs merge their files, any other job runs on its own
+    private final CoalescingJobQueue<String, String> queue = new CoalescingJobQueue<>(job -> {
+        launched.add(job);
+        CompletableFuture<String> run = new CompletableFuture<>();
+        runs.add(run);
+        return run;
+    }, (waiting, incoming) -> waiting.startsWith("sync:") && incoming.startsWith("sync:")
+            ? waiting + "," + incoming.substring("sync:".length()) : null);
+
+    @Test
+    public void runsOneJobAtATime() throws Exception {
+        CompletableFuture<String> first = queue.submit("import");
+        CompletableFuture<String> second = queue.submit("export");
+
+        assertEquals(List.of("import"), launched);
+        finish(0);
+        assertEquals("import done", first.get());
+        assertEquals(List.of("import", "export"), launched);
+        assertFalse(second.isDone());
+        finish(1);
+        assertEquals("export done", second.get());
+    }
+
+    @Test
+    public void mergesRequestsWhileTheyWait() throws Exception {
+        queue.submit("sync:a");
+        CompletableFuture<String> b = queue.submit("sync:b");
+        CompletableFuture<String> c = queue.submit("sync:c");
+
+        assertSame(b, c);
+        finish(0);
+        finish(1);
+
+        assertEquals(List.of("sync:a", "sync:b,c"), launched);
+        assertEquals("sync:b,c done", c.get());
+    }
+
+    @Test
+    public void runningJobIsNeverJoined() {
+        queue.submit("sync:a");
+        CompletableFuture<String> b = queue.submit("sync:b");
+
+        assertEquals(List.of("sync:a"), launched);
+        finish(0);
+        assertEquals(List.of("sync:a", "sync:b"), launched);
+        assertFalse(b.isDone());
+    }
+
+    @Test
+    public void keepsTheOrderOfDifferentKinds() {
+        queue.submit("import");
+        queue.submit("sync:a");
+        queue.submit("export");
+        queue.submit("sync:b");
+
+        for (int i = 0; i < 4; i++) {
+            finish(i);
+        }
+
+        assertEquals(List.of("import", "sync:a", "export", "sync:b"), launched);
+    }
+
+    @Test
+    public void failedJobDoesNotStopTheQueue() throws Exception {
+        CompletableFuture<String> first = queue.submit("import");
+        CompletableFuture<String> second = queue.submit("export");
+
+        runs.get(0).completeExceptionally(new IllegalStateException("broken"));
+
+        assertTrue(first.isCompletedExceptionally());
+        finish(1);
+        assertEquals("export done", second.get());
+    }
+
+    @Test
+    public void launcherFailureCompletesTheFuture() throws Exception {
+        CoalescingJobQueue<String, String> failing = new CoalescingJobQueue<>(job -> {
+            if (job.equals("broken")) {
+                throw new IllegalStateException("Cannot start");
+            }
+            return CompletableFuture.completedFuture(job);
+        }, (waiting, incoming) -> null);
+
+        try {
+            failing.submit("broken").get();
+            fail("Launcher failure was not reported");
+        } catch (ExecutionException e) {
+            assertEquals("Cannot start", e.getCause().getMessage());
+        }
+        assertEquals("next", failing.submit("next").get());
+    }
+
+    @Test
+    public void closeCancelsWaitingJobs() throws Exception {
+        CompletableFuture<String> running = queue.submit("import");
+        CompletableFuture<String> waiting = queue.submit("export");
+
+        queue.close();
+
+        assertTrue(waiting.isCancelled());
+        assertTrue(queue.submit("sync:a").isCompletedExceptionally());
+        finish(0);
+        assertEquals("import done", running.get());
+        assertEquals(List.of("import"), launched);
+        try {
+            queue.submit("sync:b").join();
+            fail("Closed queue accepted a job");
+        } catch (CancellationException e) {
+            assertEquals("Job queue is closed", e.getMessage());
+        }
+    }
+
+    private void finish(int run) {
+        runs.get(run).complete(launched.get(run) + " done");
+    }
+}
@@ -0,0 +1,54 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.diagnostics.OperationMetrics;
+import de.knudev.aiexport.workspace.ComponentRange;
+import de.knudev.aiexport.workspace.WorkspaceComponentLocator;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsWriter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class InstructionModelTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path workspacePath;
+    private final InstructionModel model = new InstructionModel();
+
+    @Before
+    public void setUp() throws Exception {
+        workspacePath = folder.getRoot().toPath().resolve("workspace.xml");
+        Files.writeString(workspacePath, "<project version=\"4\">\n  <component name=\"Other\">"
+                + "x".repeat(10_000) + "</component>\n</project>\n");
+        WorkspaceInstructionsWriter.writeInstructions(workspacePath, Map.of("commit", "Be brief"));
+    }
+
+    @Test
+    public void countsOnlyTheComponentBytes() throws Exception {
+        ComponentRange range = WorkspaceComponentLocator.locate(workspacePath, WorkspaceInstructionsReader.COMPONENT_NAME);
+        OperationMetrics metrics = new OperationMetrics();
+
+        assertEquals(Map.of("commit", "Be brief"), model.readWorkspaceInstructions(workspacePath, metrics));
+
+        // Hashed and parsed in two passes
+        assertEquals(2 * range.length(), metrics.snapshot(0).bytesRead());
+    }
+
+    @Test
+    public void instructionsServedFromMemoryReadNothing() throws Exception {
+        model.readWorkspaceInstructions(workspacePath);
+        OperationMetrics metrics = new OperationMetrics();
+
+        assertEquals(Map.of("commit", "Be brief"), model.readWorkspaceInstructions(workspacePath, metrics));
+
+        assertEquals(0, metrics.snapshot(0).bytesRead());
+    }
+}
@@ -0,0 +1,108 @@
+package de.knudev.aiexport.core;
+
+import de.knudev.aiexport.instructions.ContentAddressedStore;
+import de.knudev.aiexport.instructions.FragmentExpander;
+import de.knudev.aiexport.instructions.InstructionBundle;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsReader;
+import de.knudev.aiexport.workspace.WorkspaceInstructionsWriter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InstructionsExporterTest {
+    private static final String INCLUDING_FILE = "# commit\n\nBe brief.\n@include tone.md";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ProjectLayout layout;
+    private Path aiDirectory;
+    private final InstructionModel model = new InstructionModel();
+
+    @Before
+    public void setUp() throws Exception {
+        layout = new ProjectLayout(folder.getRoot().toPath());
+        aiDirectory = Files.createDirectories(layout.aiDirectory().resolve(FragmentExpander.DIRECTORY)).getParent();
+        Files.createDirectories(layout.workspaceFile().getParent());
+        Files.writeString(layout.workspaceFile(), "<project version=\"4\">\n</project>\n");
+        Files.writeString(aiDirectory.resolve(FragmentExpander.DIRECTORY).resolve("tone.md"), "Stay polite.");
+        Files.writeString(aiDirectory.resolve("commit.md"), INCLUDING_FILE);
+        Files.writeString(aiDirectory.resolve("review.md"), "# review\n\nCheck the tests");
+
+        Map<String, String> instructions = new LinkedHashMap<>();
+        instructions.put("commit", "Be brief.\nStay polite.");
+        instructions.put("review", "Check the tests more");
+        WorkspaceInstructionsWriter.writeInstructions(layout.workspaceFile(), instructions);
+    }
+
+    @Test
+    public void bundleExportKeepsFilesWithIncludes() throws Exception {
+        ExportResult result = InstructionsExporter.export(layout, model, new ExportOptions(false, ExportOptions.Format.BUNDLE));
+
+        assertEquals(ExportResult.Status.EXPORTED, result.status());
+        assertTrue(Files.isRegularFile(aiDirectory.resolve(InstructionBundle.FILE_NAME)));
+        assertEquals(INCLUDING_FILE, Files.readString(aiDirectory.resolve("commit.md")));
+        assertFalse(Files.exists(aiDirectory.resolve("review.md")));
+        assertTrue(result.files().unchanged().contains("commit.md"));
+        assertEquals("review.md", String.join(",", result.files().removed()));
+
+        assertFragmentEditsPropagate();
+    }
+
+    @Test
+    public void prunedBundleExportKeepsFilesWithIncludes() throws Exception {
+        InstructionsExporter.export(layout, model, new ExportOptions(true, ExportOptions.Format.BUNDLE));
+
+        assertEquals(INCLUDING_FILE, Files.readString(aiDirectory.resolve("commit.md")));
+        assertFalse(Files.exists(aiDirectory.resolve("review.md")));
+    }
+
+    @Test
+    public void contentAddressedExportKeepsFilesWithIncludes() throws Exception {
+        ExportResult result = InstructionsExporter.export(layout, model,
+                new ExportOptions(false, ExportOptions.Format.CONTENT_ADDRESSED));
+
+        assertEquals(ExportResult.Status.EXPORTED, result.status());
+        assertTrue(Files.isRegularFile(aiDirectory.resolve(ContentAddressedStore.INDEX_FILE)));
+        assertEquals(INCLUDING_FILE, Files.readString(aiDirectory.resolve("commit.md")));
+        assertFalse(Files.exists(aiDirectory.resolve("review.md")));
+        assertTrue(result.files().unchanged().contains("commit.md"));
+
+        assertFragmentEditsPropagate();
+    }
+
+    @Test
+    public void prunedContentAddressedExportKeepsFilesWithIncludes() throws Exception {
+        InstructionsExporter.export(layout, model, new ExportOptions(true, ExportOptions.Format.CONTENT_ADDRESSED));
+
+        assertEquals(INCLUDING_FILE, Files.readString(aiDirectory.resolve("commit.md")));
+        assertFalse(Files.exists(aiDirectory.resolve("review.md")));
+    }
+
+    /**
+     * The kept file still takes precedence over its bundle or index entry, so a changed fragment reaches the IDE
+     */
+    private void assertFragmentEditsPropagate() throws Exception {
+        Path fragment = aiDirectory.resolve(FragmentExpander.DIRECTORY).resolve("tone.md");
+        Files.writeString(fragment, "Stay polite and precise.");
+        Files.setLastModifiedTime(fragment, FileTime.fromMillis(Files.getLastModifiedTime(fragment).toMillis() + 60_000));
+
+        ImportResult result = new InstructionsImporter(Runnable::run, model, ImportOptions.DEFAULT)
+                .importAll(layout, null, false, TaskProgress.NONE);
+
+        assertTrue(result.message(), result.isWorkspaceWritten());
+        assertEquals(Map.of("commit", "Be brief.\nStay polite and precise.", "review", "Check the tests more"),
+                WorkspaceInstructionsReader.readInstructions(layout.workspaceFile()));
+    }
+}
@@ -0,0 +1,143 @@
+package de.knudev.aiexport.history;
+
+import de.knudev.aiexport.history.SnapshotLog.Snapshot;
+import de.knudev.aiexport.history.SnapshotLog.Trigger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SnapshotLogTest {
+    private static final Instant NOW = Instant.parse("2024-05-01T12:00:00Z");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresEverySnapshotFromDeltas() throws IOException {
+        SnapshotLog log = open();
+
+        Snapshot first = log.record(Trigger.IMPORT, Map.of("commit", "a", "review", "b"));
+        Snapshot second = log.record(Trigger.SYNC, Map.of("commit", "a2", "review", "b", "explain", "c"));
+        Snapshot third = log.record(Trigger.IDE_CHANGES, Map.of("explain", "c"));
+
+        assertEquals(new Snapshot(1, NOW.toEpochMilli(), Trigger.IMPORT, 2, 2), first);
+        assertEquals(2, second.changeCount());
+        assertEquals(2, third.changeCount());
+        assertEquals(Map.of("commit", "a", "review", "b"), log.restore(first.id()));
+        assertEquals(Map.of("commit", "a2", "review", "b", "explain", "c"), log.restore(second.id()));
+        assertEquals(Map.of("explain", "c"), log.restore(third.id()));
+    }
+
+    @Test
+    public void unchangedSetIsNotRecorded() throws IOException {
+        SnapshotLog log = open();
+        log.record(Trigger.IMPORT, Map.of("commit", "a"));
+
+        assertNull(log.record(Trigger.EXPORT, Map.of("commit", "a")));
+        assertEquals(1, log.snapshots().size());
+    }
+
+    @Test
+    public void restoresAcrossCheckpoints() throws IOException {
+        SnapshotLog log = open();
+        Map<Long, Map<String, String>> recorded = new HashMap<>();
+        Map<String, String> instructions = new HashMap<>();
+        for (int i = 0; i < 90; i++) {
+            instructions.put("action" + (i % 7), "content " + i);
+            if (i % 11 == 0) {
+                instructions.remove("action" + (i % 5));
+            }
+            Snapshot snapshot = log.record(Trigger.SYNC, instructions);
+            if (snapshot != null) {
+                recorded.put(snapshot.id(), Map.copyOf(instructions));
+            }
+        }
+
+        // More snapshots than fit into one chain of deltas, but too few to be compacted
+        List<Snapshot> snapshots = log.snapshots();
+        assertEquals(recorded.size(), snapshots.size());
+        for (Snapshot snapshot : snapshots) {
+            assertEquals(recorded.get(snapshot.id()), log.restore(snapshot.id()));
+        }
+    }
+
+    @Test
+    public void reopenedLogRestoresSnapshots() throws IOException {
+        SnapshotLog log = open();
+        Snapshot first = log.record(Trigger.IMPORT, Map.of("commit", "a"));
+        log.record(Trigger.SYNC, Map.of("commit", "b"));
+
+        SnapshotLog reopened = open();
+
+        assertEquals(log.snapshots(), reopened.snapshots());
+        assertEquals(Map.of("commit", "a"), reopened.restore(first.id()));
+        assertNull(reopened.record(Trigger.SYNC, Map.of("commit", "b")));
+        assertEquals(3, reopened.record(Trigger.SYNC, Map.of("commit", "c")).id());
+    }
+
+    @Test
+    public void findsSnapshotByTime() throws IOException {
+        SnapshotLog log = open();
+        Snapshot snapshot = log.record(Trigger.IMPORT, Map.of("commit", "a"));
+
+        assertEquals(snapshot, log.at(NOW.toEpochMilli()));
+        assertNull(log.at(NOW.toEpochMilli() - 1));
+        assertEquals(snapshot, log.latest());
+    }
+
+    @Test
+    public void compactionKeepsNewestSnapshotsAndLeavesNoTemporaryFiles() throws IOException {
+        SnapshotLog log = open();
+        Map<Long, Map<String, String>> recorded = new HashMap<>();
+        for (int i = 0; i < 210; i++) {
+            Map<String, String> instructions = Map.of("commit", "content " + i);
+            recorded.put(log.record(Trigger.SYNC, instructions).id(), instructions);
+        }
+
+        // Compacted to the newest 100 snapshots after the 199th, when about half of them can be dropped
+        List<Snapshot> snapshots = log.snapshots();
+        assertEquals(111, snapshots.size());
+        assertEquals(100, snapshots.get(0).id());
+        for (Snapshot snapshot : snapshots) {
+            assertEquals(recorded.get(snapshot.id()), log.restore(snapshot.id()));
+        }
+        assertEquals(snapshots, open().snapshots());
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath().resolve("history"))) {
+            assertEquals(List.of(SnapshotLog.INDEX_FILE, SnapshotLog.LOG_FILE),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    public void unknownSnapshotCannotBeRestored() throws IOException {
+        SnapshotLog log = open();
+        log.record(Trigger.IMPORT, Map.of("commit", "a"));
+
+        try {
+            log.restore(42);
+            fail("Unknown snapshot was restored");
+        } catch (IOException e) {
+            assertEquals("No snapshot #42 in the history", e.getMessage());
+        }
+    }
+
+    private SnapshotLog open() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("history");
+        return SnapshotLog.open(directory, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,133 @@
+package de.knudev.aiexport.instructions;
+
+import de.knudev.aiexport.instructions.ContentAddressedStore.Entry;
+import de.knudev.aiexport.instructions.InstructionFileWriter.SyncResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContentAddressedStoreTest {
+    private static final String SHARED = "Use the team's review checklist";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path aiDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        aiDirectory = folder.newFolder(".ai").toPath();
+    }
+
+    @Test
+    public void storesEveryDistinctBodyOnce() throws IOException {
+        SyncResult result = ContentAddressedStore.write(aiDirectory, instructions("a", SHARED, "b", "Other", "c", SHARED));
+
+        String shared = hash(SHARED);
+        String other = hash("Other");
+        assertEquals(List.of(body(shared), body(other), ContentAddressedStore.INDEX_FILE), result.added());
+        assertEquals(List.of(new Entry("a", shared), new Entry("b", other), new Entry("c", shared)),
+                ContentAddressedStore.readIndex(aiDirectory.resolve(ContentAddressedStore.INDEX_FILE)));
+        assertEquals(SHARED, ContentAddressedStore.readBody(aiDirectory, shared));
+    }
+
+    @Test
+    public void storedBodiesAreNotRewritten() throws IOException {
+        ContentAddressedStore.write(aiDirectory, instructions("a", SHARED));
+        Path bodyFile = ContentAddressedStore.bodyPath(aiDirectory, hash(SHARED));
+        FileTime stored = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(bodyFile, stored);
+
+        SyncResult result = ContentAddressedStore.write(aiDirectory, instructions("a", SHARED, "b", SHARED));
+
+        assertEquals(List.of(body(hash(SHARED))), result.unchanged());
+        assertEquals(List.of(ContentAddressedStore.INDEX_FILE), result.changed());
+        assertEquals(stored, Files.getLastModifiedTime(bodyFile));
+    }
+
+    @Test
+    public void deletesBodiesNoLongerIndexed() throws IOException {
+        ContentAddressedStore.write(aiDirectory, instructions("a", SHARED, "b", "Old"));
+
+        SyncResult result = ContentAddressedStore.write(aiDirectory, instructions("a", SHARED, "b", "New"));
+
+        assertEquals(List.of(body(hash("Old"))), result.removed());
+        assertFalse(Files.exists(ContentAddressedStore.bodyPath(aiDirectory, hash("Old"))));
+        assertEquals("New", ContentAddressedStore.readBody(aiDirectory, hash("New")));
+    }
+
+    @Test
+    public void rejectsEditedBodies() throws IOException {
+        ContentAddressedStore.write(aiDirectory, instructions("a", SHARED));
+        String hash = hash(SHARED);
+        Files.writeString(ContentAddressedStore.bodyPath(aiDirectory, hash), SHARED + " and more");
+
+        try {
+            ContentAddressedStore.readBody(aiDirectory, hash);
+            fail("An edited body was read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("does not match its hash"));
+        }
+    }
+
+    @Test
+    public void reportsMissingBodies() throws IOException {
+        String hash = hash("Never stored");
+
+        try {
+            ContentAddressedStore.readBody(aiDirectory, hash);
+            fail("A missing body was read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is missing"));
+        }
+    }
+
+    @Test
+    public void readsHandWrittenIndexLines() throws IOException {
+        String hash = hash(SHARED);
+        Path indexFile = aiDirectory.resolve(ContentAddressedStore.INDEX_FILE);
+        Files.writeString(indexFile, "# comment\n\n  Action With Spaces   " + hash + "  \n");
+
+        assertEquals(List.of(new Entry("Action With Spaces", hash)), ContentAddressedStore.readIndex(indexFile));
+
+        Files.writeString(indexFile, "commit not-a-hash\n");
+        try {
+            ContentAddressedStore.readIndex(indexFile);
+            fail("An invalid index line was read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid line in "));
+        }
+    }
+
+    private static Map<String, String> instructions(String... actionIdsAndContents) {
+        Map<String, String> instructions = new LinkedHashMap<>();
+        for (int i = 0; i < actionIdsAndContents.length; i += 2) {
+            instructions.put(actionIdsAndContents[i], actionIdsAndContents[i + 1]);
+        }
+        return instructions;
+    }
+
+    private static String hash(String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return ContentHash.sha256(bytes, 0, bytes.length);
+    }
+
+    private static String body(String hash) {
+        return ContentAddressedStore.BODIES_DIRECTORY + "/" + hash + ".md";
+    }
+}
@@ -0,0 +1,124 @@
+package de.knudev.aiexport.instructions;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FragmentExpanderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path fragmentsDirectory;
+    private final FragmentExpander expander = new FragmentExpander();
+
+    @Before
+    public void setUp() throws IOException {
+        fragmentsDirectory = Files.createDirectories(folder.getRoot().toPath().resolve(".ai").resolve(FragmentExpander.DIRECTORY));
+    }
+
+    @Test
+    public void contentWithoutIncludesIsKept() throws IOException {
+        String content = "Mention @include in prose";
+
+        FragmentExpander.Expansion expansion = expander.expand(fragmentsDirectory, content, "commit.md");
+
+        assertFalse(FragmentExpander.hasIncludes(content));
+        assertSame(content, expansion.content());
+        assertEquals(Set.of(), expansion.fragments());
+    }
+
+    @Test
+    public void expandsNestedIncludes() throws IOException {
+        write("style.md", "Be brief.\n@include shared/tone.md\n");
+        write("shared/tone.md", "Stay polite.");
+
+        FragmentExpander.Expansion expansion = expander.expand(fragmentsDirectory,
+                "Write commit messages.\n  @include style.md\nThanks", "commit.md");
+
+        assertEquals("Write commit messages.\nBe brief.\nStay polite.\nThanks", expansion.content());
+        assertEquals(Set.of("style.md", "shared/tone.md"), expansion.fragments());
+    }
+
+    @Test
+    public void detectsIncludeCycles() throws IOException {
+        write("a.md", "@include b.md");
+        write("b.md", "@include c.md");
+        write("c.md", "@include a.md");
+
+        try {
+            expander.expand(fragmentsDirectory, "@include a.md", "commit.md");
+            fail("Include cycle was not detected");
+        } catch (IOException e) {
+            assertEquals("Include cycle: a.md -> b.md -> c.md -> a.md", e.getMessage());
+        }
+    }
+
+    @Test
+    public void detectsSelfInclude() throws IOException {
+        write("a.md", "@include a.md");
+
+        try {
+            expander.expand(fragmentsDirectory, "@include a.md", "commit.md");
+            fail("Include cycle was not detected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Include cycle"));
+        }
+    }
+
+    @Test
+    public void sharedFragmentIsNoCycle() throws IOException {
+        write("a.md", "@include shared.md\n@include b.md");
+        write("b.md", "@include shared.md");
+        write("shared.md", "x");
+
+        assertEquals("x\nx", expander.expand(fragmentsDirectory, "@include a.md", "commit.md").content());
+    }
+
+    @Test
+    public void missingFragmentFails() {
+        try {
+            expander.expand(fragmentsDirectory, "@include missing.md", "commit.md");
+            fail("Missing fragment was not reported");
+        } catch (IOException e) {
+            assertEquals("commit.md includes missing fragment missing.md", e.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFragmentsOutsideTheFragmentsDirectory() throws IOException {
+        expander.expand(fragmentsDirectory, "@include ../commit.md", "commit.md");
+    }
+
+    @Test
+    public void refreshPicksUpChangedFragments() throws IOException {
+        write("style.md", "@include tone.md");
+        Path tone = write("tone.md", "old");
+        assertEquals("old", expander.expand(fragmentsDirectory, "@include style.md", "commit.md").content());
+
+        Files.writeString(tone, "new text");
+        Files.setLastModifiedTime(tone, FileTime.fromMillis(Files.getLastModifiedTime(tone).toMillis() + 60_000));
+        expander.refresh(fragmentsDirectory);
+
+        assertEquals("new text", expander.expand(fragmentsDirectory, "@include style.md", "commit.md").content());
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = fragmentsDirectory.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        return file;
+    }
+}
@@ -0,0 +1,131 @@
+package de.knudev.aiexport.instructions;
+
+import de.knudev.aiexport.workspace.WorkspaceInstructionsWriter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImportManifestTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path aiDirectory;
+    private Path workspacePath;
+    private Path manifestFile;
+
+    @Before
+    public void setUp() throws Exception {
+        Path root = folder.getRoot().toPath();
+        aiDirectory = Files.createDirectories(root.resolve(".ai"));
+        workspacePath = root.resolve(".idea/workspace.xml");
+        manifestFile = root.resolve(".idea/aiexport/manifest");
+        Files.createDirectories(workspacePath.getParent());
+        Files.writeString(workspacePath, "<project version=\"4\">\n</project>\n");
+        Files.writeString(aiDirectory.resolve("commit.md"), "# commit\n\nWrite short messages");
+        Files.writeString(aiDirectory.resolve("review.md"), "# review\n\nCheck the tests");
+    }
+
+    @Test
+    public void savedManifestIsUpToDate() throws Exception {
+        recordImport();
+
+        assertTrue(ImportManifest.load(manifestFile).isUpToDate(aiDirectory, workspacePath));
+    }
+
+    @Test
+    public void changedFileIsNotUpToDate() throws Exception {
+        recordImport();
+
+        Files.writeString(aiDirectory.resolve("commit.md"), "# commit\n\nWrite short commit messages");
+
+        assertFalse(ImportManifest.load(manifestFile).isUpToDate(aiDirectory, workspacePath));
+    }
+
+    @Test
+    public void touchedButIdenticalFileIsUpToDate() throws Exception {
+        recordImport();
+
+        Path file = aiDirectory.resolve("commit.md");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 60_000));
+
+        assertTrue(ImportManifest.load(manifestFile).isUpToDate(aiDirectory, workspacePath));
+    }
+
+    @Test
+    public void addedOrDeletedFileIsNotUpToDate() throws Exception {
+        recordImport();
+
+        Files.writeString(aiDirectory.resolve("explain.md"), "# explain\n\nBe brief");
+        assertFalse(ImportManifest.load(manifestFile).isUpToDate(aiDirectory, workspacePath));
+
+        Files.delete(aiDirectory.resolve("explain.md"));
+        Files.delete(aiDirectory.resolve("review.md"));
+        assertFalse(ImportManifest.load(manifestFile).isUpToDate(aiDirectory, workspacePath));
+    }
+
+    @Test
+    public void changedComponentIsNotUpToDate() throws Exception {
+        recordImport();
+
+        WorkspaceInstructionsWriter.writeInstructions(workspacePath, Map.of("commit", "Edited in the IDE"));
+
+        ImportManifest manifest = ImportManifest.load(manifestFile);
+        assertFalse(manifest.isComponentUnchanged(workspacePath));
+        assertFalse(manifest.isUpToDate(aiDirectory, workspacePath));
+    }
+
+    @Test
+    public void knownHashRequiresSameSizeAndModificationTime() throws Exception {
+        Path file = aiDirectory.resolve("commit.md");
+        InstructionFile loaded = InstructionFileLoader.loadFile(file);
+        ImportManifest.of(List.of(loaded)).save(manifestFile);
+
+        ImportManifest manifest = ImportManifest.load(manifestFile);
+
+        assertEquals(loaded.hash(), manifest.knownHash("commit.md", loaded.size(), loaded.lastModified()));
+        assertNull(manifest.knownHash("commit.md", loaded.size() + 1, loaded.lastModified()));
+        assertNull(manifest.knownHash("review.md", loaded.size(), loaded.lastModified()));
+    }
+
+    @Test
+    public void recordsIncludedFragments() throws Exception {
+        InstructionFile loaded = InstructionFileLoader.loadFile(aiDirectory.resolve("commit.md"));
+        ImportManifest.of(List.of(loaded), Map.of("commit.md", Set.of("style.md"))).save(manifestFile);
+
+        ImportManifest manifest = ImportManifest.load(manifestFile);
+
+        assertEquals(Set.of("style.md"), manifest.includesOf("commit.md"));
+        assertEquals(Set.of("commit.md"), manifest.filesIncluding(Set.of("style.md")));
+        assertEquals(Set.of(), manifest.filesIncluding(Set.of("other.md")));
+    }
+
+    @Test
+    public void missingManifestIsEmpty() throws Exception {
+        ImportManifest manifest = ImportManifest.load(manifestFile);
+
+        assertFalse(manifest.isUpToDate(aiDirectory, workspacePath));
+        assertNull(manifest.knownHash("commit.md", 0, 0));
+    }
+
+    private void recordImport() throws Exception {
+        List<InstructionFile> files = List.of(
+                InstructionFileLoader.loadFile(aiDirectory.resolve("commit.md")),
+                InstructionFileLoader.loadFile(aiDirectory.resolve("review.md")));
+        WorkspaceInstructionsWriter.writeInstructions(workspacePath, Map.of(
+                "commit", "Write short messages", "review", "Check the tests"));
+        ImportManifest.of(files).withWorkspace(workspacePath).save(manifestFile);
+    }
+}
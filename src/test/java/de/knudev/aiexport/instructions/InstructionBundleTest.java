@@ -0,0 +1,124 @@
+package de.knudev.aiexport.instructions;
+
+import de.knudev.aiexport.instructions.InstructionBundle.Entry;
+import de.knudev.aiexport.instructions.InstructionFileWriter.FileChange;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstructionBundleTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsEntriesInWrittenOrder() throws IOException {
+        Map<String, String> instructions = new LinkedHashMap<>();
+        instructions.put("review", "Check the tests");
+        instructions.put("commit", "Schreibe kurze Nachrichten, äöü ✓");
+        instructions.put("explain", "");
+        Path file = bundleFile();
+
+        assertEquals(FileChange.ADDED, InstructionBundle.write(file, instructions));
+        InstructionBundle bundle = InstructionBundle.open(file);
+
+        assertEquals(List.of("review", "commit", "explain"), bundle.entries().stream().map(Entry::actionId).toList());
+        for (Entry entry : bundle.entries()) {
+            String content = instructions.get(entry.actionId());
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            assertEquals(content, bundle.read(entry));
+            assertEquals(bytes.length, entry.length());
+            assertEquals(ContentHash.sha256(bytes, 0, bytes.length), entry.hash());
+        }
+    }
+
+    @Test
+    public void identicalBodiesAreStoredOnce() throws IOException {
+        String body = "Shared ".repeat(1000);
+        Path file = bundleFile();
+        InstructionBundle.write(file, Map.of("a", body, "b", body, "c", "other"));
+
+        InstructionBundle bundle = InstructionBundle.open(file);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        bundle.entries().forEach(entry -> entries.put(entry.actionId(), entry));
+
+        assertEquals(entries.get("a").offset(), entries.get("b").offset());
+        assertNotEquals(entries.get("a").offset(), entries.get("c").offset());
+        assertEquals(body, bundle.read(entries.get("b")));
+        assertTrue(Files.size(file) < 2L * body.length());
+    }
+
+    @Test
+    public void sameInstructionsLeaveTheFileAlone() throws IOException {
+        Path file = bundleFile();
+        InstructionBundle.write(file, Map.of("commit", "Be brief"));
+
+        assertEquals(FileChange.UNCHANGED, InstructionBundle.write(file, Map.of("commit", "Be brief")));
+        assertEquals(FileChange.CHANGED, InstructionBundle.write(file, Map.of("commit", "Be briefer")));
+        assertEquals("Be briefer", readAll(InstructionBundle.open(file)).get("commit"));
+    }
+
+    @Test
+    public void openedBundleSurvivesReplacement() throws IOException {
+        Path file = bundleFile();
+        InstructionBundle.write(file, Map.of("commit", "old"));
+        InstructionBundle bundle = InstructionBundle.open(file);
+
+        InstructionBundle.write(file, Map.of("commit", "new content"));
+
+        assertEquals("old", readAll(bundle).get("commit"));
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path file = bundleFile();
+        Files.writeString(file, "# commit\n\nNot a bundle");
+
+        try {
+            InstructionBundle.open(file);
+            fail("A markdown file was opened as bundle");
+        } catch (IOException e) {
+            assertEquals("Not an instruction bundle: " + file, e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedBundles() throws IOException {
+        Path file = bundleFile();
+        InstructionBundle.write(file, Map.of("commit", "Be brief", "review", "Check"));
+        byte[] bytes = Files.readAllBytes(file);
+
+        for (int length : new int[]{10, 20, bytes.length - 3}) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            try {
+                InstructionBundle.open(file);
+                fail("Bundle truncated to " + length + " bytes was opened");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt instruction bundle"));
+            }
+        }
+    }
+
+    private Path bundleFile() {
+        return folder.getRoot().toPath().resolve(InstructionBundle.FILE_NAME);
+    }
+
+    private static Map<String, String> readAll(InstructionBundle bundle) {
+        Map<String, String> instructions = new LinkedHashMap<>();
+        bundle.entries().forEach(entry -> instructions.put(entry.actionId(), bundle.read(entry)));
+        return instructions;
+    }
+}
@@ -0,0 +1,147 @@
+package de.knudev.aiexport.instructions;
+
+import de.knudev.aiexport.instructions.InstructionFileWriter.SyncResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class InstructionFileWriterTest {
+    private static final FileTime OLD = FileTime.fromMillis(1_000_000_000_000L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path aiDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        aiDirectory = Files.createDirectories(folder.getRoot().toPath().resolve(".ai"));
+    }
+
+    @Test
+    public void writesOneFilePerInstruction() throws IOException {
+        SyncResult result = InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief", "My.Action", "Explain"), false);
+
+        assertEquals(List.of("commit.md", "My_Action.md"), result.added());
+        assertEquals(2, result.exportedCount());
+        assertTrue(result.hasChanges());
+        assertEquals("# commit\n\nBe brief", Files.readString(aiDirectory.resolve("commit.md")));
+        assertEquals("# My.Action\n\nExplain", Files.readString(aiDirectory.resolve("My_Action.md")));
+        assertEquals(List.of("My_Action.md", "commit.md"), listDirectory());
+    }
+
+    @Test
+    public void leavesUnchangedFilesAlone() throws IOException {
+        InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief", "review", "Check"), false);
+        Files.setLastModifiedTime(aiDirectory.resolve("commit.md"), OLD);
+        Files.setLastModifiedTime(aiDirectory.resolve("review.md"), OLD);
+
+        SyncResult result = InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief", "review", "Check more"), false);
+
+        assertEquals(List.of(), result.added());
+        assertEquals(List.of("review.md"), result.changed());
+        assertEquals(List.of("commit.md"), result.unchanged());
+        assertEquals(OLD, Files.getLastModifiedTime(aiDirectory.resolve("commit.md")));
+        assertEquals("# review\n\nCheck more", Files.readString(aiDirectory.resolve("review.md")));
+    }
+
+    @Test
+    public void handWrittenFileThatImportsAsTheSameInstructionIsUnchanged() throws IOException {
+        Path file = aiDirectory.resolve("commit.md");
+        Files.writeString(file, "#   commit\n\n\nBe brief\n");
+
+        SyncResult result = InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief"), false);
+
+        assertEquals(List.of("commit.md"), result.unchanged());
+        assertFalse(result.hasChanges());
+        assertEquals("#   commit\n\n\nBe brief\n", Files.readString(file));
+    }
+
+    @Test
+    public void keptFilesAreNeverWritten() throws IOException {
+        Path file = aiDirectory.resolve("commit.md");
+        Files.writeString(file, "# commit\n\n@include style.md");
+
+        SyncResult result = InstructionFileWriter.sync(aiDirectory, instructions("commit", "Expanded style"), false,
+                Set.of("commit.md"));
+
+        assertEquals(List.of("commit.md"), result.unchanged());
+        assertEquals("# commit\n\n@include style.md", Files.readString(file));
+    }
+
+    @Test
+    public void pruneDeletesOnlyInstructionFilesOfRemovedActions() throws IOException {
+        InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief", "review", "Check"), false);
+        Files.writeString(aiDirectory.resolve("README.md"), "How to write instructions");
+
+        SyncResult withoutPrune = InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief"), false);
+        SyncResult withPrune = InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief"), true);
+
+        assertEquals(List.of(), withoutPrune.removed());
+        assertEquals(List.of("review.md"), withPrune.removed());
+        assertEquals(List.of("README.md", "commit.md"), listDirectory());
+    }
+
+    @Test
+    public void deletesFilesOfExportedActions() throws IOException {
+        InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief", "review", "Check"), false);
+
+        assertEquals(List.of("commit.md"), InstructionFileWriter.deleteFilesOf(aiDirectory, Set.of("commit", "explain"), Set.of()));
+        assertEquals(List.of("review.md"), listDirectory());
+    }
+
+    @Test
+    public void keepsPermissionsOfReplacedFile() throws IOException {
+        InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief"), false);
+        Path file = aiDirectory.resolve("commit.md");
+        PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        assumeTrue(view != null);
+        view.setPermissions(PosixFilePermissions.fromString("rw-rw-r--"));
+
+        InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be very brief"), false);
+
+        assertEquals("rw-rw-r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+    }
+
+    @Test
+    public void newFilesAreNotOwnerOnly() throws IOException {
+        assumeTrue(Files.getFileAttributeView(aiDirectory, PosixFileAttributeView.class) != null);
+
+        InstructionFileWriter.sync(aiDirectory, instructions("commit", "Be brief"), false);
+
+        Path reference = Files.createFile(folder.getRoot().toPath().resolve("reference"));
+        assertEquals(Files.getPosixFilePermissions(reference), Files.getPosixFilePermissions(aiDirectory.resolve("commit.md")));
+    }
+
+    private static Map<String, String> instructions(String... actionIdsAndContents) {
+        Map<String, String> instructions = new LinkedHashMap<>();
+        for (int i = 0; i < actionIdsAndContents.length; i += 2) {
+            instructions.put(actionIdsAndContents[i], actionIdsAndContents[i + 1]);
+        }
+        return instructions;
+    }
+
+    private List<String> listDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(aiDirectory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.knudev.aiexport.instructions;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class Utf8ContentTest {
+    // One, two, three and four bytes per character, and an unpaired surrogate
+    private static final String MIXED = "aé€😀\uD800z";
+
+    @Test
+    public void encodesPartsLikeTheirConcatenation() throws IOException {
+        Utf8Content content = Utf8Content.of("---\nheader\n---\n", MIXED, "");
+
+        assertArrayEquals(("---\nheader\n---\n" + MIXED).getBytes(StandardCharsets.UTF_8), encode(content));
+    }
+
+    @Test
+    public void computesByteLengthWithoutEncoding() {
+        assertEquals(MIXED.getBytes(StandardCharsets.UTF_8).length, Utf8Content.of(MIXED).byteLength());
+        assertEquals(0, Utf8Content.of().byteLength());
+        assertEquals(3, Utf8Content.encoded(new byte[3]).byteLength());
+    }
+
+    @Test
+    public void keepsSurrogatePairsTogetherAcrossChunks() throws IOException {
+        // The pair starts at the last char of the first chunk
+        String text = "x".repeat(8191) + "😀".repeat(5000);
+        byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+
+        Utf8Content content = Utf8Content.of(text);
+
+        assertArrayEquals(expected, encode(content));
+        assertEquals(expected.length, content.byteLength());
+    }
+
+    @Test
+    public void hashesTheEncodedContent() throws IOException {
+        String text = MIXED.repeat(10000);
+        byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(ContentHash.sha256(encoded, 0, encoded.length), Utf8Content.of(text).sha256());
+        assertEquals(ContentHash.sha256(encoded, 0, encoded.length), Utf8Content.encoded(encoded).sha256());
+    }
+
+    @Test
+    public void stopsWhenConsumerDeclines() throws IOException {
+        int[] chunks = {0};
+
+        boolean completed = Utf8Content.of("y".repeat(100_000)).forEachChunk(chunk -> ++chunks[0] < 2);
+
+        assertFalse(completed);
+        assertEquals(2, chunks[0]);
+    }
+
+    private static byte[] encode(Utf8Content content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.forEachChunk(chunk -> {
+            ByteBuffer copy = chunk.duplicate();
+            byte[] bytes = new byte[copy.remaining()];
+            copy.get(bytes);
+            out.write(bytes);
+            return true;
+        });
+        return out.toByteArray();
+    }
+}
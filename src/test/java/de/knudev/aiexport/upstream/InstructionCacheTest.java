@@ -0,0 +1,120 @@
+package de.knudev.aiexport.upstream;
+
+import de.knudev.aiexport.instructions.ContentHash;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstructionCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path sources;
+    private InstructionCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        sources = folder.newFolder("sources").toPath();
+        cache = new InstructionCache(folder.getRoot().toPath().resolve("cache"), 250);
+    }
+
+    @Test
+    public void storesObjectsUnderTheirHash() throws IOException {
+        String hash = cache.put(source("a.md", "a"), null);
+
+        assertEquals(ContentHash.sha256(sources.resolve("a.md")), hash);
+        assertEquals("a".repeat(100), Files.readString(cache.get(hash)));
+        assertEquals(hash, cache.put(source("copy.md", "a"), hash));
+        assertNull(cache.get("0".repeat(64)));
+    }
+
+    @Test
+    public void rejectsContentWithAnotherHash() throws IOException {
+        String expected = "0".repeat(64);
+        try {
+            cache.put(source("a.md", "a"), expected);
+            fail("Content with the wrong hash was stored");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("does not match its manifest hash " + expected));
+        }
+        assertNull(cache.get(ContentHash.sha256(sources.resolve("a.md"))));
+        assertEquals(0, cache.evict(Set.of()));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedObjects() throws IOException {
+        String a = put("a", 1_000);
+        String b = put("b", 2_000);
+        String c = put("c", 3_000);
+
+        assertEquals(1, cache.evict(Set.of()));
+
+        assertNull(cache.get(a));
+        assertNotNull(cache.get(b));
+        assertNotNull(cache.get(c));
+    }
+
+    @Test
+    public void usingAnObjectKeepsItLonger() throws IOException {
+        String a = put("a", 1_000);
+        String b = put("b", 2_000);
+        put("c", 3_000);
+
+        assertNotNull(cache.get(a));
+
+        assertEquals(1, cache.evict(Set.of()));
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+    }
+
+    @Test
+    public void pinnedObjectsAreNeverEvicted() throws IOException {
+        String a = put("a", 1_000);
+        String b = put("b", 2_000);
+        String c = put("c", 3_000);
+
+        assertEquals(1, cache.evict(Set.of(a)));
+
+        assertNotNull(cache.get(a));
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+    }
+
+    @Test
+    public void cacheWithinItsLimitIsKept() throws IOException {
+        String a = put("a", 1_000);
+        String b = put("b", 2_000);
+
+        assertEquals(0, cache.evict(Set.of()));
+        cache.remove(a);
+
+        assertNull(cache.get(a));
+        assertNotNull(cache.get(b));
+    }
+
+    /**
+     * Stores 100 bytes that were last used at the given time
+     */
+    private String put(String character, long lastUsed) throws IOException {
+        String hash = cache.put(source(character + ".md", character), null);
+        Files.setLastModifiedTime(cache.get(hash), FileTime.fromMillis(lastUsed));
+        return hash;
+    }
+
+    private Path source(String name, String character) throws IOException {
+        return Files.writeString(sources.resolve(name), character.repeat(100));
+    }
+}
@@ -0,0 +1,125 @@
+package de.knudev.aiexport.workspace;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WorkspaceComponentLocatorTest {
+    private static final String COMPONENT = """
+            <component name="Target">
+                <option name="value" value="x" />
+              </component>""";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void locatesComponentByteRange() throws IOException {
+        String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<project version=\"4\">\n"
+                + "  <component name=\"Other\" />\n  " + COMPONENT + "\n</project>\n";
+        Path file = write(content);
+
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "Target");
+
+        assertTrue(range.exists());
+        assertEquals(COMPONENT, slice(content, range));
+        assertEquals("  ", range.indent());
+    }
+
+    @Test
+    public void missingComponentIsInsertedBeforeClosingRootTag() throws IOException {
+        String content = "<project version=\"4\">\r\n  <component name=\"Other\" />\r\n</project>\r\n";
+        Path file = write(content);
+
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "Target");
+
+        assertFalse(range.exists());
+        assertEquals(content.indexOf("</project>"), range.start());
+        assertEquals("  ", range.indent());
+        assertEquals("\r\n", range.lineSeparator());
+    }
+
+    @Test
+    public void ignoresComponentsBelowTopLevel() throws IOException {
+        String content = "<project>\n  <component name=\"Outer\">\n    <component name=\"Target\" />\n  </component>\n</project>\n";
+        Path file = write(content);
+
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "Target");
+
+        assertFalse(range.exists());
+    }
+
+    @Test
+    public void skipsSectionsEndingInPartOfTheirTerminator() throws IOException {
+        // "]]]>" and "--->" start with a partial match of the terminator
+        String content = "<project>\n  <component name=\"Other\"><![CDATA[x]]]></component>\n  <!-- note --->\n"
+                + "  <?pi ??>\n  " + COMPONENT + "\n</project>\n";
+        Path file = write(content);
+
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "Target");
+
+        assertEquals(COMPONENT, slice(content, range));
+    }
+
+    @Test
+    public void ignoresMarkupInsideCdataAndComments() throws IOException {
+        String content = "<project>\n  <!-- <component name=\"Target\"> -->\n"
+                + "  <component name=\"Other\"><![CDATA[</project><component name=\"Target\">]]></component>\n  "
+                + COMPONENT + "\n</project>\n";
+        Path file = write(content);
+
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "Target");
+
+        assertEquals(COMPONENT, slice(content, range));
+    }
+
+    @Test
+    public void locatesSeveralComponentsInOneScan() throws IOException {
+        String content = "<project>\n  <component name=\"First\" />\n  <component name=\"Second\"></component>\n</project>\n";
+        Path file = write(content);
+
+        Map<String, ComponentRange> ranges = WorkspaceComponentLocator.locateAll(file, Set.of("First", "Second", "Third"));
+
+        assertEquals("<component name=\"First\" />", slice(content, ranges.get("First")));
+        assertEquals("<component name=\"Second\"></component>", slice(content, ranges.get("Second")));
+        assertFalse(ranges.get("Third").exists());
+    }
+
+    @Test
+    public void fileWithoutClosingRootTagHasNoInsertionPoint() throws IOException {
+        Path file = write("<project>\n  <component name=\"Other\" />\n");
+
+        assertNull(WorkspaceComponentLocator.locate(file, "Target"));
+    }
+
+    @Test(expected = EOFException.class)
+    public void unterminatedCdataFails() throws IOException {
+        Path file = write("<project>\n  <component name=\"Other\"><![CDATA[x]]</component>\n</project>\n");
+
+        WorkspaceComponentLocator.locate(file, "Target");
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve("workspace.xml");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static String slice(String content, ComponentRange range) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new String(bytes, (int) range.start(), (int) range.length(), StandardCharsets.UTF_8);
+    }
+}
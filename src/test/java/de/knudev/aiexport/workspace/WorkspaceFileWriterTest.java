@@ -0,0 +1,114 @@
+package de.knudev.aiexport.workspace;
+
+import de.knudev.aiexport.workspace.WorkspaceFileWriter.Replacement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class WorkspaceFileWriterTest {
+    private static final String CONTENT = "<project version=\"4\">\n"
+            + "  <component name=\"First\">\n    <option  name=\"a\"   value=\"1\"/>\n  </component>\n"
+            + "  <component name=\"Second\" />\n"
+            + "</project>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replacesComponentAndKeepsSurroundingBytes() throws IOException {
+        Path file = write(CONTENT);
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "Second");
+
+        WorkspaceFileWriter.replaceRange(file, range, "<component name=\"Second\">x</component>");
+
+        assertEquals(CONTENT.replace("<component name=\"Second\" />", "<component name=\"Second\">x</component>"),
+                Files.readString(file));
+    }
+
+    @Test
+    public void insertsMissingComponentOnItsOwnLine() throws IOException {
+        Path file = write(CONTENT);
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "Third");
+
+        WorkspaceFileWriter.replaceRange(file, range, "<component name=\"Third\" />");
+
+        assertEquals(CONTENT.replace("</project>", "  <component name=\"Third\" />\n</project>"), Files.readString(file));
+    }
+
+    @Test
+    public void replacesSeveralComponentsInOneRewrite() throws IOException {
+        Path file = write(CONTENT);
+        Map<String, ComponentRange> ranges = WorkspaceComponentLocator.locateAll(file, Set.of("First", "Second"));
+
+        WorkspaceFileWriter.replaceRanges(file, List.of(
+                new Replacement(ranges.get("Second"), "<component name=\"Second\">2</component>"),
+                new Replacement(ranges.get("First"), "<component name=\"First\">1</component>")));
+
+        assertEquals("<project version=\"4\">\n  <component name=\"First\">1</component>\n"
+                + "  <component name=\"Second\">2</component>\n</project>\n", Files.readString(file));
+    }
+
+    @Test
+    public void rejectsOverlappingRanges() throws IOException {
+        Path file = write(CONTENT);
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "First");
+        ComponentRange overlapping = new ComponentRange(range.start() + 1, range.end() + 1, "", "\n");
+
+        try {
+            WorkspaceFileWriter.replaceRanges(file, List.of(new Replacement(range, "a"), new Replacement(overlapping, "b")));
+            fail("Overlapping ranges were accepted");
+        } catch (IOException e) {
+            assertEquals(CONTENT, Files.readString(file));
+        }
+        assertEquals(List.of(file), listFolder());
+    }
+
+    @Test
+    public void readsComponentRange() throws IOException {
+        Path file = write(CONTENT);
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "Second");
+
+        assertArrayEquals("<component name=\"Second\" />".getBytes(StandardCharsets.UTF_8),
+                WorkspaceFileWriter.readRange(file, range));
+    }
+
+    @Test
+    public void keepsPermissionsOfReplacedFile() throws IOException {
+        Path file = write(CONTENT);
+        PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        assumeTrue(view != null);
+        view.setPermissions(PosixFilePermissions.fromString("rw-rw-r--"));
+        ComponentRange range = WorkspaceComponentLocator.locate(file, "Second");
+
+        WorkspaceFileWriter.replaceRange(file, range, "<component name=\"Second\">x</component>");
+
+        assertEquals("rw-rw-r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve("workspace.xml");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private List<Path> listFolder() throws IOException {
+        try (var files = Files.list(folder.getRoot().toPath())) {
+            return files.toList();
+        }
+    }
+}
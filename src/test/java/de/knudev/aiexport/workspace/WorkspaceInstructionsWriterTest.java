@@ -0,0 +1,138 @@
+package de.knudev.aiexport.workspace;
+
+import de.knudev.aiexport.workspace.WorkspaceInstructionsWriter.WriteMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLStreamException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkspaceInstructionsWriterTest {
+    private static final String OTHER = "  <component name=\"Other\">\n    <option   name=\"kept\"  value=\"as is\"/>\n  </component>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void updatesInstructionsInPlace() throws Exception {
+        Path file = write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<project version=\"4\">\n" + OTHER
+                + instructionsComponent("commit", "old") + "</project>\n");
+
+        WriteMode mode = WorkspaceInstructionsWriter.writeInstructions(file, Map.of("commit", "new", "review", "check"));
+
+        assertEquals(WriteMode.IN_PLACE, mode);
+        assertEquals(Map.of("commit", "new", "review", "check"), WorkspaceInstructionsReader.readInstructions(file));
+        assertTrue(Files.readString(file).contains(OTHER));
+    }
+
+    @Test
+    public void insertsMissingInstructionsComponent() throws Exception {
+        Path file = write("<project version=\"4\">\n" + OTHER + "</project>\n");
+
+        WriteMode mode = WorkspaceInstructionsWriter.writeInstructions(file, Map.of("commit", "text"));
+
+        assertEquals(WriteMode.IN_PLACE, mode);
+        assertEquals(Map.of("commit", "text"), WorkspaceInstructionsReader.readInstructions(file));
+        assertTrue(Files.readString(file).startsWith("<project version=\"4\">\n" + OTHER));
+    }
+
+    @Test
+    public void rewritesFileWithoutInsertionPoint() throws Exception {
+        Path file = write("<project version=\"4\"/>");
+
+        WriteMode mode = WorkspaceInstructionsWriter.writeInstructions(file, Map.of("commit", "text"));
+
+        assertEquals(WriteMode.FULL_REWRITE, mode);
+        assertEquals(Map.of("commit", "text"), WorkspaceInstructionsReader.readInstructions(file));
+    }
+
+    @Test
+    public void keepsSpecialCharacters() throws Exception {
+        Path file = write("<project version=\"4\">\n</project>\n");
+        Map<String, String> instructions = new LinkedHashMap<>();
+        instructions.put("commit", "Use <b>\"quotes\"</b> & ]]> markers\nover two lines");
+
+        WorkspaceInstructionsWriter.writeInstructions(file, instructions);
+
+        assertEquals(instructions, WorkspaceInstructionsReader.readInstructions(file));
+    }
+
+    @Test
+    public void removesInstructionsMappedToNull() throws Exception {
+        Path file = write("<project version=\"4\">\n" + instructionsComponent("commit", "old") + "</project>\n");
+        Map<String, String> instructions = new LinkedHashMap<>();
+        instructions.put("commit", null);
+
+        WorkspaceInstructionsWriter.writeInstructions(file, instructions);
+
+        assertEquals(Map.of(), WorkspaceInstructionsReader.readInstructions(file));
+        assertTrue(Files.readString(file).contains("<map />"));
+    }
+
+    @Test
+    public void updatesOnlyChangedEntriesOfSerializedComponent() throws Exception {
+        String component = instructionsComponent("commit", "old").strip()
+                .replace("</map>", "  <entry key=\"review\"><value><AIAssistantStoredInstruction>"
+                        + "<option name=\"content\" value=\"kept\" extra=\"1\" /></AIAssistantStoredInstruction></value></entry>\n      </map>");
+
+        String updated = WorkspaceInstructionsWriter.updateComponentXml(component, Map.of("commit", "new\nline"));
+
+        // Unchanged entries keep their attribute order and are only indented
+        assertEquals("<component name=\"" + WorkspaceInstructionsReader.COMPONENT_NAME + "\">\n"
+                + "  <option name=\"instructions\">\n    <map>\n"
+                + "      <entry key=\"commit\">\n        <value>\n          <AIAssistantStoredInstruction>\n"
+                + "            <option name=\"actionId\" value=\"commit\" />\n"
+                + "            <option name=\"content\" value=\"new&#10;line\" />\n"
+                + "          </AIAssistantStoredInstruction>\n        </value>\n      </entry>\n"
+                + "      <entry key=\"review\">\n        <value>\n          <AIAssistantStoredInstruction>\n"
+                + "            <option name=\"content\" value=\"kept\" extra=\"1\" />\n"
+                + "          </AIAssistantStoredInstruction>\n        </value>\n      </entry>\n"
+                + "    </map>\n  </option>\n</component>", updated);
+    }
+
+    @Test
+    public void malformedComponentLeavesFileUnchanged() throws Exception {
+        String content = "<project version=\"4\">\n  <component name=\"" + WorkspaceInstructionsReader.COMPONENT_NAME
+                + "\">\n    <option name=\"instructions\"><map></option></map>\n  </component>\n</project>\n";
+        Path file = write(content);
+
+        try {
+            WorkspaceInstructionsWriter.writeInPlace(file, Map.of("commit", "text"));
+            fail("Malformed component was written");
+        } catch (XMLStreamException e) {
+            // Expected, writeInstructions falls back to the full parse
+        }
+
+        assertEquals(content, Files.readString(file));
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    private static String instructionsComponent(String actionId, String content) {
+        return "  <component name=\"" + WorkspaceInstructionsReader.COMPONENT_NAME + "\">\n"
+                + "    <option name=\"instructions\">\n      <map>\n"
+                + "        <entry key=\"" + actionId + "\">\n          <value>\n"
+                + "            <AIAssistantStoredInstruction>\n"
+                + "              <option name=\"actionId\" value=\"" + actionId + "\" />\n"
+                + "              <option name=\"content\" value=\"" + content + "\" />\n"
+                + "            </AIAssistantStoredInstruction>\n"
+                + "          </value>\n        </entry>\n      </map>\n    </option>\n  </component>\n";
+    }
+
+    private Path write(String content) throws Exception {
+        Path file = folder.getRoot().toPath().resolve("workspace.xml");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+}